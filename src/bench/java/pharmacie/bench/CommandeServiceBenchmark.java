@@ -0,0 +1,189 @@
+package pharmacie.bench;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import pharmacie.WebApp;
+import pharmacie.entity.Commande;
+import pharmacie.entity.Ligne;
+import pharmacie.service.CommandeService;
+import pharmacie.service.GenerateurDonnees;
+import pharmacie.service.GenerateurDonnees.Echelle;
+import pharmacie.service.MailService;
+import pharmacie.service.MailServiceBouchon;
+import pharmacie.service.ReapprovisionnementService;
+
+/**
+ * Services métier sur une base H2 embarquée, remplie par un jeu de données synthétique
+ * (cf. GenerateurDonnees, taille réglable par les paramètres) :
+ * - creerCommande, ajouterLigne, enregistreExpedition (CommandeService)
+ * - demanderDevis (ReapprovisionnementService), les mails vont dans un bouchon de MailService
+ * Débit et distribution des durées (percentiles) ; avec -prof gc : octets alloués par opération.
+ * Les traces SQL et les logs des services sont désactivés : ils ne sont pas mesurés.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandeServiceBenchmark {
+
+    private static final int COMMANDES_OUVERTES = 100;
+    // Les médicaments commandés pendant les mesures ne sont jamais en rupture
+    private static final int STOCK_INEPUISABLE = 1_000_000_000;
+
+    @Param("1000")
+    int medicaments;
+
+    @Param("100")
+    int dispensaires;
+
+    // Historique des commandes du jeu de données
+    @Param("10000")
+    int commandes;
+
+    // Lignes des commandes expédiées par enregistreExpedition
+    @Param("5")
+    int lignesParCommande;
+
+    private ConfigurableApplicationContext contexte;
+    private CommandeService commandeService;
+    private ReapprovisionnementService reapproService;
+    private final SplittableRandom aleatoire = new SplittableRandom(42);
+    private final int[] ouvertes = new int[COMMANDES_OUVERTES];
+    private List<String> codesDispensaires;
+    private int[] commandables;
+    private int suivante;
+
+    /**
+     * Les mails de devis ne sont pas envoyés : le bouchon remplace MailgunService (même nom de bean)
+     */
+    @TestConfiguration(proxyBeanMethods = false)
+    static class Bouchons {
+        @Bean
+        MailService mailgunService() {
+            return new MailServiceBouchon();
+        }
+    }
+
+    /**
+     * Une commande à expédier, préparée avant chaque appel (hors mesure)
+     */
+    @State(Scope.Thread)
+    public static class CommandeAExpedier {
+        int numero;
+
+        @Setup(Level.Invocation)
+        public void preparer(CommandeServiceBenchmark banc) {
+            numero = banc.commandeAvecLignes();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void demarrer() {
+        contexte = new SpringApplicationBuilder(WebApp.class, Bouchons.class)
+                .bannerMode(Banner.Mode.OFF)
+                // Arguments de la ligne de commande : ils l'emportent sur application.properties (celui des tests)
+                .run(
+                        // Contexte complet (les contrôleurs dépendent de Spring Data REST), sur un port libre
+                        "--server.port=0",
+                        "--spring.main.allow-bean-definition-overriding=true",
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                        // Le jeu de données remplace les scripts
+                        "--spring.sql.init.mode=never",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.pharmacie=WARN",
+                        "--pharmacie.mail.outbox.actif=false",
+                        "--pharmacie.reappro.alertes.actif=false",
+                        // Chaque demande de devis sollicite de nouveau les fournisseurs
+                        "--pharmacie.reappro.periode-calme=0s");
+        contexte.getBean(GenerateurDonnees.class).generer(new Echelle(50, 20, dispensaires, medicaments, commandes,
+                10, 1.0, LocalDate.of(2024, 12, 31)), 42);
+        // Les médicaments sous leur niveau de réapprovisionnement restent à demander (demanderDevis)
+        JdbcTemplate jdbc = contexte.getBean(JdbcTemplate.class);
+        jdbc.update("UPDATE Medicament SET unites_en_stock = ? WHERE NOT indisponible"
+                + " AND unites_en_stock > niveau_de_reappro", STOCK_INEPUISABLE);
+        commandables = jdbc.queryForList("SELECT reference FROM Medicament WHERE unites_en_stock = ?",
+                Integer.class, STOCK_INEPUISABLE).stream().mapToInt(Integer::intValue).toArray();
+        codesDispensaires = jdbc.queryForList("SELECT code FROM Dispensaire", String.class);
+        commandeService = contexte.getBean(CommandeService.class);
+        reapproService = contexte.getBean(ReapprovisionnementService.class);
+    }
+
+    @Setup(Level.Iteration)
+    public void ouvrirCommandes() {
+        for (int i = 0; i < ouvertes.length; i++) {
+            ouvertes[i] = commandeService.creerCommande(dispensaire()).getNumero();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void arreter() {
+        contexte.close();
+    }
+
+    @Benchmark
+    public Commande creerCommande() {
+        return commandeService.creerCommande(dispensaire());
+    }
+
+    @Benchmark
+    public Ligne ajouterLigne() {
+        suivante = (suivante + 1) % ouvertes.length;
+        return commandeService.ajouterLigne(ouvertes[suivante], medicamentCommandable(), 1);
+    }
+
+    @Benchmark
+    public Commande enregistreExpedition(CommandeAExpedier commande) {
+        return commandeService.enregistreExpedition(commande.numero);
+    }
+
+    @Benchmark
+    public List<String> demanderDevis() {
+        return reapproService.demanderDevis();
+    }
+
+    /**
+     * @return le numéro d'une nouvelle commande, avec lignesParCommande lignes
+     */
+    int commandeAvecLignes() {
+        int numero = commandeService.creerCommande(dispensaire()).getNumero();
+        int premier = aleatoire.nextInt(commandables.length);
+        for (int l = 0; l < Math.min(lignesParCommande, commandables.length); l++) {
+            commandeService.ajouterLigne(numero, commandables[(premier + l) % commandables.length], 1);
+        }
+        return numero;
+    }
+
+    private String dispensaire() {
+        return codesDispensaires.get(aleatoire.nextInt(codesDispensaires.size()));
+    }
+
+    private int medicamentCommandable() {
+        return commandables[aleatoire.nextInt(commandables.length)];
+    }
+}
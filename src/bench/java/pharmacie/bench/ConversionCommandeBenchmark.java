@@ -0,0 +1,93 @@
+package pharmacie.bench;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import pharmacie.dto.CommandeDTO;
+import pharmacie.entity.Categorie;
+import pharmacie.entity.Commande;
+import pharmacie.entity.Dispensaire;
+import pharmacie.entity.Ligne;
+import pharmacie.entity.Medicament;
+
+/**
+ * Conversion d'une commande en réponse JSON, comme dans CommandeController :
+ * entité -> CommandeDTO par ModelMapper, puis CommandeDTO -> JSON par Jackson.
+ * Avec -prof gc, gc.alloc.rate.norm donne les octets alloués par commande convertie.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionCommandeBenchmark {
+
+    @Param({ "1", "10", "100" })
+    int lignes;
+
+    // spring.jackson.serialization.indent-output, activé dans application.properties
+    @Param({ "false", "true" })
+    boolean indentation;
+
+    // Configurés comme les beans de l'application (WebApp, Jackson de Spring Boot)
+    private final ModelMapper mapper = new ModelMapper();
+    private ObjectMapper json;
+    private Commande commande;
+    private CommandeDTO dto;
+
+    @Setup
+    public void preparer() {
+        json = Jackson2ObjectMapperBuilder.json().indentOutput(indentation).build();
+        Dispensaire dispensaire = new Dispensaire("D0001", "Dispensaire 1");
+        dispensaire.setContact("Contact 1");
+        Categorie categorie = new Categorie("Categorie 1");
+        commande = new Commande(dispensaire);
+        ReflectionTestUtils.setField(commande, "numero", 1);
+        for (int l = 1; l <= lignes; l++) {
+            Medicament medicament = new Medicament("Medicament " + l, categorie);
+            ReflectionTestUtils.setField(medicament, "reference", l);
+            medicament.setPrixUnitaire(BigDecimal.valueOf(100 + l, 2));
+            Ligne ligne = new Ligne(commande, medicament, l);
+            ReflectionTestUtils.setField(ligne, "id", l);
+            commande.getLignes().add(ligne);
+        }
+        dto = mapper.map(commande, CommandeDTO.class);
+    }
+
+    @Benchmark
+    public CommandeDTO modelMapper() {
+        return mapper.map(commande, CommandeDTO.class);
+    }
+
+    @Benchmark
+    public byte[] jackson() throws JsonProcessingException {
+        return json.writeValueAsBytes(dto);
+    }
+
+    /**
+     * Le traitement complet d'une réponse de CommandeController
+     */
+    @Benchmark
+    public byte[] modelMapperEtJackson() throws JsonProcessingException {
+        return json.writeValueAsBytes(mapper.map(commande, CommandeDTO.class));
+    }
+}
@@ -0,0 +1,173 @@
+package pharmacie.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Temps de démarrage de l'application : du lancement de la JVM à la première réponse 200
+ * de /api/medicaments, selon le mode de démarrage :
+ * - standard : java -jar
+ * - differe : profil demarrage-rapide (initialisation différée des beans non essentiels)
+ * - aot : profil demarrage-rapide et code Spring AOT (jar construit avec mvn -Pdemarrage-rapide)
+ * - cds : jar éclaté et archive CDS, produite par un démarrage d'entraînement
+ * - rapide : les trois, comme l'image Docker
+ * Chaque mesure démarre une nouvelle JVM : mesure en SingleShotTime.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DemarrageBenchmark {
+
+    private static final String PROFIL = "-Dspring.profiles.active=demarrage-rapide";
+    private static final String AOT = "-Dspring.aot.enabled=true";
+    private static final String INITIALISEUR_AOT = "BOOT-INF/classes/pharmacie/WebApp__ApplicationContextInitializer.class";
+    private static final Duration DELAI_MAX = Duration.ofMinutes(3);
+
+    @Param({ "standard", "differe", "aot", "cds", "rapide" })
+    String mode;
+
+    // Le jar de l'application (mvn package, ou mvn package -Pdemarrage-rapide pour aot et rapide)
+    @Param("target/pharmacie-spring-jpa-1.0-SNAPSHOT.jar")
+    String jar;
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    private final String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    private Path repertoire;
+    private List<String> commande;
+    private Process application;
+
+    @Setup(Level.Trial)
+    public void preparer() throws Exception {
+        Path archive = Path.of(jar).toAbsolutePath();
+        if (!Files.exists(archive)) {
+            throw new IllegalStateException("Jar introuvable : " + archive + " (mvn package)");
+        }
+        boolean aot = mode.equals("aot") || mode.equals("rapide");
+        if (aot) {
+            try (ZipFile zip = new ZipFile(archive.toFile())) {
+                if (zip.getEntry(INITIALISEUR_AOT) == null) {
+                    throw new IllegalStateException("Jar sans code AOT : mvn package -Pdemarrage-rapide");
+                }
+            }
+        }
+        repertoire = archive.resolveSibling("demarrage").resolve(mode);
+        Files.createDirectories(repertoire);
+        commande = new ArrayList<>(List.of(java));
+        switch (mode) {
+            case "standard" -> commande.addAll(List.of("-jar", archive.toString()));
+            case "differe" -> commande.addAll(List.of(PROFIL, "-jar", archive.toString()));
+            case "aot" -> commande.addAll(List.of(AOT, PROFIL, "-jar", archive.toString()));
+            case "cds", "rapide" -> {
+                // Comme le Dockerfile : jar éclaté, puis démarrage d'entraînement qui produit l'archive CDS
+                Path application = repertoire.resolve("application");
+                executer(List.of(java, "-Djarmode=tools", "-jar", archive.toString(),
+                        "extract", "--force", "--destination", application.toString(), "--application-filename", "app.jar"));
+                List<String> options = aot ? List.of(AOT, PROFIL) : List.of();
+                List<String> entrainement = new ArrayList<>(List.of(java, "-XX:ArchiveClassesAtExit=application.jsa",
+                        "-Dspring.context.exit=onRefresh"));
+                entrainement.addAll(options);
+                entrainement.addAll(List.of("-jar", "app.jar"));
+                repertoire = application;
+                executer(entrainement);
+                commande.add("-XX:SharedArchiveFile=application.jsa");
+                commande.addAll(options);
+                commande.addAll(List.of("-jar", "app.jar"));
+            }
+            default -> throw new IllegalArgumentException("Mode de démarrage inconnu : " + mode);
+        }
+    }
+
+    @Benchmark
+    public int premiereRequete() throws Exception {
+        int port;
+        try (ServerSocket libre = new ServerSocket(0)) {
+            port = libre.getLocalPort();
+        }
+        List<String> lancement = new ArrayList<>(commande);
+        lancement.add("--server.port=" + port);
+        application = processus(lancement).start();
+        HttpRequest requete = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/medicaments"))
+                .timeout(Duration.ofSeconds(5)).build();
+        long limite = System.nanoTime() + DELAI_MAX.toNanos();
+        while (System.nanoTime() < limite) {
+            if (!application.isAlive()) {
+                throw new IllegalStateException("L'application s'est arrêtée, cf. " + journal());
+            }
+            try {
+                HttpResponse<Void> reponse = client.send(requete, HttpResponse.BodyHandlers.discarding());
+                if (reponse.statusCode() == 200) {
+                    return reponse.statusCode();
+                }
+            } catch (IOException e) {
+                // Pas encore à l'écoute
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("Pas de réponse après " + DELAI_MAX + ", cf. " + journal());
+    }
+
+    @TearDown(Level.Iteration)
+    public void arreter() throws InterruptedException {
+        if (application != null) {
+            application.destroy();
+            if (!application.waitFor(30, TimeUnit.SECONDS)) {
+                application.destroyForcibly().waitFor();
+            }
+            application = null;
+        }
+    }
+
+    private void executer(List<String> ligne) throws IOException, InterruptedException {
+        int statut = processus(ligne).start().waitFor();
+        if (statut != 0) {
+            throw new IllegalStateException("Échec (" + statut + ") de " + String.join(" ", ligne) + ", cf. " + journal());
+        }
+    }
+
+    private ProcessBuilder processus(List<String> ligne) {
+        ProcessBuilder builder = new ProcessBuilder(ligne).directory(repertoire.toFile())
+                .redirectErrorStream(true).redirectOutput(journal().toFile());
+        // Valeurs factices : l'application ne démarre pas sans, aucun mail n'est envoyé
+        for (String variable : List.of("MAILGUN_API_KEY", "MAILGUN_DOMAIN", "SPRING_MAIL_USERNAME", "SPRING_MAIL_PASSWORD")) {
+            builder.environment().putIfAbsent(variable, "benchmark");
+        }
+        return builder;
+    }
+
+    private Path journal() {
+        try {
+            return Files.createDirectories(repertoire).resolve("application.log");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
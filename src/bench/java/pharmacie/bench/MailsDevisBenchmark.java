@@ -0,0 +1,105 @@
+package pharmacie.bench;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pharmacie.service.MailsDevis;
+
+/**
+ * Débit de rendu des mails de demande de devis : gabarits compilés et tampons réutilisés,
+ * comparés à la construction d'origine (un StringBuilder neuf et des append par mail).
+ * Avec -prof gc, gc.alloc.rate.norm donne les octets alloués par mail.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MailsDevisBenchmark {
+
+    private static final int CATEGORIES = 200;
+
+    // Nombre de catégories demandées dans chaque mail
+    @Param({ "2", "20" })
+    int categoriesParMail;
+
+    // Nombre de médicaments à réapprovisionner par catégorie
+    @Param({ "5", "25" })
+    int medicamentsParCategorie;
+
+    private final MailsDevis mails = new MailsDevis("fr");
+    private final List<String> libelles = new ArrayList<>();
+    private final List<List<Object[]>> medicaments = new ArrayList<>();
+    private final List<String> recapitulatifs = new ArrayList<>();
+    private BitSet categories;
+
+    @Setup
+    public void preparer() {
+        Random aleatoire = new Random(42);
+        for (int c = 0; c < CATEGORIES; c++) {
+            String libelle = "Categorie " + c;
+            List<Object[]> lignes = new ArrayList<>();
+            StringBuilder recapitulatif = new StringBuilder();
+            for (int m = 0; m < medicamentsParCategorie; m++) {
+                Object[] ligne = { "Medicament " + c + "-" + m, aleatoire.nextInt(10), 10 + aleatoire.nextInt(20) };
+                lignes.add(ligne);
+                mails.medicament(recapitulatif, (String) ligne[0], (int) ligne[1], (int) ligne[2]);
+            }
+            libelles.add(libelle);
+            medicaments.add(lignes);
+            recapitulatifs.add(mails.categorie(libelle, recapitulatif));
+        }
+        categories = new BitSet(CATEGORIES);
+        while (categories.cardinality() < categoriesParMail) {
+            categories.set(aleatoire.nextInt(CATEGORIES));
+        }
+    }
+
+    @Benchmark
+    public String gabarit() {
+        return mails.corps("Fournisseur", categories, recapitulatifs::get);
+    }
+
+    /**
+     * La construction d'origine : le mail est reconstruit en entier pour chaque fournisseur
+     */
+    @Benchmark
+    public String concatenation() {
+        StringBuilder contenu = new StringBuilder();
+        contenu.append("Bonjour ").append("Fournisseur").append(",\n\n");
+        contenu.append("Nous vous contactons pour vous demander un devis de réapprovisionnement ");
+        contenu.append("pour les médicaments suivants :\n\n");
+        for (int c = categories.nextSetBit(0); c >= 0; c = categories.nextSetBit(c + 1)) {
+            contenu.append("=== Catégorie : ").append(libelles.get(c)).append(" ===\n");
+            for (Object[] ligne : medicaments.get(c)) {
+                contenu.append("  - ").append(ligne[0])
+                        .append(" (stock actuel: ").append(ligne[1])
+                        .append(", seuil: ").append(ligne[2])
+                        .append(")\n");
+            }
+            contenu.append("\n");
+        }
+        contenu.append("Merci de nous transmettre votre devis dans les meilleurs délais.\n\n");
+        contenu.append("Cordialement,\n");
+        contenu.append("La Pharmacie");
+        return contenu.toString();
+    }
+}
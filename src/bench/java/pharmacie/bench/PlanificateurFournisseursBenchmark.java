@@ -0,0 +1,98 @@
+package pharmacie.bench;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pharmacie.service.PlanificateurFournisseurs;
+
+/**
+ * Temps de planification des demandes de devis, et nombre de mails envoyés,
+ * comparés à l'envoi à tous les fournisseurs concernés ("diffusion").
+ * Le nombre de mails de chaque stratégie est affiché au démarrage de chaque essai.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlanificateurFournisseursBenchmark {
+
+    private static final int CATEGORIES = 200;
+
+    @Param({ "1000", "5000" })
+    int medicaments;
+
+    @Param({ "200", "1000" })
+    int fournisseurs;
+
+    @Param({ "1", "2" })
+    int redondance;
+
+    // Catégories et fournisseurs désignés par leur indice, comme ils sont lus par BesoinsReappro
+    private int[] poids;
+    private BitSet[] fournisseursDe;
+    private PlanificateurFournisseurs planificateur;
+
+    @Setup
+    public void preparer() {
+        Random aleatoire = new Random(42);
+        poids = new int[CATEGORIES];
+        for (int m = 0; m < medicaments; m++) {
+            poids[aleatoire.nextInt(CATEGORIES)]++;
+        }
+        // Chaque fournisseur couvre entre 5 et 20 catégories
+        fournisseursDe = new BitSet[CATEGORIES];
+        for (int c = 0; c < CATEGORIES; c++) {
+            fournisseursDe[c] = new BitSet(fournisseurs);
+        }
+        for (int f = 0; f < fournisseurs; f++) {
+            Set<Integer> couvertes = new HashSet<>();
+            int nombre = 5 + aleatoire.nextInt(16);
+            while (couvertes.size() < nombre) {
+                couvertes.add(aleatoire.nextInt(CATEGORIES));
+            }
+            for (int c : couvertes) {
+                fournisseursDe[c].set(f);
+            }
+        }
+        planificateur = new PlanificateurFournisseurs(redondance);
+        System.out.printf("%nMails envoyés : plan = %d, diffusion = %d%n",
+                plan().size(), diffusion().cardinality());
+    }
+
+    @Benchmark
+    public Map<Integer, BitSet> plan() {
+        return planificateur.planifier(poids, fournisseursDe, fournisseurs);
+    }
+
+    /**
+     * La stratégie d'origine : un mail à chaque fournisseur d'au moins une catégorie concernée
+     */
+    @Benchmark
+    public BitSet diffusion() {
+        BitSet sollicites = new BitSet(fournisseurs);
+        for (int c = 0; c < CATEGORIES; c++) {
+            if (poids[c] > 0) {
+                sollicites.or(fournisseursDe[c]);
+            }
+        }
+        return sollicites;
+    }
+}
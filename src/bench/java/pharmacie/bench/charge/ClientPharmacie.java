@@ -0,0 +1,153 @@
+package pharmacie.bench.charge;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Les scénarios du test de charge, joués par un client HTTP de l'API :
+ * - COMMANDE : crée une commande, y ajoute des lignes, puis l'expédie
+ * - STATISTIQUES : lit les unités commandées d'une catégorie
+ * - CATALOGUE : lit une page du catalogue des médicaments
+ * Les dispensaires, catégories et médicaments utilisés sont lus dans l'API au départ.
+ * Chaque requête est mesurée dans la série "méthode modèle-du-chemin" ; une réponse autre que 2xx
+ * est un échec de la requête et interrompt le scénario.
+ */
+final class ClientPharmacie {
+
+    private static final String COMMANDES = "/api/services/commandes/";
+    private static final int TAILLE_PAGE = 1_000;
+    private static final int PAGES_MAX = 10;
+    // Marge de stock des médicaments commandés : les expéditions du test la consomment
+    private static final int STOCK_MIN = 100;
+
+    enum Scenario {
+        COMMANDE, STATISTIQUES, CATALOGUE
+    }
+
+    /**
+     * Une réponse autre que 2xx
+     */
+    static final class EchecRequete extends RuntimeException {
+        EchecRequete(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private final HttpClient http;
+    private final String url;
+    private final int lignes;
+    private final ObjectMapper json = new ObjectMapper();
+    private final List<String> dispensaires = new ArrayList<>();
+    private final List<Integer> categories = new ArrayList<>();
+    private final List<Integer> medicaments = new ArrayList<>();
+    private int pagesCatalogue;
+
+    ClientPharmacie(HttpClient http, String url, int lignes) {
+        this.http = http;
+        this.url = url;
+        this.lignes = lignes;
+    }
+
+    /**
+     * Lit les références utilisées par les scénarios
+     *
+     * @throws IllegalStateException s'il n'y a pas assez de données pour les scénarios
+     */
+    void preparer() throws IOException, InterruptedException {
+        lire("/api/dispensaires", "dispensaires", dispensaire -> dispensaires.add(dispensaire.get("code").asText()));
+        lire("/api/categories", "categories", categorie -> categories.add(categorie.get("code").asInt()));
+        long total = lire("/api/medicaments", "medicaments", medicament -> {
+            if (!medicament.get("indisponible").asBoolean() && medicament.get("unitesEnStock").asInt()
+                    - medicament.get("unitesCommandees").asInt() >= STOCK_MIN) {
+                medicaments.add(medicament.get("reference").asInt());
+            }
+        });
+        pagesCatalogue = (int) Math.max(1, total / 20);
+        if (dispensaires.isEmpty() || categories.isEmpty() || medicaments.size() < lignes) {
+            throw new IllegalStateException("Pas assez de données : %d dispensaires, %d catégories, %d médicaments commandables"
+                    .formatted(dispensaires.size(), categories.size(), medicaments.size()));
+        }
+    }
+
+    void executer(Scenario scenario, SplittableRandom aleatoire, Mesures mesures) throws IOException, InterruptedException {
+        switch (scenario) {
+            case COMMANDE -> {
+                String dispensaire = dispensaires.get(aleatoire.nextInt(dispensaires.size()));
+                int numero = json.readTree(appeler(mesures, "POST " + COMMANDES + "ajouterPour/{dispensaire}",
+                        post(COMMANDES + "ajouterPour/" + dispensaire))).get("numero").asInt();
+                int premier = aleatoire.nextInt(medicaments.size());
+                for (int l = 0; l < lignes; l++) {
+                    int medicament = medicaments.get((premier + l) % medicaments.size());
+                    appeler(mesures, "POST " + COMMANDES + "ajouterLigne", post(COMMANDES + "ajouterLigne?commandeNum="
+                            + numero + "&medicamentRef=" + medicament + "&quantite=1"));
+                }
+                appeler(mesures, "POST " + COMMANDES + "expedier/{numero}", post(COMMANDES + "expedier/" + numero));
+            }
+            case STATISTIQUES -> appeler(mesures, "GET /api/stats/unitesCommandeesPourCategorie/{code}",
+                    get("/api/stats/unitesCommandeesPourCategorie/" + categories.get(aleatoire.nextInt(categories.size()))));
+            case CATALOGUE -> appeler(mesures, "GET /api/medicaments?page={page}",
+                    get("/api/medicaments?page=" + aleatoire.nextInt(pagesCatalogue)));
+        }
+    }
+
+    private String appeler(Mesures mesures, String serie, HttpRequest requete) throws IOException, InterruptedException {
+        Mesures.Serie mesure = mesures.serie(serie);
+        long debut = System.nanoTime();
+        HttpResponse<String> reponse;
+        try {
+            reponse = http.send(requete, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            mesure.echec(e.getClass().getSimpleName());
+            throw e;
+        }
+        if (reponse.statusCode() / 100 != 2) {
+            mesure.echec("HTTP " + reponse.statusCode());
+            throw new EchecRequete(serie + " : HTTP " + reponse.statusCode());
+        }
+        mesure.reussite(debut, System.nanoTime());
+        return reponse.body();
+    }
+
+    /**
+     * Lit les premières pages d'une collection de l'API
+     *
+     * @return le nombre d'éléments de la collection
+     */
+    private long lire(String collection, String nom, Consumer<JsonNode> element) throws IOException, InterruptedException {
+        long total = 0;
+        for (int page = 0; page < PAGES_MAX; page++) {
+            HttpResponse<String> reponse = http.send(get(collection + "?size=" + TAILLE_PAGE + "&page=" + page),
+                    HttpResponse.BodyHandlers.ofString());
+            if (reponse.statusCode() != 200) {
+                throw new IllegalStateException(collection + " : HTTP " + reponse.statusCode());
+            }
+            JsonNode racine = json.readTree(reponse.body());
+            racine.path("_embedded").path(nom).forEach(element);
+            total = racine.path("page").path("totalElements").asLong();
+            if (page + 1 >= racine.path("page").path("totalPages").asInt()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private HttpRequest get(String chemin) {
+        return HttpRequest.newBuilder(URI.create(url + chemin)).timeout(Duration.ofSeconds(30)).build();
+    }
+
+    private HttpRequest post(String chemin) {
+        return HttpRequest.newBuilder(URI.create(url + chemin)).timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.noBody()).build();
+    }
+}
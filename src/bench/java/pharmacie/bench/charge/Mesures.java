@@ -0,0 +1,122 @@
+package pharmacie.bench.charge;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Les mesures d'un test de charge : une série par scénario et par requête (méthode et modèle du chemin).
+ * Chaque série a un histogramme des durées (en microsecondes, jusqu'à une heure, 3 chiffres significatifs)
+ * des appels réussis, et le nombre d'échecs par cause (statut HTTP ou exception).
+ */
+final class Mesures {
+
+    private static final long MAX_MICROSECONDES = TimeUnit.HOURS.toMicros(1);
+
+    private final Map<String, Serie> series = new ConcurrentSkipListMap<>();
+
+    Serie serie(String nom) {
+        return series.computeIfAbsent(nom, Serie::new);
+    }
+
+    static final class Serie {
+        private final String nom;
+        private final Histogram durees = new ConcurrentHistogram(MAX_MICROSECONDES, 3);
+        private final Map<String, LongAdder> echecs = new ConcurrentHashMap<>();
+
+        private Serie(String nom) {
+            this.nom = nom;
+        }
+
+        /**
+         * @param debut le début de l'appel (System.nanoTime) : pour un scénario, son heure prévue
+         */
+        void reussite(long debut, long fin) {
+            durees.recordValue(Math.min(MAX_MICROSECONDES, Math.max(0, (fin - debut) / 1_000)));
+        }
+
+        void echec(String cause) {
+            echecs.computeIfAbsent(cause, c -> new LongAdder()).increment();
+        }
+
+        long reussites() {
+            return durees.getTotalCount();
+        }
+
+        long echecs() {
+            return echecs.values().stream().mapToLong(LongAdder::sum).sum();
+        }
+    }
+
+    /**
+     * Écrit le tableau des percentiles (en millisecondes) et le détail des échecs
+     */
+    void rapport(PrintStream sortie) {
+        sortie.printf("%-70s %9s %8s %9s %9s %9s %9s%n", "Série", "appels", "erreurs", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Serie serie : series.values()) {
+            long total = serie.reussites() + serie.echecs();
+            sortie.printf("%-70s %9d %7.2f%% %9.2f %9.2f %9.2f %9.2f%n", serie.nom, total,
+                    total == 0 ? 0 : 100.0 * serie.echecs() / total,
+                    ms(serie.durees.getValueAtPercentile(50)), ms(serie.durees.getValueAtPercentile(99)),
+                    ms(serie.durees.getValueAtPercentile(99.9)), ms(serie.durees.getMaxValue()));
+        }
+        for (Serie serie : series.values()) {
+            serie.echecs.forEach((cause, nombre) -> sortie.printf("Échecs %s : %d x %s%n", serie.nom, nombre.sum(), cause));
+        }
+    }
+
+    /**
+     * Écrit les percentiles (en millisecondes) de chaque série à côté de ceux de la même série d'une
+     * mesure de référence, et le rapport des p99
+     */
+    void comparaison(Mesures reference, PrintStream sortie) {
+        sortie.printf("%-70s %10s %9s %9s | %9s %8s %9s %9s %7s%n", "Série", "réf appels", "réf p50", "réf p99",
+                "appels", "erreurs", "p50 ms", "p99 ms", "p99/réf");
+        for (Serie serie : series.values()) {
+            Serie serieAvant = reference.series.get(serie.nom);
+            Histogram avant = serieAvant == null ? new Histogram(1, 3) : serieAvant.durees;
+            long total = serie.reussites() + serie.echecs();
+            double p99 = ms(serie.durees.getValueAtPercentile(99));
+            double p99Avant = ms(avant.getValueAtPercentile(99));
+            sortie.printf("%-70s %10d %9.2f %9.2f | %9d %7.2f%% %9.2f %9.2f %7s%n", serie.nom, avant.getTotalCount(),
+                    ms(avant.getValueAtPercentile(50)), p99Avant, total, total == 0 ? 0 : 100.0 * serie.echecs() / total,
+                    ms(serie.durees.getValueAtPercentile(50)), p99,
+                    p99Avant == 0 ? "-" : "%.2f".formatted(p99 / p99Avant));
+        }
+        for (Serie serie : series.values()) {
+            serie.echecs.forEach((cause, nombre) -> sortie.printf("Échecs %s : %d x %s%n", serie.nom, nombre.sum(), cause));
+        }
+    }
+
+    /**
+     * Écrit la distribution complète de chaque série (format .hgrm d'HdrHistogram, en millisecondes),
+     * pour la tracer ou la comparer à celle d'un autre test
+     */
+    void distributions(Path repertoire) throws IOException {
+        Files.createDirectories(repertoire);
+        for (Serie serie : series.values()) {
+            String fichier = serie.nom.replaceAll("[^A-Za-z0-9]+", "_").replaceAll("^_|_$", "") + ".hgrm";
+            try (PrintStream sortie = new PrintStream(Files.newOutputStream(repertoire.resolve(fichier)), false, "UTF-8")) {
+                serie.durees.outputPercentileDistribution(sortie, 1_000.0);
+            }
+        }
+    }
+
+    long total(String prefixe) {
+        return series.values().stream().filter(serie -> serie.nom.startsWith(prefixe))
+                .mapToLong(serie -> serie.reussites() + serie.echecs()).sum();
+    }
+
+    private static double ms(long microsecondes) {
+        return microsecondes / 1_000.0;
+    }
+}
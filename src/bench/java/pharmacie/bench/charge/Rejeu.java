@@ -0,0 +1,177 @@
+package pharmacie.bench.charge;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import pharmacie.config.JournalTrafic;
+import pharmacie.config.JournalTrafic.Requete;
+
+/**
+ * Rejoue le trafic capturé en production (cf. CaptureTrafic) contre une instance de test, avec le même
+ * enchaînement dans le temps (--vitesse=1) ou accéléré (--vitesse=10 : dix fois plus vite), et compare
+ * les durées à celles de la capture, série par série (méthode et modèle du chemin).
+ * - comme TestDeCharge : chaque requête part à son heure prévue, dans un thread virtuel, sa durée est
+ *   comptée depuis cette heure (omission coordonnée corrigée), au plus --max-en-vol requêtes en parallèle
+ * - une requête réussit si son statut est celui de la capture ; les durées capturées sont celles du
+ *   serveur (filtre), celles du rejeu comprennent le réseau
+ * - les requêtes dont le corps n'a pas été capturé (pharmacie.capture.corps) ne sont pas rejouées ;
+ *   les valeurs masquées (pharmacie.capture.masques) sont envoyées telles quelles (pseudonymes)
+ * - les requêtes qui dépendent de la réponse d'une autre (lignes d'une commande créée pendant la capture)
+ *   échouent si l'ordre d'exécution change : en accéléré sur un serveur saturé, par exemple
+ * L'instance de test doit avoir les mêmes données (jeu de données synthétique, copie anonymisée de la base).
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbench.classe=pharmacie.bench.charge.Rejeu \
+ *   -Dbench.args="--fichier=trafic-20250106-080000.bin --vitesse=4 --jar=target/pharmacie-spring-jpa-1.0-SNAPSHOT.jar -- --generer"
+ * </pre>
+ * Options (valeurs par défaut) : --fichier (le journal capturé), --url=http://localhost:8080, --jar (démarre
+ * l'application, les arguments après -- lui sont passés), --vitesse=1, --max-en-vol=500, --rapport=target/charge
+ */
+public class Rejeu {
+
+    public static void main(String[] arguments) throws Exception {
+        List<String> application = new ArrayList<>();
+        Map<String, String> options = TestDeCharge.options(arguments, Map.of("url", "http://localhost:8080",
+                "vitesse", "1", "max-en-vol", "500", "rapport", "target/charge"), application, "fichier", "jar");
+        if (!options.containsKey("fichier")) {
+            throw new IllegalArgumentException("--fichier : le journal du trafic à rejouer");
+        }
+        List<Requete> requetes = lire(Path.of(options.get("fichier")));
+        Path rapport = TestDeCharge.repertoireRapport(options);
+        Process processus = null;
+        try {
+            String url = options.get("url");
+            if (options.containsKey("jar")) {
+                int port = TestDeCharge.portLibre();
+                url = "http://localhost:" + port;
+                processus = TestDeCharge.demarrer(Path.of(options.get("jar")), port, application, rapport.resolve("application.log"));
+                TestDeCharge.attendre(url, processus);
+            }
+            new Rejeu(url, Double.parseDouble(options.get("vitesse")), Integer.parseInt(options.get("max-en-vol")))
+                    .executer(requetes, rapport);
+        } finally {
+            TestDeCharge.arreter(processus);
+        }
+    }
+
+    /**
+     * @return les requêtes du journal, dans l'ordre de leur début (le journal les a dans l'ordre de leur fin)
+     */
+    static List<Requete> lire(Path fichier) throws IOException {
+        List<Requete> requetes = new ArrayList<>();
+        try (InputStream entree = Files.newInputStream(fichier);
+                JournalTrafic.Lecteur journal = new JournalTrafic.Lecteur(entree)) {
+            for (Requete requete = journal.lire(); requete != null; requete = journal.lire()) {
+                requetes.add(requete);
+            }
+        }
+        requetes.sort(Comparator.comparingLong(Requete::debutMicros));
+        return requetes;
+    }
+
+    private final String url;
+    private final double vitesse;
+    private final int maxEnVol;
+    private final HttpClient http;
+
+    Rejeu(String url, double vitesse, int maxEnVol) {
+        this.url = url;
+        this.vitesse = vitesse;
+        this.maxEnVol = maxEnVol;
+        this.http = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5)).build();
+    }
+
+    void executer(List<Requete> requetes, Path rapport) throws Exception {
+        if (requetes.isEmpty()) {
+            throw new IllegalStateException("Aucune requête à rejouer");
+        }
+        Mesures capture = new Mesures();
+        Mesures rejeu = new Mesures();
+        LongAdder sansCorps = new LongAdder();
+        Semaphore enVol = new Semaphore(maxEnVol);
+        long saturations = 0;
+        long premiere = requetes.get(0).debutMicros();
+        long debut = System.nanoTime();
+        try (ExecutorService executeur = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Requete requete : requetes) {
+                String nom = requete.methode() + " " + requete.modele();
+                capture.serie(nom).reussite(0, requete.dureeMicros() * 1_000);
+                if (requete.corps() == null && requete.longueurCorps() > 0) {
+                    sansCorps.increment();
+                    continue;
+                }
+                long prevu = debut + (long) ((requete.debutMicros() - premiere) * 1_000 / vitesse);
+                for (long attente = prevu - System.nanoTime(); attente > 0; attente = prevu - System.nanoTime()) {
+                    LockSupport.parkNanos(attente);
+                }
+                if (!enVol.tryAcquire()) {
+                    saturations++;
+                    enVol.acquire();
+                }
+                executeur.execute(() -> {
+                    Mesures.Serie serie = rejeu.serie(nom);
+                    try {
+                        int statut = http.send(requete(requete), HttpResponse.BodyHandlers.discarding()).statusCode();
+                        if (statut == requete.statut()) {
+                            serie.reussite(prevu, System.nanoTime());
+                        } else {
+                            serie.echec("HTTP " + statut + " (capture : " + requete.statut() + ")");
+                        }
+                    } catch (IOException e) {
+                        serie.echec(e.getClass().getSimpleName());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        enVol.release();
+                    }
+                });
+            }
+        }
+        double secondes = (System.nanoTime() - debut) / 1e9;
+        double duree = (requetes.get(requetes.size() - 1).debutMicros() - premiere) / 1e6;
+
+        ByteArrayOutputStream texte = new ByteArrayOutputStream();
+        try (PrintStream sortie = new PrintStream(texte, true, StandardCharsets.UTF_8)) {
+            sortie.printf("%d requêtes capturées sur %.1f s, rejouées en %.1f s (vitesse x%s)%n",
+                    requetes.size(), duree, secondes, vitesse);
+            sortie.printf("Non rejouées, corps non capturé : %d ; départs retardés par la limite de %d requêtes en vol : %d%n",
+                    sansCorps.sum(), maxEnVol, saturations);
+            sortie.println("Référence : durées capturées (serveur) ; rejeu : depuis l'heure prévue (omission coordonnée corrigée)");
+            rejeu.comparaison(capture, sortie);
+        }
+        String resultat = texte.toString(StandardCharsets.UTF_8);
+        System.out.print(resultat);
+        Files.writeString(rapport.resolve("rapport.txt"), resultat);
+        capture.distributions(rapport.resolve("capture"));
+        rejeu.distributions(rapport.resolve("rejeu"));
+        System.out.println("Rapport : " + rapport.toAbsolutePath());
+    }
+
+    private HttpRequest requete(Requete requete) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url + requete.uri())).timeout(Duration.ofSeconds(30));
+        if (requete.corps() != null && requete.typeContenu() != null) {
+            builder.header("Content-Type", requete.typeContenu());
+        }
+        return builder.method(requete.methode(), requete.corps() == null ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(requete.corps())).build();
+    }
+}
@@ -0,0 +1,250 @@
+package pharmacie.bench.charge;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import pharmacie.bench.charge.ClientPharmacie.Scenario;
+
+/**
+ * Test de charge de l'API REST : des scénarios (cf. ClientPharmacie) lancés à un débit cible
+ * contre l'application, démarrée à part ou par le test dans une autre JVM (--jar).
+ * - chaque scénario démarre à son heure prévue (débit constant), dans un thread virtuel, que les
+ *   scénarios précédents soient terminés ou non : au plus --max-en-vol scénarios en parallèle
+ * - omission coordonnée : la durée d'un scénario est comptée depuis son heure prévue, pas depuis
+ *   son départ effectif. Un serveur qui ralentit retarde les départs suivants, ce retard est compté :
+ *   les percentiles ne sont pas minorés. Les séries des requêtes mesurent, elles, le temps de service
+ * - l'échauffement (--echauffement) n'est pas mesuré
+ * Le rapport (percentiles, taux d'erreur, débit obtenu) est affiché et écrit dans --rapport,
+ * avec la distribution complète de chaque série (.hgrm).
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbench.classe=pharmacie.bench.charge.TestDeCharge \
+ *   -Dbench.args="--jar=target/pharmacie-spring-jpa-1.0-SNAPSHOT.jar --debit=50 --duree=60s -- --generer"
+ * </pre>
+ * Options (valeurs par défaut) : --url=http://localhost:8080, --jar (démarre l'application, les arguments
+ * après -- lui sont passés), --debit=20 (scénarios par seconde), --duree=60s, --echauffement=10s,
+ * --max-en-vol=500, --lignes=3 (par commande), --melange=commande:2,statistiques:1,catalogue:3,
+ * --graine=42, --rapport=target/charge
+ */
+public class TestDeCharge {
+
+    private static final Duration DEMARRAGE_MAX = Duration.ofMinutes(10);
+
+    public static void main(String[] arguments) throws Exception {
+        List<String> application = new ArrayList<>();
+        Map<String, String> options = options(arguments, Map.of("url", "http://localhost:8080", "debit", "20",
+                "duree", "60s", "echauffement", "10s", "max-en-vol", "500", "lignes", "3",
+                "melange", "commande:2,statistiques:1,catalogue:3", "graine", "42", "rapport", "target/charge"),
+                application, "jar");
+        Path rapport = repertoireRapport(options);
+        Process processus = null;
+        try {
+            String url = options.get("url");
+            if (options.containsKey("jar")) {
+                int port = portLibre();
+                url = "http://localhost:" + port;
+                processus = demarrer(Path.of(options.get("jar")), port, application, rapport.resolve("application.log"));
+                attendre(url, processus);
+            }
+            new TestDeCharge(url, options).executer(rapport);
+        } finally {
+            arreter(processus);
+        }
+    }
+
+    /**
+     * Lit les options --nom=valeur ; les arguments après -- sont ajoutés à application
+     *
+     * @param defauts      les options et leurs valeurs par défaut
+     * @param facultatives les options sans valeur par défaut
+     */
+    static Map<String, String> options(String[] arguments, Map<String, String> defauts, List<String> application,
+            String... facultatives) {
+        Map<String, String> options = new HashMap<>(defauts);
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i].equals("--")) {
+                application.addAll(Arrays.asList(arguments).subList(i + 1, arguments.length));
+                break;
+            }
+            String[] option = arguments[i].replaceFirst("^--", "").split("=", 2);
+            if (!defauts.containsKey(option[0]) && !Arrays.asList(facultatives).contains(option[0]) || option.length < 2) {
+                throw new IllegalArgumentException("Option inconnue ou sans valeur : " + arguments[i]);
+            }
+            options.put(option[0], option[1]);
+        }
+        return options;
+    }
+
+    static Path repertoireRapport(Map<String, String> options) throws IOException {
+        Path rapport = Path.of(options.get("rapport"),
+                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+        return Files.createDirectories(rapport);
+    }
+
+    private final double debit;
+    private final Duration duree;
+    private final Duration echauffement;
+    private final int maxEnVol;
+    private final Scenario[] melange;
+    private final SplittableRandom aleatoire;
+    private final HttpClient http;
+    private final ClientPharmacie client;
+
+    TestDeCharge(String url, Map<String, String> options) {
+        this.debit = Double.parseDouble(options.get("debit"));
+        this.duree = DurationStyle.detectAndParse(options.get("duree"));
+        this.echauffement = DurationStyle.detectAndParse(options.get("echauffement"));
+        this.maxEnVol = Integer.parseInt(options.get("max-en-vol"));
+        this.aleatoire = new SplittableRandom(Long.parseLong(options.get("graine")));
+        // Chaque scénario apparaît autant de fois que son poids : le tirage respecte le mélange
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String element : options.get("melange").split(",")) {
+            String[] poids = element.trim().split(":");
+            Scenario scenario = Scenario.valueOf(poids[0].toUpperCase());
+            for (int i = 0; i < (poids.length > 1 ? Integer.parseInt(poids[1]) : 1); i++) {
+                scenarios.add(scenario);
+            }
+        }
+        this.melange = scenarios.toArray(Scenario[]::new);
+        this.http = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5)).build();
+        this.client = new ClientPharmacie(http, url, Integer.parseInt(options.get("lignes")));
+    }
+
+    void executer(Path rapport) throws Exception {
+        client.preparer();
+        Mesures mesures = new Mesures();
+        Mesures ignorees = new Mesures();
+        Semaphore enVol = new Semaphore(maxEnVol);
+        long intervalle = (long) (1e9 / debit);
+        long debut = System.nanoTime();
+        long debutMesure = debut + echauffement.toNanos();
+        long fin = debutMesure + duree.toNanos();
+        long saturations = 0;
+        try (ExecutorService scenarios = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0;; i++) {
+                long prevu = debut + i * intervalle;
+                if (prevu >= fin) {
+                    break;
+                }
+                for (long attente = prevu - System.nanoTime(); attente > 0; attente = prevu - System.nanoTime()) {
+                    LockSupport.parkNanos(attente);
+                }
+                if (!enVol.tryAcquire()) {
+                    saturations++;
+                    enVol.acquire();
+                }
+                Mesures cible = prevu < debutMesure ? ignorees : mesures;
+                Scenario scenario = melange[aleatoire.nextInt(melange.length)];
+                SplittableRandom aleatoireScenario = aleatoire.split();
+                scenarios.execute(() -> {
+                    Mesures.Serie serie = cible.serie("Scénario " + scenario);
+                    try {
+                        client.executer(scenario, aleatoireScenario, cible);
+                        serie.reussite(prevu, System.nanoTime());
+                    } catch (ClientPharmacie.EchecRequete | IOException e) {
+                        serie.echec(e.getClass().getSimpleName());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (RuntimeException e) {
+                        serie.echec(e.toString());
+                    } finally {
+                        enVol.release();
+                    }
+                });
+            }
+        }
+        double secondes = (System.nanoTime() - debutMesure) / 1e9;
+
+        ByteArrayOutputStream texte = new ByteArrayOutputStream();
+        try (PrintStream sortie = new PrintStream(texte, true, StandardCharsets.UTF_8)) {
+            sortie.printf("Débit cible %.1f scénarios/s, obtenu %.1f scénarios/s, mesuré pendant %s (échauffement %s)%n",
+                    debit, mesures.total("Scénario ") / secondes, duree, echauffement);
+            sortie.printf("Départs retardés par la limite de %d scénarios en vol : %d%n", maxEnVol, saturations);
+            sortie.println("Scénarios : depuis l'heure prévue (omission coordonnée corrigée) ; requêtes : temps de service");
+            mesures.rapport(sortie);
+        }
+        String resultat = texte.toString(StandardCharsets.UTF_8);
+        System.out.print(resultat);
+        Files.writeString(rapport.resolve("rapport.txt"), resultat);
+        mesures.distributions(rapport);
+        System.out.println("Rapport : " + rapport.toAbsolutePath());
+    }
+
+    static int portLibre() throws IOException {
+        try (ServerSocket libre = new ServerSocket(0)) {
+            return libre.getLocalPort();
+        }
+    }
+
+    static Process demarrer(Path jar, int port, List<String> arguments, Path journal) throws IOException {
+        List<String> ligne = new ArrayList<>(List.of(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-jar", jar.toAbsolutePath().toString(), "--server.port=" + port,
+                "--management.endpoint.health.probes.enabled=true"));
+        ligne.addAll(arguments);
+        ProcessBuilder builder = new ProcessBuilder(ligne).redirectErrorStream(true).redirectOutput(journal.toFile());
+        // Valeurs factices : l'application ne démarre pas sans, les mails ne partent pas pendant le test
+        for (String variable : List.of("MAILGUN_API_KEY", "MAILGUN_DOMAIN", "SPRING_MAIL_USERNAME", "SPRING_MAIL_PASSWORD")) {
+            builder.environment().putIfAbsent(variable, "charge");
+        }
+        return builder.start();
+    }
+
+    /**
+     * Attend que l'application soit prête : les ApplicationRunner (génération des données --generer...)
+     * sont terminés, alors que le serveur répond déjà pendant leur exécution
+     */
+    static void attendre(String url, Process processus) throws InterruptedException {
+        HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        HttpRequest requete = HttpRequest.newBuilder(URI.create(url + "/actuator/health/readiness"))
+                .timeout(Duration.ofSeconds(5)).build();
+        long limite = System.nanoTime() + DEMARRAGE_MAX.toNanos();
+        while (System.nanoTime() < limite) {
+            if (!processus.isAlive()) {
+                throw new IllegalStateException("L'application s'est arrêtée");
+            }
+            try {
+                if (http.send(requete, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Pas encore à l'écoute
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("Pas de réponse après " + DEMARRAGE_MAX);
+    }
+
+    static void arreter(Process processus) throws InterruptedException {
+        if (processus != null) {
+            processus.destroy();
+            if (!processus.waitFor(30, TimeUnit.SECONDS)) {
+                processus.destroyForcibly();
+            }
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package pharmacie.config;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import pharmacie.config.JournalTrafic.Requete;
+
+/**
+ * Capture du trafic de l'API, pour le rejouer contre une instance de test (cf. Rejeu dans src/bench) :
+ * la forme réelle de la charge (pics de commandes du matin, statistiques lues toute la journée...).
+ * Inactive par défaut (pharmacie.capture.actif).
+ * - chaque requête sous pharmacie.capture.prefixe est décrite dans le journal (cf. JournalTrafic) :
+ *   méthode, modèle du chemin et valeurs de ses variables, paramètres, corps, statut, heure et durée
+ * - anonymisation : aucun en-tête (ni cookie, ni adresse du client) n'est gardé ; les valeurs des
+ *   paramètres et variables de pharmacie.capture.masques sont remplacées par un pseudonyme (toujours
+ *   le même pour une même valeur pendant la capture) ; du corps, seuls la taille et l'empreinte
+ *   (SHA-256) sont gardées, sauf avec pharmacie.capture.corps (jusqu'à pharmacie.capture.corps-max)
+ * - le thread de la requête ne fait que déposer sa description dans une file ; un thread dédié
+ *   écrit le journal. Si la file est pleine, la requête n'est pas capturée (métrique pharmacie.capture.requetes)
+ * - un journal par démarrage (trafic-aaaaMMjj-HHmmss.bin dans pharmacie.capture.repertoire), la capture
+ *   s'arrête quand il atteint pharmacie.capture.taille-max
+ */
+@Slf4j
+@Component
+public class CaptureTrafic extends OncePerRequestFilter {
+
+    private static final Set<String> AVEC_CORPS = Set.of("POST", "PUT", "PATCH");
+
+    private final boolean actif;
+    private final String prefixe;
+    private final Set<String> masques;
+    private final boolean avecCorps;
+    private final int corpsMax;
+    private final long tailleMax;
+    private final Path repertoire;
+    private final BlockingQueue<Requete> file;
+    private final Counter capturees;
+    private final Counter perdues;
+    // Clé des pseudonymes : tirée au démarrage, elle n'est écrite nulle part
+    private final byte[] cle = new byte[32];
+
+    private volatile boolean enCours;
+    private volatile Path fichier;
+    private Thread ecriture;
+
+    public CaptureTrafic(MeterRegistry registry,
+            @Value("${pharmacie.capture.actif:false}") boolean actif,
+            @Value("${pharmacie.capture.repertoire:${java.io.tmpdir}/pharmacie-trafic}") Path repertoire,
+            @Value("${pharmacie.capture.prefixe:/api/}") String prefixe,
+            @Value("${pharmacie.capture.masques:}") List<String> masques,
+            @Value("${pharmacie.capture.corps:false}") boolean avecCorps,
+            @Value("${pharmacie.capture.corps-max:64KB}") DataSize corpsMax,
+            @Value("${pharmacie.capture.taille-max:1GB}") DataSize tailleMax,
+            @Value("${pharmacie.capture.file:10000}") int file) {
+        this.actif = actif;
+        this.repertoire = repertoire;
+        this.prefixe = prefixe;
+        this.masques = masques.stream().map(String::strip).filter(m -> !m.isEmpty()).collect(Collectors.toSet());
+        this.avecCorps = avecCorps;
+        this.corpsMax = (int) corpsMax.toBytes();
+        this.tailleMax = tailleMax.toBytes();
+        this.file = new ArrayBlockingQueue<>(file);
+        this.capturees = Counter.builder("pharmacie.capture.requetes").tag("resultat", "capturee")
+                .description("Requêtes écrites dans le journal du trafic").register(registry);
+        this.perdues = Counter.builder("pharmacie.capture.requetes").tag("resultat", "perdue")
+                .description("Requêtes non capturées, file d'écriture pleine").register(registry);
+        new SecureRandom().nextBytes(cle);
+    }
+
+    /**
+     * Ouvre le journal et démarre son écriture. Appelée une fois par Spring (afterPropertiesSet),
+     * une autre par le conteneur de servlets (init)
+     */
+    @Override
+    protected void initFilterBean() {
+        if (!actif || ecriture != null) {
+            return;
+        }
+        LocalDateTime maintenant = LocalDateTime.now();
+        try {
+            Files.createDirectories(repertoire);
+            fichier = repertoire.resolve("trafic-" + maintenant.format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".bin");
+            JournalTrafic.Ecrivain journal = new JournalTrafic.Ecrivain(
+                    Files.newOutputStream(fichier, StandardOpenOption.CREATE_NEW), System.currentTimeMillis());
+            enCours = true;
+            ecriture = Thread.ofPlatform().daemon().name("capture-trafic").start(() -> ecrire(journal));
+            log.info("Capture du trafic {} dans {}", prefixe, fichier);
+        } catch (IOException e) {
+            log.error("Capture du trafic impossible dans {}", repertoire, e);
+        }
+    }
+
+    /**
+     * @return le journal en cours d'écriture, null si la capture est inactive
+     */
+    public Path fichier() {
+        return fichier;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !enCours || !request.getRequestURI().startsWith(request.getContextPath() + prefixe);
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain) throws ServletException, IOException {
+        long debutMicros = System.currentTimeMillis() * 1_000;
+        long debut = System.nanoTime();
+        ContentCachingRequestWrapper corps = null;
+        if (AVEC_CORPS.contains(request.getMethod())) {
+            corps = new ContentCachingRequestWrapper(request, corpsMax);
+            request = corps;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long duree = (System.nanoTime() - debut) / 1_000;
+            capturer(request, response.getStatus(), corps, debutMicros, duree);
+        }
+    }
+
+    /**
+     * Écrit les requêtes encore dans la file et ferme le journal. Appelée par Spring et par le conteneur
+     */
+    @Override
+    public void destroy() {
+        // Pas d'interruption : elle fermerait le fichier en cours d'écriture (FileChannel)
+        enCours = false;
+        if (ecriture != null) {
+            try {
+                ecriture.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void capturer(HttpServletRequest request, int statut, ContentCachingRequestWrapper wrapper,
+            long debutMicros, long duree) {
+        String modele = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        @SuppressWarnings("unchecked")
+        Map<String, String> valeurs = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        Map<String, String> variables = new LinkedHashMap<>();
+        if (modele == null || modele.contains("*") || valeurs == null) {
+            // Pas de modèle (requête non traitée par un contrôleur, ressource statique...) : le chemin lui-même
+            modele = request.getRequestURI().substring(request.getContextPath().length());
+        } else {
+            valeurs.forEach((nom, valeur) -> variables.put(nom, masques.contains(nom) ? pseudonyme(valeur) : valeur));
+        }
+        long longueur = request.getContentLengthLong();
+        long empreinte = 0;
+        byte[] corps = null;
+        if (wrapper != null) {
+            byte[] lu = wrapper.getContentAsByteArray();
+            if (longueur < 0 && lu.length < corpsMax) {
+                longueur = lu.length;
+            }
+            // L'empreinte n'est calculée que si le contrôleur a lu tout le corps, dans la limite corps-max
+            if (lu.length > 0 && lu.length == longueur) {
+                empreinte = ByteBuffer.wrap(sha256(lu)).getLong();
+                String type = request.getContentType();
+                if (avecCorps && (type == null || !type.startsWith("multipart/"))) {
+                    corps = lu;
+                }
+            }
+        }
+        Requete requete = new Requete(debutMicros, request.getMethod(), modele, variables, parametres(request.getQueryString()),
+                request.getContentType(), longueur, empreinte, corps, statut, duree);
+        if (file.offer(requete)) {
+            capturees.increment();
+        } else {
+            perdues.increment();
+        }
+    }
+
+    /**
+     * @return la chaîne de requête, les valeurs des paramètres masqués remplacées par leur pseudonyme
+     */
+    private String parametres(String requete) {
+        if (requete == null) {
+            return "";
+        }
+        if (masques.isEmpty()) {
+            return requete;
+        }
+        List<String> parametres = new ArrayList<>();
+        for (String parametre : requete.split("&")) {
+            int egal = parametre.indexOf('=');
+            String nom = URLDecoder.decode(egal < 0 ? parametre : parametre.substring(0, egal), StandardCharsets.UTF_8);
+            if (egal >= 0 && masques.contains(nom)) {
+                String valeur = URLDecoder.decode(parametre.substring(egal + 1), StandardCharsets.UTF_8);
+                parametre = parametre.substring(0, egal + 1) + URLEncoder.encode(pseudonyme(valeur), StandardCharsets.UTF_8);
+            }
+            parametres.add(parametre);
+        }
+        return String.join("&", parametres);
+    }
+
+    private String pseudonyme(String valeur) {
+        byte[] octets = valeur.getBytes(StandardCharsets.UTF_8);
+        byte[] salee = Arrays.copyOf(cle, cle.length + octets.length);
+        System.arraycopy(octets, 0, salee, cle.length, octets.length);
+        return "anon-" + HexFormat.of().formatHex(sha256(salee), 0, 8);
+    }
+
+    private static byte[] sha256(byte[] octets) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(octets);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Écrit les requêtes capturées ; le journal est vidé sur disque dès que la file est vide
+     */
+    private void ecrire(JournalTrafic.Ecrivain journal) {
+        List<Requete> lot = new ArrayList<>();
+        try (journal) {
+            while (enCours || !file.isEmpty()) {
+                Requete premiere;
+                try {
+                    premiere = file.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (premiere == null) {
+                    continue;
+                }
+                lot.add(premiere);
+                file.drainTo(lot);
+                for (Requete requete : lot) {
+                    journal.ecrire(requete);
+                }
+                lot.clear();
+                journal.vider();
+                if (journal.octets() >= tailleMax) {
+                    log.warn("Capture du trafic arrêtée : le journal {} a atteint {} octets", fichier, journal.octets());
+                    enCours = false;
+                    file.clear();
+                }
+            }
+        } catch (IOException e) {
+            enCours = false;
+            log.error("Capture du trafic arrêtée : écriture impossible dans {}", fichier, e);
+        }
+    }
+}
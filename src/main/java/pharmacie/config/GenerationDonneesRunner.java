@@ -0,0 +1,51 @@
+package pharmacie.config;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import pharmacie.service.GenerateurDonnees;
+import pharmacie.service.GenerateurDonnees.Echelle;
+
+/**
+ * Génération d'un jeu de données synthétique au démarrage (cf. GenerateurDonnees) :
+ * java -jar pharmacie.jar --generer[=graine] --pharmacie.generation.medicaments=100000 ...
+ * L'échelle est donnée par les propriétés pharmacie.generation.*. L'application continue
+ * ensuite normalement : une base H2 en mémoire garde les données le temps de l'exécution
+ * (tests de charge), une base PostgreSQL les conserve.
+ */
+@Component
+public class GenerationDonneesRunner implements ApplicationRunner {
+
+    private static final long GRAINE = 42;
+
+    private final GenerateurDonnees generateur;
+    private final Echelle echelle;
+
+    public GenerationDonneesRunner(GenerateurDonnees generateur,
+            @Value("${pharmacie.generation.categories:100}") int categories,
+            @Value("${pharmacie.generation.fournisseurs:200}") int fournisseurs,
+            @Value("${pharmacie.generation.dispensaires:2000}") int dispensaires,
+            @Value("${pharmacie.generation.medicaments:100000}") int medicaments,
+            @Value("${pharmacie.generation.commandes:1000000}") int commandes,
+            @Value("${pharmacie.generation.lignes-max:10}") int lignesMax,
+            @Value("${pharmacie.generation.zipf:1.0}") double zipf,
+            @Value("${pharmacie.generation.fin:2024-12-31}") LocalDate fin) {
+        this.generateur = generateur;
+        this.echelle = new Echelle(categories, fournisseurs, dispensaires, medicaments, commandes, lignesMax, zipf, fin);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<String> generer = args.getOptionValues("generer");
+        if (generer == null) {
+            return;
+        }
+        long graine = generer.isEmpty() || generer.get(0).isBlank() ? GRAINE : Long.parseLong(generer.get(0));
+        generateur.generer(echelle, graine);
+    }
+}
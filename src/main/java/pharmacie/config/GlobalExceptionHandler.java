@@ -8,6 +8,7 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import jakarta.validation.ConstraintViolationException;
 import java.util.stream.Collectors;
 import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * The GlobalExceptionHandler class handles exceptions thrown by the application and provides custom response bodies
@@ -96,6 +97,18 @@ public ResponseEntity<Object> handleIllegalStateException(IllegalStateException
         return new ResponseEntity<>(apiError, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Object> handleRejectedExecutionException(RejectedExecutionException ex) {
+        // Construct a custom response body: the server is busy, the client may retry later
+        ApiError apiError = new ApiError(
+                HttpStatus.SERVICE_UNAVAILABLE,
+                "Service unavailable",
+                ex.getMessage());
+
+        // Return a ResponseEntity containing the custom response body and HTTP status
+        return new ResponseEntity<>(apiError, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Object> handleException(Exception ex) {
         // Construct a custom response body with a general error message
@@ -0,0 +1,62 @@
+package pharmacie.config;
+
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+import pharmacie.service.ImportCatalogue;
+import pharmacie.service.ImportCatalogue.Entite;
+import pharmacie.service.ImportCatalogue.Format;
+import pharmacie.service.ImportCatalogue.Rapport;
+
+/**
+ * Import du catalogue en ligne de commande, sans démarrer le serveur web :
+ * java -jar pharmacie.jar --spring.main.web-application-type=none \
+ *   --import=categories=categories.csv --import=medicaments=medicaments.ndjson
+ * Les fichiers sont importés dans l'ordre (les catégories avant les médicaments qui les utilisent),
+ * puis l'application s'arrête ; le code de sortie est 1 si une ligne est en erreur.
+ */
+@Slf4j
+@Component
+public class ImportCatalogueRunner implements ApplicationRunner {
+
+    private final ImportCatalogue importCatalogue;
+    private final ApplicationContext context;
+
+    public ImportCatalogueRunner(ImportCatalogue importCatalogue, ApplicationContext context) {
+        this.importCatalogue = importCatalogue;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        List<String> imports = args.getOptionValues("import");
+        if (imports == null) {
+            return;
+        }
+        boolean erreurs = false;
+        for (String demande : imports) {
+            int egal = demande.indexOf('=');
+            if (egal < 0) {
+                throw new IllegalArgumentException("--import=<entite>=<fichier> attendu : " + demande);
+            }
+            Path fichier = Path.of(demande.substring(egal + 1));
+            try (Reader entree = Files.newBufferedReader(fichier)) {
+                Rapport rapport = importCatalogue.importer(Entite.depuis(demande.substring(0, egal)),
+                        Format.depuis(fichier.getFileName().toString()), entree);
+                rapport.detail().forEach(erreur -> log.warn("{} ligne {} : {}", fichier, erreur.ligne(), erreur.message()));
+                erreurs |= rapport.erreurs() > 0;
+            }
+        }
+        int code = erreurs ? 1 : 0;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+}
@@ -0,0 +1,111 @@
+package pharmacie.config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Initialisation différée des beans qui ne servent pas à la première requête (mails, page de
+ * statistiques, swagger...) : ils sont déclarés "lazy" et l'application répond plus tôt.
+ * - pharmacie.demarrage.differes : les préfixes des classes concernées (classe du bean, ou
+ *   classe de configuration qui le déclare) ; vide par défaut, cf. le profil demarrage-rapide
+ * - une fois l'application prête, les beans encore non créés le sont sur un thread d'arrière-plan
+ *   (pharmacie.demarrage.prechauffage) : les tâches planifiées (@Scheduled) de ces beans
+ *   démarrent, et le premier envoi de mail ne paie pas leur initialisation
+ * Avec Spring AOT, la déclaration "lazy" est faite à la construction (mvn -Pdemarrage-rapide).
+ */
+@Slf4j
+@Component
+public class InitialisationDifferee
+        implements BeanFactoryPostProcessor, EnvironmentAware, ApplicationListener<ApplicationReadyEvent> {
+
+    private List<String> prefixes = List.of();
+    private boolean prechauffage = true;
+
+    @Override
+    public void setEnvironment(@NonNull Environment environment) {
+        prefixes = Arrays.stream(environment.getProperty("pharmacie.demarrage.differes", String[].class, new String[0]))
+                .map(String::strip).filter(p -> !p.isEmpty()).toList();
+        prechauffage = environment.getProperty("pharmacie.demarrage.prechauffage", Boolean.class, true);
+    }
+
+    @Override
+    public void postProcessBeanFactory(@NonNull ConfigurableListableBeanFactory beanFactory) {
+        if (prefixes.isEmpty()) {
+            return;
+        }
+        int differes = 0;
+        for (String nom : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(nom);
+            if (definition.getRole() == BeanDefinition.ROLE_APPLICATION && !definition.isLazyInit()
+                    && concerne(beanFactory, definition)) {
+                definition.setLazyInit(true);
+                differes++;
+            }
+        }
+        log.info("Initialisation différée de {} beans ({})", differes, prefixes);
+    }
+
+    @Override
+    public void onApplicationEvent(@NonNull ApplicationReadyEvent event) {
+        if (prefixes.isEmpty() || !prechauffage) {
+            return;
+        }
+        ConfigurableListableBeanFactory beanFactory = event.getApplicationContext().getBeanFactory();
+        List<String> noms = new ArrayList<>();
+        for (String nom : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(nom);
+            if (definition.isLazyInit() && definition.isSingleton() && !definition.isAbstract()
+                    && !beanFactory.containsSingleton(nom) && concerne(beanFactory, definition)) {
+                noms.add(nom);
+            }
+        }
+        ConfigurableApplicationContext contexte = event.getApplicationContext();
+        Thread.ofPlatform().daemon().name("initialisation-differee").start(() -> {
+            long debut = System.nanoTime();
+            for (String nom : noms) {
+                if (!contexte.isActive()) {
+                    return;
+                }
+                try {
+                    beanFactory.getBean(nom);
+                } catch (RuntimeException e) {
+                    log.warn("Initialisation différée du bean {} en échec : {}", nom, e.toString());
+                }
+            }
+            log.info("{} beans initialisés après le démarrage en {} ms", noms.size(),
+                    (System.nanoTime() - debut) / 1_000_000);
+        });
+    }
+
+    /**
+     * @return vrai si la classe du bean, ou la classe de configuration qui le déclare (méthode @Bean),
+     *         commence par l'un des préfixes
+     */
+    private boolean concerne(ConfigurableListableBeanFactory beanFactory, BeanDefinition definition) {
+        List<String> classes = new ArrayList<>();
+        classes.add(definition.getBeanClassName());
+        if (definition instanceof AnnotatedBeanDefinition annotee && annotee.getFactoryMethodMetadata() != null) {
+            classes.add(annotee.getFactoryMethodMetadata().getDeclaringClassName());
+        }
+        String fabrique = definition.getFactoryBeanName();
+        if (fabrique != null && beanFactory.containsBeanDefinition(fabrique)) {
+            classes.add(beanFactory.getBeanDefinition(fabrique).getBeanClassName());
+        }
+        return classes.stream().anyMatch(classe -> classe != null && prefixes.stream().anyMatch(classe::startsWith));
+    }
+}
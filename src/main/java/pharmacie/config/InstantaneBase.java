@@ -0,0 +1,233 @@
+package pharmacie.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.autoconfigure.sql.init.SqlDataSourceScriptDatabaseInitializer;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
+import org.springframework.boot.sql.init.DatabaseInitializationMode;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Initialisation de la base H2 par un instantané, plutôt que par l'exécution des scripts (data.sql...)
+ * requête par requête par Spring :
+ * - au premier démarrage, les scripts sont exécutés normalement, puis la base (schéma, données et
+ *   compteurs des clés auto-incrémentées) est sauvegardée par H2 dans une archive compressée
+ *   (SCRIPT ... COMPRESSION GZIP) de pharmacie.instantane.repertoire
+ * - aux démarrages suivants, la base est rechargée depuis l'archive par H2 lui-même, en une seule
+ *   commande (RUNSCRIPT)
+ * - l'instantané est désigné par l'empreinte des scripts, du schéma créé par Hibernate et de la version
+ *   de H2 : il est refait dès que l'un d'eux change
+ * Hors H2, ou si pharmacie.instantane.actif=false, les scripts sont exécutés comme d'habitude.
+ * Un test peut aussi remettre la base dans son état initial (restaurer) avant ses cas de test.
+ */
+@Slf4j
+public class InstantaneBase extends SqlDataSourceScriptDatabaseInitializer {
+
+    private static final String EXTENSION = ".sql.gz";
+
+    /**
+     * Une table de la base, et ses colonnes (nom -> type) dans l'ordre
+     */
+    private record Table(String nom, Map<String, String> colonnes) {
+    }
+
+    private final DataSource dataSource;
+    private final SqlInitializationProperties proprietes;
+    private final boolean actif;
+    private final Path repertoire;
+    private final ResourcePatternResolver ressources = new PathMatchingResourcePatternResolver();
+    private volatile Path instantane;
+
+    public InstantaneBase(DataSource dataSource, SqlInitializationProperties proprietes, boolean actif,
+            Path repertoire) {
+        super(dataSource, proprietes);
+        this.dataSource = dataSource;
+        this.proprietes = proprietes;
+        this.actif = actif;
+        this.repertoire = repertoire;
+    }
+
+    @Override
+    public boolean initializeDatabase() {
+        if (!actif || !applicable()) {
+            return super.initializeDatabase();
+        }
+        long debut = System.nanoTime();
+        Path fichier = repertoire.resolve(cle() + EXTENSION);
+        if (Files.exists(fichier)) {
+            charger(fichier);
+            instantane = fichier;
+            log.info("Base initialisée depuis l'instantané {} en {} ms", fichier, (System.nanoTime() - debut) / 1_000_000);
+            return true;
+        }
+        boolean initialisee = super.initializeDatabase();
+        if (initialisee) {
+            long scripts = System.nanoTime() - debut;
+            if (sauvegarder(fichier)) {
+                instantane = fichier;
+                log.info("Base initialisée par les scripts en {} ms, instantané {} créé", scripts / 1_000_000, fichier);
+            }
+        }
+        return initialisee;
+    }
+
+    /**
+     * Remet la base dans son état initial (schéma et données de l'instantané)
+     *
+     * @throws IllegalStateException si la base n'a pas été initialisée par un instantané
+     */
+    public void restaurer() {
+        Path fichier = instantane;
+        if (fichier == null) {
+            throw new IllegalStateException("Pas d'instantané de la base");
+        }
+        charger(fichier);
+    }
+
+    /**
+     * @return vrai si la base est H2 et doit être initialisée par les scripts (cf. spring.sql.init.mode)
+     */
+    private boolean applicable() {
+        DatabaseInitializationMode mode = proprietes.getMode();
+        if (mode == DatabaseInitializationMode.NEVER
+                || (mode == DatabaseInitializationMode.EMBEDDED && !isEmbeddedDatabase())) {
+            return false;
+        }
+        try (Connection connexion = dataSource.getConnection()) {
+            return connexion.getMetaData().getDatabaseProductName().equals("H2");
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void charger(Path fichier) {
+        try (Connection connexion = dataSource.getConnection(); Statement requete = connexion.createStatement()) {
+            requete.execute("RUNSCRIPT FROM " + litteral(fichier.toAbsolutePath().toString()) + " COMPRESSION GZIP");
+        } catch (SQLException e) {
+            // Instantané illisible (copie interrompue...) : il sera refait au prochain démarrage
+            supprimer(fichier);
+            throw new IllegalStateException("Chargement de l'instantané " + fichier + " impossible", e);
+        }
+    }
+
+    /**
+     * @return faux si l'instantané n'a pas pu être écrit
+     */
+    private boolean sauvegarder(Path fichier) {
+        Path temporaire = null;
+        try (Connection connexion = dataSource.getConnection(); Statement requete = connexion.createStatement()) {
+            Files.createDirectories(repertoire);
+            temporaire = Files.createTempFile(repertoire, "instantane", ".tmp");
+            // DROP : les tables créées par Hibernate sont remplacées au chargement
+            requete.execute("SCRIPT DROP TO " + litteral(temporaire.toAbsolutePath().toString()) + " COMPRESSION GZIP");
+            // Plusieurs JVM (forks de test) peuvent créer le même instantané : le fichier apparaît d'un coup
+            Files.move(temporaire, fichier, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException | SQLException e) {
+            // La base est initialisée : sans instantané, les prochains démarrages exécuteront les scripts
+            log.warn("Instantané de la base {} non créé : {}", fichier, e.toString());
+            return false;
+        } finally {
+            if (temporaire != null) {
+                supprimer(temporaire);
+            }
+        }
+    }
+
+    /**
+     * @return les tables du schéma courant
+     */
+    private static List<Table> tables(Connection connexion) throws SQLException {
+        Map<String, Map<String, String>> tables = new LinkedHashMap<>();
+        try (Statement requete = connexion.createStatement();
+                ResultSet colonnes = requete.executeQuery("SELECT C.TABLE_NAME, C.COLUMN_NAME, C.DATA_TYPE"
+                        + " FROM INFORMATION_SCHEMA.COLUMNS C JOIN INFORMATION_SCHEMA.TABLES T"
+                        + " ON T.TABLE_SCHEMA = C.TABLE_SCHEMA AND T.TABLE_NAME = C.TABLE_NAME"
+                        + " WHERE C.TABLE_SCHEMA = SCHEMA() AND T.TABLE_TYPE = 'BASE TABLE'"
+                        + " ORDER BY C.TABLE_NAME, C.ORDINAL_POSITION")) {
+            while (colonnes.next()) {
+                tables.computeIfAbsent(colonnes.getString(1), nom -> new LinkedHashMap<>())
+                        .put(colonnes.getString(2), colonnes.getString(3));
+            }
+        }
+        return tables.entrySet().stream().map(table -> new Table(table.getKey(), table.getValue())).toList();
+    }
+
+    /**
+     * @return l'empreinte SHA-256 des scripts d'initialisation, du schéma de la base et de la version de H2
+     */
+    private String cle() {
+        try {
+            MessageDigest empreinte = MessageDigest.getInstance("SHA-256");
+            for (String emplacement : emplacements()) {
+                for (Resource script : ressources.getResources(emplacement.replaceFirst("^optional:", ""))) {
+                    if (script.exists()) {
+                        empreinte.update(emplacement.getBytes(StandardCharsets.UTF_8));
+                        try (InputStream entree = script.getInputStream()) {
+                            empreinte.update(entree.readAllBytes());
+                        }
+                    }
+                }
+            }
+            try (Connection connexion = dataSource.getConnection()) {
+                empreinte.update(connexion.getMetaData().getDatabaseProductVersion().getBytes(StandardCharsets.UTF_8));
+                for (Table table : tables(connexion)) {
+                    empreinte.update((table.nom() + table.colonnes()).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return HexFormat.of().formatHex(empreinte.digest());
+        } catch (NoSuchAlgorithmException | SQLException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return les emplacements des scripts, ceux de spring.sql.init ou ceux par défaut de Spring Boot
+     */
+    private List<String> emplacements() {
+        String plateforme = proprietes.getPlatform();
+        List<String> emplacements = new ArrayList<>();
+        emplacements.addAll(proprietes.getSchemaLocations() != null ? proprietes.getSchemaLocations()
+                : List.of("optional:classpath*:schema-" + plateforme + ".sql", "optional:classpath*:schema.sql"));
+        emplacements.addAll(proprietes.getDataLocations() != null ? proprietes.getDataLocations()
+                : List.of("optional:classpath*:data-" + plateforme + ".sql", "optional:classpath*:data.sql"));
+        return emplacements;
+    }
+
+    private static String litteral(String valeur) {
+        return "'" + valeur.replace("'", "''") + "'";
+    }
+
+    private static void supprimer(Path fichier) {
+        try {
+            Files.deleteIfExists(fichier);
+        } catch (IOException e) {
+            log.warn("Instantané {} non supprimé : {}", fichier, e.toString());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package pharmacie.config;
+
+import java.nio.file.Path;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Remplace l'initialisation de la base par les scripts (data.sql) de Spring Boot par celle
+ * qui passe par un instantané (cf. InstantaneBase) : Spring Boot n'ajoute pas la sienne.
+ * Importée aussi par les tests @DataJpaTest (cf. InstantaneBaseAutoConfiguration des tests).
+ */
+@Configuration(proxyBeanMethods = false)
+public class InstantaneBaseConfig {
+
+    @Bean
+    InstantaneBase instantaneBase(DataSource dataSource, Environment environment,
+            @Value("${pharmacie.instantane.actif:false}") boolean actif,
+            @Value("${pharmacie.instantane.repertoire:${user.home}/.pharmacie/instantanes}") Path repertoire) {
+        // Les propriétés spring.sql.init, même quand l'auto-configuration de Spring Boot est inactive
+        SqlInitializationProperties proprietes = Binder.get(environment)
+                .bind("spring.sql.init", SqlInitializationProperties.class)
+                .orElseGet(SqlInitializationProperties::new);
+        return new InstantaneBase(dataSource, proprietes, actif, repertoire);
+    }
+}
@@ -0,0 +1,271 @@
+package pharmacie.config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Format du journal du trafic capturé (cf. CaptureTrafic), relu par le rejeu des tests de charge.
+ * Un fichier binaire, écrit en ajout seulement :
+ * - en-tête : "PHTR", version, heure de début (epoch, millisecondes)
+ * - puis des enregistrements : une chaîne du dictionnaire (méthodes, modèles de chemin, noms des
+ *   variables, types de contenu : écrits une seule fois, ensuite désignés par leur numéro), ou une requête
+ * Les entiers sont codés en longueur variable, l'heure de début d'une requête par son écart avec la précédente.
+ * Un fichier tronqué (arrêt brutal de l'application) se relit jusqu'au dernier enregistrement complet.
+ */
+public final class JournalTrafic {
+
+    private static final int MAGIQUE = 0x50485452; // "PHTR"
+    private static final int VERSION = 1;
+    private static final int CHAINE = 0;
+    private static final int REQUETE = 1;
+    private static final Pattern VARIABLE = Pattern.compile("\\{([^}:]+)(?::[^}]*)?}");
+
+    private JournalTrafic() {
+    }
+
+    /**
+     * Une requête capturée
+     *
+     * @param debutMicros    heure de début (epoch, microsecondes)
+     * @param modele         modèle du chemin (ex : /api/services/commandes/expedier/{commandeNum}),
+     *                       ou le chemin lui-même quand il n'y a pas de modèle
+     * @param variables      valeurs des variables du modèle
+     * @param parametres     la chaîne de requête, "" s'il n'y en a pas
+     * @param longueurCorps  taille du corps en octets (-1 : inconnue)
+     * @param empreinteCorps 8 premiers octets du SHA-256 du corps (0 : pas de corps, ou corps non lu en entier)
+     * @param corps          le corps, s'il a été capturé ; null sinon
+     */
+    public record Requete(long debutMicros, String methode, String modele, Map<String, String> variables,
+            String parametres, String typeContenu, long longueurCorps, long empreinteCorps, byte[] corps,
+            int statut, long dureeMicros) {
+
+        /**
+         * @return le chemin et la chaîne de requête, les variables du modèle remplacées par leurs valeurs
+         */
+        public String uri() {
+            Matcher variable = VARIABLE.matcher(modele);
+            StringBuilder uri = new StringBuilder();
+            while (variable.find()) {
+                String valeur = variables.getOrDefault(variable.group(1), "");
+                variable.appendReplacement(uri,
+                        Matcher.quoteReplacement(URLEncoder.encode(valeur, StandardCharsets.UTF_8).replace("+", "%20")));
+            }
+            variable.appendTail(uri);
+            return parametres.isEmpty() ? uri.toString() : uri + "?" + parametres;
+        }
+    }
+
+    public static final class Ecrivain implements Closeable {
+        private final DataOutputStream sortie;
+        private final Map<String, Integer> dictionnaire = new HashMap<>();
+        private long precedent;
+        private long octets;
+
+        public Ecrivain(OutputStream sortie, long debutMillis) throws IOException {
+            this.sortie = new DataOutputStream(new BufferedOutputStream(sortie, 64 * 1024));
+            this.sortie.writeInt(MAGIQUE);
+            this.sortie.writeByte(VERSION);
+            this.sortie.writeLong(debutMillis);
+            this.precedent = debutMillis * 1_000;
+        }
+
+        public void ecrire(Requete requete) throws IOException {
+            int methode = chaine(requete.methode());
+            int modele = chaine(requete.modele());
+            int typeContenu = chaine(requete.typeContenu() == null ? "" : requete.typeContenu());
+            int[] noms = new int[requete.variables().size()];
+            int n = 0;
+            for (String nom : requete.variables().keySet()) {
+                noms[n++] = chaine(nom);
+            }
+            sortie.writeByte(REQUETE);
+            entier(zigzag(requete.debutMicros() - precedent));
+            precedent = requete.debutMicros();
+            entier(methode);
+            entier(modele);
+            entier(noms.length);
+            n = 0;
+            for (String valeur : requete.variables().values()) {
+                entier(noms[n++]);
+                texte(valeur);
+            }
+            texte(requete.parametres());
+            entier(requete.statut());
+            entier(requete.dureeMicros());
+            entier(typeContenu);
+            entier(requete.longueurCorps() + 1);
+            sortie.writeLong(requete.empreinteCorps());
+            byte[] corps = requete.corps();
+            entier(corps == null ? 0 : corps.length + 1);
+            if (corps != null) {
+                sortie.write(corps);
+            }
+            octets = sortie.size();
+        }
+
+        /**
+         * @return le nombre d'octets écrits (au plus 2 Go comptés, cf. DataOutputStream.size)
+         */
+        public long octets() {
+            return octets;
+        }
+
+        public void vider() throws IOException {
+            sortie.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            sortie.close();
+        }
+
+        private int chaine(String valeur) throws IOException {
+            Integer numero = dictionnaire.get(valeur);
+            if (numero == null) {
+                numero = dictionnaire.size();
+                dictionnaire.put(valeur, numero);
+                sortie.writeByte(CHAINE);
+                texte(valeur);
+            }
+            return numero;
+        }
+
+        private void texte(String valeur) throws IOException {
+            byte[] utf8 = valeur.getBytes(StandardCharsets.UTF_8);
+            entier(utf8.length);
+            sortie.write(utf8);
+        }
+
+        private void entier(long valeur) throws IOException {
+            while ((valeur & ~0x7FL) != 0) {
+                sortie.writeByte((int) (valeur & 0x7F) | 0x80);
+                valeur >>>= 7;
+            }
+            sortie.writeByte((int) valeur);
+        }
+
+        private static long zigzag(long valeur) {
+            return (valeur << 1) ^ (valeur >> 63);
+        }
+    }
+
+    public static final class Lecteur implements Closeable {
+        private final DataInputStream entree;
+        private final List<String> dictionnaire = new ArrayList<>();
+        private final long debutMillis;
+        private long precedent;
+
+        /**
+         * @throws IOException si ce n'est pas un journal du trafic, ou d'une autre version
+         */
+        public Lecteur(InputStream entree) throws IOException {
+            this.entree = new DataInputStream(new BufferedInputStream(entree, 64 * 1024));
+            if (this.entree.readInt() != MAGIQUE || this.entree.readByte() != VERSION) {
+                throw new IOException("Ce n'est pas un journal du trafic (version " + VERSION + ")");
+            }
+            this.debutMillis = this.entree.readLong();
+            this.precedent = debutMillis * 1_000;
+        }
+
+        public long debutMillis() {
+            return debutMillis;
+        }
+
+        /**
+         * @return la requête suivante, null à la fin du journal (ou au premier enregistrement incomplet)
+         */
+        public Requete lire() throws IOException {
+            try {
+                while (true) {
+                    int type = entree.read();
+                    if (type < 0) {
+                        return null;
+                    }
+                    if (type == CHAINE) {
+                        dictionnaire.add(texte());
+                    } else if (type == REQUETE) {
+                        return requete();
+                    } else {
+                        throw new IOException("Enregistrement inconnu : " + type);
+                    }
+                }
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            entree.close();
+        }
+
+        private Requete requete() throws IOException {
+            long ecart = entier();
+            long debut = precedent + ((ecart >>> 1) ^ -(ecart & 1));
+            String methode = chaine();
+            String modele = chaine();
+            int nombre = (int) entier();
+            Map<String, String> variables = new LinkedHashMap<>();
+            for (int i = 0; i < nombre; i++) {
+                variables.put(chaine(), texte());
+            }
+            String parametres = texte();
+            int statut = (int) entier();
+            long duree = entier();
+            String typeContenu = chaine();
+            long longueur = entier() - 1;
+            long empreinte = entree.readLong();
+            int taille = (int) entier();
+            byte[] corps = null;
+            if (taille > 0) {
+                corps = new byte[taille - 1];
+                entree.readFully(corps);
+            }
+            precedent = debut;
+            return new Requete(debut, methode, modele, variables, parametres,
+                    typeContenu.isEmpty() ? null : typeContenu, longueur, empreinte, corps, statut, duree);
+        }
+
+        private String chaine() throws IOException {
+            int numero = (int) entier();
+            if (numero >= dictionnaire.size()) {
+                throw new IOException("Chaîne inconnue : " + numero);
+            }
+            return dictionnaire.get(numero);
+        }
+
+        private String texte() throws IOException {
+            byte[] utf8 = new byte[(int) entier()];
+            entree.readFully(utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        private long entier() throws IOException {
+            long valeur = 0;
+            for (int decalage = 0; decalage < 64; decalage += 7) {
+                int octet = entree.readUnsignedByte();
+                valeur |= (long) (octet & 0x7F) << decalage;
+                if ((octet & 0x80) == 0) {
+                    return valeur;
+                }
+            }
+            throw new IOException("Entier mal formé");
+        }
+    }
+}
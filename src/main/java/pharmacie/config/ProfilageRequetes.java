@@ -0,0 +1,150 @@
+package pharmacie.config;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Attribue les accès à la base (cf. ProfilageSql) de chaque requête sous pharmacie.profilage.prefixe
+ * à son point d'entrée (méthode et modèle du chemin) :
+ * - métriques pharmacie.sql.requetes, pharmacie.sql.duree et pharmacie.sql.lignes (tags method, uri)
+ * - cumuls et requêtes SQL lentes sur /actuator/sql
+ * - en-tête Server-Timing (lisible dans les outils de développement du navigateur) : db (temps passé
+ *   en base), mapping (traitement de la requête hors base : contrôleur, services, conversion en DTO),
+ *   serialization (écriture du corps de la réponse hors base, ex : chargements paresseux pendant la
+ *   conversion en JSON), total. Pour l'ajouter après la sérialisation, la réponse est gardée en
+ *   mémoire jusqu'à la fin de la requête, y compris les images : l'en-tête n'est donc ajouté
+ *   qu'en développement (pharmacie.profilage.server-timing=true)
+ */
+@Component
+public class ProfilageRequetes extends OncePerRequestFilter {
+
+    private final ProfilageSql profilage;
+    private final MeterRegistry registry;
+    private final String prefixe;
+    private final boolean serverTiming;
+
+    public ProfilageRequetes(ProfilageSql profilage, MeterRegistry registry,
+            @Value("${pharmacie.profilage.prefixe:/api/}") String prefixe,
+            @Value("${pharmacie.profilage.server-timing:false}") boolean serverTiming) {
+        this.profilage = profilage;
+        this.registry = registry;
+        this.prefixe = prefixe;
+        this.serverTiming = serverTiming;
+    }
+
+    /**
+     * Marque le début de l'écriture du corps de la réponse, après le contrôleur
+     */
+    @ControllerAdvice
+    static class DebutSerialisation implements ResponseBodyAdvice<Object> {
+
+        @Override
+        public boolean supports(@NonNull MethodParameter returnType,
+                @NonNull Class<? extends HttpMessageConverter<?>> converterType) {
+            return true;
+        }
+
+        @Override
+        public Object beforeBodyWrite(Object body, @NonNull MethodParameter returnType, @NonNull MediaType contentType,
+                @NonNull Class<? extends HttpMessageConverter<?>> converterType, @NonNull ServerHttpRequest request,
+                @NonNull ServerHttpResponse response) {
+            ProfilageSql.Profil profil = ProfilageSql.profil();
+            if (profil != null && profil.getDebutSerialisation() == 0) {
+                profil.debutSerialisation();
+            }
+            return body;
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !profilage.isActif() || !request.getRequestURI().startsWith(request.getContextPath() + prefixe);
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain) throws ServletException, IOException {
+        ContentCachingResponseWrapper tampon = serverTiming ? new ContentCachingResponseWrapper(response) : null;
+        ProfilageSql.Profil profil = profilage.demarrer();
+        long debut = System.nanoTime();
+        try {
+            filterChain.doFilter(request, tampon == null ? response : tampon);
+        } finally {
+            long total = System.nanoTime() - debut;
+            String uri = uri(request);
+            profilage.terminer(profil, request.getMethod() + " " + uri);
+            Timer.builder("pharmacie.sql.duree").description("Temps passé en base par requête HTTP")
+                    .tags("method", request.getMethod(), "uri", uri).register(registry)
+                    .record(profil.nanos(), TimeUnit.NANOSECONDS);
+            DistributionSummary.builder("pharmacie.sql.requetes").description("Requêtes SQL par requête HTTP")
+                    .tags("method", request.getMethod(), "uri", uri).register(registry).record(profil.requetes());
+            DistributionSummary.builder("pharmacie.sql.lignes").description("Lignes lues en base par requête HTTP")
+                    .tags("method", request.getMethod(), "uri", uri).register(registry).record(profil.lignes());
+            if (tampon != null) {
+                tampon.setHeader("Server-Timing", serverTiming(profil, debut, total));
+                tampon.copyBodyToResponse();
+            }
+        }
+    }
+
+    /**
+     * @return l'en-tête Server-Timing : les durées en millisecondes, le nombre de requêtes SQL et de lignes
+     */
+    static String serverTiming(ProfilageSql.Profil profil, long debut, long total) {
+        long db = profil.nanos();
+        long mapping;
+        long serialisation;
+        if (profil.getDebutSerialisation() == 0) {
+            // Pas de corps écrit par un convertisseur (erreur, réponse vide, vue...)
+            mapping = total - db;
+            serialisation = 0;
+        } else {
+            mapping = profil.getDebutSerialisation() - debut - profil.nanosAvantSerialisation();
+            serialisation = debut + total - profil.getDebutSerialisation() - (db - profil.nanosAvantSerialisation());
+        }
+        return String.format(Locale.ROOT, "db;dur=%.2f;desc=\"%d requetes, %d lignes\", mapping;dur=%.2f, "
+                + "serialization;dur=%.2f, total;dur=%.2f", db / 1e6, profil.requetes(), profil.lignes(),
+                Math.max(0, mapping) / 1e6, Math.max(0, serialisation) / 1e6, total / 1e6);
+    }
+
+    /**
+     * @return le modèle du chemin de la requête (ex : /api/medicaments/{id}), le nom du dépôt
+     * Spring Data REST remplacé par sa valeur ; "autre" si aucun contrôleur ne l'a traitée
+     */
+    private static String uri(HttpServletRequest request) {
+        String modele = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (modele == null || modele.contains("*")) {
+            return "autre";
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (variables != null && variables.containsKey("repository")) {
+            modele = modele.replace("{repository}", variables.get("repository"));
+        }
+        return modele;
+    }
+}
@@ -0,0 +1,458 @@
+package pharmacie.config;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+/**
+ * Profilage des accès à la base, au niveau JDBC : chaque requête SQL exécutée par l'application
+ * (Hibernate, JdbcTemplate...) est chronométrée, ses lignes lues sont comptées.
+ * - pendant une requête HTTP (cf. ProfilageRequetes), le nombre de requêtes SQL, leur durée et le
+ *   nombre de lignes sont cumulés, puis attribués au point d'entrée (méthode et modèle du chemin)
+ * - les requêtes SQL plus lentes que pharmacie.profilage.seuil sont gardées, avec leurs paramètres,
+ *   dans un tampon circulaire (les pharmacie.profilage.lentes dernières) ; leur plan d'exécution (EXPLAIN)
+ *   est demandé à la base quand on les consulte (/actuator/sql). Les valeurs des paramètres (données
+ *   personnelles...) ne sont montrées que si pharmacie.profilage.parametres=true, "?" sinon
+ * La durée d'une requête SQL comprend son exécution et la lecture de ses lignes (ResultSet.next).
+ * Les connexions sont enveloppées par des proxys (cf. ProfilageSqlConfig) : pas de journalisation
+ * des requêtes, le coût est de quelques appels de méthode par requête SQL et par ligne.
+ */
+@Component
+public class ProfilageSql {
+
+    private static final ThreadLocal<Profil> PROFIL = new ThreadLocal<>();
+    private static final String HORS_REQUETE = "hors requête HTTP";
+    private static final int LONGUEUR_PARAMETRE = 200;
+    private static final String MASQUE = "?";
+
+    private final boolean actif;
+    private final boolean parametresVisibles;
+    private final long seuilNanos;
+    private final Lente[] lentes;
+    private final AtomicLong nombreLentes = new AtomicLong();
+    private final Map<String, Cumul> points = new ConcurrentHashMap<>();
+    // La source non profilée : les EXPLAIN ne sont pas comptés
+    private volatile DataSource source;
+
+    public ProfilageSql(@Value("${pharmacie.profilage.actif:true}") boolean actif,
+            @Value("${pharmacie.profilage.seuil:50ms}") Duration seuil,
+            @Value("${pharmacie.profilage.lentes:100}") int lentes,
+            @Value("${pharmacie.profilage.parametres:false}") boolean parametresVisibles) {
+        this.actif = actif;
+        this.parametresVisibles = parametresVisibles;
+        this.seuilNanos = seuil.toNanos();
+        this.lentes = new Lente[lentes];
+    }
+
+    public boolean isActif() {
+        return actif;
+    }
+
+    /**
+     * Les accès à la base pendant une requête HTTP, cumulés sur son thread
+     */
+    public static final class Profil {
+        // Connu à la fin de la requête HTTP
+        private volatile String point = HORS_REQUETE;
+        private int requetes;
+        private long nanos;
+        private long lignes;
+        private long debutSerialisation;
+        private long nanosAvantSerialisation;
+
+        public int requetes() {
+            return requetes;
+        }
+
+        public long nanos() {
+            return nanos;
+        }
+
+        public long lignes() {
+            return lignes;
+        }
+
+        /**
+         * Marque le début de l'écriture de la réponse (sérialisation)
+         */
+        public void debutSerialisation() {
+            debutSerialisation = System.nanoTime();
+            nanosAvantSerialisation = nanos;
+        }
+
+        /**
+         * @return System.nanoTime au début de la sérialisation, 0 si la réponse n'a pas de corps
+         */
+        public long getDebutSerialisation() {
+            return debutSerialisation;
+        }
+
+        public long nanosAvantSerialisation() {
+            return nanosAvantSerialisation;
+        }
+    }
+
+    /**
+     * Les accès à la base d'un point d'entrée (ex : GET /api/medicaments)
+     */
+    public record Point(String point, long appels, long requetes, double dureeMs, long lignes,
+            double requetesParAppel, double dureeMsParAppel) {
+    }
+
+    /**
+     * Une requête SQL lente
+     *
+     * @param plan le plan d'exécution, null pour les requêtes qui ne sont pas des SELECT
+     */
+    public record RequeteLente(Instant date, String point, String sql, List<String> parametres,
+            double dureeMs, long lignes, String plan) {
+    }
+
+    /**
+     * Commence le profil de la requête HTTP en cours sur ce thread
+     */
+    public Profil demarrer() {
+        Profil profil = new Profil();
+        PROFIL.set(profil);
+        return profil;
+    }
+
+    /**
+     * @return le profil de la requête HTTP en cours sur ce thread, null s'il n'y en a pas
+     */
+    public static Profil profil() {
+        return PROFIL.get();
+    }
+
+    /**
+     * Termine le profil de la requête HTTP en cours, et l'attribue à son point d'entrée
+     */
+    public void terminer(Profil profil, String point) {
+        PROFIL.remove();
+        profil.point = point;
+        Cumul cumul = points.computeIfAbsent(point, p -> new Cumul());
+        cumul.appels.increment();
+        cumul.requetes.add(profil.requetes);
+        cumul.nanos.add(profil.nanos);
+        cumul.lignes.add(profil.lignes);
+    }
+
+    /**
+     * @return les points d'entrée, du plus long au plus court temps passé en base
+     */
+    public List<Point> points() {
+        return points.entrySet().stream().map(entree -> {
+            Cumul cumul = entree.getValue();
+            long appels = Math.max(1, cumul.appels.sum());
+            double ms = cumul.nanos.sum() / 1e6;
+            return new Point(entree.getKey(), cumul.appels.sum(), cumul.requetes.sum(), ms, cumul.lignes.sum(),
+                    (double) cumul.requetes.sum() / appels, ms / appels);
+        }).sorted(Comparator.comparingDouble(Point::dureeMs).reversed()).toList();
+    }
+
+    /**
+     * @return les dernières requêtes SQL lentes, de la plus longue à la plus courte, avec leur plan d'exécution
+     */
+    public List<RequeteLente> lentes() {
+        List<Lente> copie = new ArrayList<>();
+        for (Lente lente : lentes) {
+            if (lente != null) {
+                copie.add(lente);
+            }
+        }
+        return copie.stream().sorted(Comparator.comparingLong((Lente l) -> l.nanos).reversed())
+                .map(lente -> new RequeteLente(lente.date, lente.profil == null ? lente.point : lente.profil.point, lente.sql,
+                        Arrays.stream(lente.parametres).map(p -> parametresVisibles ? afficher(p) : MASQUE).toList(),
+                        lente.nanos / 1e6, lente.lignes, plan(lente)))
+                .toList();
+    }
+
+    /**
+     * Oublie les cumuls par point d'entrée et les requêtes lentes
+     */
+    public void vider() {
+        points.clear();
+        Arrays.fill(lentes, null);
+    }
+
+    /**
+     * @return la source de données, dont les connexions sont profilées
+     */
+    DataSource envelopper(DataSource source) {
+        this.source = source;
+        return new DelegatingDataSource(source) {
+            @Override
+            @NonNull
+            public Connection getConnection() throws SQLException {
+                return connexion(super.getConnection());
+            }
+
+            @Override
+            @NonNull
+            public Connection getConnection(@NonNull String username, @NonNull String password) throws SQLException {
+                return connexion(super.getConnection(username, password));
+            }
+        };
+    }
+
+    private Connection connexion(Connection connexion) {
+        return (Connection) Proxy.newProxyInstance(ProfilageSql.class.getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, methode, arguments) -> switch (methode.getName()) {
+                    case "equals" -> proxy == arguments[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "prepareStatement" -> instruction(appeler(connexion, methode, arguments), (String) arguments[0],
+                            PreparedStatement.class);
+                    case "prepareCall" -> instruction(appeler(connexion, methode, arguments), (String) arguments[0],
+                            CallableStatement.class);
+                    case "createStatement" -> instruction(appeler(connexion, methode, arguments), null, Statement.class);
+                    default -> appeler(connexion, methode, arguments);
+                });
+    }
+
+    private Object instruction(Object instruction, String sql, Class<?> type) {
+        return Proxy.newProxyInstance(ProfilageSql.class.getClassLoader(), new Class<?>[] { type },
+                new Instruction((Statement) instruction, sql));
+    }
+
+    /**
+     * Une instruction JDBC : ses paramètres et son exécution en cours
+     */
+    private final class Instruction implements InvocationHandler {
+        private final Statement instruction;
+        private final String sql;
+        private Object[] parametres = new Object[0];
+        private Execution execution;
+
+        Instruction(Statement instruction, String sql) {
+            this.instruction = instruction;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method methode, Object[] arguments) throws Throwable {
+            String nom = methode.getName();
+            if (nom.startsWith("execute")) {
+                terminer();
+                String texte = arguments != null && arguments.length > 0 && arguments[0] instanceof String s ? s : sql;
+                long debut = System.nanoTime();
+                Object resultat = appeler(instruction, methode, arguments);
+                execution = new Execution(texte, parametres.clone(), System.nanoTime() - debut);
+                switch (resultat) {
+                    case ResultSet lignes -> {
+                        return lignes(lignes, execution);
+                    }
+                    case Integer nombre -> {
+                        execution.lignes = Math.max(0, nombre);
+                        terminer();
+                    }
+                    case Long nombre -> {
+                        execution.lignes = Math.max(0, nombre);
+                        terminer();
+                    }
+                    case int[] nombres -> {
+                        execution.lignes = Arrays.stream(nombres).filter(n -> n > 0).sum();
+                        terminer();
+                    }
+                    case long[] nombres -> {
+                        execution.lignes = Arrays.stream(nombres).filter(n -> n > 0).sum();
+                        terminer();
+                    }
+                    default -> {
+                        // execute() : les lignes sont lues par getResultSet
+                    }
+                }
+                return resultat;
+            }
+            switch (nom) {
+                case "equals" -> {
+                    return proxy == arguments[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "getResultSet" -> {
+                    Object resultat = appeler(instruction, methode, arguments);
+                    return resultat instanceof ResultSet lignes && execution != null ? lignes(lignes, execution) : resultat;
+                }
+                case "clearParameters" -> parametres = new Object[0];
+                case "close" -> terminer();
+                default -> {
+                    // setString(1, ...), setNull(2, ...) : les paramètres de la requête
+                    if (nom.startsWith("set") && arguments != null && arguments.length >= 2
+                            && arguments[0] instanceof Integer indice && indice > 0) {
+                        if (indice > parametres.length) {
+                            parametres = Arrays.copyOf(parametres, Math.max(indice, parametres.length * 2));
+                        }
+                        parametres[indice - 1] = nom.equals("setNull") ? null : arguments[1];
+                    }
+                }
+            }
+            return appeler(instruction, methode, arguments);
+        }
+
+        private void terminer() {
+            if (execution != null) {
+                execution.terminer();
+                execution = null;
+            }
+        }
+    }
+
+    private ResultSet lignes(ResultSet lignes, Execution execution) {
+        return (ResultSet) Proxy.newProxyInstance(ProfilageSql.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+                (proxy, methode, arguments) -> switch (methode.getName()) {
+                    case "next" -> {
+                        long debut = System.nanoTime();
+                        Object suivante = appeler(lignes, methode, arguments);
+                        execution.nanos += System.nanoTime() - debut;
+                        if ((Boolean) suivante) {
+                            execution.lignes++;
+                        }
+                        yield suivante;
+                    }
+                    case "close" -> {
+                        Object resultat = appeler(lignes, methode, arguments);
+                        execution.terminer();
+                        yield resultat;
+                    }
+                    case "equals" -> proxy == arguments[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> appeler(lignes, methode, arguments);
+                });
+    }
+
+    /**
+     * L'exécution d'une requête SQL, terminée à la fermeture de ses lignes, de son instruction
+     * ou à l'exécution suivante
+     */
+    private final class Execution {
+        private final String sql;
+        private final Object[] parametres;
+        private final Profil profil = PROFIL.get();
+        private long nanos;
+        private long lignes;
+        private boolean terminee;
+
+        Execution(String sql, Object[] parametres, long nanos) {
+            this.sql = sql;
+            this.parametres = parametres;
+            this.nanos = nanos;
+        }
+
+        void terminer() {
+            if (terminee) {
+                return;
+            }
+            terminee = true;
+            if (profil != null) {
+                profil.requetes++;
+                profil.nanos += nanos;
+                profil.lignes += lignes;
+            }
+            if (nanos >= seuilNanos && lentes.length > 0) {
+                Lente lente = new Lente(Instant.now(), profil, profil == null ? HORS_REQUETE + " ("
+                        + Thread.currentThread().getName() + ")" : null, sql, parametres, nanos, lignes);
+                lentes[(int) (nombreLentes.getAndIncrement() % lentes.length)] = lente;
+            }
+        }
+    }
+
+    private static final class Lente {
+        private final Instant date;
+        private final Profil profil;
+        private final String point;
+        private final String sql;
+        private final Object[] parametres;
+        private final long nanos;
+        private final long lignes;
+        private volatile String plan;
+
+        Lente(Instant date, Profil profil, String point, String sql, Object[] parametres, long nanos, long lignes) {
+            this.date = date;
+            this.profil = profil;
+            this.point = point;
+            this.sql = sql;
+            this.parametres = parametres;
+            this.nanos = nanos;
+            this.lignes = lignes;
+        }
+    }
+
+    private static final class Cumul {
+        private final LongAdder appels = new LongAdder();
+        private final LongAdder requetes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder lignes = new LongAdder();
+    }
+
+    /**
+     * @return le plan d'exécution d'une requête lente (SELECT), demandé une seule fois à la base
+     */
+    private String plan(Lente lente) {
+        if (lente.plan != null || source == null || lente.sql == null) {
+            return lente.plan;
+        }
+        String debut = lente.sql.stripLeading().toLowerCase(Locale.ROOT);
+        if (!debut.startsWith("select") && !debut.startsWith("with")) {
+            return null;
+        }
+        StringBuilder plan = new StringBuilder();
+        try (Connection connexion = source.getConnection();
+                PreparedStatement explain = connexion.prepareStatement("EXPLAIN " + lente.sql)) {
+            for (int i = 0; i < lente.parametres.length; i++) {
+                explain.setObject(i + 1, lente.parametres[i]);
+            }
+            try (ResultSet lignes = explain.executeQuery()) {
+                while (lignes.next()) {
+                    plan.append(plan.isEmpty() ? "" : "\n").append(lignes.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            plan.append("EXPLAIN impossible : ").append(e.getMessage());
+        }
+        lente.plan = plan.toString();
+        return lente.plan;
+    }
+
+    private static String afficher(Object parametre) {
+        String texte = switch (parametre) {
+            case null -> "NULL";
+            case byte[] octets -> "byte[" + octets.length + "]";
+            default -> String.valueOf(parametre);
+        };
+        return texte.length() > LONGUEUR_PARAMETRE ? texte.substring(0, LONGUEUR_PARAMETRE) + "..." : texte;
+    }
+
+    private static Object appeler(Object cible, Method methode, Object[] arguments) throws Throwable {
+        try {
+            return methode.invoke(cible, arguments);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package pharmacie.config;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.NonNull;
+
+/**
+ * Enveloppe la source de données de l'application pour profiler ses requêtes SQL (cf. ProfilageSql),
+ * sauf si pharmacie.profilage.actif=false
+ */
+@Configuration(proxyBeanMethods = false)
+public class ProfilageSqlConfig {
+
+    // static : les BeanPostProcessor sont créés avant les autres beans
+    @Bean
+    static BeanPostProcessor profilageSourceDeDonnees(ObjectProvider<ProfilageSql> profilage) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(@NonNull Object bean, @NonNull String nom) {
+                if (bean instanceof DataSource source && profilage.getObject().isActif()) {
+                    return profilage.getObject().envelopper(source);
+                }
+                return bean;
+            }
+        };
+    }
+}
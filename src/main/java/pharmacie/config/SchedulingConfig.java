@@ -0,0 +1,13 @@
+package pharmacie.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Active l'exécution des tâches planifiées (@Scheduled),
+ * par exemple le dispatcheur de la file d'envoi des mails
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
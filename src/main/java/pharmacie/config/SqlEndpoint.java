@@ -0,0 +1,36 @@
+package pharmacie.config;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * /actuator/sql : les accès à la base par point d'entrée de l'API, et les dernières requêtes SQL lentes
+ * avec leurs paramètres et leur plan d'exécution (cf. ProfilageSql). DELETE remet les compteurs à zéro.
+ */
+@Component
+@Endpoint(id = "sql")
+public class SqlEndpoint {
+
+    private final ProfilageSql profilage;
+
+    public SqlEndpoint(ProfilageSql profilage) {
+        this.profilage = profilage;
+    }
+
+    public record Rapport(List<ProfilageSql.Point> points, List<ProfilageSql.RequeteLente> lentes) {
+    }
+
+    @ReadOperation
+    public Rapport rapport() {
+        return new Rapport(profilage.points(), profilage.lentes());
+    }
+
+    @DeleteOperation
+    public void vider() {
+        profilage.vider();
+    }
+}
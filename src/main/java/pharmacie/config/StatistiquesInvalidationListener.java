@@ -0,0 +1,99 @@
+package pharmacie.config;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Component;
+
+import jakarta.persistence.EntityManagerFactory;
+import pharmacie.entity.Ligne;
+import pharmacie.entity.Medicament;
+import pharmacie.service.StatistiquesService;
+
+/**
+ * Invalide le cache des statistiques quand une ligne de commande change.
+ * Les listeners "post-commit" d'Hibernate ne sont appelés qu'après la validation
+ * de la transaction : on n'invalide pas pour une modification annulée, et une requête
+ * concurrente ne peut pas remettre en cache l'ancien résultat après l'invalidation.
+ * Les modifications faites par des requêtes "bulk" (UPDATE / DELETE JPQL) ne sont pas vues,
+ * la durée de vie du cache limite alors la durée pendant laquelle le résultat est périmé.
+ */
+@Component
+public class StatistiquesInvalidationListener implements PostCommitInsertEventListener,
+        PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private final StatistiquesService statistiquesService;
+
+    public StatistiquesInvalidationListener(EntityManagerFactory entityManagerFactory,
+            StatistiquesService statistiquesService) {
+        this.statistiquesService = statistiquesService;
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        invalider(event.getEntity());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        invalider(event.getEntity());
+        // Si la ligne a changé de médicament, l'ancienne catégorie est aussi concernée
+        if (event.getEntity() instanceof Ligne && event.getOldState() != null) {
+            for (Object ancienneValeur : event.getOldState()) {
+                if (ancienneValeur instanceof Medicament medicament) {
+                    invalider(medicament);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        invalider(event.getEntity());
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+        // Transaction annulée, rien à invalider
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        // Transaction annulée, rien à invalider
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        // Transaction annulée, rien à invalider
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return Ligne.class.equals(persister.getMappedClass());
+    }
+
+    private void invalider(Object entite) {
+        if (entite instanceof Ligne ligne && ligne.getMedicament() != null) {
+            invalider(ligne.getMedicament());
+        }
+    }
+
+    private void invalider(Medicament medicament) {
+        if (medicament.getCategorie() != null) {
+            statistiquesService.invalider(medicament.getCategorie().getCode());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package pharmacie.dao;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import pharmacie.entity.AlerteReappro;
+
+// La file des alertes est interne au réapprovisionnement
+@RepositoryRestResource(exported = false)
+public interface AlerteReapproRepository extends JpaRepository<AlerteReappro, Integer> {
+
+    /**
+     * Prend en charge les alertes en attente
+     *
+     * @param traitement l'identifiant du traitement
+     * @return le nombre d'alertes prises en charge
+     */
+    @Modifying
+    @Query("UPDATE AlerteReappro a SET a.traitement = :traitement WHERE a.traitement IS NULL")
+    int marquer(String traitement);
+
+    /**
+     * Supprime les alertes prises en charge par un traitement
+     */
+    @Modifying
+    @Query("DELETE FROM AlerteReappro a WHERE a.traitement = :traitement")
+    int supprimer(String traitement);
+}
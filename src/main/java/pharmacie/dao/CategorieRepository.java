@@ -2,6 +2,7 @@ package pharmacie.dao;
 
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
 import pharmacie.entity.Categorie;
 
@@ -13,6 +14,7 @@ import pharmacie.entity.Categorie;
  * par Spring
  */
 
+@RepositoryRestResource(excerptProjection = CategorieResume.class)
 public interface CategorieRepository extends JpaRepository<Categorie, Integer> {
     /**
      * Recherche une catégorie par son libellé (unique)
@@ -0,0 +1,15 @@
+package pharmacie.dao;
+
+import org.springframework.data.rest.core.config.Projection;
+
+import pharmacie.entity.Categorie;
+
+/**
+ * Le résumé d'une catégorie dans les collections de l'API REST (cf. MedicamentResume)
+ */
+@Projection(name = "resume", types = Categorie.class)
+public interface CategorieResume {
+    Integer getCode();
+    String getLibelle();
+    String getDescription();
+}
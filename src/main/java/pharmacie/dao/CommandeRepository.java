@@ -2,13 +2,19 @@ package pharmacie.dao;
 
 import java.util.List;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.data.rest.core.annotation.RestResource;
 
 import pharmacie.entity.Commande;
 
 // This will be AUTO IMPLEMENTED by Spring into a Bean called CommandeRepository
 
+@RepositoryRestResource(excerptProjection = CommandeResume.class)
 public interface CommandeRepository extends JpaRepository<Commande, Integer> {
 
     /**
@@ -38,4 +44,16 @@ public interface CommandeRepository extends JpaRepository<Commande, Integer> {
         """)
     List<Commande> commandesEnCoursPour(String codeDispensaire);
 
+    /**
+     * @return le nombre de commandes en cours (pas encore expédiées)
+     */
+    @RestResource(exported = false)
+    long countByEnvoyeeleIsNull();
+
+    /**
+     * Une page de commandes (collection /api/commandes), avec leur dispensaire dans la même requête
+     */
+    @Override
+    @EntityGraph(attributePaths = { "dispensaire" })
+    Page<Commande> findAll(Pageable pageable);
 }
@@ -0,0 +1,23 @@
+package pharmacie.dao;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import org.springframework.data.rest.core.config.Projection;
+
+import pharmacie.entity.AdressePostale;
+import pharmacie.entity.Commande;
+
+/**
+ * Le résumé d'une commande dans les collections de l'API REST (cf. MedicamentResume)
+ */
+@Projection(name = "resume", types = Commande.class)
+public interface CommandeResume {
+    Integer getNumero();
+    LocalDate getSaisiele();
+    LocalDate getEnvoyeele();
+    BigDecimal getPort();
+    String getDestinataire();
+    AdressePostale getAdresseLivraison();
+    BigDecimal getRemise();
+}
@@ -0,0 +1,69 @@
+package pharmacie.dao;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import pharmacie.entity.DemandeReappro;
+
+// Le registre des demandes est modifié par ReapprovisionnementService uniquement
+@RepositoryRestResource(exported = false)
+public interface DemandeReapproRepository extends JpaRepository<DemandeReappro, Long> {
+
+    /**
+     * Marque comme répondues les demandes ouvertes d'un fournisseur
+     *
+     * @param fournisseur l'id du fournisseur
+     * @param maintenant  la date de la réponse
+     * @return le nombre de demandes mises à jour
+     */
+    @Modifying
+    @Query("""
+            UPDATE DemandeReappro d SET d.etat = pharmacie.entity.EtatDemande.REPONDUE, d.reponduLe = :maintenant
+            WHERE d.fournisseur.id = :fournisseur
+            AND d.etat = pharmacie.entity.EtatDemande.OUVERTE
+            """)
+    int repondre(Integer fournisseur, LocalDateTime maintenant);
+
+    /**
+     * Marque comme répondues les demandes ouvertes d'un fournisseur pour certains médicaments
+     */
+    @Modifying
+    @Query("""
+            UPDATE DemandeReappro d SET d.etat = pharmacie.entity.EtatDemande.REPONDUE, d.reponduLe = :maintenant
+            WHERE d.fournisseur.id = :fournisseur
+            AND d.medicament.reference IN :medicaments
+            AND d.etat = pharmacie.entity.EtatDemande.OUVERTE
+            """)
+    int repondre(Integer fournisseur, List<Integer> medicaments, LocalDateTime maintenant);
+
+    /**
+     * Supprime les demandes dont la période de calme est écoulée
+     *
+     * @param limite les demandes (ou réponses) antérieures à cette date sont supprimées
+     */
+    @Modifying
+    @Query("""
+            DELETE FROM DemandeReappro d
+            WHERE COALESCE(d.reponduLe, d.demandeeLe) < :limite
+            """)
+    int purgerExpirees(LocalDateTime limite);
+
+    /**
+     * Supprime les demandes des médicaments qui ne sont plus à réapprovisionner :
+     * une nouvelle baisse du stock donnera lieu à une nouvelle demande
+     */
+    @Modifying
+    @Query("""
+            DELETE FROM DemandeReappro d
+            WHERE d.medicament IN (
+                SELECT m FROM Medicament m
+                WHERE m.unitesEnStock > m.niveauDeReappro OR m.indisponible = true
+            )
+            """)
+    int purgerReapprovisionnes();
+}
@@ -5,10 +5,12 @@ import org.springframework.data.jpa.repository.Query;
 import pharmacie.entity.Dispensaire;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
 // This will be AUTO IMPLEMENTED by Spring into a Bean called DispensaireRepository
 // CRUD refers Create, Read, Update, Delete
 
+@RepositoryRestResource(excerptProjection = DispensaireResume.class)
 public interface DispensaireRepository extends JpaRepository<Dispensaire, String> {
     /**
      * Calcule le nombre d'articles commandés par un dispensaire
@@ -0,0 +1,21 @@
+package pharmacie.dao;
+
+import org.springframework.data.rest.core.config.Projection;
+
+import pharmacie.entity.AdressePostale;
+import pharmacie.entity.Dispensaire;
+
+/**
+ * Le résumé d'un dispensaire dans les collections de l'API REST (cf. MedicamentResume)
+ */
+@Projection(name = "resume", types = Dispensaire.class)
+public interface DispensaireResume {
+    String getCode();
+    String getNom();
+    String getContact();
+    String getFonction();
+    // Embarquée dans la table Dispensaire : pas de requête supplémentaire
+    AdressePostale getAdresse();
+    String getTelephone();
+    String getFax();
+}
@@ -4,9 +4,11 @@ import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
 import pharmacie.entity.Fournisseur;
 
+@RepositoryRestResource(excerptProjection = FournisseurResume.class)
 public interface FournisseurRepository extends JpaRepository<Fournisseur, Integer> {
 
     /**
@@ -21,15 +23,4 @@ public interface FournisseurRepository extends JpaRepository<Fournisseur, Intege
                 WHERE m.reference IN :references
             """)
     List<Fournisseur> fournisseursPourMedicaments(List<Integer> references);
-
-    /**
-     * Trouve les fournisseurs avec leurs catégories pré-chargées
-     * pour les médicaments donnés par leurs références.
-     */
-    @Query("""
-                SELECT DISTINCT f FROM Fournisseur f
-                JOIN FETCH f.categories c
-                WHERE c IN (SELECT m.categorie FROM Medicament m WHERE m.reference IN :references)
-            """)
-    List<Fournisseur> fournisseursAvecCategoriesPourMedicaments(List<Integer> references);
 }
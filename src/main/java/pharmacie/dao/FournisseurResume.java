@@ -0,0 +1,15 @@
+package pharmacie.dao;
+
+import org.springframework.data.rest.core.config.Projection;
+
+import pharmacie.entity.Fournisseur;
+
+/**
+ * Le résumé d'un fournisseur dans les collections de l'API REST (cf. MedicamentResume)
+ */
+@Projection(name = "resume", types = Fournisseur.class)
+public interface FournisseurResume {
+    Integer getId();
+    String getNom();
+    String getAdresseElectronique();
+}
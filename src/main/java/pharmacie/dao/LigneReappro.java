@@ -0,0 +1,11 @@
+package pharmacie.dao;
+
+/**
+ * Une ligne du plan de réapprovisionnement : un médicament à réapprovisionner,
+ * et un fournisseur de sa catégorie
+ */
+public record LigneReappro(
+        Integer fournisseurId, String fournisseurNom, String fournisseurEmail,
+        Integer categorieCode, String categorieLibelle,
+        Integer medicamentReference, String medicamentNom, int stock, int seuil) {
+}
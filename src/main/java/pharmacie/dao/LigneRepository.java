@@ -2,7 +2,11 @@ package pharmacie.dao;
 
 import java.util.Optional;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 
 import pharmacie.entity.Commande;
 import pharmacie.entity.Ligne;
@@ -13,6 +17,7 @@ import java.util.List;
 
 // This will be AUTO IMPLEMENTED by Spring into a Bean called LigneRepository
 
+@RepositoryRestResource(excerptProjection = LigneResume.class)
 public interface LigneRepository extends JpaRepository<Ligne, Integer> {
     List<Ligne> findByCommande(Commande commande);
     List<Ligne> findByMedicamentReference(Integer reference);
@@ -24,4 +29,11 @@ public interface LigneRepository extends JpaRepository<Ligne, Integer> {
      * @return la ligne correspondante (optionnelle)
      */
     Optional<Ligne> findByCommandeAndMedicament(Commande commande, Medicament medicament);
+
+    /**
+     * Une page de lignes (collection /api/lignes), avec leur commande et leur médicament dans la même requête
+     */
+    @Override
+    @EntityGraph(attributePaths = { "commande.dispensaire", "medicament.categorie" })
+    Page<Ligne> findAll(Pageable pageable);
 }
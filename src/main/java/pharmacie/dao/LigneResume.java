@@ -0,0 +1,14 @@
+package pharmacie.dao;
+
+import org.springframework.data.rest.core.config.Projection;
+
+import pharmacie.entity.Ligne;
+
+/**
+ * Le résumé d'une ligne de commande dans les collections de l'API REST (cf. MedicamentResume)
+ */
+@Projection(name = "resume", types = Ligne.class)
+public interface LigneResume {
+    Integer getId();
+    Integer getQuantite();
+}
@@ -0,0 +1,68 @@
+package pharmacie.dao;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+
+import pharmacie.entity.EtatMail;
+import pharmacie.entity.MailSortant;
+
+// La file d'envoi n'est pas exposée par Spring Data REST (le contenu des mails reste interne)
+@RepositoryRestResource(exported = false)
+public interface MailSortantRepository extends JpaRepository<MailSortant, Long> {
+
+    List<MailSortant> findByLotOrderById(String lot);
+
+    long countByEtat(EtatMail etat);
+
+    /**
+     * Les mails à envoyer maintenant, les plus anciens d'abord
+     *
+     * @param maintenant la date courante
+     * @param page       pour limiter le nombre de mails (taille du lot d'envoi)
+     */
+    @Query("""
+            SELECT m FROM MailSortant m
+            WHERE m.etat = pharmacie.entity.EtatMail.EN_ATTENTE
+            AND m.prochainEssai <= :maintenant
+            ORDER BY m.id
+            """)
+    List<MailSortant> aEnvoyer(LocalDateTime maintenant, Pageable page);
+
+    /**
+     * La date de création du plus ancien mail en attente (null si aucun)
+     */
+    @Query("""
+            SELECT MIN(m.creeLe) FROM MailSortant m
+            WHERE m.etat = pharmacie.entity.EtatMail.EN_ATTENTE
+            """)
+    LocalDateTime plusAncienEnAttente();
+
+    /**
+     * Remet en attente les mails réservés par un dispatcheur qui n'a pas terminé
+     * (arrêt brutal de l'application pendant l'envoi)
+     */
+    @Modifying
+    @Query("""
+            UPDATE MailSortant m SET m.etat = pharmacie.entity.EtatMail.EN_ATTENTE
+            WHERE m.etat = pharmacie.entity.EtatMail.EN_COURS
+            AND m.dernierEssai < :limite
+            """)
+    int liberer(LocalDateTime limite);
+
+    /**
+     * Supprime les mails envoyés avant une date donnée
+     */
+    @Modifying
+    @Query("""
+            DELETE FROM MailSortant m
+            WHERE m.etat = pharmacie.entity.EtatMail.ENVOYE
+            AND m.envoyeLe < :limite
+            """)
+    int purger(LocalDateTime limite);
+}
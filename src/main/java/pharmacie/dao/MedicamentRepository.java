@@ -1,15 +1,25 @@
 package pharmacie.dao;
 
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.rest.core.annotation.RepositoryRestResource;
+import org.springframework.data.rest.core.annotation.RestResource;
 
+import jakarta.persistence.QueryHint;
 import pharmacie.entity.Fournisseur;
 import pharmacie.entity.Medicament;
 
 // Cette interface sera auto-implémentée par Spring
 
+@RepositoryRestResource(excerptProjection = MedicamentResume.class)
 public interface MedicamentRepository extends JpaRepository<Medicament, Integer> {
   /**
    * Calcule le nombre d'unités vendues pour chaque médicament d'une catégorie
@@ -83,6 +93,47 @@ public interface MedicamentRepository extends JpaRepository<Medicament, Integer>
       """)
   List<Medicament> aReaprovisionner();
 
+  /**
+   * Les médicaments à réapprovisionner sans demande de devis en cours (cf. DemandeReappro),
+   * avec chacun des fournisseurs de leur catégorie : une ligne par couple (médicament, fournisseur).
+   * Les lignes sont triées par catégorie, médicament puis fournisseur, pour être lues en une passe.
+   * Le flux doit être lu dans une transaction, puis fermé.
+   */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+  @Query("""
+        SELECT new pharmacie.dao.LigneReappro(f.id, f.nom, f.adresseElectronique, c.code, c.libelle,
+               m.reference, m.nom, m.unitesEnStock, m.niveauDeReappro)
+        FROM Medicament m
+        JOIN m.categorie c
+        JOIN c.fournisseurs f
+        WHERE m.unitesEnStock <= m.niveauDeReappro
+        AND m.indisponible = false
+        AND NOT EXISTS (SELECT d FROM DemandeReappro d WHERE d.medicament = m)
+        ORDER BY c.code, m.reference, f.id
+      """)
+  Stream<LigneReappro> lignesReappro();
+
+  /**
+   * Comme lignesReappro, pour les seuls médicaments signalés (cf. AlerteReappro)
+   *
+   * @param traitement l'identifiant du traitement qui a pris en charge les alertes
+   */
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+  @Query("""
+        SELECT new pharmacie.dao.LigneReappro(f.id, f.nom, f.adresseElectronique, c.code, c.libelle,
+               m.reference, m.nom, m.unitesEnStock, m.niveauDeReappro)
+        FROM AlerteReappro a
+        JOIN Medicament m ON m.reference = a.medicament
+        JOIN m.categorie c
+        JOIN c.fournisseurs f
+        WHERE a.traitement = :traitement
+        AND m.unitesEnStock <= m.niveauDeReappro
+        AND m.indisponible = false
+        AND NOT EXISTS (SELECT d FROM DemandeReappro d WHERE d.medicament = m)
+        ORDER BY c.code, m.reference, f.id
+      """)
+  Stream<LigneReappro> lignesReapproSignalees(String traitement);
+
   /**
    * Trouve les fournisseurs susceptibles de réapprovisionner ces médicaments
    * La relation passe par les catégories (un fournisseur fournit des catégories)
@@ -95,4 +146,32 @@ public interface MedicamentRepository extends JpaRepository<Medicament, Integer>
       """)
   List<Fournisseur> fournisseursPourMedicaments(List<Integer> references);
 
+  /**
+   * Compte les médicaments qui utilisent chaque image du stockage local
+   *
+   * @param prefixe le préfixe des URL des images stockées localement (ex : /images/)
+   * @return pour chaque image référencée, son URL et son nombre de références
+   */
+  @Query("""
+        SELECT m.imageURL AS url, COUNT(m) AS references
+        FROM Medicament m
+        WHERE m.imageURL LIKE CONCAT(:prefixe, '%')
+        GROUP BY m.imageURL
+      """)
+  List<ReferencesImage> referencesImages(String prefixe);
+
+  /**
+   * @return le total des unités réservées par les commandes en cours (Medicament.unitesCommandees)
+   */
+  @RestResource(exported = false)
+  @Query("SELECT COALESCE(SUM(m.unitesCommandees), 0) FROM Medicament m")
+  long totalUnitesCommandees();
+
+  /**
+   * Une page de médicaments (collection /api/medicaments), avec leur catégorie dans la même requête :
+   * la catégorie est chargée immédiatement (@ManyToOne), une requête par catégorie sinon
+   */
+  @Override
+  @EntityGraph(attributePaths = { "categorie" })
+  Page<Medicament> findAll(Pageable pageable);
 }
@@ -0,0 +1,25 @@
+package pharmacie.dao;
+
+import java.math.BigDecimal;
+
+import org.springframework.data.rest.core.config.Projection;
+
+import pharmacie.entity.Medicament;
+
+/**
+ * Le résumé d'un médicament : projection par défaut ("excerpt") de la collection /api/medicaments.
+ * Seuls les champs simples sont envoyés ; la catégorie n'est qu'un lien (_links.categorie).
+ * Les autres collections de l'API ont leur propre résumé (CategorieResume, CommandeResume...).
+ */
+@Projection(name = "resume", types = Medicament.class)
+public interface MedicamentResume {
+    Integer getReference();
+    String getNom();
+    String getQuantiteParUnite();
+    BigDecimal getPrixUnitaire();
+    int getUnitesEnStock();
+    int getUnitesCommandees();
+    int getNiveauDeReappro();
+    boolean isIndisponible();
+    String getImageURL();
+}
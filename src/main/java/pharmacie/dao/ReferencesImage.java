@@ -0,0 +1,11 @@
+package pharmacie.dao;
+
+/**
+ * Le nombre de médicaments qui utilisent une image
+ * @see pharmacie.dao.MedicamentRepository#referencesImages
+ * Cette interface sera auto-implémentée par Spring
+ */
+public interface ReferencesImage {
+	String getUrl();
+	Long getReferences();
+}
@@ -0,0 +1,16 @@
+package pharmacie.dto;
+
+import java.time.LocalDateTime;
+
+import lombok.Data;
+
+@Data
+public class EnvoiFournisseurDTO {
+    private String fournisseur;
+    private String destinataire;
+    // EN_ATTENTE, EN_COURS, ENVOYE ou ECHEC
+    private String etat;
+    private int tentatives;
+    private LocalDateTime envoyeLe;
+    private String erreur;
+}
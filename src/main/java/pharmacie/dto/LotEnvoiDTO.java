@@ -0,0 +1,16 @@
+package pharmacie.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class LotEnvoiDTO {
+    // Identifiant du lot (null si aucun mail n'était à envoyer)
+    private String id;
+    private LocalDateTime creeLe;
+    // true quand tous les envois sont terminés (avec succès ou non)
+    private boolean termine;
+    private List<EnvoiFournisseurDTO> envois;
+}
@@ -0,0 +1,39 @@
+package pharmacie.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+import lombok.*;
+
+/**
+ * Un médicament en attente de demande de devis de réapprovisionnement.
+ * L'alerte est enregistrée quand une expédition fait passer le stock sous le niveau
+ * de réapprovisionnement, dans la même transaction que l'expédition.
+ * Il y a au plus une alerte par médicament : la clé est la référence du médicament.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@ToString
+@Table(indexes = @Index(columnList = "signaleeLe"))
+public class AlerteReappro {
+	@Id
+	@Setter(AccessLevel.NONE)
+	private Integer medicament;
+
+	@Column(nullable = false)
+	@Setter(AccessLevel.NONE)
+	private LocalDateTime signaleeLe = LocalDateTime.now();
+
+	/**
+	 * Identifiant du traitement qui a pris en charge l'alerte (null tant qu'elle est en attente)
+	 */
+	@Column(length = 36)
+	private String traitement;
+
+	public AlerteReappro(int medicament) {
+		this.medicament = medicament;
+	}
+}
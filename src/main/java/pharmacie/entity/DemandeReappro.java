@@ -0,0 +1,46 @@
+package pharmacie.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+
+import lombok.*;
+
+/**
+ * Une demande de devis de réapprovisionnement envoyée à un fournisseur pour un médicament.
+ * Le registre des demandes évite de redemander le même médicament au même fournisseur
+ * pendant la période de calme (pharmacie.reappro.periode-calme), comptée depuis
+ * la demande, ou depuis la réponse du fournisseur.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = { "medicament_reference", "fournisseur_id" }))
+public class DemandeReappro {
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Setter(AccessLevel.NONE) // la clé est auto-générée par la BD, On ne veut pas de "setter"
+	private Long id;
+
+	@NonNull
+	@ManyToOne(optional = false, fetch = FetchType.LAZY)
+	@ToString.Exclude
+	private Medicament medicament;
+
+	@NonNull
+	@ManyToOne(optional = false, fetch = FetchType.LAZY)
+	@ToString.Exclude
+	private Fournisseur fournisseur;
+
+	@Enumerated(EnumType.STRING)
+	@Column(nullable = false, length = 10)
+	private EtatDemande etat = EtatDemande.OUVERTE;
+
+	@Column(nullable = false)
+	private LocalDateTime demandeeLe = LocalDateTime.now();
+
+	private LocalDateTime reponduLe;
+}
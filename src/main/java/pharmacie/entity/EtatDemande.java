@@ -0,0 +1,11 @@
+package pharmacie.entity;
+
+/**
+ * L'état d'une demande de devis de réapprovisionnement
+ */
+public enum EtatDemande {
+	// Demande envoyée au fournisseur, en attente de son devis
+	OUVERTE,
+	// Le fournisseur a répondu
+	REPONDUE
+}
@@ -0,0 +1,15 @@
+package pharmacie.entity;
+
+/**
+ * L'état d'un mail dans la file d'envoi (MailSortant)
+ */
+public enum EtatMail {
+    // En attente d'envoi (premier envoi ou nouvel essai)
+    EN_ATTENTE,
+    // Réservé par le dispatcheur, envoi en cours
+    EN_COURS,
+    // Envoyé avec succès
+    ENVOYE,
+    // Abandonné après le nombre maximum de tentatives
+    ECHEC
+}
@@ -0,0 +1,82 @@
+package pharmacie.entity;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.Size;
+
+import lombok.*;
+
+/**
+ * Un mail en attente d'envoi ("outbox").
+ * Le mail est enregistré dans la même transaction que la décision métier qui le produit,
+ * puis envoyé plus tard par un dispatcheur en tâche de fond (cf. DispatcheurMails).
+ * Si la transaction est annulée, le mail n'est jamais envoyé ; si l'envoi échoue,
+ * seul ce mail est retenté.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@RequiredArgsConstructor
+@ToString
+@Table(indexes = {
+	@Index(columnList = "etat, prochainEssai"),
+	@Index(columnList = "lot")
+})
+public class MailSortant {
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Setter(AccessLevel.NONE) // la clé est auto-générée par la BD, On ne veut pas de "setter"
+	private Long id;
+
+	/**
+	 * Identifiant du lot : les mails produits par une même demande partagent le même lot
+	 */
+	@NonNull
+	@Column(nullable = false, length = 36)
+	private String lot;
+
+	@NonNull
+	@Size(max = 255)
+	@Column(nullable = false, length = 255)
+	private String fournisseur;
+
+	@NonNull
+	@Size(max = 255)
+	@Column(nullable = false, length = 255)
+	private String destinataire;
+
+	@NonNull
+	@Size(max = 255)
+	@Column(nullable = false, length = 255)
+	private String sujet;
+
+	@NonNull
+	@ToString.Exclude
+	@Column(nullable = false, length = 100_000)
+	private String contenu;
+
+	@Enumerated(EnumType.STRING)
+	@Column(nullable = false, length = 12)
+	private EtatMail etat = EtatMail.EN_ATTENTE;
+
+	private int tentatives = 0;
+
+	@Column(nullable = false)
+	private LocalDateTime creeLe = LocalDateTime.now();
+
+	/**
+	 * Date à partir de laquelle le mail peut être (re)envoyé
+	 */
+	@Column(nullable = false)
+	private LocalDateTime prochainEssai = LocalDateTime.now();
+
+	private LocalDateTime dernierEssai;
+
+	private LocalDateTime envoyeLe;
+
+	@Size(max = 500)
+	@Column(length = 500)
+	private String derniereErreur;
+}
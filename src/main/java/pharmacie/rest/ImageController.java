@@ -0,0 +1,205 @@
+package pharmacie.rest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import pharmacie.service.DiffuseurImages;
+import pharmacie.service.DiffuseurImages.Envoi;
+import pharmacie.service.TypeImage;
+
+/**
+ * Diffusion des images stockées, adressées par leur contenu (cf. StockageImages) :
+ * /images/ab/cd/abcd....(SHA-256).ext
+ * - une image ne change jamais : Cache-Control "immutable" à un an, ETag = son empreinte
+ *   (If-None-Match -> 304)
+ * - requêtes partielles (Range, If-Range) sur une plage d'octets
+ * - envoi sans copie : sendfile du conteneur quand il le permet, FileChannel.transferTo sinon,
+ *   ou depuis la mémoire pour les images les plus demandées (cf. DiffuseurImages)
+ * Les autres images (/images/..., ressources statiques) restent servies par Spring.
+ */
+@RestController
+public class ImageController {
+
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+    // Attributs de requête de Tomcat pour l'envoi par sendfile
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FICHIER = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_DEBUT = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_FIN = "org.apache.tomcat.sendfile.end";
+
+    private final DiffuseurImages diffuseur;
+    private final long seuilSendfile;
+
+    ImageController(DiffuseurImages diffuseur,
+            @Value("${pharmacie.images.sendfile.seuil:48KB}") DataSize seuilSendfile) {
+        this.diffuseur = diffuseur;
+        this.seuilSendfile = seuilSendfile.toBytes();
+    }
+
+    /**
+     * Une plage d'octets, bornes incluses
+     */
+    record Plage(long debut, long fin) {
+        // Une plage qui commence après la fin de l'image
+        static final Plage HORS_IMAGE = new Plage(-1, -1);
+
+        long longueur() {
+            return fin - debut + 1;
+        }
+    }
+
+    @RequestMapping(path = "/images/{a:[0-9a-f]{2}}/{b:[0-9a-f]{2}}/{empreinte:[0-9a-f]{64}}.{extension:[a-z]+}",
+            method = { RequestMethod.GET, RequestMethod.HEAD })
+    public void image(@PathVariable String a, @PathVariable String b, @PathVariable String empreinte,
+            @PathVariable String extension, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String chemin = a + "/" + b + "/" + empreinte + "." + extension;
+        Optional<Path> trouve = diffuseur.fichier(chemin);
+        if (trouve.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        Path fichier = trouve.get();
+        String etag = "\"" + empreinte + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (correspond(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(Arrays.stream(TypeImage.values())
+                .filter(type -> type.getExtension().equals("." + extension))
+                .map(TypeImage::getMimeType).findFirst().orElse("application/octet-stream"));
+
+        Optional<ByteBuffer> enMemoire = diffuseur.enMemoire(chemin);
+        try (FileChannel canal = enMemoire.isPresent() ? null : FileChannel.open(fichier, StandardOpenOption.READ)) {
+            long taille = enMemoire.isPresent() ? enMemoire.get().remaining() : canal.size();
+            Plage plage = new Plage(0, taille - 1);
+            String range = request.getHeader(HttpHeaders.RANGE);
+            // If-Range : la plage n'est envoyée que si l'image est celle que le client connaît
+            if (range != null && correspond(request.getHeader(HttpHeaders.IF_RANGE), etag, true)) {
+                Optional<Plage> demandee = plage(range, taille);
+                if (demandee.equals(Optional.of(Plage.HORS_IMAGE))) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + taille);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                if (demandee.isPresent()) {
+                    plage = demandee.get();
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE,
+                            "bytes " + plage.debut() + "-" + plage.fin() + "/" + taille);
+                }
+            }
+            response.setContentLengthLong(plage.longueur());
+            if (RequestMethod.HEAD.name().equals(request.getMethod()) || plage.longueur() == 0) {
+                return;
+            }
+            if (enMemoire.isPresent()) {
+                ByteBuffer contenu = enMemoire.get();
+                contenu.position((int) plage.debut()).limit((int) plage.fin() + 1);
+                WritableByteChannel sortie = Channels.newChannel(response.getOutputStream());
+                while (contenu.hasRemaining()) {
+                    sortie.write(contenu);
+                }
+                diffuseur.envoye(Envoi.MEMOIRE, plage.longueur());
+            } else if (plage.longueur() >= seuilSendfile && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                // Le conteneur envoie le fichier après le retour de la méthode, sans le copier en mémoire
+                request.setAttribute(SENDFILE_FICHIER, fichier.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_DEBUT, plage.debut());
+                request.setAttribute(SENDFILE_FIN, plage.fin() + 1);
+                diffuseur.envoye(Envoi.SENDFILE, plage.longueur());
+            } else {
+                WritableByteChannel sortie = Channels.newChannel(response.getOutputStream());
+                long position = plage.debut();
+                long fin = plage.fin() + 1;
+                while (position < fin) {
+                    position += canal.transferTo(position, fin - position, sortie);
+                }
+                diffuseur.envoye(Envoi.TRANSFERT, plage.longueur());
+            }
+        }
+    }
+
+    /**
+     * @param range  l'en-tête Range
+     * @param taille la taille de l'image
+     * @return la plage demandée ; vide si l'en-tête est ignoré (mal formé, ou plusieurs plages :
+     *         l'image entière est envoyée) ; Plage.HORS_IMAGE si la plage commence après la fin de l'image
+     */
+    static Optional<Plage> plage(String range, long taille) {
+        if (!range.startsWith("bytes=") || range.contains(",")) {
+            return Optional.empty();
+        }
+        String[] bornes = range.substring("bytes=".length()).strip().split("-", -1);
+        if (bornes.length != 2) {
+            return Optional.empty();
+        }
+        try {
+            long debut;
+            long fin;
+            if (bornes[0].isEmpty()) {
+                // bytes=-n : les n derniers octets
+                long suffixe = Long.parseLong(bornes[1]);
+                if (suffixe == 0) {
+                    return Optional.of(Plage.HORS_IMAGE);
+                }
+                debut = Math.max(0, taille - suffixe);
+                fin = taille - 1;
+            } else {
+                debut = Long.parseLong(bornes[0]);
+                if (debut >= taille) {
+                    return Optional.of(Plage.HORS_IMAGE);
+                }
+                long dernier = bornes[1].isEmpty() ? taille - 1 : Long.parseLong(bornes[1]);
+                if (dernier < debut) {
+                    return Optional.empty();
+                }
+                fin = Math.min(dernier, taille - 1);
+            }
+            return Optional.of(new Plage(debut, fin));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static boolean correspond(String ifNoneMatch, String etag) {
+        return correspond(ifNoneMatch, etag, false);
+    }
+
+    /**
+     * @param entete     la valeur de If-None-Match ou If-Range
+     * @param etag       l'ETag de l'image
+     * @param siAbsent   le résultat si l'en-tête est absent
+     */
+    private static boolean correspond(String entete, String etag, boolean siAbsent) {
+        if (entete == null) {
+            return siAbsent;
+        }
+        for (String valeur : entete.split(",")) {
+            String candidat = valeur.strip();
+            if (candidat.equals("*") || candidat.equals(etag) || candidat.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
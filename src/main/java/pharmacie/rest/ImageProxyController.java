@@ -0,0 +1,51 @@
+package pharmacie.rest;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import pharmacie.service.ProxyImages;
+
+@RestController
+@RequestMapping(path = "/api/images")
+public class ImageProxyController {
+    // Les images externes sont téléchargées une fois, puis servies localement (cf. ProxyImages)
+    private final ProxyImages proxy;
+    private final CacheControl cacheControl;
+
+    ImageProxyController(ProxyImages proxy,
+            @Value("${pharmacie.images.proxy.cache-client:1d}") Duration cacheClient) {
+        this.proxy = proxy;
+        this.cacheControl = CacheControl.maxAge(cacheClient).cachePublic();
+    }
+
+    /**
+     * Une image externe, servie depuis sa copie locale,
+     * ex : /api/images/externe?url=https://images.unsplash.com/photo-...?w=400
+     *
+     * @param url l'URL de l'image externe (Medicament.imageURL)
+     * @return l'image, ou 502 si elle n'a pas pu être téléchargée
+     */
+    @GetMapping("externe")
+    public ResponseEntity<Resource> externe(@RequestParam String url) throws IOException {
+        // La copie locale est ouverte avant d'être envoyée : elle peut être supprimée du cache entre-temps
+        return proxy.ouvrir(url)
+                .map(image -> ResponseEntity.ok()
+                        .contentType(MediaType.parseMediaType(image.type().getMimeType()))
+                        .contentLength(image.taille())
+                        .cacheControl(cacheControl)
+                        .<Resource>body(new InputStreamResource(image.contenu())))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.BAD_GATEWAY).build());
+    }
+}
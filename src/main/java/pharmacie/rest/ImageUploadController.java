@@ -3,20 +3,19 @@ package pharmacie.rest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import pharmacie.dao.MedicamentRepository;
 import pharmacie.entity.Medicament;
+import pharmacie.service.StockageImages;
 
+import jakarta.servlet.http.HttpServletRequest;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 import org.springframework.lang.NonNull;
 
 @RestController
@@ -25,13 +24,12 @@ import org.springframework.lang.NonNull;
 public class ImageUploadController {
 
     private final MedicamentRepository medicamentRepository;
-
-    // Chemin vers le répertoire static/images
-    private static final String UPLOAD_DIR = "/tmp/images/";
+    private final StockageImages stockageImages;
 
     @Autowired
-    public ImageUploadController(MedicamentRepository medicamentRepository) {
+    public ImageUploadController(MedicamentRepository medicamentRepository, StockageImages stockageImages) {
         this.medicamentRepository = medicamentRepository;
+        this.stockageImages = stockageImages;
     }
 
     /**
@@ -44,63 +42,53 @@ public class ImageUploadController {
     public ResponseEntity<Map<String, Object>> uploadImage(
             @PathVariable @NonNull Integer reference,
             @RequestParam("file") MultipartFile file) {
+        // Vérifier que le fichier n'est pas vide
+        if (file.isEmpty()) {
+            log.warn("Tentative d'upload d'un fichier vide pour le médicament {}", reference);
+            return erreur(HttpStatus.BAD_REQUEST, "Le fichier est vide");
+        }
+        return enregistrer(reference, () -> stockageImages.enregistrer(file));
+    }
 
-        Map<String, Object> response = new HashMap<>();
+    /**
+     * Upload une image pour un médicament, envoyée comme corps de la requête
+     * (ex : curl -X PUT -T photo.png -H "Content-Type: application/octet-stream" ...).
+     * Le contenu est écrit au fil de la réception, sans fichier temporaire.
+     * @param reference la référence du médicament
+     * @param request la requête, dont le corps est l'image
+     * @return ResponseEntity avec le résultat de l'opération
+     */
+    @PutMapping(path = "/{reference}/image", consumes = { "image/*", MediaType.APPLICATION_OCTET_STREAM_VALUE })
+    public ResponseEntity<Map<String, Object>> uploadImageFlux(
+            @PathVariable @NonNull Integer reference,
+            HttpServletRequest request) {
+        return enregistrer(reference, () -> stockageImages.enregistrer(request.getInputStream()));
+    }
 
-        try {
-            // Vérifier que le fichier n'est pas vide
-            if (file.isEmpty()) {
-                log.warn("Tentative d'upload d'un fichier vide pour le médicament {}", reference);
-                response.put("success", false);
-                response.put("message", "Le fichier est vide");
-                return ResponseEntity.badRequest().body(response);
-            }
+    @FunctionalInterface
+    private interface Enregistrement {
+        String enregistrer() throws IOException;
+    }
 
+    private ResponseEntity<Map<String, Object>> enregistrer(Integer reference, Enregistrement enregistrement) {
+        try {
             // Vérifier que le médicament existe
             Medicament medicament = medicamentRepository.findById(reference).orElse(null);
             if (medicament == null) {
                 log.warn("Médicament avec référence {} introuvable", reference);
-                response.put("success", false);
-                response.put("message", "Médicament avec référence " + reference + " introuvable");
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
-            }
-
-            // Vérifier le type de fichier
-            String contentType = file.getContentType();
-            if (contentType == null || !contentType.startsWith("image/")) {
-                log.warn("Type de fichier non supporté: {}", contentType);
-                response.put("success", false);
-                response.put("message", "Le fichier doit être une image (JPEG, PNG, GIF, etc.)");
-                return ResponseEntity.badRequest().body(response);
-            }
-
-            // Créer le répertoire s'il n'existe pas
-            Path uploadPath = Paths.get(UPLOAD_DIR);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
-                log.info("Répertoire d'upload créé: {}", UPLOAD_DIR);
-            }
-
-            // Générer un nom de fichier unique
-            String originalFilename = file.getOriginalFilename();
-            String fileExtension = "";
-            if (originalFilename != null && originalFilename.contains(".")) {
-                fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
+                return erreur(HttpStatus.NOT_FOUND, "Médicament avec référence " + reference + " introuvable");
             }
-            String uniqueFilename = "med_" + reference + "_" + UUID.randomUUID().toString() + fileExtension;
 
-            // Sauvegarder le fichier
-            Path filePath = uploadPath.resolve(uniqueFilename);
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-            log.info("Image sauvegardée: {} pour le médicament {}", uniqueFilename, reference);
+            // Sauvegarder le fichier (le type est vérifié sur son contenu, une image déjà stockée n'est pas dupliquée)
+            String imageUrl = StockageImages.URL + enregistrement.enregistrer();
 
             // Mettre à jour l'URL de l'image dans la base de données
-            String imageUrl = "/images/" + uniqueFilename;
             medicament.setImageURL(imageUrl);
             medicamentRepository.save(medicament);
             log.info("URL de l'image mise à jour pour le médicament {}: {}", reference, imageUrl);
 
             // Réponse de succès
+            Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "Image uploadée avec succès");
             response.put("imageUrl", imageUrl);
@@ -112,19 +100,28 @@ public class ImageUploadController {
 
             return ResponseEntity.ok(response);
 
+        } catch (IllegalArgumentException e) {
+            log.warn("Image refusée pour le médicament {}: {}", reference, e.getMessage());
+            return erreur(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (RejectedExecutionException e) {
+            log.warn("Upload refusé pour le médicament {}: {}", reference, e.getMessage());
+            return erreur(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
         } catch (IOException e) {
             log.error("Erreur lors de l'upload de l'image pour le médicament {}", reference, e);
-            response.put("success", false);
-            response.put("message", "Erreur lors de la sauvegarde du fichier: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+            return erreur(HttpStatus.INTERNAL_SERVER_ERROR, "Erreur lors de la sauvegarde du fichier: " + e.getMessage());
         } catch (Exception e) {
             log.error("Erreur inattendue lors de l'upload de l'image pour le médicament {}", reference, e);
-            response.put("success", false);
-            response.put("message", "Erreur inattendue: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+            return erreur(HttpStatus.INTERNAL_SERVER_ERROR, "Erreur inattendue: " + e.getMessage());
         }
     }
 
+    private static ResponseEntity<Map<String, Object>> erreur(HttpStatus status, String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", message);
+        return ResponseEntity.status(status).body(response);
+    }
+
     /**
      * Récupérer les informations d'un médicament y compris son image
      * @param reference la référence du médicament
@@ -0,0 +1,78 @@
+package pharmacie.rest;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import pharmacie.service.VariantesImages;
+import pharmacie.service.VariantesImages.Dimensions;
+import pharmacie.service.VariantesImages.Format;
+import pharmacie.service.VariantesImages.VarianteOuverte;
+
+@RestController
+@RequestMapping(path = "/api/images")
+public class ImageVarianteController {
+    // Les variantes sont calculées une fois, puis servies depuis un cache disque (cf. VariantesImages)
+    private final VariantesImages variantes;
+
+    ImageVarianteController(VariantesImages variantes) {
+        this.variantes = variantes;
+    }
+
+    /**
+     * Les préréglages de variantes disponibles
+     *
+     * @return les dimensions de chaque préréglage
+     */
+    @GetMapping(path = "presets", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Map<String, Dimensions> presets() {
+        return variantes.getPresets();
+    }
+
+    /**
+     * Une variante d'une image stockée, ex : /api/images/variantes/ab/cd/abcd....png?preset=vignette
+     * ou /api/images/variantes/ab/cd/abcd....png?largeur=120&hauteur=120&format=jpeg
+     *
+     * @param chemin  le chemin de l'image, tel qu'il apparaît dans son URL après /images/
+     * @param preset  le nom du préréglage
+     * @param largeur la largeur maximum, si aucun préréglage n'est donné (doit être celle d'un préréglage)
+     * @param hauteur la hauteur maximum, si aucun préréglage n'est donné (doit être celle d'un préréglage)
+     * @param format  le format de la variante (jpeg, png, gif), par défaut celui de l'image
+     * @return l'image réduite
+     */
+    @GetMapping("variantes/{*chemin}")
+    public ResponseEntity<Resource> variante(@PathVariable String chemin,
+            @RequestParam(required = false) String preset,
+            @RequestParam(required = false) Integer largeur,
+            @RequestParam(required = false) Integer hauteur,
+            @RequestParam(required = false) String format) throws IOException {
+        Dimensions dimensions;
+        if (preset != null) {
+            dimensions = variantes.preset(preset);
+        } else if (largeur != null && hauteur != null) {
+            dimensions = variantes.dimensions(largeur, hauteur);
+        } else {
+            throw new IllegalArgumentException("Indiquez un préréglage (preset), ou une largeur et une hauteur");
+        }
+        // Ouverte tout de suite : le cache peut la supprimer pendant l'envoi
+        VarianteOuverte variante = variantes.ouvrir(chemin.substring(1), dimensions,
+                format != null ? Format.depuis(format) : null);
+        // Les images stockées sont adressées par leur contenu : leurs variantes ne changent jamais
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(variante.format().getType().getMimeType()))
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+                .contentLength(variante.taille())
+                .body(new InputStreamResource(variante.contenu()));
+    }
+}
@@ -0,0 +1,43 @@
+package pharmacie.rest;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import jakarta.servlet.http.HttpServletRequest;
+import pharmacie.service.ImportCatalogue;
+import pharmacie.service.ImportCatalogue.Entite;
+import pharmacie.service.ImportCatalogue.Format;
+import pharmacie.service.ImportCatalogue.Rapport;
+
+@RestController
+@RequestMapping(path = "/api/import")
+public class ImportController {
+
+    private final ImportCatalogue importCatalogue;
+
+    ImportController(ImportCatalogue importCatalogue) {
+        this.importCatalogue = importCatalogue;
+    }
+
+    /**
+     * Importe un fichier du catalogue, envoyé comme corps de la requête et lu au fil de la réception
+     * (ex : curl -X POST --data-binary @medicaments.csv -H "Content-Type: text/csv" .../api/import/medicaments).
+     * @param entite categories, fournisseurs, medicaments ou dispensaires
+     * @param request la requête, dont le corps est le fichier (text/csv ou application/x-ndjson, UTF-8 par défaut)
+     * @return le compte rendu de l'import, avec le détail des lignes en erreur
+     */
+    @PostMapping("/{entite}")
+    public Rapport importer(@PathVariable String entite, HttpServletRequest request) throws IOException {
+        Charset encodage = request.getCharacterEncoding() != null ? Charset.forName(request.getCharacterEncoding())
+                : StandardCharsets.UTF_8;
+        return importCatalogue.importer(Entite.depuis(entite), Format.depuis(request.getContentType()),
+                new InputStreamReader(request.getInputStream(), encodage));
+    }
+}
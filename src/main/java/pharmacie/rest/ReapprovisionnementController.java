@@ -3,11 +3,20 @@ package pharmacie.rest;
 import java.util.List;
 
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import lombok.extern.slf4j.Slf4j;
+import pharmacie.dto.EnvoiFournisseurDTO;
+import pharmacie.dto.LotEnvoiDTO;
+import pharmacie.entity.EtatMail;
+import pharmacie.entity.MailSortant;
+import pharmacie.service.MailOutboxService;
 import pharmacie.service.ReapprovisionnementService;
 
 @Slf4j
@@ -16,22 +25,80 @@ import pharmacie.service.ReapprovisionnementService;
 public class ReapprovisionnementController {
 
     private final ReapprovisionnementService reapprovisionnementService;
+    private final MailOutboxService outbox;
 
-    public ReapprovisionnementController(ReapprovisionnementService reapprovisionnementService) {
+    public ReapprovisionnementController(ReapprovisionnementService reapprovisionnementService,
+            MailOutboxService outbox) {
         this.reapprovisionnementService = reapprovisionnementService;
+        this.outbox = outbox;
     }
 
     /**
      * Endpoint REST pour lancer la demande de devis de réapprovisionnement.
-     * Identifie les médicaments à réapprovisionner et envoie un mail
-     * à chaque fournisseur concerné.
+     * Identifie les médicaments à réapprovisionner et enregistre un mail
+     * pour chaque fournisseur concerné, envoyé ensuite en tâche de fond.
      *
-     * @return la liste des mails envoyés
+     * @return 202 - Accepted, avec le lot d'envoi et l'URL de suivi de son état,
+     *         ou 200 - OK avec un lot vide si aucun mail n'est à envoyer
      */
     @PostMapping("demanderDevis")
-    public ResponseEntity<List<String>> demanderDevis() {
+    public ResponseEntity<LotEnvoiDTO> demanderDevis() {
         log.info("Contrôleur : demande de devis de réapprovisionnement");
-        List<String> resultats = reapprovisionnementService.demanderDevis();
-        return ResponseEntity.ok(resultats);
+        var lot = reapprovisionnementService.lancerDemandeDevis();
+        if (lot.isEmpty()) {
+            var vide = new LotEnvoiDTO();
+            vide.setTermine(true);
+            vide.setEnvois(List.of());
+            return ResponseEntity.ok(vide);
+        }
+        var suivi = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/services/reapprovisionnement/devis/{id}")
+                .buildAndExpand(lot.get()).toUri();
+        return ResponseEntity.accepted().location(suivi).body(versDTO(lot.get(), outbox.getLot(lot.get())));
+    }
+
+    /**
+     * Etat d'un lot d'envoi de demandes de devis, fournisseur par fournisseur
+     *
+     * @param id l'identifiant du lot
+     * @return l'état du lot
+     */
+    @GetMapping("devis/{id}")
+    public ResponseEntity<LotEnvoiDTO> etatDemandeDevis(@PathVariable String id) {
+        return ResponseEntity.ok(versDTO(id, outbox.getLot(id)));
+    }
+
+    /**
+     * Enregistre la réponse (le devis) d'un fournisseur à ses demandes de devis
+     *
+     * @param fournisseur l'id du fournisseur
+     * @param medicament  les références des médicaments concernés (facultatif : toutes
+     *                    les demandes ouvertes du fournisseur par défaut)
+     * @return le nombre de demandes marquées comme répondues
+     */
+    @PostMapping("reponses/{fournisseur}")
+    public ResponseEntity<Integer> enregistrerReponse(@PathVariable int fournisseur,
+            @RequestParam(required = false) List<Integer> medicament) {
+        log.info("Contrôleur : réponse du fournisseur {}", fournisseur);
+        return ResponseEntity.ok(reapprovisionnementService.enregistrerReponse(fournisseur, medicament));
+    }
+
+    private static LotEnvoiDTO versDTO(String id, List<MailSortant> mails) {
+        var dto = new LotEnvoiDTO();
+        dto.setId(id);
+        dto.setCreeLe(mails.get(0).getCreeLe());
+        dto.setTermine(mails.stream()
+                .allMatch(mail -> mail.getEtat() == EtatMail.ENVOYE || mail.getEtat() == EtatMail.ECHEC));
+        dto.setEnvois(mails.stream().map(mail -> {
+            var envoi = new EnvoiFournisseurDTO();
+            envoi.setFournisseur(mail.getFournisseur());
+            envoi.setDestinataire(mail.getDestinataire());
+            envoi.setEtat(mail.getEtat().name());
+            envoi.setTentatives(mail.getTentatives());
+            envoi.setEnvoyeLe(mail.getEnvoyeLe());
+            envoi.setErreur(mail.getDerniereErreur());
+            return envoi;
+        }).toList());
+        return dto;
     }
 }
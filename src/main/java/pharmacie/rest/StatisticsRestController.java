@@ -8,17 +8,18 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import pharmacie.dao.MedicamentRepository;
 import pharmacie.dao.UnitesParMedicament;
+import pharmacie.service.StatistiquesService;
 
 @RestController
 @RequestMapping(path = "/api/stats")
 public class StatisticsRestController {
-    private final MedicamentRepository dao;
+    // Les requêtes statistiques passent par un cache (cf. StatistiquesService)
+    private final StatistiquesService service;
 
     // Injection de dépendance (@Autowired)
-    StatisticsRestController(MedicamentRepository dao) {
-        this.dao = dao;
+    StatisticsRestController(StatistiquesService service) {
+        this.service = service;
     }
 
     /**
@@ -30,7 +31,7 @@ public class StatisticsRestController {
     @GetMapping(path = "unitesCommandeesPourCategorie/{code}", produces = { MediaType.APPLICATION_JSON_VALUE,
             MediaType.APPLICATION_XML_VALUE })
     public List<UnitesParMedicament> unitesCommandeesPourCategorie(@PathVariable final Integer code) {
-        return dao.medicamentsCommandesPour(code);
+        return service.medicamentsCommandesPour(code);
     }
 
     /**
@@ -44,7 +45,7 @@ public class StatisticsRestController {
      */
     @GetMapping(path = "unitesCommandeesPourCategorieV2/{code}", produces = { MediaType.APPLICATION_JSON_VALUE })
     public List<Object> unitesCommandeesPourCategorieV2(@PathVariable final Integer code) {
-        return dao.medicamentsCommandesPourV2(code);
+        return service.medicamentsCommandesPourV2(code);
     }
 
 }
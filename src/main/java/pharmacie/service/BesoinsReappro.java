@@ -0,0 +1,118 @@
+package pharmacie.service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import pharmacie.dao.LigneReappro;
+
+/**
+ * Les besoins de réapprovisionnement, lus en une passe sur les lignes triées
+ * (catégorie, médicament, fournisseur) de MedicamentRepository.lignesReappro :
+ * - pour chaque catégorie : le récapitulatif des médicaments à réapprovisionner (le même
+ *   dans tous les mails, rendu une seule fois par MailsDevis), leurs références, et ses fournisseurs
+ * - les fournisseurs candidats, indexés dans l'ordre de lecture
+ */
+class BesoinsReappro {
+
+    private final List<String> libelles = new ArrayList<>();
+    private final List<StringBuilder> lignesMedicaments = new ArrayList<>();
+    private final List<String> recapitulatifs = new ArrayList<>();
+    private final List<List<Integer>> medicaments = new ArrayList<>();
+    private final List<BitSet> fournisseursDe = new ArrayList<>();
+    private final List<LigneReappro> fournisseurs = new ArrayList<>();
+    private final Map<Integer, Integer> indexFournisseur = new HashMap<>();
+
+    static BesoinsReappro lire(Stream<LigneReappro> lignes, MailsDevis mails) {
+        BesoinsReappro besoins = new BesoinsReappro();
+        Integer categorie = null;
+        Integer medicament = null;
+        for (Iterator<LigneReappro> it = lignes.iterator(); it.hasNext();) {
+            LigneReappro ligne = it.next();
+            if (!ligne.categorieCode().equals(categorie)) {
+                categorie = ligne.categorieCode();
+                medicament = null;
+                besoins.nouvelleCategorie(ligne);
+            }
+            int c = besoins.libelles.size() - 1;
+            if (!ligne.medicamentReference().equals(medicament)) {
+                medicament = ligne.medicamentReference();
+                mails.medicament(besoins.lignesMedicaments.get(c), ligne.medicamentNom(), ligne.stock(), ligne.seuil());
+                besoins.medicaments.get(c).add(medicament);
+            }
+            Integer f = besoins.indexFournisseur.get(ligne.fournisseurId());
+            if (f == null) {
+                f = besoins.fournisseurs.size();
+                besoins.indexFournisseur.put(ligne.fournisseurId(), f);
+                besoins.fournisseurs.add(ligne);
+            }
+            besoins.fournisseursDe.get(c).set(f);
+        }
+        for (int c = 0; c < besoins.libelles.size(); c++) {
+            besoins.recapitulatifs.add(mails.categorie(besoins.libelles.get(c), besoins.lignesMedicaments.get(c)));
+        }
+        besoins.lignesMedicaments.clear();
+        return besoins;
+    }
+
+    private void nouvelleCategorie(LigneReappro ligne) {
+        libelles.add(ligne.categorieLibelle());
+        lignesMedicaments.add(new StringBuilder());
+        medicaments.add(new ArrayList<>());
+        fournisseursDe.add(new BitSet());
+    }
+
+    boolean estVide() {
+        return libelles.isEmpty();
+    }
+
+    int nbMedicaments() {
+        return medicaments.stream().mapToInt(List::size).sum();
+    }
+
+    int nbFournisseurs() {
+        return fournisseurs.size();
+    }
+
+    /**
+     * @return pour chaque catégorie, le nombre de médicaments à réapprovisionner
+     */
+    int[] poids() {
+        return medicaments.stream().mapToInt(List::size).toArray();
+    }
+
+    /**
+     * @return pour chaque catégorie, les indices de ses fournisseurs
+     */
+    BitSet[] fournisseursDe() {
+        return fournisseursDe.toArray(BitSet[]::new);
+    }
+
+    /**
+     * @param f l'indice du fournisseur
+     * @return son id, son nom et son adresse électronique
+     */
+    LigneReappro fournisseur(int f) {
+        return fournisseurs.get(f);
+    }
+
+    /**
+     * @param c l'indice de la catégorie
+     * @return les références des médicaments à réapprovisionner de la catégorie
+     */
+    List<Integer> medicaments(int c) {
+        return medicaments.get(c);
+    }
+
+    /**
+     * @param c l'indice de la catégorie
+     * @return le récapitulatif des médicaments de la catégorie, pour le mail
+     */
+    String recapitulatif(int c) {
+        return recapitulatifs.get(c);
+    }
+}
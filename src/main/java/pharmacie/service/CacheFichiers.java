@@ -0,0 +1,171 @@
+package pharmacie.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Un cache de fichiers sur disque, de taille bornée : quand la taille totale dépasse
+ * la taille maximum, les fichiers les moins récemment utilisés sont supprimés (LRU).
+ * L'index (clé -> taille, dans l'ordre d'utilisation) est en mémoire ; il est reconstruit
+ * au démarrage à partir des fichiers présents, dans l'ordre de leur date de modification.
+ * Un fichier supprimé pendant qu'il est lu reste lisible par ceux qui l'ont déjà ouvert.
+ */
+@Slf4j
+public class CacheFichiers {
+
+    private static final String TEMPORAIRE = ".tmp";
+
+    private final Path repertoire;
+    private final long tailleMax;
+    // Ordre d'accès : le premier est le moins récemment utilisé
+    private final LinkedHashMap<String, Long> tailles = new LinkedHashMap<>(16, 0.75f, true);
+    private long taille;
+
+    /**
+     * @param repertoire le répertoire des fichiers du cache
+     * @param tailleMax  la taille totale maximum, en octets
+     */
+    public CacheFichiers(Path repertoire, long tailleMax) {
+        this.repertoire = repertoire;
+        this.tailleMax = tailleMax;
+        try {
+            Files.createDirectories(repertoire);
+            try (Stream<Path> fichiers = Files.walk(repertoire)) {
+                fichiers.filter(Files::isRegularFile)
+                        .sorted(Comparator.comparing(CacheFichiers::dateModification))
+                        .forEach(fichier -> {
+                            if (fichier.getFileName().toString().endsWith(TEMPORAIRE)) {
+                                // Abandonné par un arrêt de l'application
+                                supprimer(fichier);
+                            } else {
+                                indexer(cle(fichier), taille(fichier));
+                            }
+                        });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        evincer();
+    }
+
+    /**
+     * @param cle la clé du fichier, chemin relatif au répertoire du cache (ex : ab/abcd-120x120.jpg)
+     * @return le fichier s'il est dans le cache
+     */
+    public Optional<Path> obtenir(String cle) {
+        synchronized (this) {
+            if (tailles.get(cle) == null) {
+                return Optional.empty();
+            }
+        }
+        Path fichier = repertoire.resolve(cle);
+        if (!Files.exists(fichier)) {
+            // Supprimé hors du cache
+            retirer(cle);
+            return Optional.empty();
+        }
+        return Optional.of(fichier);
+    }
+
+    /**
+     * Ajoute un fichier au cache, puis supprime les fichiers les moins récemment utilisés
+     * si la taille maximum est dépassée
+     *
+     * @param cle     la clé du fichier
+     * @param fichier le fichier à ajouter (déplacé dans le cache), sur le même système de fichiers
+     * @return le fichier dans le cache
+     */
+    public Path ajouter(String cle, Path fichier) throws IOException {
+        Path cible = repertoire.resolve(cle);
+        Files.createDirectories(cible.getParent());
+        Files.move(fichier, cible, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        synchronized (this) {
+            indexer(cle, Files.size(cible));
+        }
+        evincer();
+        return cible;
+    }
+
+    /**
+     * @return un fichier temporaire, dans le répertoire du cache, à remplir puis à ajouter
+     */
+    public Path fichierTemporaire() throws IOException {
+        return Files.createTempFile(repertoire, null, TEMPORAIRE);
+    }
+
+    public synchronized long getTaille() {
+        return taille;
+    }
+
+    public synchronized int getNombre() {
+        return tailles.size();
+    }
+
+    private void indexer(String cle, long tailleFichier) {
+        Long ancienne = tailles.put(cle, tailleFichier);
+        taille += tailleFichier - (ancienne != null ? ancienne : 0);
+    }
+
+    private synchronized void retirer(String cle) {
+        Long ancienne = tailles.remove(cle);
+        if (ancienne != null) {
+            taille -= ancienne;
+        }
+    }
+
+    private void evincer() {
+        int evinces = 0;
+        synchronized (this) {
+            for (Iterator<Map.Entry<String, Long>> it = tailles.entrySet().iterator(); taille > tailleMax && it.hasNext();) {
+                Map.Entry<String, Long> entree = it.next();
+                it.remove();
+                taille -= entree.getValue();
+                supprimer(repertoire.resolve(entree.getKey()));
+                evinces++;
+            }
+        }
+        if (evinces > 0) {
+            log.debug("{} fichier(s) supprimé(s) du cache {}", evinces, repertoire);
+        }
+    }
+
+    private String cle(Path fichier) {
+        return repertoire.relativize(fichier).toString().replace('\\', '/');
+    }
+
+    private static void supprimer(Path fichier) {
+        try {
+            Files.deleteIfExists(fichier);
+        } catch (IOException e) {
+            log.warn("Impossible de supprimer {} du cache", fichier, e);
+        }
+    }
+
+    private static long taille(Path fichier) {
+        try {
+            return Files.size(fichier);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long dateModification(Path fichier) {
+        try {
+            return Files.readAttributes(fichier, BasicFileAttributes.class).lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
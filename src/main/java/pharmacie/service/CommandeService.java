@@ -3,12 +3,18 @@ package pharmacie.service;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Supplier;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.transaction.annotation.Transactional;
 
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.validation.constraints.Positive;
 import lombok.extern.slf4j.Slf4j;
 import pharmacie.dao.CommandeRepository;
@@ -22,20 +28,35 @@ import pharmacie.entity.Ligne;
 @Service
 @Validated // Les annotations de validation sont actives sur les méthodes de ce service
 // (ex: @Positive)
+// Chaque méthode est chronométrée (tags class, method, exception), percentiles calculés par Prometheus
+@Timed(value = "pharmacie.commandes.service", histogram = true, description = "Durée des opérations sur les commandes")
 public class CommandeService {
     // La couche "Service" utilise la couche "Accès aux données" pour effectuer les traitements
     private final CommandeRepository commandeDao;
     private final DispensaireRepository dispensaireDao;
     private final LigneRepository ligneDao;
     private final MedicamentRepository medicamentDao;
+    private final ApplicationEventPublisher evenements;
+
+    private final Counter refusIndisponible;
+    private final Counter refusStock;
+    private final Counter refusExpediee;
+    private final DistributionSummary lignesParCommande;
 
     // @Autowired
     // Spring initialisera automatiquement ces paramètres
-    public CommandeService(CommandeRepository commandeDao, DispensaireRepository dispensaireDao, LigneRepository ligneDao, MedicamentRepository medicamentDao) {
+    public CommandeService(CommandeRepository commandeDao, DispensaireRepository dispensaireDao, LigneRepository ligneDao, MedicamentRepository medicamentDao,
+            ApplicationEventPublisher evenements, MeterRegistry registry) {
         this.commandeDao = commandeDao;
         this.dispensaireDao = dispensaireDao;
         this.ligneDao = ligneDao;
         this.medicamentDao = medicamentDao;
+        this.evenements = evenements;
+        this.refusIndisponible = refus(registry, "indisponible");
+        this.refusStock = refus(registry, "stock");
+        this.refusExpediee = refus(registry, "expediee");
+        this.lignesParCommande = DistributionSummary.builder("pharmacie.commandes.lignes").baseUnit("lignes")
+                .publishPercentileHistogram().description("Nombre de lignes des commandes expédiées").register(registry);
     }
 
     /**
@@ -52,6 +73,12 @@ public class CommandeService {
     @Transactional
     public Commande creerCommande(@NonNull String dispensaireCode) {
         log.info("Service : Création d'une commande pour {}", dispensaireCode);
+        // Événement JFR (cf. EvenementsJfr), enregistré même en cas d'échec
+        var jfr = new EvenementsJfr.OperationCommande("creerCommande", 0);
+        return operation(jfr, () -> creer(dispensaireCode, jfr));
+    }
+
+    private Commande creer(String dispensaireCode, EvenementsJfr.OperationCommande jfr) {
         // On vérifie que le dispensaire existe
         var dispensaire = dispensaireDao.findById(dispensaireCode).orElseThrow();
         // On crée une commande pour ce dispensaire
@@ -66,6 +93,8 @@ public class CommandeService {
         }
         // On enregistre la commande (génère la clé)
         commandeDao.save(nouvelleCommande);
+        jfr.commande = nouvelleCommande.getNumero();
+        jfr.lignes = 0;
         return nouvelleCommande;
     }
 
@@ -101,20 +130,29 @@ public class CommandeService {
     @Transactional
     public Ligne ajouterLigne(int commandeNum, int medicamentRef, @Positive int quantite) {
         log.info("Service : Ajout d'une ligne ({}, {}) à la commande {}", medicamentRef, quantite, commandeNum);
+        // Le nombre de lignes de la commande n'est pas renseigné : il faudrait les lire
+        var jfr = new EvenementsJfr.OperationCommande("ajouterLigne", commandeNum);
+        return operation(jfr, () -> ajouter(commandeNum, medicamentRef, quantite));
+    }
+
+    private Ligne ajouter(int commandeNum, int medicamentRef, int quantite) {
         // On vérifie que le médicament existe
         var medicament = medicamentDao.findById(medicamentRef).orElseThrow();
         // On vérifie que le médicament n'est pas marqué indisponible
         if (medicament.isIndisponible()) {
+            refusIndisponible.increment();
             throw new IllegalStateException("Médicament indisponible");
         }
         // On vérifie qu'il y a assez de stock
         if (medicament.getUnitesEnStock() < quantite + medicament.getUnitesCommandees()) {
+            refusStock.increment();
             throw new IllegalStateException("Pas assez de stock");
         }
         // On vérifie que la commande existe
         var commande = commandeDao.findById(commandeNum).orElseThrow();
         // On vérifie que la commande n'est pas déjà envoyée
         if (commande.getEnvoyeele() != null) {
+            refusExpediee.increment();
             throw new IllegalStateException("Commande déjà envoyée");
         }
         // On cherche si une ligne existe déjà dans la commande pour ce médicament
@@ -146,9 +184,15 @@ public class CommandeService {
     @Transactional
     public void supprimerLigne(int id) {
         log.info("Service : Supression d'une ligne {}", id);
+        var jfr = new EvenementsJfr.OperationCommande("supprimerLigne", 0);
+        operation(jfr, () -> supprimer(id, jfr));
+    }
+
+    private void supprimer(int id, EvenementsJfr.OperationCommande jfr) {
         // Si la ligne existe
         ligneDao.findById(id).ifPresent(ligne -> {
             var commande = ligne.getCommande();
+            jfr.commande = commande.getNumero();
             // On vérifie que la commande n'est pas déjà envoyée
             if (commande.getEnvoyeele() != null) {
                 throw new IllegalStateException("Commande déjà envoyée");
@@ -173,6 +217,8 @@ public class CommandeService {
      * - Pour chaque médicament dans les lignes de la commande :
      * décrémente la quantité en stock (Medicament.unitesEnStock) de la quantité dans la commande
      * décrémente la quantité commandée (Medicament.unitesCommandees) de la quantité dans la commande
+     * - Si le stock d'un médicament passe sous son niveau de réapprovisionnement, on publie
+     * un événement SeuilReapproFranchi (traité dans la transaction de l'expédition)
      *
      * @param commandeNum la clé de la commande
      * @return la commande mise à jour
@@ -182,7 +228,11 @@ public class CommandeService {
     @Transactional
     public Commande enregistreExpedition(int commandeNum) {
         log.info("Service : Expédition de la commande pour {}", commandeNum);
+        var jfr = new EvenementsJfr.OperationCommande("enregistreExpedition", commandeNum);
+        return operation(jfr, () -> expedier(commandeNum, jfr));
+    }
 
+    private Commande expedier(int commandeNum, EvenementsJfr.OperationCommande jfr) {
         var commande = commandeDao.findById(commandeNum).orElseThrow();
         if (commande.getEnvoyeele() != null) {
             throw new IllegalStateException("Commande déjà expédiée");
@@ -190,11 +240,20 @@ public class CommandeService {
         commande.setEnvoyeele(LocalDate.now());
         commande.getLignes().forEach(ligne -> {
             var medicament = ligne.getMedicament();
+            var stockAvant = medicament.getUnitesEnStock();
             // Les médicaments de la commande ne sont plus en stock
-            medicament.setUnitesEnStock(medicament.getUnitesEnStock() - ligne.getQuantite());
+            medicament.setUnitesEnStock(stockAvant - ligne.getQuantite());
             // Les médicaments de la commande ne sont plus "en commande"
             medicament.setUnitesCommandees(medicament.getUnitesCommandees() - ligne.getQuantite());
+            // Le stock vient de passer sous le niveau de réapprovisionnement
+            if (!medicament.isIndisponible()
+                    && stockAvant > medicament.getNiveauDeReappro()
+                    && medicament.getUnitesEnStock() <= medicament.getNiveauDeReappro()) {
+                evenements.publishEvent(new SeuilReapproFranchi(medicament.getReference(), medicament.getUnitesEnStock()));
+            }
         });
+        lignesParCommande.record(commande.getLignes().size());
+        jfr.lignes = commande.getLignes().size();
         return commande;
     }
 
@@ -214,4 +273,30 @@ public class CommandeService {
     public List<Commande> getCommandeEnCoursPour(String dispensaireCode) {
         return commandeDao.commandesEnCoursPour(dispensaireCode);
     }
+
+    /**
+     * Exécute une opération dans son événement JFR, qui est enregistré même si l'opération échoue
+     */
+    private static <T> T operation(EvenementsJfr.OperationCommande jfr, Supplier<T> corps) {
+        var reussie = false;
+        try {
+            var resultat = corps.get();
+            reussie = true;
+            return resultat;
+        } finally {
+            jfr.terminer(reussie);
+        }
+    }
+
+    private static void operation(EvenementsJfr.OperationCommande jfr, Runnable corps) {
+        operation(jfr, () -> {
+            corps.run();
+            return null;
+        });
+    }
+
+    private static Counter refus(MeterRegistry registry, String raison) {
+        return Counter.builder("pharmacie.commandes.lignes.refusees").tag("raison", raison)
+                .description("Lignes de commande refusées").register(registry);
+    }
 }
@@ -0,0 +1,112 @@
+package pharmacie.service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Détection des médicaments à réapprovisionner au fil des expéditions.
+ * - quand une expédition fait passer un stock sous le niveau de réapprovisionnement,
+ *   une alerte est enregistrée dans la transaction de l'expédition (une seule par médicament)
+ * - les alertes sont traitées en tâche de fond (pharmacie.reappro.alertes.intervalle)
+ *   par ReapprovisionnementService.traiterAlertes
+ * Les modifications de stock faites hors expédition (API REST) ne produisent pas d'alerte :
+ * la demande complète (ReapprovisionnementService.lancerDemandeDevis) peut être planifiée
+ * (pharmacie.reappro.cron) ; grâce au registre des demandes, elle ne demande que les
+ * nouveaux médicaments à réapprovisionner.
+ */
+@Slf4j
+@Component
+public class DetecteurReappro {
+
+    // Violation de clé primaire (H2 et PostgreSQL)
+    private static final String CLE_DUPLIQUEE = "23505";
+    // Insère l'alerte si le médicament n'en a pas (cf. AlerteReappro)
+    private static final String SIGNALER = """
+            INSERT INTO alerte_reappro (medicament, signalee_le)
+            SELECT ?, LOCALTIMESTAMP FROM (VALUES (1)) t
+            WHERE NOT EXISTS (SELECT 1 FROM alerte_reappro WHERE medicament = ?)
+            """;
+
+    private final JdbcTemplate jdbc;
+    private final ReapprovisionnementService reapprovisionnementService;
+    private final boolean actif;
+
+    public DetecteurReappro(JdbcTemplate jdbc, ReapprovisionnementService reapprovisionnementService,
+            @Value("${pharmacie.reappro.alertes.actif:true}") boolean actif) {
+        this.jdbc = jdbc;
+        this.reapprovisionnementService = reapprovisionnementService;
+        this.actif = actif;
+    }
+
+    /**
+     * Enregistre une alerte pour le médicament, s'il n'en a pas déjà une en attente.
+     * Appelé dans la transaction de l'expédition : l'alerte n'existe que si l'expédition
+     * est validée.
+     * Deux expéditions simultanées du même médicament peuvent toutes deux insérer l'alerte :
+     * la seconde insertion viole la clé, elle est annulée jusqu'à un point de sauvegarde
+     * (l'expédition continue, sous PostgreSQL aussi) et ignorée, puisque l'alerte existe.
+     */
+    @EventListener
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void seuilFranchi(SeuilReapproFranchi evenement) {
+        log.info("Le stock du médicament {} est passé à {}, sous le niveau de réapprovisionnement",
+                evenement.medicament(), evenement.stock());
+        // La connexion est celle de la transaction de l'expédition
+        jdbc.execute((ConnectionCallback<Void>) connexion -> {
+            Savepoint point = connexion.setSavepoint();
+            try (PreparedStatement insertion = connexion.prepareStatement(SIGNALER)) {
+                insertion.setInt(1, evenement.medicament());
+                insertion.setInt(2, evenement.medicament());
+                insertion.executeUpdate();
+                connexion.releaseSavepoint(point);
+            } catch (SQLException e) {
+                connexion.rollback(point);
+                if (!CLE_DUPLIQUEE.equals(e.getSQLState())) {
+                    throw e;
+                }
+                log.debug("Alerte déjà enregistrée pour le médicament {}", evenement.medicament());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Passage planifié (pharmacie.reappro.alertes.intervalle, en millisecondes)
+     */
+    @Scheduled(fixedDelayString = "${pharmacie.reappro.alertes.intervalle:5000}", initialDelayString = "${pharmacie.reappro.alertes.intervalle:5000}")
+    public void planifie() {
+        if (actif) {
+            traiter();
+        }
+    }
+
+    /**
+     * Demande complète planifiée (pharmacie.reappro.cron, désactivée par défaut)
+     */
+    @Scheduled(cron = "${pharmacie.reappro.cron:-}")
+    public void demandePlanifiee() {
+        reapprovisionnementService.lancerDemandeDevis()
+                .ifPresent(lot -> log.info("Demande de devis planifiée : lot d'envoi {}", lot));
+    }
+
+    /**
+     * Traite les alertes en attente
+     *
+     * @return le nombre d'alertes traitées
+     */
+    public int traiter() {
+        return reapprovisionnementService.traiterAlertes();
+    }
+}
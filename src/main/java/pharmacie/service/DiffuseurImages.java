@@ -0,0 +1,167 @@
+package pharmacie.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Les images stockées (cf. StockageImages), pour leur diffusion sous /images.
+ * Les images les plus demandées (les "images chaudes") sont projetées en mémoire
+ * (FileChannel.map) : elles sont servies sans accès au système de fichiers.
+ * - le nombre de demandes de chaque image est compté ; toutes les
+ *   pharmacie.images.chaudes.intervalle millisecondes, les plus demandées sont projetées,
+ *   dans la limite de pharmacie.images.chaudes.nombre images et pharmacie.images.chaudes.taille-max octets
+ * - les compteurs sont ensuite divisés par deux : les images qui ne sont plus demandées refroidissent
+ * Une image stockée ne change jamais : une projection n'est jamais périmée.
+ * Métriques : pharmacie.images.diffusion.octets (par mode d'envoi) et pharmacie.images.chaudes.octets.
+ */
+@Slf4j
+@Service
+public class DiffuseurImages {
+
+    /**
+     * Les modes d'envoi d'une image
+     */
+    public enum Envoi {
+        // Depuis la projection en mémoire
+        MEMOIRE,
+        // Par le conteneur, avec sendfile
+        SENDFILE,
+        // Par FileChannel.transferTo
+        TRANSFERT
+    }
+
+    private final Path repertoire;
+    private final int nombreMax;
+    private final long tailleMax;
+    private final ConcurrentHashMap<String, LongAdder> demandes = new ConcurrentHashMap<>();
+    private volatile Map<String, MappedByteBuffer> chaudes = Map.of();
+    private final AtomicLong tailleChaudes = new AtomicLong();
+    private final Map<Envoi, Counter> octets = new HashMap<>();
+
+    public DiffuseurImages(StockageImages stockage, MeterRegistry registry,
+            @Value("${pharmacie.images.chaudes.nombre:64}") int nombreMax,
+            @Value("${pharmacie.images.chaudes.taille-max:64MB}") DataSize tailleMax) {
+        this.repertoire = stockage.getRepertoire();
+        this.nombreMax = nombreMax;
+        this.tailleMax = tailleMax.toBytes();
+        for (Envoi envoi : Envoi.values()) {
+            octets.put(envoi, Counter.builder("pharmacie.images.diffusion.octets").baseUnit("bytes")
+                    .tag("envoi", envoi.name().toLowerCase())
+                    .description("Octets d'images envoyés").register(registry));
+        }
+        Gauge.builder("pharmacie.images.chaudes.octets", tailleChaudes, AtomicLong::get).baseUnit("bytes")
+                .description("Taille des images projetées en mémoire").register(registry);
+    }
+
+    /**
+     * @param chemin le chemin de l'image, relatif au répertoire des images (ex : ab/cd/abcd....png)
+     * @return le fichier de l'image, si elle est stockée
+     */
+    public Optional<Path> fichier(String chemin) {
+        Path fichier = repertoire.resolve(chemin).normalize();
+        if (!fichier.startsWith(repertoire) || fichier.startsWith(repertoire.resolve(StockageImages.PARTIELS))
+                || !Files.isRegularFile(fichier)) {
+            return Optional.empty();
+        }
+        demandes.computeIfAbsent(chemin, c -> new LongAdder()).increment();
+        return Optional.of(fichier);
+    }
+
+    /**
+     * @param chemin le chemin de l'image
+     * @return le contenu de l'image, si elle est projetée en mémoire (une vue propre à l'appelant)
+     */
+    public Optional<ByteBuffer> enMemoire(String chemin) {
+        MappedByteBuffer contenu = chaudes.get(chemin);
+        return contenu != null ? Optional.of(contenu.duplicate()) : Optional.empty();
+    }
+
+    /**
+     * Compte les octets envoyés
+     */
+    public void envoye(Envoi envoi, long nombre) {
+        octets.get(envoi).increment(nombre);
+    }
+
+    /**
+     * Recalcule les images projetées en mémoire (pharmacie.images.chaudes.intervalle, en millisecondes)
+     */
+    @Scheduled(fixedDelayString = "${pharmacie.images.chaudes.intervalle:60000}", initialDelayString = "${pharmacie.images.chaudes.intervalle:60000}")
+    public void recalculer() {
+        if (nombreMax <= 0) {
+            return;
+        }
+        List<Map.Entry<String, Long>> classement = demandes.entrySet().stream()
+                .map(e -> Map.entry(e.getKey(), e.getValue().sum()))
+                .filter(e -> e.getValue() > 0)
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(nombreMax)
+                .toList();
+        Map<String, MappedByteBuffer> anciennes = chaudes;
+        Map<String, MappedByteBuffer> nouvelles = new HashMap<>();
+        long taille = 0;
+        for (Map.Entry<String, Long> image : classement) {
+            MappedByteBuffer contenu = anciennes.get(image.getKey());
+            if (contenu == null) {
+                contenu = projeter(image.getKey(), tailleMax - taille);
+            }
+            if (contenu != null && taille + contenu.capacity() <= tailleMax) {
+                nouvelles.put(image.getKey(), contenu);
+                taille += contenu.capacity();
+            }
+        }
+        // Les projections abandonnées sont libérées par le ramasse-miettes de la JVM
+        chaudes = Map.copyOf(nouvelles);
+        tailleChaudes.set(taille);
+        // Refroidissement ; les images qui ne sont plus demandées sont oubliées
+        demandes.forEach((chemin, compteur) -> {
+            long moitie = compteur.sumThenReset() / 2;
+            if (moitie == 0) {
+                demandes.remove(chemin, compteur);
+            } else {
+                compteur.add(moitie);
+            }
+        });
+        log.debug("{} image(s) chaude(s) projetée(s) en mémoire ({} octets)", nouvelles.size(), taille);
+    }
+
+    private MappedByteBuffer projeter(String chemin, long place) {
+        Path fichier = repertoire.resolve(chemin);
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+            long taille = canal.size();
+            if (taille > place) {
+                return null;
+            }
+            MappedByteBuffer contenu = canal.map(FileChannel.MapMode.READ_ONLY, 0, taille);
+            contenu.load();
+            return contenu;
+        } catch (IOException e) {
+            // Supprimée entre-temps par le ramasse-miettes des images
+            log.debug("Impossible de projeter {} en mémoire", fichier, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package pharmacie.service;
+
+import java.time.Duration;
+
+/**
+ * Un disjoncteur ("circuit breaker") simple.
+ * Après un certain nombre d'échecs consécutifs, le disjoncteur s'ouvre : les appels
+ * sont refusés immédiatement pendant une durée donnée, au lieu d'attendre un service
+ * qui ne répond pas. Ensuite un seul appel d'essai est autorisé (état demi-ouvert) :
+ * s'il réussit le disjoncteur se referme, sinon il s'ouvre à nouveau.
+ */
+public class Disjoncteur {
+
+    public enum Etat {
+        FERME, OUVERT, DEMI_OUVERT
+    }
+
+    private final int seuilEchecs;
+    private final long dureeOuvertureNanos;
+
+    private Etat etat = Etat.FERME;
+    private int echecsConsecutifs = 0;
+    private long ouvertDepuis;
+    private boolean essaiEnCours = false;
+
+    /**
+     * @param seuilEchecs      le nombre d'échecs consécutifs qui ouvre le disjoncteur
+     * @param dureeOuverture   la durée pendant laquelle les appels sont refusés
+     */
+    public Disjoncteur(int seuilEchecs, Duration dureeOuverture) {
+        if (seuilEchecs < 1) {
+            throw new IllegalArgumentException("Le seuil d'échecs doit être positif");
+        }
+        this.seuilEchecs = seuilEchecs;
+        this.dureeOuvertureNanos = dureeOuverture.toNanos();
+    }
+
+    /**
+     * @return true si un appel peut être tenté maintenant
+     */
+    public synchronized boolean autoriser() {
+        switch (etat) {
+            case FERME:
+                return true;
+            case OUVERT:
+                if (System.nanoTime() - ouvertDepuis < dureeOuvertureNanos) {
+                    return false;
+                }
+                etat = Etat.DEMI_OUVERT;
+                essaiEnCours = true;
+                return true;
+            default: // DEMI_OUVERT : un seul essai à la fois
+                if (essaiEnCours) {
+                    return false;
+                }
+                essaiEnCours = true;
+                return true;
+        }
+    }
+
+    /**
+     * Enregistre le succès d'un appel autorisé
+     */
+    public synchronized void succes() {
+        etat = Etat.FERME;
+        echecsConsecutifs = 0;
+        essaiEnCours = false;
+    }
+
+    /**
+     * Enregistre l'échec d'un appel autorisé
+     */
+    public synchronized void echec() {
+        essaiEnCours = false;
+        echecsConsecutifs++;
+        if (etat == Etat.DEMI_OUVERT || echecsConsecutifs >= seuilEchecs) {
+            etat = Etat.OUVERT;
+            ouvertDepuis = System.nanoTime();
+        }
+    }
+
+    /**
+     * Abandonne un appel autorisé dont on ne connaît pas le résultat (appel interrompu) :
+     * en état demi-ouvert, un nouvel essai pourra être autorisé
+     */
+    public synchronized void abandonner() {
+        essaiEnCours = false;
+    }
+
+    public synchronized Etat getEtat() {
+        return etat;
+    }
+}
@@ -0,0 +1,118 @@
+package pharmacie.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import pharmacie.entity.MailSortant;
+
+/**
+ * Vide la file d'envoi des mails en tâche de fond.
+ * Les mails sont réservés par lots (pharmacie.mail.outbox.taille-lot), envoyés en parallèle
+ * par EnvoiMailsService (débit limité, disjoncteur), puis leur état est enregistré.
+ * Métriques publiées :
+ * - pharmacie.mail.outbox.envois (compteur, tag resultat=envoye|echec) : débit d'envoi
+ * - pharmacie.mail.outbox.attente (jauge) : nombre de mails en attente
+ * - pharmacie.mail.outbox.retard (jauge, secondes) : âge du plus ancien mail en attente
+ * Le dispatcheur suppose une seule instance de l'application.
+ */
+@Slf4j
+@Component
+public class DispatcheurMails {
+
+    // Nombre maximum de lots traités à chaque passage
+    private static final int LOTS_MAX_PAR_PASSAGE = 20;
+
+    private final MailOutboxService outbox;
+    private final EnvoiMailsService envoiMailsService;
+    private final boolean actif;
+    private final int tailleLot;
+    private final Duration conservation;
+
+    private final Counter envoyes;
+    private final Counter echecs;
+    private final AtomicLong enAttente = new AtomicLong();
+    private final AtomicLong retardSecondes = new AtomicLong();
+
+    public DispatcheurMails(MailOutboxService outbox, EnvoiMailsService envoiMailsService, MeterRegistry registry,
+            @Value("${pharmacie.mail.outbox.actif:true}") boolean actif,
+            @Value("${pharmacie.mail.outbox.taille-lot:50}") int tailleLot,
+            @Value("${pharmacie.mail.outbox.conservation:7d}") Duration conservation) {
+        this.outbox = outbox;
+        this.envoiMailsService = envoiMailsService;
+        this.actif = actif;
+        this.tailleLot = tailleLot;
+        this.conservation = conservation;
+        this.envoyes = Counter.builder("pharmacie.mail.outbox.envois").tag("resultat", "envoye")
+                .description("Mails envoyés").register(registry);
+        this.echecs = Counter.builder("pharmacie.mail.outbox.envois").tag("resultat", "echec")
+                .description("Tentatives d'envoi en échec").register(registry);
+        Gauge.builder("pharmacie.mail.outbox.attente", enAttente, AtomicLong::get)
+                .description("Mails en attente d'envoi").register(registry);
+        Gauge.builder("pharmacie.mail.outbox.retard", retardSecondes, AtomicLong::get).baseUnit("seconds")
+                .description("Age du plus ancien mail en attente d'envoi").register(registry);
+    }
+
+    /**
+     * Passage planifié du dispatcheur (pharmacie.mail.outbox.intervalle, en millisecondes)
+     */
+    @Scheduled(fixedDelayString = "${pharmacie.mail.outbox.intervalle:5000}", initialDelayString = "${pharmacie.mail.outbox.intervalle:5000}")
+    public void planifie() {
+        if (actif) {
+            traiter();
+        }
+    }
+
+    /**
+     * Envoie les mails en attente, lot par lot
+     *
+     * @return le nombre de mails traités (envoyés ou en échec)
+     */
+    public int traiter() {
+        int traites = 0;
+        try {
+            for (int i = 0; i < LOTS_MAX_PAR_PASSAGE; i++) {
+                List<MailSortant> lot = outbox.reserver(tailleLot);
+                if (lot.isEmpty()) {
+                    break;
+                }
+                List<MailDevis> mails = lot.stream()
+                        .map(m -> new MailDevis(m.getFournisseur(), m.getDestinataire(), m.getSujet(), m.getContenu()))
+                        .toList();
+                List<ResultatEnvoi> resultats = envoiMailsService.envoyer(mails);
+                outbox.enregistrerResultats(lot, resultats);
+                long ok = resultats.stream().filter(ResultatEnvoi::envoye).count();
+                envoyes.increment(ok);
+                echecs.increment(resultats.size() - ok);
+                traites += lot.size();
+                if (lot.size() < tailleLot) {
+                    break;
+                }
+            }
+            int purges = outbox.purger(conservation);
+            if (purges > 0) {
+                log.info("{} mail(s) envoyé(s) supprimé(s) de la file", purges);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            mettreAJourMetriques();
+        }
+        return traites;
+    }
+
+    private void mettreAJourMetriques() {
+        enAttente.set(outbox.enAttente());
+        LocalDateTime plusAncien = outbox.plusAncienEnAttente();
+        retardSecondes.set(plusAncien == null ? 0 : Duration.between(plusAncien, LocalDateTime.now()).toSeconds());
+    }
+}
@@ -0,0 +1,208 @@
+package pharmacie.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Envoi parallèle de mails via MailService.
+ * - chaque envoi s'exécute dans un thread virtuel, le nombre d'envois simultanés
+ *   est limité (pharmacie.mail.envoi.parallelisme)
+ * - le débit d'envoi est limité (pharmacie.mail.envoi.debit, en mails par seconde)
+ * - chaque envoi est limité dans le temps (pharmacie.mail.envoi.delai) : ce délai est un filet
+ *   de sécurité, il doit dépasser celui de MailService (mailgun.delai), sinon un mail accepté
+ *   par le service de mail serait compté en échec, puis renvoyé
+ * - un disjoncteur protège MailService : si le service de mail est en panne,
+ *   les envois échouent immédiatement au lieu de s'accumuler
+ * Si MailService sait envoyer par lots (cf. MailService.supporteEnvoiGroupe), les mails
+ * sont confiés en une fois à MailService.envoyerMails : le débit, le parallélisme et le
+ * disjoncteur s'appliquent alors à l'appel groupé. Les mails que l'appel groupé n'a pas pu
+ * envoyer sont ensuite envoyés un par un, comme ci-dessus.
+ * Un envoi n'est tenté qu'une fois : les nouvelles tentatives sont gérées par
+ * la file d'envoi (cf. DispatcheurMails).
+ * La durée de chaque appel à MailService est mesurée (pharmacie.mail.envoi.duree,
+ * tags mode et resultat), sans l'attente du limiteur de débit.
+ */
+@Slf4j
+@Service
+public class EnvoiMailsService {
+
+    private final MailService mailService;
+    private final Disjoncteur disjoncteur;
+    private final Semaphore envoisSimultanes;
+    private final LimiteurDebit debit;
+    private final long delaiEnvoiMillis;
+    private final MeterRegistry registry;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public EnvoiMailsService(MailService mailService, MeterRegistry registry,
+            @Value("${pharmacie.mail.envoi.parallelisme:8}") int parallelisme,
+            @Value("${pharmacie.mail.envoi.debit:20}") double mailsParSeconde,
+            @Value("${pharmacie.mail.envoi.delai:40s}") Duration delaiEnvoi,
+            @Value("${pharmacie.mail.disjoncteur.seuil:5}") int seuilDisjoncteur,
+            @Value("${pharmacie.mail.disjoncteur.duree-ouverture:30s}") Duration ouvertureDisjoncteur) {
+        this.mailService = mailService;
+        this.registry = registry;
+        this.envoisSimultanes = new Semaphore(parallelisme);
+        this.debit = new LimiteurDebit(mailsParSeconde);
+        this.delaiEnvoiMillis = delaiEnvoi.toMillis();
+        this.disjoncteur = new Disjoncteur(seuilDisjoncteur, ouvertureDisjoncteur);
+    }
+
+    /**
+     * Envoie des mails en parallèle et attend la fin de tous les envois
+     *
+     * @param mails les mails à envoyer
+     * @return le résultat de chaque envoi, dans l'ordre des mails
+     */
+    public List<ResultatEnvoi> envoyer(List<MailDevis> mails) throws InterruptedException {
+        if (mails.isEmpty()) {
+            return List.of();
+        }
+        if (mailService.supporteEnvoiGroupe()) {
+            return envoyerGroupe(mails);
+        }
+        return envoyerUnParUn(mails);
+    }
+
+    /**
+     * @return l'état du disjoncteur qui protège MailService
+     */
+    public Disjoncteur.Etat getEtatDisjoncteur() {
+        return disjoncteur.getEtat();
+    }
+
+    private List<ResultatEnvoi> envoyerUnParUn(List<MailDevis> mails) throws InterruptedException {
+        List<Future<ResultatEnvoi>> envois = new ArrayList<>(mails.size());
+        for (MailDevis mail : mails) {
+            envois.add(executor.submit(() -> envoyer(mail)));
+        }
+        List<ResultatEnvoi> resultats = new ArrayList<>(mails.size());
+        for (Future<ResultatEnvoi> envoi : envois) {
+            try {
+                resultats.add(envoi.get());
+            } catch (ExecutionException e) {
+                resultats.add(ResultatEnvoi.echec(String.valueOf(e.getCause())));
+            }
+        }
+        return resultats;
+    }
+
+    private List<ResultatEnvoi> envoyerGroupe(List<MailDevis> mails) throws InterruptedException {
+        List<ResultatEnvoi> resultats;
+        envoisSimultanes.acquire();
+        try {
+            debit.acquerir();
+            // Après les attentes : un essai autorisé en état demi-ouvert se termine toujours par un résultat
+            if (!disjoncteur.autoriser()) {
+                return Collections.nCopies(mails.size(), ResultatEnvoi.echec("Service de mail indisponible (disjoncteur ouvert)"));
+            }
+            Timer.Sample duree = Timer.start(registry);
+            Future<List<ResultatEnvoi>> envoi = executor.submit(() -> mailService.envoyerMails(mails));
+            try {
+                resultats = new ArrayList<>(envoi.get(delaiEnvoiMillis, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                envoi.cancel(true);
+                disjoncteur.abandonner();
+                throw e;
+            } catch (TimeoutException e) {
+                envoi.cancel(true);
+                disjoncteur.echec();
+                duree.stop(duree("groupe", "echec"));
+                return Collections.nCopies(mails.size(), ResultatEnvoi.echec("Délai d'envoi dépassé"));
+            } catch (ExecutionException e) {
+                disjoncteur.echec();
+                duree.stop(duree("groupe", "echec"));
+                return Collections.nCopies(mails.size(), ResultatEnvoi.echec(String.valueOf(e.getCause().getMessage())));
+            }
+            // Le service de mail répond tant qu'au moins un mail est passé
+            if (resultats.stream().anyMatch(ResultatEnvoi::envoye)) {
+                disjoncteur.succes();
+                duree.stop(duree("groupe", "envoye"));
+            } else {
+                disjoncteur.echec();
+                duree.stop(duree("groupe", "echec"));
+            }
+        } finally {
+            envoisSimultanes.release();
+        }
+        // Seuls les mails non envoyés par l'appel groupé sont renvoyés, un par un
+        List<Integer> echecs = new ArrayList<>();
+        for (int i = 0; i < resultats.size(); i++) {
+            if (!resultats.get(i).envoye()) {
+                echecs.add(i);
+            }
+        }
+        if (!echecs.isEmpty()) {
+            log.warn("{} mail(s) non envoyé(s) par l'appel groupé, envoi un par un", echecs.size());
+            List<ResultatEnvoi> renvois = envoyerUnParUn(echecs.stream().map(mails::get).toList());
+            for (int j = 0; j < echecs.size(); j++) {
+                resultats.set(echecs.get(j), renvois.get(j));
+            }
+        }
+        return resultats;
+    }
+
+    private ResultatEnvoi envoyer(MailDevis mail) throws InterruptedException {
+        envoisSimultanes.acquire();
+        try {
+            debit.acquerir();
+            // Après les attentes : un essai autorisé en état demi-ouvert se termine toujours par un résultat
+            if (!disjoncteur.autoriser()) {
+                return ResultatEnvoi.echec("Service de mail indisponible (disjoncteur ouvert)");
+            }
+            Timer.Sample duree = Timer.start(registry);
+            Future<?> envoi = executor.submit(
+                    () -> mailService.envoyerMail(mail.destinataire(), mail.sujet(), mail.contenu()));
+            try {
+                envoi.get(delaiEnvoiMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                envoi.cancel(true);
+                disjoncteur.abandonner();
+                throw e;
+            } catch (TimeoutException e) {
+                envoi.cancel(true);
+                disjoncteur.echec();
+                duree.stop(duree("unitaire", "echec"));
+                return ResultatEnvoi.echec("Délai d'envoi dépassé");
+            } catch (ExecutionException e) {
+                disjoncteur.echec();
+                duree.stop(duree("unitaire", "echec"));
+                return ResultatEnvoi.echec(String.valueOf(e.getCause().getMessage()));
+            }
+            disjoncteur.succes();
+            duree.stop(duree("unitaire", "envoye"));
+            log.info("Mail envoyé à {} ({})", mail.fournisseur(), mail.destinataire());
+            return ResultatEnvoi.OK;
+        } finally {
+            envoisSimultanes.release();
+        }
+    }
+
+    @PreDestroy
+    void arreter() {
+        executor.shutdownNow();
+    }
+
+    private Timer duree(String mode, String resultat) {
+        return Timer.builder("pharmacie.mail.envoi.duree").tag("mode", mode).tag("resultat", resultat)
+                .publishPercentileHistogram().description("Durée des appels au service de mail").register(registry);
+    }
+}
@@ -0,0 +1,165 @@
+package pharmacie.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Les événements JDK Flight Recorder des opérations métier : dans un enregistrement JFR, ils situent
+ * les pauses (GC, attente de connexions...) par rapport aux commandes, demandes de devis, images
+ * et caches concernés.
+ * Désactivés par défaut : ils sont enregistrés avec le profil src/main/jfr/pharmacie.jfc (cf. README).
+ * Désactivés, ils ne coûtent presque rien : l'événement n'est pas rempli (shouldCommit) et le JIT
+ * supprime son allocation.
+ */
+public final class EvenementsJfr {
+
+    private EvenementsJfr() {
+    }
+
+    @Name("pharmacie.OperationCommande")
+    @Label("Opération sur une commande")
+    @Category({ "Pharmacie", "Commandes" })
+    @Description("Une opération de CommandeService")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class OperationCommande extends Event {
+        @Label("Opération")
+        String operation;
+        @Label("Commande")
+        int commande;
+        @Label("Lignes")
+        @Description("Nombre de lignes de la commande, -1 si inconnu")
+        int lignes = -1;
+        @Label("Réussie")
+        boolean reussie;
+
+        /**
+         * Commence l'opération (begin)
+         */
+        OperationCommande(String operation, int commande) {
+            this.operation = operation;
+            this.commande = commande;
+            begin();
+        }
+
+        /**
+         * Termine l'opération, et l'enregistre si JFR le demande
+         */
+        void terminer(boolean reussie) {
+            end();
+            if (shouldCommit()) {
+                this.reussie = reussie;
+                commit();
+            }
+        }
+    }
+
+    @Name("pharmacie.DemandeDevis")
+    @Label("Demande de devis")
+    @Category({ "Pharmacie", "Réapprovisionnement" })
+    @Description("Une demande de devis de réapprovisionnement (ReapprovisionnementService)")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class DemandeDevis extends Event {
+        @Label("Déclenchement")
+        @Description("demanderDevis, lancerDemandeDevis ou traiterAlertes")
+        String declenchement;
+        @Label("Médicaments")
+        @Description("Nombre de médicaments à réapprovisionner")
+        int medicaments;
+        @Label("Fournisseurs possibles")
+        int fournisseursPossibles;
+        @Label("Fournisseurs sollicités")
+        int fournisseurs;
+        @Label("Mails")
+        @Description("Nombre de mails préparés, enregistrés dans la file d'envoi si la demande aboutit")
+        int mails;
+
+        DemandeDevis(String declenchement) {
+            this.declenchement = declenchement;
+            begin();
+        }
+
+        void besoins(int medicaments, int fournisseursPossibles, int fournisseurs) {
+            this.medicaments = medicaments;
+            this.fournisseursPossibles = fournisseursPossibles;
+            this.fournisseurs = fournisseurs;
+        }
+
+        void terminer(int mails) {
+            end();
+            if (shouldCommit()) {
+                this.mails = mails;
+                commit();
+            }
+        }
+    }
+
+    @Name("pharmacie.EnregistrementImage")
+    @Label("Enregistrement d'une image")
+    @Category({ "Pharmacie", "Images" })
+    @Description("Une image téléversée, enregistrée par StockageImages")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class EnregistrementImage extends Event {
+        @Label("Mode")
+        @Description("multipart ou flux")
+        String mode;
+        @Label("Octets")
+        @DataAmount
+        long octets;
+        @Label("Résultat")
+        @Description("ok, doublon, refus ou erreur")
+        String resultat;
+
+        EnregistrementImage(String mode) {
+            this.mode = mode;
+            begin();
+        }
+
+        void terminer(long octets, String resultat) {
+            end();
+            if (shouldCommit()) {
+                this.octets = octets;
+                this.resultat = resultat;
+                commit();
+            }
+        }
+    }
+
+    @Name("pharmacie.RafraichissementCache")
+    @Label("Rafraîchissement d'un cache")
+    @Category({ "Pharmacie", "Caches" })
+    @Description("Un résultat absent ou expiré, recalculé")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class RafraichissementCache extends Event {
+        @Label("Cache")
+        String cache;
+        @Label("Clé")
+        String cle;
+        @Label("Mis en cache")
+        @Description("Faux si le cache a été invalidé pendant le calcul")
+        boolean misEnCache;
+
+        RafraichissementCache(String cache) {
+            this.cache = cache;
+            begin();
+        }
+
+        void terminer(String cle, boolean misEnCache) {
+            end();
+            if (shouldCommit()) {
+                this.cle = cle;
+                this.misEnCache = misEnCache;
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package pharmacie.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Un gabarit de texte compilé : des textes fixes, séparés par des variables {{nom}}.
+ * Le gabarit est analysé une seule fois ; le rendu ne fait qu'ajouter des morceaux
+ * au tampon fourni, sans recherche ni concaténation intermédiaire.
+ */
+public final class Gabarit {
+
+    /**
+     * Ecrit la valeur d'une variable
+     */
+    @FunctionalInterface
+    public interface Valeurs {
+        /**
+         * @param variable l'indice de la variable, dans l'ordre des noms donnés à la compilation
+         * @param out      le tampon de rendu
+         */
+        void ecrire(int variable, StringBuilder out);
+    }
+
+    private static final String DEBUT = "{{";
+    private static final String FIN = "}}";
+
+    // textes.length == variables.length + 1
+    private final String[] textes;
+    private final int[] variables;
+    private final int longueurFixe;
+
+    private Gabarit(String[] textes, int[] variables) {
+        this.textes = textes;
+        this.variables = variables;
+        int longueur = 0;
+        for (String texte : textes) {
+            longueur += texte.length();
+        }
+        this.longueurFixe = longueur;
+    }
+
+    /**
+     * @param source    le texte du gabarit
+     * @param variables les noms des variables autorisées
+     * @return le gabarit compilé
+     * @throws IllegalArgumentException si le gabarit utilise une variable inconnue
+     *                                  ou n'est pas bien formé
+     */
+    public static Gabarit compiler(String source, List<String> variables) {
+        List<String> textes = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        int position = 0;
+        int debut;
+        while ((debut = source.indexOf(DEBUT, position)) >= 0) {
+            int fin = source.indexOf(FIN, debut);
+            if (fin < 0) {
+                throw new IllegalArgumentException("Variable non fermée à la position " + debut);
+            }
+            String nom = source.substring(debut + DEBUT.length(), fin).strip();
+            int indice = variables.indexOf(nom);
+            if (indice < 0) {
+                throw new IllegalArgumentException("Variable inconnue : " + nom);
+            }
+            textes.add(source.substring(position, debut));
+            indices.add(indice);
+            position = fin + FIN.length();
+        }
+        textes.add(source.substring(position));
+        return new Gabarit(textes.toArray(String[]::new), indices.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Ajoute le rendu du gabarit au tampon
+     */
+    public void rendre(StringBuilder out, Valeurs valeurs) {
+        out.append(textes[0]);
+        for (int i = 0; i < variables.length; i++) {
+            valeurs.ecrire(variables[i], out);
+            out.append(textes[i + 1]);
+        }
+    }
+
+    /**
+     * @return la longueur des textes fixes du gabarit (une estimation basse de la longueur du rendu)
+     */
+    public int getLongueurFixe() {
+        return longueurFixe;
+    }
+}
@@ -0,0 +1,348 @@
+package pharmacie.service;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Génération d'un jeu de données synthétique à l'échelle de la production, pour les benchmarks,
+ * les tests de charge et les tests de régression des requêtes.
+ * - reproductible : le même jeu de données est produit pour la même graine et la même échelle
+ * - réaliste : la popularité des médicaments (et, moins marquée, celle des dispensaires) suit une
+ *   loi de Zipf ; les commandes sont plus nombreuses en hiver et moins le week-end. Les commandes
+ *   des derniers jours ne sont pas encore expédiées, leurs quantités sont réservées
+ *   (Medicament.unitesCommandees) ; quelques médicaments sont indisponibles ou sous leur niveau
+ *   de réapprovisionnement
+ * - insertion par lots JDBC (pharmacie.generation.taille-lot lignes), sans passer par JPA, avec
+ *   H2 comme avec PostgreSQL (reWriteBatchedInserts=true dans l'URL JDBC accélère les lots).
+ *   Seules les commandes sont en mémoire le temps de la génération (leur date)
+ * - les données existantes sont conservées : les clés générées suivent les clés existantes
+ * Chaque lot est validé séparément : une génération interrompue laisse des données partielles.
+ */
+@Slf4j
+@Service
+public class GenerateurDonnees {
+
+    // Commandes saisies sur deux ans, jusqu'à Echelle.fin
+    private static final int JOURS = 730;
+    // Un médicament sur 50 est indisponible, un sur 20 sous son niveau de réapprovisionnement
+    private static final int PART_INDISPONIBLES = 50;
+    private static final int PART_A_REAPPROVISIONNER = 20;
+
+    /**
+     * La taille du jeu de données
+     *
+     * @param lignesMax le nombre maximal de lignes par commande (3 en moyenne si lignesMax >= 10)
+     * @param zipf      l'exposant de la loi de Zipf de la popularité des médicaments (0 : uniforme)
+     * @param fin       la date de la dernière commande
+     */
+    public record Echelle(int categories, int fournisseurs, int dispensaires, int medicaments, int commandes,
+            int lignesMax, double zipf, LocalDate fin) {
+
+        public Echelle {
+            if (categories < 1 || fournisseurs < 0 || dispensaires < 1 || medicaments < 1 || commandes < 0
+                    || lignesMax < 1 || zipf < 0) {
+                throw new IllegalArgumentException("Échelle de génération invalide : " + this);
+            }
+        }
+    }
+
+    /**
+     * Compte rendu d'une génération
+     */
+    public record Rapport(int medicaments, int dispensaires, int commandes, long lignes, long dureeMs) {
+    }
+
+    private final JdbcTemplate jdbc;
+    private final int tailleLot;
+
+    public GenerateurDonnees(JdbcTemplate jdbc, @Value("${pharmacie.generation.taille-lot:1000}") int tailleLot) {
+        this.jdbc = jdbc;
+        this.tailleLot = tailleLot;
+    }
+
+    /**
+     * Génère et insère un jeu de données
+     *
+     * @param echelle la taille du jeu de données
+     * @param graine  la graine du générateur aléatoire
+     * @return le compte rendu de la génération
+     */
+    public Rapport generer(Echelle echelle, long graine) {
+        long debut = System.nanoTime();
+        SplittableRandom aleatoire = new SplittableRandom(graine);
+        int categorie0 = max("code", "Categorie");
+        int fournisseur0 = max("id", "Fournisseur");
+        int medicament0 = max("reference", "Medicament");
+        int commande0 = max("numero", "Commande");
+        int dispensaire0 = jdbc.queryForObject("SELECT COUNT(*) FROM Dispensaire", Integer.class);
+
+        try (Lot lot = new Lot("INSERT INTO Categorie(code, libelle, description) VALUES (?, ?, ?)")) {
+            for (int c = 1; c <= echelle.categories(); c++) {
+                lot.ajouter(categorie0 + c, "Catégorie " + (categorie0 + c), "Catégorie synthétique");
+            }
+        }
+        genererFournisseurs(echelle, aleatoire, fournisseur0, categorie0);
+        genererMedicaments(echelle, aleatoire, medicament0, categorie0);
+        String[][] dispensaires = genererDispensaires(echelle, dispensaire0);
+        int[] reservees = new int[echelle.medicaments() + 1];
+        long lignes = genererCommandes(echelle, aleatoire, commande0, medicament0, dispensaires, reservees);
+
+        // Les quantités des commandes pas encore expédiées sont réservées, et en stock
+        try (Lot lot = new Lot("UPDATE Medicament SET unites_commandees = unites_commandees + ?,"
+                + " unites_en_stock = unites_en_stock + ? WHERE reference = ?")) {
+            for (int m = 1; m <= echelle.medicaments(); m++) {
+                if (reservees[m] > 0) {
+                    lot.ajouter(reservees[m], reservees[m], medicament0 + m);
+                }
+            }
+        }
+        // Les clés sont insérées explicitement : les suivantes sont générées après
+        redemarrer("Categorie", "code", categorie0 + echelle.categories());
+        redemarrer("Fournisseur", "id", fournisseur0 + echelle.fournisseurs());
+        redemarrer("Medicament", "reference", medicament0 + echelle.medicaments());
+        redemarrer("Commande", "numero", commande0 + echelle.commandes());
+
+        Rapport rapport = new Rapport(echelle.medicaments(), echelle.dispensaires(), echelle.commandes(), lignes,
+                (System.nanoTime() - debut) / 1_000_000);
+        log.info("Jeu de données généré (graine {}) : {}", graine, rapport);
+        return rapport;
+    }
+
+    private void genererFournisseurs(Echelle echelle, RandomGenerator aleatoire, int fournisseur0, int categorie0) {
+        try (Lot fournisseurs = new Lot("INSERT INTO Fournisseur(id, nom, adresse_electronique) VALUES (?, ?, ?)");
+                Lot categories = new Lot("INSERT INTO Fournisseur_Categorie(fournisseur_id, categorie_code) VALUES (?, ?)",
+                        fournisseurs)) {
+            for (int f = 1; f <= echelle.fournisseurs(); f++) {
+                int id = fournisseur0 + f;
+                fournisseurs.ajouter(id, "Fournisseur " + id, "fournisseur" + id + "@example.com");
+            }
+            for (int f = 1; f <= echelle.fournisseurs(); f++) {
+                // Chaque catégorie a au moins un fournisseur (s'il y a assez de fournisseurs), et jusqu'à 4 autres
+                int premiere = (f - 1) % echelle.categories();
+                int nombre = Math.min(echelle.categories(), 1 + aleatoire.nextInt(5));
+                for (int k = 0; k < nombre; k++) {
+                    categories.ajouter(fournisseur0 + f, categorie0 + 1 + (premiere + k) % echelle.categories());
+                }
+            }
+        }
+    }
+
+    private void genererMedicaments(Echelle echelle, RandomGenerator aleatoire, int medicament0, int categorie0) {
+        try (Lot lot = new Lot("INSERT INTO Medicament(reference, nom, categorie_code, quantite_par_unite, prix_unitaire,"
+                + " unites_en_stock, unites_commandees, niveau_de_reappro, indisponible) VALUES (?, ?, ?, ?, ?, ?, 0, ?, ?)")) {
+            for (int m = 1; m <= echelle.medicaments(); m++) {
+                int reference = medicament0 + m;
+                // Prix de 0,50 à quelques centaines d'euros, centrés sur une dizaine d'euros
+                long centimes = Math.max(50, Math.round(Math.exp(7 + aleatoire.nextGaussian())));
+                int niveau = 10 + aleatoire.nextInt(40);
+                int stock = aleatoire.nextInt(PART_A_REAPPROVISIONNER) == 0
+                        ? aleatoire.nextInt(niveau + 1)
+                        : niveau + 1 + aleatoire.nextInt(500);
+                lot.ajouter(reference, "Médicament " + reference, categorie0 + 1 + aleatoire.nextInt(echelle.categories()),
+                        (1 + aleatoire.nextInt(4)) * 10 + " comprimés", BigDecimal.valueOf(centimes, 2),
+                        stock, niveau, aleatoire.nextInt(PART_INDISPONIBLES) == 0);
+            }
+        }
+    }
+
+    /**
+     * @return le code, l'adresse et la ville de chaque dispensaire (indice 1 à echelle.dispensaires)
+     */
+    private String[][] genererDispensaires(Echelle echelle, int dispensaire0) {
+        String[][] dispensaires = new String[echelle.dispensaires() + 1][];
+        try (Lot lot = new Lot("INSERT INTO Dispensaire(code, nom, contact, adresse, code_postal, ville, pays)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int d = 1; d <= echelle.dispensaires(); d++) {
+                String code = codeDispensaire(dispensaire0 + d);
+                dispensaires[d] = new String[] { code, d + ", avenue de la Santé", "Ville " + d % 500 };
+                lot.ajouter(code, "Dispensaire " + code, "Contact " + code, dispensaires[d][1],
+                        "%05d".formatted(d % 100_000), dispensaires[d][2], "Sénégal");
+            }
+        }
+        return dispensaires;
+    }
+
+    /**
+     * @param reservees reçoit, par médicament, les quantités des commandes pas encore expédiées
+     * @return le nombre de lignes générées
+     */
+    private long genererCommandes(Echelle echelle, RandomGenerator aleatoire, int commande0, int medicament0,
+            String[][] dispensaires, int[] reservees) {
+        // Les numéros de commande suivent l'ordre de saisie
+        long premierJour = echelle.fin().toEpochDay() - JOURS + 1;
+        int[] jours = new int[echelle.commandes()];
+        for (int c = 0; c < jours.length; c++) {
+            jours[c] = jourDeCommande(aleatoire, premierJour);
+        }
+        Arrays.sort(jours);
+        Zipf medicaments = new Zipf(echelle.medicaments(), echelle.zipf(), aleatoire);
+        Zipf clients = new Zipf(echelle.dispensaires(), echelle.zipf() / 2, aleatoire);
+        int[] commandes = new int[echelle.lignesMax()];
+        long lignes = 0;
+        try (Lot lotCommandes = new Lot("INSERT INTO Commande(numero, dispensaire_code, saisiele, envoyeele, port, remise,"
+                + " destinataire, adresse, ville, pays) VALUES (?, ?, ?, ?, ?, 0, ?, ?, ?, 'Sénégal')");
+                // Une ligne référence sa commande : les commandes sont insérées avant chaque lot de lignes
+                Lot lotLignes = new Lot("INSERT INTO Ligne(commande_numero, medicament_reference, quantite) VALUES (?, ?, ?)",
+                        lotCommandes)) {
+            for (int c = 0; c < jours.length; c++) {
+                int numero = commande0 + c + 1;
+                LocalDate saisie = LocalDate.ofEpochDay(premierJour + jours[c]);
+                LocalDate envoi = saisie.plusDays(1 + aleatoire.nextInt(5));
+                boolean expediee = !envoi.isAfter(echelle.fin());
+                String[] dispensaire = dispensaires[clients.tirer(aleatoire)];
+                lotCommandes.ajouter(numero, dispensaire[0], Date.valueOf(saisie), expediee ? Date.valueOf(envoi) : null,
+                        BigDecimal.valueOf(aleatoire.nextInt(5000), 2), "Dispensaire " + dispensaire[0],
+                        dispensaire[1], dispensaire[2]);
+                // Les lignes d'une commande portent sur des médicaments différents
+                int nombre = 1;
+                while (nombre < echelle.lignesMax() && nombre < echelle.medicaments() && aleatoire.nextInt(3) > 0) {
+                    nombre++;
+                }
+                for (int l = 0; l < nombre; l++) {
+                    int medicament;
+                    do {
+                        medicament = medicaments.tirer(aleatoire);
+                    } while (contient(commandes, l, medicament));
+                    commandes[l] = medicament;
+                    int quantite = 1 + aleatoire.nextInt(20);
+                    if (!expediee) {
+                        reservees[medicament] += quantite;
+                    }
+                    lotLignes.ajouter(numero, medicament0 + medicament, quantite);
+                }
+                lignes += nombre;
+            }
+        }
+        return lignes;
+    }
+
+    /**
+     * @return un jour parmi les JOURS derniers (0 : le plus ancien), plus probable en hiver et en semaine
+     */
+    private static int jourDeCommande(RandomGenerator aleatoire, long premierJour) {
+        while (true) {
+            int jour = aleatoire.nextInt(JOURS);
+            LocalDate date = LocalDate.ofEpochDay(premierJour + jour);
+            // Pic de la saison des grippes mi-janvier, creux mi-juillet
+            double saison = 1 + 0.3 * Math.cos(2 * Math.PI * (date.getDayOfYear() - 15) / 365.25);
+            double semaine = date.getDayOfWeek().compareTo(DayOfWeek.SATURDAY) >= 0 ? 0.3 : 1;
+            if (aleatoire.nextDouble() * 1.3 < saison * semaine) {
+                return jour;
+            }
+        }
+    }
+
+    /**
+     * Code (5 caractères) du n-ième dispensaire généré : S suivi de n en base 36
+     */
+    static String codeDispensaire(int n) {
+        String base36 = Integer.toString(n, 36).toUpperCase();
+        return "S" + "0".repeat(Math.max(0, 4 - base36.length())) + base36;
+    }
+
+    private static boolean contient(int[] valeurs, int taille, int valeur) {
+        for (int i = 0; i < taille; i++) {
+            if (valeurs[i] == valeur) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int max(String colonne, String table) {
+        return jdbc.queryForObject("SELECT COALESCE(MAX(" + colonne + "), 0) FROM " + table, Integer.class);
+    }
+
+    private void redemarrer(String table, String colonne, int derniere) {
+        jdbc.execute("ALTER TABLE " + table + " ALTER COLUMN " + colonne + " RESTART WITH " + (derniere + 1));
+    }
+
+    /**
+     * Tirage selon une loi de Zipf sur 1..n : la probabilité du rang k est proportionnelle à 1/k^exposant.
+     * Les rangs sont attribués au hasard : les éléments les plus populaires ne sont pas les premiers.
+     */
+    static final class Zipf {
+        private final double[] cumul;
+        private final int[] elements;
+
+        Zipf(int n, double exposant, RandomGenerator aleatoire) {
+            cumul = new double[n];
+            double total = 0;
+            for (int k = 1; k <= n; k++) {
+                total += 1 / Math.pow(k, exposant);
+                cumul[k - 1] = total;
+            }
+            elements = new int[n];
+            for (int i = 0; i < n; i++) {
+                elements[i] = i + 1;
+            }
+            // Mélange de Fisher-Yates
+            for (int i = n - 1; i > 0; i--) {
+                int j = aleatoire.nextInt(i + 1);
+                int element = elements[i];
+                elements[i] = elements[j];
+                elements[j] = element;
+            }
+        }
+
+        int tirer(RandomGenerator aleatoire) {
+            double tirage = aleatoire.nextDouble() * cumul[cumul.length - 1];
+            int rang = Arrays.binarySearch(cumul, tirage);
+            return elements[Math.min(rang < 0 ? -rang - 1 : rang, cumul.length - 1)];
+        }
+    }
+
+    /**
+     * Les lignes d'une requête, envoyées par lots de tailleLot ;
+     * les lignes du lot prérequis (s'il y en a un) sont envoyées avant chaque lot
+     */
+    private final class Lot implements AutoCloseable {
+        private final String requete;
+        private final Lot prerequis;
+        private final List<Object[]> lignes = new ArrayList<>();
+
+        Lot(String requete) {
+            this(requete, null);
+        }
+
+        Lot(String requete, Lot prerequis) {
+            this.requete = requete;
+            this.prerequis = prerequis;
+        }
+
+        void ajouter(Object... valeurs) {
+            lignes.add(valeurs);
+            if (lignes.size() >= tailleLot) {
+                vider();
+            }
+        }
+
+        void vider() {
+            if (prerequis != null) {
+                prerequis.vider();
+            }
+            if (!lignes.isEmpty()) {
+                jdbc.batchUpdate(requete, lignes);
+                lignes.clear();
+            }
+        }
+
+        @Override
+        public void close() {
+            vider();
+        }
+    }
+}
@@ -0,0 +1,773 @@
+package pharmacie.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Import en masse du catalogue (catégories, fournisseurs, médicaments, dispensaires)
+ * depuis un fichier CSV ou NDJSON (un objet JSON par ligne).
+ * - le fichier est lu en flux : seul le lot en cours (pharmacie.import.taille-lot lignes) est en mémoire
+ * - les colonnes portent le nom des propriétés des entités (libelle, prixUnitaire...) ; les catégories
+ *   sont désignées par leur libellé (colonne categorie des médicaments, colonne categories des
+ *   fournisseurs, libellés séparés par des '|'), traduit en code par une table chargée au début de l'import
+ * - les lignes sont insérées ou mises à jour (selon le libellé, le nom ou le code) par lots JDBC,
+ *   sans passer par JPA : le contexte de persistance ne grossit pas. Avec PostgreSQL et
+ *   pharmacie.import.copy (profil deploy), chaque lot est chargé par COPY dans une table temporaire,
+ *   puis fusionné dans la table en une requête
+ * - une colonne absente du fichier, ou une valeur vide, ne modifie pas les lignes existantes ;
+ *   une ligne insérée prend alors la valeur par défaut de l'entité
+ * - chaque lot est validé séparément ; si un lot est refusé par la base, ses lignes sont reprises
+ *   une à une pour identifier les lignes en erreur
+ * Un seul import à la fois. Métrique : pharmacie.import.lignes (par entité et résultat).
+ */
+@Slf4j
+@Service
+public class ImportCatalogue {
+
+    /**
+     * Les entités importables
+     */
+    public enum Entite {
+        CATEGORIES, FOURNISSEURS, MEDICAMENTS, DISPENSAIRES;
+
+        /**
+         * @throws IllegalArgumentException si l'entité n'est pas importable
+         */
+        public static Entite depuis(String nom) {
+            try {
+                return valueOf(nom.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Entité non importable : " + nom + ", attendu : "
+                        + Arrays.stream(values()).map(v -> v.name().toLowerCase()).collect(Collectors.joining(", ")));
+            }
+        }
+    }
+
+    /**
+     * Les formats de fichier
+     */
+    public enum Format {
+        CSV, NDJSON;
+
+        /**
+         * @param typeOuFichier le type du contenu (text/csv, application/x-ndjson) ou le nom du fichier
+         * @throws IllegalArgumentException si le format n'est pas reconnu
+         */
+        public static Format depuis(String typeOuFichier) {
+            String nom = typeOuFichier == null ? "" : typeOuFichier.toLowerCase(Locale.ROOT);
+            if (nom.contains("csv")) {
+                return CSV;
+            }
+            if (nom.contains("ndjson") || nom.contains("jsonl") || nom.contains("json-seq")) {
+                return NDJSON;
+            }
+            throw new IllegalArgumentException("Format d'import non reconnu : " + typeOuFichier
+                    + ", attendu : text/csv ou application/x-ndjson");
+        }
+    }
+
+    /**
+     * Une ligne du fichier qui n'a pas été importée
+     */
+    public record ErreurLigne(long ligne, String message) {
+    }
+
+    /**
+     * Le compte rendu d'un import
+     *
+     * @param lues             les lignes lues (hors lignes vides et en-tête)
+     * @param importees        les lignes insérées ou mises à jour
+     * @param erreurs          les lignes en erreur
+     * @param detail           le détail des erreurs, limité à pharmacie.import.erreurs-max
+     * @param lignesParSeconde les lignes lues par seconde
+     * @param copy             true si les lots ont été chargés par COPY
+     */
+    public record Rapport(Entite entite, long lues, long importees, long erreurs, List<ErreurLigne> detail,
+            long dureeMs, long lignesParSeconde, boolean copy) {
+    }
+
+    /**
+     * Une conversion de la valeur d'un champ
+     */
+    private interface Conversion {
+        /**
+         * @param valeur la valeur du champ, non vide
+         * @throws IllegalArgumentException si elle est invalide
+         */
+        Object convertir(String valeur);
+    }
+
+    /**
+     * Une colonne d'une table : la propriété de l'entité, la colonne SQL, son type JDBC,
+     * la conversion du champ et la valeur par défaut (champ vide ou absent d'une ligne insérée)
+     */
+    private record Colonne(String propriete, String sql, int type, Conversion conversion, boolean obligatoire,
+            Object defaut) {
+    }
+
+    private record Table(String nom, List<Colonne> colonnes) {
+        // La clé métier (libelle, nom ou code) est la première colonne
+        Colonne cle() {
+            return colonnes.get(0);
+        }
+    }
+
+    /**
+     * Une ligne convertie, prête à être écrite
+     */
+    private record Enregistrement(long ligne, Object[] valeurs, List<Integer> categories) {
+    }
+
+    /**
+     * Les champs d'une ligne lue, ou l'erreur de lecture
+     */
+    private record Champs(long ligne, Map<String, String> valeurs, String erreur) {
+    }
+
+    private interface Source {
+        /**
+         * @return la prochaine ligne non vide, null à la fin du fichier
+         */
+        Champs lire() throws IOException;
+
+        /**
+         * @return les colonnes du fichier, en minuscules
+         */
+        Set<String> getColonnes();
+    }
+
+    private static final String COLONNE_CATEGORIES = "categories";
+    private static final String COPIE = "import_";
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry registry;
+    private final int tailleLot;
+    private final int erreursMax;
+    private final boolean copy;
+    private final ReentrantLock enCours = new ReentrantLock();
+
+    public ImportCatalogue(JdbcTemplate jdbc, ObjectMapper objectMapper, MeterRegistry registry,
+            @Value("${pharmacie.import.taille-lot:1000}") int tailleLot,
+            @Value("${pharmacie.import.erreurs-max:1000}") int erreursMax,
+            @Value("${pharmacie.import.copy:false}") boolean copy) {
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.registry = registry;
+        this.tailleLot = tailleLot;
+        this.erreursMax = erreursMax;
+        this.copy = copy;
+    }
+
+    /**
+     * Importe un fichier
+     *
+     * @param entite  les entités décrites par le fichier
+     * @param format  le format du fichier
+     * @param fichier le contenu du fichier, lu jusqu'à la fin
+     * @return le compte rendu de l'import
+     * @throws IllegalArgumentException   si l'en-tête du fichier est invalide (colonne inconnue, clé absente)
+     * @throws RejectedExecutionException si un import est déjà en cours
+     */
+    public Rapport importer(Entite entite, Format format, Reader fichier) throws IOException {
+        if (!enCours.tryLock()) {
+            throw new RejectedExecutionException("Un import est déjà en cours");
+        }
+        try {
+            BufferedReader entree = fichier instanceof BufferedReader b ? b : new BufferedReader(fichier, 64 * 1024);
+            Source source = format == Format.CSV ? sourceCsv(entree) : sourceNdjson(entree);
+            Execution execution = new Execution(entite, source);
+            return jdbc.execute((ConnectionCallback<Rapport>) execution::executer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            enCours.unlock();
+        }
+    }
+
+    /**
+     * Un import en cours, sur une connexion
+     */
+    private class Execution {
+        private final Entite entite;
+        private final Source source;
+        private final Table table;
+        private final Set<String> presentes;
+        private final List<ErreurLigne> detail = new ArrayList<>();
+        private final Counter importees;
+        private final Counter rejetees;
+        private final Map<String, Integer> codesCategories = new HashMap<>();
+        private long lues;
+        private long erreurs;
+        private boolean parCopy;
+        private Connection connexion;
+        private boolean postgres;
+        private PreparedStatement fusion;
+        private PreparedStatement liens;
+
+        Execution(Entite entite, Source source) {
+            this.entite = entite;
+            this.source = source;
+            this.table = table(entite, codesCategories);
+            Set<String> proprietes = table.colonnes().stream().map(c -> c.propriete().toLowerCase())
+                    .collect(Collectors.toSet());
+            List<String> inconnues = source.getColonnes().stream()
+                    .filter(c -> !proprietes.contains(c) && !(entite == Entite.FOURNISSEURS && c.equals(COLONNE_CATEGORIES)))
+                    .toList();
+            if (!inconnues.isEmpty()) {
+                throw new IllegalArgumentException("Colonne(s) inconnue(s) : " + inconnues + ", attendu : "
+                        + table.colonnes().stream().map(Colonne::propriete).toList());
+            }
+            if (!source.getColonnes().contains(table.cle().propriete().toLowerCase())) {
+                throw new IllegalArgumentException("La colonne " + table.cle().propriete() + " est obligatoire");
+            }
+            this.presentes = source.getColonnes();
+            this.importees = compteur(entite, "importee");
+            this.rejetees = compteur(entite, "erreur");
+        }
+
+        Rapport executer(Connection connexion) throws SQLException {
+            this.connexion = connexion;
+            long debut = System.nanoTime();
+            boolean autoCommit = connexion.getAutoCommit();
+            postgres = connexion.getMetaData().getDatabaseProductName().equals("PostgreSQL");
+            parCopy = copy && postgres;
+            try (Statement statement = connexion.createStatement();
+                    ResultSet categories = statement.executeQuery("SELECT code, libelle FROM categorie")) {
+                while (categories.next()) {
+                    codesCategories.put(categories.getString(2).toLowerCase(), categories.getInt(1));
+                }
+            }
+            try {
+                if (parCopy) {
+                    try (Statement statement = connexion.createStatement()) {
+                        statement.execute("CREATE TEMP TABLE IF NOT EXISTS " + COPIE + table.nom() + " AS SELECT "
+                                + colonnesSql() + " FROM " + table.nom() + " WITH NO DATA");
+                    }
+                }
+                connexion.setAutoCommit(false);
+                fusion = connexion.prepareStatement(parCopy ? fusionCopie() : postgres ? fusionPostgres() : fusionH2());
+                if (entite == Entite.FOURNISSEURS) {
+                    liens = connexion.prepareStatement("""
+                            INSERT INTO fournisseur_categorie (fournisseur_id, categorie_code)
+                            SELECT f.id, CAST(? AS INTEGER) FROM fournisseur f WHERE f.nom = ?
+                            AND NOT EXISTS (SELECT 1 FROM fournisseur_categorie fc
+                                            WHERE fc.fournisseur_id = f.id AND fc.categorie_code = CAST(? AS INTEGER))
+                            """);
+                }
+                List<Enregistrement> lot = new ArrayList<>(tailleLot);
+                Champs champs;
+                while ((champs = lire()) != null) {
+                    lues++;
+                    if (champs.erreur() != null) {
+                        erreur(champs.ligne(), champs.erreur());
+                        continue;
+                    }
+                    try {
+                        lot.add(convertir(champs));
+                    } catch (IllegalArgumentException e) {
+                        erreur(champs.ligne(), e.getMessage());
+                        continue;
+                    }
+                    if (lot.size() == tailleLot) {
+                        ecrire(lot);
+                        lot.clear();
+                    }
+                }
+                ecrire(lot);
+            } finally {
+                if (fusion != null) {
+                    fusion.close();
+                }
+                if (liens != null) {
+                    liens.close();
+                }
+                connexion.rollback();
+                connexion.setAutoCommit(autoCommit);
+                if (parCopy) {
+                    try (Statement statement = connexion.createStatement()) {
+                        statement.execute("DROP TABLE IF EXISTS " + COPIE + table.nom());
+                    }
+                }
+            }
+            long dureeMs = (System.nanoTime() - debut) / 1_000_000;
+            Rapport rapport = new Rapport(entite, lues, lues - erreurs, erreurs, List.copyOf(detail), dureeMs,
+                    lues * 1000 / Math.max(1, dureeMs), parCopy);
+            log.info("Import des {} : {} ligne(s) lue(s), {} importée(s), {} en erreur, en {} ms ({} lignes/s{})",
+                    entite.name().toLowerCase(), lues, rapport.importees(), erreurs, dureeMs,
+                    rapport.lignesParSeconde(), parCopy ? ", COPY" : "");
+            return rapport;
+        }
+
+        private Champs lire() {
+            try {
+                return source.lire();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private Enregistrement convertir(Champs champs) {
+            List<Colonne> colonnes = table.colonnes();
+            Object[] valeurs = new Object[colonnes.size()];
+            for (int i = 0; i < valeurs.length; i++) {
+                Colonne colonne = colonnes.get(i);
+                String valeur = champs.valeurs().get(colonne.propriete().toLowerCase());
+                if (valeur == null || valeur.isBlank()) {
+                    // Une colonne obligatoire absente du fichier ne peut servir qu'aux mises à jour :
+                    // l'insertion est refusée par la base
+                    if (colonne.obligatoire() && (i == 0 || presentes.contains(colonne.propriete().toLowerCase()))) {
+                        throw new IllegalArgumentException(colonne.propriete() + " : valeur obligatoire");
+                    }
+                    // NULL : la valeur existante est conservée, ou la valeur par défaut insérée (cf. fusionH2)
+                    valeurs[i] = null;
+                } else {
+                    valeurs[i] = colonne.conversion().convertir(valeur.strip());
+                }
+            }
+            List<Integer> categories = List.of();
+            String libelles = champs.valeurs().get(COLONNE_CATEGORIES);
+            if (entite == Entite.FOURNISSEURS && libelles != null && !libelles.isBlank()) {
+                categories = Arrays.stream(libelles.split("\\|")).map(String::strip).filter(l -> !l.isEmpty())
+                        .map(l -> code(codesCategories, l)).toList();
+            }
+            return new Enregistrement(champs.ligne(), valeurs, categories);
+        }
+
+        /**
+         * Écrit un lot en une transaction ; s'il est refusé, reprend ses lignes une à une
+         */
+        private void ecrire(List<Enregistrement> lot) throws SQLException {
+            if (lot.isEmpty()) {
+                return;
+            }
+            try {
+                if (parCopy) {
+                    copier(lot);
+                } else {
+                    for (Enregistrement enregistrement : lot) {
+                        lier(fusion, enregistrement.valeurs());
+                        fusion.addBatch();
+                    }
+                    fusion.executeBatch();
+                }
+                lierCategories(lot);
+                connexion.commit();
+                importees.increment(lot.size());
+                return;
+            } catch (SQLException e) {
+                connexion.rollback();
+                log.debug("Lot refusé ({}), reprise ligne à ligne", e.getMessage());
+            }
+            try (PreparedStatement ligneALigne = connexion.prepareStatement(postgres ? fusionPostgres() : fusionH2())) {
+                for (Enregistrement enregistrement : lot) {
+                    try {
+                        lier(ligneALigne, enregistrement.valeurs());
+                        ligneALigne.executeUpdate();
+                        lierCategories(List.of(enregistrement));
+                        connexion.commit();
+                        importees.increment();
+                    } catch (SQLException e) {
+                        connexion.rollback();
+                        erreur(enregistrement.ligne(), e.getMessage());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Charge le lot dans la table temporaire par COPY, puis le fusionne dans la table
+         */
+        private void copier(List<Enregistrement> lot) throws SQLException {
+            try (Statement statement = connexion.createStatement()) {
+                statement.execute("TRUNCATE " + COPIE + table.nom());
+            }
+            CopyIn copie = connexion.unwrap(PGConnection.class).getCopyAPI()
+                    .copyIn("COPY " + COPIE + table.nom() + " (" + colonnesSql() + ") FROM STDIN WITH (FORMAT csv)");
+            try {
+                StringBuilder ligne = new StringBuilder();
+                for (Enregistrement enregistrement : lot) {
+                    ligne.setLength(0);
+                    for (Object valeur : enregistrement.valeurs()) {
+                        if (!ligne.isEmpty()) {
+                            ligne.append(',');
+                        }
+                        // Un champ vide sans guillemets est NULL
+                        if (valeur != null) {
+                            ligne.append('"').append(valeur.toString().replace("\"", "\"\"")).append('"');
+                        }
+                    }
+                    byte[] octets = ligne.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+                    copie.writeToCopy(octets, 0, octets.length);
+                }
+                copie.endCopy();
+            } finally {
+                if (copie.isActive()) {
+                    copie.cancelCopy();
+                }
+            }
+            fusion.executeUpdate();
+        }
+
+        private void lierCategories(List<Enregistrement> lot) throws SQLException {
+            if (liens == null) {
+                return;
+            }
+            boolean aLier = false;
+            for (Enregistrement enregistrement : lot) {
+                for (Integer code : enregistrement.categories()) {
+                    liens.setInt(1, code);
+                    liens.setObject(2, enregistrement.valeurs()[0], Types.VARCHAR);
+                    liens.setInt(3, code);
+                    liens.addBatch();
+                    aLier = true;
+                }
+            }
+            if (aLier) {
+                liens.executeBatch();
+            }
+        }
+
+        private void lier(PreparedStatement requete, Object[] valeurs) throws SQLException {
+            List<Colonne> colonnes = table.colonnes();
+            for (int i = 0; i < valeurs.length; i++) {
+                requete.setObject(i + 1, valeurs[i], colonnes.get(i).type());
+            }
+            if (postgres) {
+                // Les valeurs mises à jour sont liées une seconde fois (cf. conflit)
+                int parametre = valeurs.length;
+                for (Colonne colonne : misesAJour()) {
+                    int i = colonnes.indexOf(colonne);
+                    requete.setObject(++parametre, valeurs[i], colonne.type());
+                }
+            }
+        }
+
+        private void erreur(long ligne, String message) {
+            erreurs++;
+            rejetees.increment();
+            if (detail.size() < erreursMax) {
+                detail.add(new ErreurLigne(ligne, message));
+            }
+        }
+
+        private String colonnesSql() {
+            return table.colonnes().stream().map(Colonne::sql).collect(Collectors.joining(", "));
+        }
+
+        /**
+         * Les colonnes modifiées sur une ligne existante : celles du fichier, sauf la clé
+         */
+        private List<Colonne> misesAJour() {
+            return table.colonnes().stream().skip(1)
+                    .filter(c -> presentes.contains(c.propriete().toLowerCase())).toList();
+        }
+
+        /**
+         * Une valeur NULL (champ vide ou absent) conserve la valeur existante,
+         * ou insère la valeur par défaut de la colonne
+         */
+        private String fusionH2() {
+            List<Colonne> colonnes = table.colonnes();
+            String cle = table.cle().sql();
+            String miseAJour = misesAJour().stream().map(c -> c.sql() + " = " + conserver(c, "s." + c.sql(), "t"))
+                    .collect(Collectors.joining(", "));
+            return "MERGE INTO " + table.nom() + " t USING (VALUES ("
+                    + colonnes.stream().map(c -> "CAST(? AS " + typeSql(c.type()) + ")").collect(Collectors.joining(", "))
+                    + ")) s(" + colonnesSql() + ") ON t." + cle + " = s." + cle
+                    + (miseAJour.isEmpty() ? "" : " WHEN MATCHED THEN UPDATE SET " + miseAJour)
+                    + " WHEN NOT MATCHED THEN INSERT (" + colonnesSql() + ") VALUES ("
+                    + colonnes.stream().map(c -> defaut(c, "s." + c.sql())).collect(Collectors.joining(", ")) + ")";
+        }
+
+        private String fusionPostgres() {
+            return "INSERT INTO " + table.nom() + " (" + colonnesSql() + ") VALUES ("
+                    + table.colonnes().stream().map(c -> defaut(c, "?")).collect(Collectors.joining(", ")) + ")"
+                    + conflit();
+        }
+
+        /**
+         * La ligne proposée (EXCLUDED) contient les valeurs par défaut : la table temporaire est
+         * fusionnée par une mise à jour des lignes existantes, puis une insertion des nouvelles
+         */
+        private String fusionCopie() {
+            String cle = table.cle().sql();
+            List<Colonne> miseAJour = misesAJour();
+            return (miseAJour.isEmpty() ? "" : "WITH maj AS (UPDATE " + table.nom() + " t SET "
+                    + miseAJour.stream().map(c -> c.sql() + " = " + conserver(c, "s." + c.sql(), "t"))
+                            .collect(Collectors.joining(", "))
+                    + " FROM " + COPIE + table.nom() + " s WHERE t." + cle + " = s." + cle + ") ")
+                    + "INSERT INTO " + table.nom() + " (" + colonnesSql() + ") SELECT "
+                    + table.colonnes().stream().map(c -> defaut(c, "s." + c.sql())).collect(Collectors.joining(", "))
+                    + " FROM " + COPIE + table.nom() + " s WHERE NOT EXISTS (SELECT 1 FROM " + table.nom()
+                    + " t WHERE t." + cle + " = s." + cle + ")";
+        }
+
+        /**
+         * La ligne proposée (EXCLUDED) contient les valeurs par défaut : les valeurs mises à jour
+         * sont liées une seconde fois (cf. lier)
+         */
+        private String conflit() {
+            List<Colonne> miseAJour = misesAJour();
+            return " ON CONFLICT (" + table.cle().sql() + ") DO " + (miseAJour.isEmpty() ? "NOTHING"
+                    : "UPDATE SET " + miseAJour.stream()
+                            .map(c -> c.sql() + " = " + conserver(c, "CAST(? AS " + typeSql(c.type()) + ")", table.nom()))
+                            .collect(Collectors.joining(", ")));
+        }
+    }
+
+    private Source sourceCsv(BufferedReader entree) throws IOException {
+        entree.mark(64 * 1024);
+        String premiere = entree.readLine();
+        entree.reset();
+        LecteurCsv csv = new LecteurCsv(entree, LecteurCsv.separateur(premiere == null ? "" : premiere));
+        List<String> entete = csv.lire();
+        List<String> colonnes = entete == null ? List.of()
+                : entete.stream().map(c -> c.replace("\uFEFF", "").strip().toLowerCase()).toList();
+        Set<String> ensemble = Set.copyOf(colonnes);
+        return new Source() {
+            @Override
+            public Champs lire() throws IOException {
+                while (true) {
+                    long ligne = csv.getLigne();
+                    List<String> champs;
+                    try {
+                        champs = csv.lire();
+                    } catch (IllegalArgumentException e) {
+                        return new Champs(ligne, null, e.getMessage());
+                    }
+                    if (champs == null) {
+                        return null;
+                    }
+                    if (champs.size() == 1 && champs.get(0).isBlank()) {
+                        continue;
+                    }
+                    if (champs.size() != colonnes.size()) {
+                        return new Champs(ligne, null,
+                                champs.size() + " champ(s) au lieu de " + colonnes.size());
+                    }
+                    Map<String, String> valeurs = new HashMap<>();
+                    for (int i = 0; i < champs.size(); i++) {
+                        valeurs.put(colonnes.get(i), champs.get(i));
+                    }
+                    return new Champs(ligne, valeurs, null);
+                }
+            }
+
+            @Override
+            public Set<String> getColonnes() {
+                return ensemble;
+            }
+        };
+    }
+
+    /**
+     * Les colonnes d'un fichier NDJSON sont les propriétés du premier objet
+     */
+    private Source sourceNdjson(BufferedReader entree) throws IOException {
+        return new Source() {
+            private long ligne;
+            private Champs premiere = lireLigne();
+            private final Set<String> colonnes = premiere == null || premiere.valeurs() == null ? Set.of()
+                    : Set.copyOf(premiere.valeurs().keySet());
+
+            @Override
+            public Champs lire() throws IOException {
+                if (premiere != null) {
+                    Champs champs = premiere;
+                    premiere = null;
+                    return champs;
+                }
+                return lireLigne();
+            }
+
+            @Override
+            public Set<String> getColonnes() {
+                return colonnes;
+            }
+
+            private Champs lireLigne() throws IOException {
+                String texte;
+                do {
+                    texte = entree.readLine();
+                    ligne++;
+                    if (texte == null) {
+                        return null;
+                    }
+                } while (texte.isBlank());
+                try {
+                    JsonNode objet = objectMapper.readTree(texte);
+                    if (!objet.isObject()) {
+                        return new Champs(ligne, null, "Un objet JSON est attendu");
+                    }
+                    Map<String, String> valeurs = new LinkedHashMap<>();
+                    for (Map.Entry<String, JsonNode> propriete : objet.properties()) {
+                        JsonNode valeur = propriete.getValue();
+                        if (valeur.isContainerNode()) {
+                            return new Champs(ligne, null, propriete.getKey() + " : une valeur simple est attendue");
+                        }
+                        valeurs.put(propriete.getKey().toLowerCase(), valeur.isNull() ? null : valeur.asText());
+                    }
+                    return new Champs(ligne, valeurs, null);
+                } catch (JsonProcessingException e) {
+                    return new Champs(ligne, null, "JSON invalide : " + e.getOriginalMessage());
+                }
+            }
+        };
+    }
+
+    /**
+     * La description des colonnes d'une entité ; la clé métier en premier
+     */
+    private static Table table(Entite entite, Map<String, Integer> codesCategories) {
+        return switch (entite) {
+            case CATEGORIES -> new Table("categorie", List.of(
+                    texte("libelle", "libelle", 255, true, null),
+                    texte("description", "description", 255, false, null)));
+            case FOURNISSEURS -> new Table("fournisseur", List.of(
+                    texte("nom", "nom", 255, true, null),
+                    new Colonne("adresseElectronique", "adresse_electronique", Types.VARCHAR, v -> {
+                        if (v.length() > 255 || !v.matches("[^@\\s]+@[^@\\s]+")) {
+                            throw new IllegalArgumentException("adresseElectronique : adresse invalide '" + v + "'");
+                        }
+                        return v;
+                    }, true, null)));
+            case MEDICAMENTS -> new Table("medicament", List.of(
+                    texte("nom", "nom", 255, true, null),
+                    new Colonne("categorie", "categorie_code", Types.INTEGER, v -> code(codesCategories, v), true, null),
+                    texte("quantiteParUnite", "quantite_par_unite", 255, false, "Une boîte de 12"),
+                    new Colonne("prixUnitaire", "prix_unitaire", Types.NUMERIC, v -> {
+                        BigDecimal prix = nombre("prixUnitaire", v, BigDecimal::new);
+                        if (prix.signum() < 0) {
+                            throw new IllegalArgumentException("prixUnitaire : valeur négative " + v);
+                        }
+                        return prix;
+                    }, false, BigDecimal.TEN),
+                    entier("unitesEnStock", "unites_en_stock"),
+                    entier("unitesCommandees", "unites_commandees"),
+                    entier("niveauDeReappro", "niveau_de_reappro"),
+                    new Colonne("indisponible", "indisponible", Types.BOOLEAN, v -> switch (v.toLowerCase()) {
+                        case "true", "1", "oui" -> Boolean.TRUE;
+                        case "false", "0", "non" -> Boolean.FALSE;
+                        default -> throw new IllegalArgumentException("indisponible : booléen invalide '" + v + "'");
+                    }, false, Boolean.FALSE),
+                    texte("imageURL", "imageurl", 500, false, null)));
+            case DISPENSAIRES -> new Table("dispensaire", List.of(
+                    texte("code", "code", 5, true, null),
+                    texte("nom", "nom", 40, true, null),
+                    texte("contact", "contact", 30, false, null),
+                    texte("fonction", "fonction", 30, false, null),
+                    texte("adresse", "adresse", 60, false, null),
+                    texte("ville", "ville", 15, false, null),
+                    texte("region", "region", 15, false, null),
+                    texte("codePostal", "code_postal", 10, false, null),
+                    texte("pays", "pays", 15, false, null),
+                    texte("telephone", "telephone", 24, false, null),
+                    texte("fax", "fax", 24, false, null)));
+        };
+    }
+
+    private static Colonne texte(String propriete, String sql, int longueurMax, boolean obligatoire, String defaut) {
+        return new Colonne(propriete, sql, Types.VARCHAR, v -> {
+            if (v.length() > longueurMax) {
+                throw new IllegalArgumentException(propriete + " : plus de " + longueurMax + " caractères");
+            }
+            return v;
+        }, obligatoire, defaut);
+    }
+
+    private static Colonne entier(String propriete, String sql) {
+        return new Colonne(propriete, sql, Types.INTEGER, v -> {
+            int entier = nombre(propriete, v, Integer::valueOf);
+            if (entier < 0) {
+                throw new IllegalArgumentException(propriete + " : valeur négative " + v);
+            }
+            return entier;
+        }, false, 0);
+    }
+
+    private static <T> T nombre(String propriete, String valeur, java.util.function.Function<String, T> conversion) {
+        try {
+            return conversion.apply(valeur);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(propriete + " : nombre invalide '" + valeur + "'");
+        }
+    }
+
+    private static Integer code(Map<String, Integer> codesCategories, String libelle) {
+        Integer code = codesCategories.get(libelle.toLowerCase());
+        if (code == null) {
+            throw new IllegalArgumentException("Catégorie inconnue : " + libelle);
+        }
+        return code;
+    }
+
+    /**
+     * @return l'expression, ou la valeur par défaut de la colonne si elle est NULL
+     */
+    private static String defaut(Colonne colonne, String expression) {
+        Object defaut = colonne.defaut();
+        if (defaut == null) {
+            return expression;
+        }
+        String litteral = defaut instanceof String texte ? "'" + texte.replace("'", "''") + "'" : defaut.toString();
+        return "COALESCE(" + expression + ", " + litteral + ")";
+    }
+
+    /**
+     * @return l'expression, ou la valeur existante de la colonne (dans la table désignée) si elle est NULL
+     */
+    private static String conserver(Colonne colonne, String expression, String existante) {
+        return "COALESCE(" + expression + ", " + existante + "." + colonne.sql() + ")";
+    }
+
+    private static String typeSql(int type) {
+        return switch (type) {
+            case Types.INTEGER -> "INTEGER";
+            case Types.NUMERIC -> "NUMERIC(38, 2)";
+            case Types.BOOLEAN -> "BOOLEAN";
+            default -> "VARCHAR";
+        };
+    }
+
+    private Counter compteur(Entite entite, String resultat) {
+        return Counter.builder("pharmacie.import.lignes").tag("entite", entite.name().toLowerCase())
+                .tag("resultat", resultat).description("Lignes importées dans le catalogue").register(registry);
+    }
+}
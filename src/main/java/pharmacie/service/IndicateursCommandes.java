@@ -0,0 +1,54 @@
+package pharmacie.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import pharmacie.dao.CommandeRepository;
+import pharmacie.dao.MedicamentRepository;
+
+/**
+ * Jauges de l'activité des commandes : commandes en cours (pas encore expédiées) et unités
+ * réservées par ces commandes (somme des Medicament.unitesCommandees).
+ * Elles sont recalculées en base à intervalle régulier (pharmacie.commandes.indicateurs.intervalle),
+ * pas à chaque lecture des métriques : le coût ne dépend pas de la fréquence de collecte.
+ */
+@Component
+public class IndicateursCommandes {
+
+    private final CommandeRepository commandeDao;
+    private final MedicamentRepository medicamentDao;
+    private final boolean actif;
+    private final AtomicLong commandesEnCours = new AtomicLong();
+    private final AtomicLong unitesReservees = new AtomicLong();
+
+    public IndicateursCommandes(CommandeRepository commandeDao, MedicamentRepository medicamentDao, MeterRegistry registry,
+            @Value("${pharmacie.commandes.indicateurs.actif:true}") boolean actif) {
+        this.commandeDao = commandeDao;
+        this.medicamentDao = medicamentDao;
+        this.actif = actif;
+        Gauge.builder("pharmacie.commandes.en-cours", commandesEnCours, AtomicLong::get)
+                .description("Commandes pas encore expédiées").register(registry);
+        Gauge.builder("pharmacie.commandes.unites-reservees", unitesReservees, AtomicLong::get).baseUnit("unites")
+                .description("Unités de médicaments réservées par les commandes en cours").register(registry);
+    }
+
+    /**
+     * Passage planifié (pharmacie.commandes.indicateurs.intervalle, en millisecondes)
+     */
+    @Scheduled(fixedDelayString = "${pharmacie.commandes.indicateurs.intervalle:30000}")
+    public void planifie() {
+        if (actif) {
+            actualiser();
+        }
+    }
+
+    public void actualiser() {
+        commandesEnCours.set(commandeDao.countByEnvoyeeleIsNull());
+        unitesReservees.set(medicamentDao.totalUnitesCommandees());
+    }
+}
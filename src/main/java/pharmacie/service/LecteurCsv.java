@@ -0,0 +1,108 @@
+package pharmacie.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lecture en flux d'un fichier CSV (RFC 4180) : un enregistrement à la fois, sans charger le fichier.
+ * - séparateur ',' ou ';' (celui de la première ligne, cf. separateur)
+ * - champs entre guillemets, avec guillemets doublés ("") et retours à la ligne
+ */
+class LecteurCsv {
+
+    private final Reader entree;
+    private final char separateur;
+    private final StringBuilder champ = new StringBuilder();
+    private int suivant = -2;
+    private long ligne = 1;
+
+    /**
+     * @param entree     le fichier (bufferisé par l'appelant)
+     * @param separateur le séparateur des champs
+     */
+    LecteurCsv(Reader entree, char separateur) {
+        this.entree = entree;
+        this.separateur = separateur;
+    }
+
+    /**
+     * @param entete la première ligne du fichier
+     * @return ';' si elle contient des ';' et pas de ',' (CSV "à la française"), ',' sinon
+     */
+    static char separateur(String entete) {
+        return entete.indexOf(';') >= 0 && entete.indexOf(',') < 0 ? ';' : ',';
+    }
+
+    /**
+     * @return le numéro de la ligne où commence le prochain enregistrement
+     */
+    long getLigne() {
+        return ligne;
+    }
+
+    /**
+     * @return les champs du prochain enregistrement, null à la fin du fichier
+     * @throws IllegalArgumentException si un champ entre guillemets n'est pas fermé
+     */
+    List<String> lire() throws IOException {
+        int c = caractere();
+        if (c < 0) {
+            return null;
+        }
+        List<String> champs = new ArrayList<>();
+        champ.setLength(0);
+        boolean guillemets = false;
+        while (true) {
+            if (guillemets) {
+                if (c < 0) {
+                    throw new IllegalArgumentException("Guillemet non fermé");
+                }
+                if (c == '"') {
+                    if (regarder() == '"') {
+                        champ.append('"');
+                        caractere();
+                    } else {
+                        guillemets = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        ligne++;
+                    }
+                    champ.append((char) c);
+                }
+            } else if (c == '"' && champ.isEmpty()) {
+                guillemets = true;
+            } else if (c == separateur) {
+                champs.add(champ.toString());
+                champ.setLength(0);
+            } else if (c == '\r' || c == '\n' || c < 0) {
+                if (c == '\r' && regarder() == '\n') {
+                    caractere();
+                }
+                if (c >= 0) {
+                    ligne++;
+                }
+                champs.add(champ.toString());
+                return champs;
+            } else {
+                champ.append((char) c);
+            }
+            c = caractere();
+        }
+    }
+
+    private int caractere() throws IOException {
+        int c = suivant != -2 ? suivant : entree.read();
+        suivant = -2;
+        return c;
+    }
+
+    private int regarder() throws IOException {
+        if (suivant == -2) {
+            suivant = entree.read();
+        }
+        return suivant;
+    }
+}
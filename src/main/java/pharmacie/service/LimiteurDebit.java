@@ -0,0 +1,47 @@
+package pharmacie.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limite le débit d'une opération à un nombre d'appels par seconde (seau à jetons).
+ * Les appels au-delà du débit autorisé attendent leur tour.
+ */
+public class LimiteurDebit {
+
+    private final long intervalleNanos;
+    // Date (System.nanoTime) à laquelle le prochain appel est autorisé
+    private long prochain = System.nanoTime();
+
+    /**
+     * @param parSeconde le nombre d'appels autorisés par seconde
+     */
+    public LimiteurDebit(double parSeconde) {
+        if (parSeconde <= 0) {
+            throw new IllegalArgumentException("Le débit doit être positif");
+        }
+        this.intervalleNanos = (long) (TimeUnit.SECONDS.toNanos(1) / parSeconde);
+    }
+
+    /**
+     * Attend que l'appel soit autorisé
+     */
+    public void acquerir() throws InterruptedException {
+        long attente;
+        synchronized (this) {
+            long maintenant = System.nanoTime();
+            // Pas d'accumulation de jetons au-delà d'une seconde d'inactivité
+            prochain = Math.max(prochain, maintenant - TimeUnit.SECONDS.toNanos(1) + intervalleNanos);
+            attente = prochain - maintenant;
+            prochain += intervalleNanos;
+        }
+        while (attente > 0) {
+            long debut = System.nanoTime();
+            LockSupport.parkNanos(attente);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            attente -= System.nanoTime() - debut;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package pharmacie.service;
+
+/**
+ * Un mail de demande de devis, entièrement construit, prêt à être envoyé à un fournisseur.
+ * Construit dans la transaction de lecture, il ne dépend plus des entités JPA.
+ *
+ * @param fournisseur  le nom du fournisseur
+ * @param destinataire l'adresse électronique du fournisseur
+ * @param sujet        le sujet du mail
+ * @param contenu      le corps du mail
+ */
+public record MailDevis(String fournisseur, String destinataire, String sujet, String contenu) {
+}
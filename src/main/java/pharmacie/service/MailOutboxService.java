@@ -0,0 +1,182 @@
+package pharmacie.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.extern.slf4j.Slf4j;
+import pharmacie.dao.MailSortantRepository;
+import pharmacie.entity.EtatMail;
+import pharmacie.entity.MailSortant;
+
+/**
+ * La file d'envoi des mails ("outbox").
+ * Les mails sont enregistrés dans la transaction de l'appelant, et envoyés plus tard
+ * par DispatcheurMails. Chaque mail a son propre état d'envoi.
+ */
+@Slf4j
+@Service
+public class MailOutboxService {
+
+    // Un mail réservé depuis plus longtemps est considéré comme abandonné
+    private static final Duration RESERVATION_MAX = Duration.ofMinutes(5);
+    // Attente maximale entre deux tentatives
+    private static final Duration ATTENTE_MAX = Duration.ofHours(1);
+
+    private final MailSortantRepository mailDao;
+    private final int tentativesMax;
+    private final Duration attenteInitiale;
+
+    public MailOutboxService(MailSortantRepository mailDao,
+            @Value("${pharmacie.mail.envoi.tentatives:5}") int tentativesMax,
+            @Value("${pharmacie.mail.envoi.attente-initiale:30s}") Duration attenteInitiale) {
+        this.mailDao = mailDao;
+        this.tentativesMax = Math.max(1, tentativesMax);
+        this.attenteInitiale = attenteInitiale;
+    }
+
+    /**
+     * Enregistre des mails à envoyer.
+     * Doit être appelé dans la transaction qui décide de l'envoi : les mails ne seront
+     * envoyés que si cette transaction est validée.
+     *
+     * @param mails les mails à envoyer
+     * @return l'identifiant du lot, pour suivre l'état des envois
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public String enregistrer(List<MailDevis> mails) {
+        String lot = UUID.randomUUID().toString();
+        List<MailSortant> sortants = new ArrayList<>(mails.size());
+        for (MailDevis mail : mails) {
+            sortants.add(new MailSortant(lot, mail.fournisseur(), mail.destinataire(), mail.sujet(), mail.contenu()));
+        }
+        mailDao.saveAll(sortants);
+        log.info("Lot {} : {} mail(s) en attente d'envoi", lot, mails.size());
+        return lot;
+    }
+
+    /**
+     * @param lot l'identifiant du lot
+     * @return les mails du lot, avec leur état d'envoi
+     * @throws NoSuchElementException si le lot est inconnu
+     */
+    @Transactional(readOnly = true)
+    public List<MailSortant> getLot(String lot) {
+        List<MailSortant> mails = mailDao.findByLotOrderById(lot);
+        if (mails.isEmpty()) {
+            throw new NoSuchElementException("Lot d'envoi inconnu : " + lot);
+        }
+        return mails;
+    }
+
+    /**
+     * Réserve les prochains mails à envoyer : ils passent à l'état EN_COURS
+     *
+     * @param taille le nombre maximum de mails
+     * @return les mails réservés, les plus anciens d'abord
+     */
+    @Transactional
+    public List<MailSortant> reserver(int taille) {
+        LocalDateTime maintenant = LocalDateTime.now();
+        int liberes = mailDao.liberer(maintenant.minus(RESERVATION_MAX));
+        if (liberes > 0) {
+            log.warn("{} mail(s) réservé(s) depuis plus de {} remis en attente", liberes, RESERVATION_MAX);
+        }
+        List<MailSortant> mails = mailDao.aEnvoyer(maintenant, PageRequest.of(0, taille));
+        for (MailSortant mail : mails) {
+            mail.setEtat(EtatMail.EN_COURS);
+            mail.setTentatives(mail.getTentatives() + 1);
+            mail.setDernierEssai(maintenant);
+        }
+        return mails;
+    }
+
+    /**
+     * Enregistre le résultat de l'envoi des mails réservés.
+     * Un mail en échec est remis en attente avec un délai croissant, ou abandonné
+     * après le nombre maximum de tentatives.
+     *
+     * @param mails      les mails réservés
+     * @param resultats  le résultat de l'envoi de chaque mail, dans le même ordre
+     */
+    @Transactional
+    public void enregistrerResultats(List<MailSortant> mails, List<ResultatEnvoi> resultats) {
+        Map<Long, MailSortant> parId = mailDao.findAllById(mails.stream().map(MailSortant::getId).toList())
+                .stream().collect(Collectors.toMap(MailSortant::getId, Function.identity()));
+        LocalDateTime maintenant = LocalDateTime.now();
+        for (int i = 0; i < mails.size(); i++) {
+            MailSortant mail = parId.get(mails.get(i).getId());
+            ResultatEnvoi resultat = resultats.get(i);
+            if (mail == null) {
+                continue;
+            }
+            if (resultat.envoye()) {
+                mail.setEtat(EtatMail.ENVOYE);
+                mail.setEnvoyeLe(maintenant);
+                mail.setDerniereErreur(null);
+            } else {
+                mail.setDerniereErreur(tronquer(resultat.erreur()));
+                if (mail.getTentatives() >= tentativesMax) {
+                    mail.setEtat(EtatMail.ECHEC);
+                    log.error("Mail {} à {} abandonné après {} tentatives : {}", mail.getId(), mail.getDestinataire(),
+                            mail.getTentatives(), resultat.erreur());
+                } else {
+                    mail.setEtat(EtatMail.EN_ATTENTE);
+                    mail.setProchainEssai(maintenant.plus(attenteAvant(mail.getTentatives())));
+                }
+            }
+        }
+    }
+
+    /**
+     * Supprime les mails envoyés depuis plus longtemps que la durée de conservation
+     *
+     * @param conservation la durée de conservation des mails envoyés
+     * @return le nombre de mails supprimés
+     */
+    @Transactional
+    public int purger(Duration conservation) {
+        return mailDao.purger(LocalDateTime.now().minus(conservation));
+    }
+
+    /**
+     * @return le nombre de mails en attente d'envoi
+     */
+    @Transactional(readOnly = true)
+    public long enAttente() {
+        return mailDao.countByEtat(EtatMail.EN_ATTENTE);
+    }
+
+    /**
+     * @return la date de création du plus ancien mail en attente (null si aucun)
+     */
+    @Transactional(readOnly = true)
+    public LocalDateTime plusAncienEnAttente() {
+        return mailDao.plusAncienEnAttente();
+    }
+
+    // Attente exponentielle : attenteInitiale, puis x2 à chaque tentative
+    private Duration attenteAvant(int tentatives) {
+        Duration attente = attenteInitiale.multipliedBy(1L << Math.min(tentatives - 1, 20));
+        return attente.compareTo(ATTENTE_MAX) > 0 ? ATTENTE_MAX : attente;
+    }
+
+    private static String tronquer(String erreur) {
+        if (erreur == null || erreur.length() <= 500) {
+            return erreur;
+        }
+        return erreur.substring(0, 500);
+    }
+}
@@ -1,5 +1,36 @@
 package pharmacie.service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface MailService {
     void envoyerMail(String destinataire, String sujet, String contenu);
+
+    /**
+     * Envoie plusieurs mails personnalisés.
+     * Par défaut, chaque mail est envoyé séparément par envoyerMail.
+     *
+     * @param mails les mails à envoyer
+     * @return le résultat de chaque envoi, dans l'ordre des mails
+     */
+    default List<ResultatEnvoi> envoyerMails(List<MailDevis> mails) {
+        List<ResultatEnvoi> resultats = new ArrayList<>(mails.size());
+        for (MailDevis mail : mails) {
+            try {
+                envoyerMail(mail.destinataire(), mail.sujet(), mail.contenu());
+                resultats.add(ResultatEnvoi.OK);
+            } catch (RuntimeException e) {
+                resultats.add(ResultatEnvoi.echec(String.valueOf(e.getMessage())));
+            }
+        }
+        return resultats;
+    }
+
+    /**
+     * @return true si envoyerMails envoie les mails par lots (un appel pour plusieurs mails),
+     *         false s'il vaut mieux paralléliser les appels à envoyerMail
+     */
+    default boolean supporteEnvoiGroupe() {
+        return false;
+    }
 }
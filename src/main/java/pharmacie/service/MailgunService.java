@@ -1,51 +1,214 @@
 package pharmacie.service;
 
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 
-import com.mashape.unirest.http.HttpResponse;
-import com.mashape.unirest.http.JsonNode;
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Envoi de mails via l'API HTTP de Mailgun.
+ * Un seul client HTTP est partagé par tous les envois : les connexions sont réutilisées (keep-alive).
+ * envoyerMails envoie les mails par lots : un seul appel à l'API pour plusieurs destinataires,
+ * le contenu propre à chaque destinataire est passé dans les "recipient-variables".
+ * Si l'appel groupé échoue, les mails du lot sont en échec : EnvoiMailsService les renvoie
+ * un par un, en respectant son débit et son parallélisme.
+ */
 @Slf4j
 @Service
 @Primary // On utilise ce service par défaut plutôt que JavaMailSender (ou une autre
          // implémentation de MailService)
 public class MailgunService implements MailService {
 
-    @Value("${mailgun.api-key}")
-    private String apiKey;
+    // Nombre maximum de destinataires par appel à l'API (limite Mailgun : 1000)
+    private static final int LOT_MAX = 1000;
 
-    @Value("${mailgun.domain}")
-    private String domain;
+    private final ObjectMapper objectMapper;
+    private final String fromEmail;
+    private final URI messagesUri;
+    private final String autorisation;
+    private final int tailleLot;
+    private final Duration delai;
+    private final HttpClient client;
 
-    @Value("${mailgun.from-email}")
-    private String fromEmail;
+    public MailgunService(ObjectMapper objectMapper,
+            @Value("${mailgun.api-key}") String apiKey,
+            @Value("${mailgun.domain}") String domain,
+            @Value("${mailgun.from-email}") String fromEmail,
+            @Value("${mailgun.base-url:https://api.mailgun.net/v3}") String baseUrl,
+            @Value("${mailgun.lot.taille:500}") int tailleLot,
+            @Value("${mailgun.delai:30s}") Duration delai) {
+        this.objectMapper = objectMapper;
+        this.fromEmail = fromEmail;
+        this.messagesUri = URI.create(baseUrl.replaceAll("/+$", "") + "/" + domain + "/messages");
+        this.autorisation = "Basic " + Base64.getEncoder()
+                .encodeToString(("api:" + apiKey).getBytes(StandardCharsets.UTF_8));
+        this.tailleLot = Math.clamp(tailleLot, 1, LOT_MAX);
+        this.delai = delai;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(delai)
+                .build();
+    }
 
     @Override
     public void envoyerMail(String destinataire, String sujet, String contenu) {
         log.info("Envoi de mail via Mailgun à {} (Sujet: {})", destinataire, sujet);
         try {
-            JsonNode response = sendSimpleMessage(destinataire, sujet, contenu);
-            log.info("Mailgun Response: {}", response.toString());
-        } catch (UnirestException e) {
+            HttpResponse<String> response = client.send(requete(unSeul(destinataire, sujet, contenu)),
+                    HttpResponse.BodyHandlers.ofString());
+            verifier(response);
+            log.info("Mailgun Response: {}", response.body());
+        } catch (IOException | MailgunException e) {
             log.error("Erreur lors de l'envoi du mail via Mailgun", e);
             throw new RuntimeException("Echec de l'envoi de mail via Mailgun", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Envoi de mail via Mailgun interrompu", e);
+        }
+    }
+
+    @Override
+    public boolean supporteEnvoiGroupe() {
+        return true;
+    }
+
+    @Override
+    public List<ResultatEnvoi> envoyerMails(List<MailDevis> mails) {
+        ResultatEnvoi[] resultats = new ResultatEnvoi[mails.size()];
+        // Les appels groupés partent en parallèle
+        Map<List<Integer>, CompletableFuture<HttpResponse<String>>> appels = new LinkedHashMap<>();
+        for (List<Integer> lot : lots(mails)) {
+            appels.put(lot, envoyer(groupe(mails, lot)));
+        }
+        appels.forEach((lot, appel) -> {
+            String erreur = attendre(appel);
+            if (erreur == null) {
+                log.info("Mailgun : {} mail(s) envoyé(s) en un appel", lot.size());
+            } else {
+                log.warn("Echec de l'envoi groupé de {} mail(s) via Mailgun ({})", lot.size(), erreur);
+            }
+            ResultatEnvoi resultat = erreur == null ? ResultatEnvoi.OK : ResultatEnvoi.echec(erreur);
+            lot.forEach(i -> resultats[i] = resultat);
+        });
+        return List.of(resultats);
+    }
+
+    /**
+     * Découpe les mails en lots envoyables en un appel : même sujet, au plus tailleLot
+     * destinataires, chaque destinataire au plus une fois (les variables sont indexées par adresse)
+     */
+    private List<List<Integer>> lots(List<MailDevis> mails) {
+        Map<String, List<Integer>> parSujet = new LinkedHashMap<>();
+        for (int i = 0; i < mails.size(); i++) {
+            parSujet.computeIfAbsent(mails.get(i).sujet(), s -> new ArrayList<>()).add(i);
+        }
+        List<List<Integer>> lots = new ArrayList<>();
+        for (List<Integer> indices : parSujet.values()) {
+            List<Integer> lot = new ArrayList<>();
+            Set<String> destinataires = new HashSet<>();
+            for (int i : indices) {
+                if (lot.size() == tailleLot || !destinataires.add(mails.get(i).destinataire())) {
+                    lots.add(lot);
+                    lot = new ArrayList<>();
+                    destinataires.clear();
+                    destinataires.add(mails.get(i).destinataire());
+                }
+                lot.add(i);
+            }
+            lots.add(lot);
+        }
+        return lots;
+    }
+
+    private List<Map.Entry<String, String>> groupe(List<MailDevis> mails, List<Integer> lot) {
+        Map<String, Map<String, String>> variables = new LinkedHashMap<>();
+        List<Map.Entry<String, String>> champs = new ArrayList<>();
+        champs.add(Map.entry("from", fromEmail));
+        for (int i : lot) {
+            MailDevis mail = mails.get(i);
+            champs.add(Map.entry("to", mail.destinataire()));
+            variables.put(mail.destinataire(), Map.of("contenu", mail.contenu()));
         }
+        champs.add(Map.entry("subject", mails.get(lot.get(0)).sujet()));
+        champs.add(Map.entry("text", "%recipient.contenu%"));
+        try {
+            champs.add(Map.entry("recipient-variables", objectMapper.writeValueAsString(variables)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        return champs;
+    }
+
+    private List<Map.Entry<String, String>> unSeul(String destinataire, String sujet, String contenu) {
+        return List.of(
+                Map.entry("from", fromEmail),
+                Map.entry("to", destinataire),
+                Map.entry("subject", sujet),
+                Map.entry("text", contenu));
+    }
+
+    private CompletableFuture<HttpResponse<String>> envoyer(List<Map.Entry<String, String>> champs) {
+        return client.sendAsync(requete(champs), HttpResponse.BodyHandlers.ofString())
+                .thenApply(MailgunService::verifier);
+    }
+
+    private HttpRequest requete(List<Map.Entry<String, String>> champs) {
+        String corps = champs.stream()
+                .map(c -> URLEncoder.encode(c.getKey(), StandardCharsets.UTF_8) + "="
+                        + URLEncoder.encode(c.getValue(), StandardCharsets.UTF_8))
+                .collect(Collectors.joining("&"));
+        return HttpRequest.newBuilder(messagesUri)
+                .timeout(delai)
+                .header("Authorization", autorisation)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(corps))
+                .build();
     }
 
-    private JsonNode sendSimpleMessage(String to, String subject, String text) throws UnirestException {
-        HttpResponse<JsonNode> request = Unirest.post("https://api.mailgun.net/v3/" + domain + "/messages")
-                .basicAuth("api", apiKey)
-                .queryString("from", fromEmail)
-                .queryString("to", to)
-                .queryString("subject", subject)
-                .queryString("text", text)
-                .asJson();
-        return request.getBody();
+    /**
+     * @return null si l'appel a réussi, la cause de l'échec sinon
+     */
+    private static String attendre(CompletableFuture<HttpResponse<String>> appel) {
+        try {
+            appel.join();
+            return null;
+        } catch (CompletionException e) {
+            return String.valueOf(e.getCause().getMessage());
+        }
+    }
+
+    private static HttpResponse<String> verifier(HttpResponse<String> response) {
+        if (response.statusCode() / 100 != 2) {
+            throw new MailgunException("Mailgun a répondu " + response.statusCode() + " : " + response.body());
+        }
+        return response;
+    }
+
+    private static class MailgunException extends RuntimeException {
+        MailgunException(String message) {
+            super(message);
+        }
     }
 }
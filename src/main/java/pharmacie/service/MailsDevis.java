@@ -0,0 +1,137 @@
+package pharmacie.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Les gabarits des mails de demande de devis, compilés une fois au démarrage.
+ * Les gabarits sont dans la ressource mails/devis_{langue}.txt (UTF-8), découpée en sections
+ * "--- nom" : sujet, corps, categorie, medicament.
+ * La langue est choisie par pharmacie.mail.devis.langue (les fournisseurs n'ont pas de langue).
+ * Le corps des mails est rendu dans des tampons réutilisés (cf. TamponsTexte).
+ */
+@Slf4j
+@Component
+public class MailsDevis {
+
+    private static final String SECTION = "--- ";
+
+    private final String sujet;
+    private final Gabarit corps;
+    private final Gabarit categorie;
+    private final Gabarit medicament;
+    private final TamponsTexte tampons = new TamponsTexte(16, 4096, 256 * 1024);
+
+    public MailsDevis(@Value("${pharmacie.mail.devis.langue:fr}") String langue) {
+        Map<String, String> sections = lireSections("mails/devis_" + langue + ".txt");
+        // Le sujet est le même pour tous les fournisseurs : les mails sont envoyés par lots de même sujet
+        this.sujet = section(sections, "sujet");
+        this.corps = Gabarit.compiler(section(sections, "corps"), List.of("fournisseur", "categories"));
+        this.categorie = Gabarit.compiler(section(sections, "categorie"), List.of("categorie", "medicaments"));
+        this.medicament = Gabarit.compiler(section(sections, "medicament"), List.of("medicament", "stock", "seuil"));
+        log.info("Gabarits des mails de demande de devis chargés (langue : {})", langue);
+    }
+
+    /**
+     * @return le sujet des mails
+     */
+    public String sujet() {
+        return sujet;
+    }
+
+    /**
+     * Ajoute une ligne de médicament au récapitulatif d'une catégorie
+     */
+    public void medicament(StringBuilder out, String nom, int stock, int seuil) {
+        medicament.rendre(out, (variable, tampon) -> {
+            switch (variable) {
+                case 0 -> tampon.append(nom);
+                case 1 -> tampon.append(stock);
+                default -> tampon.append(seuil);
+            }
+        });
+    }
+
+    /**
+     * @param libelle     le libellé de la catégorie
+     * @param medicaments les lignes de médicaments (cf. medicament)
+     * @return le récapitulatif de la catégorie, tel qu'il apparaît dans le corps des mails
+     */
+    public String categorie(String libelle, CharSequence medicaments) {
+        StringBuilder out = new StringBuilder(categorie.getLongueurFixe() + libelle.length() + medicaments.length());
+        categorie.rendre(out, (variable, tampon) -> tampon.append(variable == 0 ? libelle : medicaments));
+        return out.toString();
+    }
+
+    /**
+     * @param fournisseur     le nom du fournisseur
+     * @param categories      les indices des catégories pour lesquelles il est sollicité
+     * @param recapitulatifs  le récapitulatif de chaque catégorie (cf. categorie)
+     * @return le corps du mail
+     */
+    public String corps(String fournisseur, BitSet categories, IntFunction<? extends CharSequence> recapitulatifs) {
+        StringBuilder out = tampons.prendre();
+        try {
+            corps.rendre(out, (variable, tampon) -> {
+                if (variable == 0) {
+                    tampon.append(fournisseur);
+                } else {
+                    for (int c = categories.nextSetBit(0); c >= 0; c = categories.nextSetBit(c + 1)) {
+                        tampon.append(recapitulatifs.apply(c));
+                    }
+                }
+            });
+            return out.toString();
+        } finally {
+            tampons.liberer(out);
+        }
+    }
+
+    private static Map<String, String> lireSections(String ressource) {
+        String texte;
+        try (InputStream in = MailsDevis.class.getClassLoader().getResourceAsStream(ressource)) {
+            if (in == null) {
+                throw new IllegalStateException("Gabarits de mail introuvables : " + ressource);
+            }
+            texte = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Le texte d'une section : ses lignes, séparées par des fins de ligne
+        Map<String, List<String>> sections = new LinkedHashMap<>();
+        List<String> lignes = null;
+        for (String ligne : texte.lines().toList()) {
+            if (ligne.startsWith(SECTION)) {
+                lignes = new ArrayList<>();
+                sections.put(ligne.substring(SECTION.length()).strip(), lignes);
+            } else if (lignes != null) {
+                lignes.add(ligne);
+            }
+        }
+        Map<String, String> textes = new HashMap<>();
+        sections.forEach((nom, contenu) -> textes.put(nom, String.join("\n", contenu)));
+        return textes;
+    }
+
+    private static String section(Map<String, String> sections, String nom) {
+        String section = sections.get(nom);
+        if (section == null) {
+            throw new IllegalStateException("Section de gabarit manquante : " + nom);
+        }
+        return section;
+    }
+}
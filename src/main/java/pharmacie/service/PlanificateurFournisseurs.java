@@ -0,0 +1,109 @@
+package pharmacie.service;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Choisit les fournisseurs à solliciter pour une demande de devis de réapprovisionnement.
+ * Au lieu d'écrire à tous les fournisseurs des catégories concernées, on cherche peu de
+ * fournisseurs qui couvrent toutes les catégories (couverture d'ensemble pondérée,
+ * algorithme glouton) :
+ * - le poids d'une catégorie est son nombre de médicaments à réapprovisionner
+ * - on choisit à chaque étape le fournisseur qui couvre le plus de poids restant à couvrir
+ * - chaque catégorie doit être couverte par "redondance" fournisseurs (ou par tous ses
+ *   fournisseurs s'il y en a moins), pour pouvoir comparer plusieurs devis
+ * Une redondance inférieure ou égale à 0 sollicite tous les fournisseurs concernés.
+ * Les index catégorie -> fournisseurs et fournisseur -> catégories sont des BitSet.
+ */
+@Component
+public class PlanificateurFournisseurs {
+
+    private final int redondance;
+
+    public PlanificateurFournisseurs(@Value("${pharmacie.reappro.redondance:2}") int redondance) {
+        this.redondance = redondance;
+    }
+
+    /**
+     * Catégories et fournisseurs sont désignés par leur indice (cf. BesoinsReappro)
+     *
+     * @param poids          pour chaque catégorie, le nombre de médicaments à réapprovisionner
+     * @param fournisseursDe pour chaque catégorie, les indices de ses fournisseurs
+     * @param nbFournisseurs le nombre de fournisseurs candidats
+     * @return les indices des fournisseurs retenus, dans l'ordre du choix, avec les indices
+     *         des catégories pour lesquelles chacun est sollicité
+     */
+    public Map<Integer, BitSet> planifier(int[] poids, BitSet[] fournisseursDe, int nbFournisseurs) {
+        int nbCategories = poids.length;
+        // Index fournisseur -> catégories
+        BitSet[] categoriesDe = new BitSet[nbFournisseurs];
+        for (int f = 0; f < nbFournisseurs; f++) {
+            categoriesDe[f] = new BitSet(nbCategories);
+        }
+        for (int c = 0; c < nbCategories; c++) {
+            for (int f = fournisseursDe[c].nextSetBit(0); f >= 0; f = fournisseursDe[c].nextSetBit(f + 1)) {
+                categoriesDe[f].set(c);
+            }
+        }
+        // Nombre de fournisseurs encore à trouver pour chaque catégorie
+        int[] besoin = new int[nbCategories];
+        BitSet aCouvrir = new BitSet(nbCategories);
+        for (int c = 0; c < nbCategories; c++) {
+            int disponibles = fournisseursDe[c].cardinality();
+            besoin[c] = redondance > 0 ? Math.min(redondance, disponibles) : disponibles;
+            if (besoin[c] > 0) {
+                aCouvrir.set(c);
+            }
+        }
+
+        // Glouton "paresseux" : le gain d'un fournisseur ne peut que diminuer au fil des choix,
+        // on ne le recalcule que quand il arrive en tête de la file
+        PriorityQueue<long[]> candidats = new PriorityQueue<>(Math.max(1, nbFournisseurs),
+                (a, b) -> a[0] != b[0] ? Long.compare(b[0], a[0]) : Long.compare(a[1], b[1]));
+        for (int f = 0; f < nbFournisseurs; f++) {
+            long gain = gain(categoriesDe[f], aCouvrir, poids);
+            if (gain > 0) {
+                candidats.add(new long[] { gain, f });
+            }
+        }
+        Map<Integer, BitSet> plan = new LinkedHashMap<>();
+        while (!aCouvrir.isEmpty() && !candidats.isEmpty()) {
+            long[] candidat = candidats.poll();
+            int f = (int) candidat[1];
+            long gain = gain(categoriesDe[f], aCouvrir, poids);
+            if (gain == 0) {
+                continue;
+            }
+            if (!candidats.isEmpty() && gain < candidats.peek()[0]) {
+                candidat[0] = gain;
+                candidats.add(candidat);
+                continue;
+            }
+            // On retient ce fournisseur pour les catégories qu'il couvre encore
+            BitSet attribuees = (BitSet) categoriesDe[f].clone();
+            attribuees.and(aCouvrir);
+            for (int c = attribuees.nextSetBit(0); c >= 0; c = attribuees.nextSetBit(c + 1)) {
+                if (--besoin[c] == 0) {
+                    aCouvrir.clear(c);
+                }
+            }
+            plan.put(f, attribuees);
+        }
+        return plan;
+    }
+
+    private static long gain(BitSet categoriesDuFournisseur, BitSet aCouvrir, int[] poids) {
+        long gain = 0;
+        for (int c = categoriesDuFournisseur.nextSetBit(0); c >= 0; c = categoriesDuFournisseur.nextSetBit(c + 1)) {
+            if (aCouvrir.get(c)) {
+                gain += poids[c];
+            }
+        }
+        return gain;
+    }
+}
@@ -0,0 +1,272 @@
+package pharmacie.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Copie locale des images externes des médicaments (imageURL vers un autre site) :
+ * chaque image est téléchargée une fois, puis servie depuis le disque.
+ * - seuls les hôtes de pharmacie.images.proxy.hotes sont acceptés : le serveur ne doit pas
+ *   servir de relais vers n'importe quelle adresse (réseau interne...) ; les redirections
+ *   ne sont pas suivies pour la même raison
+ * - les copies sont gardées dans un cache disque LRU de taille bornée (cf. CacheFichiers),
+ *   sous l'empreinte SHA-256 de l'URL
+ * - un échec (erreur HTTP, délai dépassé, contenu qui n'est pas une image ou trop gros)
+ *   est mémorisé pendant pharmacie.images.proxy.echec-ttl : l'hôte n'est pas sollicité
+ *   à chaque demande
+ * - les demandes simultanées d'une même image attendent le même téléchargement (cf. SingleFlight)
+ * Métriques : pharmacie.images.proxy (par résultat : cache, telechargement, echec, echec-cache,
+ * coalesce) et pharmacie.images.proxy.cache.octets.
+ */
+@Slf4j
+@Service
+public class ProxyImages {
+
+    /**
+     * Une image externe, copiée localement
+     */
+    public record ImageLocale(Path fichier, TypeImage type) {
+    }
+
+    /**
+     * Une image externe ouverte depuis sa copie locale : le contenu reste lisible même si
+     * la copie est ensuite supprimée du cache (cf. CacheFichiers)
+     */
+    public record ImageOuverte(InputStream contenu, long taille, TypeImage type) {
+    }
+
+    private final Set<String> hotes;
+    private final CacheFichiers cache;
+    private final HttpClient client;
+    private final Duration delai;
+    private final long tailleMax;
+    private final long echecTtlNanos;
+    private final ConcurrentHashMap<String, Long> echecs = new ConcurrentHashMap<>();
+    private final SingleFlight<String, Optional<ImageLocale>> telechargements = new SingleFlight<>();
+    private final Counter servies;
+    private final Counter telechargees;
+    private final Counter echouees;
+    private final Counter echecsEnCache;
+
+    public ProxyImages(MeterRegistry registry,
+            @Value("${pharmacie.images.proxy.hotes:images.unsplash.com}") String hotes,
+            @Value("${pharmacie.images.proxy.repertoire:/tmp/images-proxy}") Path repertoire,
+            @Value("${pharmacie.images.proxy.cache.taille-max:500MB}") DataSize tailleCache,
+            @Value("${pharmacie.images.proxy.delai:5s}") Duration delai,
+            @Value("${spring.servlet.multipart.max-file-size:5MB}") DataSize tailleMax,
+            @Value("${pharmacie.images.proxy.echec-ttl:5m}") Duration echecTtl) {
+        this.hotes = Arrays.stream(hotes.split(",")).map(String::strip).filter(h -> !h.isEmpty())
+                .map(String::toLowerCase).collect(Collectors.toUnmodifiableSet());
+        this.cache = new CacheFichiers(repertoire, tailleCache.toBytes());
+        this.delai = delai;
+        this.tailleMax = tailleMax.toBytes();
+        this.echecTtlNanos = echecTtl.toNanos();
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(delai)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+        this.servies = compteur(registry, "cache", "Images externes servies depuis la copie locale");
+        this.telechargees = compteur(registry, "telechargement", "Images externes téléchargées");
+        this.echouees = compteur(registry, "echec", "Téléchargements d'images externes en échec");
+        this.echecsEnCache = compteur(registry, "echec-cache", "Images externes refusées sans nouvel essai");
+        FunctionCounter.builder("pharmacie.images.proxy", telechargements, SingleFlight::getAttentes)
+                .tag("resultat", "coalesce")
+                .description("Demandes qui ont attendu un téléchargement déjà en cours").register(registry);
+        Gauge.builder("pharmacie.images.proxy.cache.octets", cache, CacheFichiers::getTaille).baseUnit("bytes")
+                .description("Taille des copies locales des images externes").register(registry);
+    }
+
+    /**
+     * @param url l'URL de l'image externe
+     * @return la copie locale de l'image, téléchargée si nécessaire ; vide si elle n'a pas pu
+     *         être téléchargée (ou a échoué récemment)
+     * @throws IllegalArgumentException si l'URL est mal formée, ou désigne un hôte non autorisé
+     */
+    public Optional<ImageLocale> image(String url) {
+        URI uri = verifier(url);
+        String base = base(uri);
+        Optional<ImageLocale> locale = copieLocale(base);
+        if (locale.isPresent()) {
+            servies.increment();
+            return locale;
+        }
+        Long finEchec = echecs.get(base);
+        if (finEchec != null) {
+            if (finEchec - System.nanoTime() > 0) {
+                echecsEnCache.increment();
+                return Optional.empty();
+            }
+            echecs.remove(base, finEchec);
+        }
+        return telechargements.executer(base, () -> copieLocale(base).or(() -> telecharger(uri, base)));
+    }
+
+    /**
+     * Comme image, en ouvrant la copie locale pour l'envoyer
+     *
+     * @param url l'URL de l'image externe
+     * @return la copie locale ouverte, à fermer ; vide si l'image n'a pas pu être téléchargée
+     * @throws IllegalArgumentException si l'URL est mal formée, ou désigne un hôte non autorisé
+     */
+    public Optional<ImageOuverte> ouvrir(String url) throws IOException {
+        try {
+            return ouvrir(image(url));
+        } catch (NoSuchFileException e) {
+            log.debug("Image externe {} supprimée du cache avant son envoi, nouvel essai", e.getFile());
+            return ouvrir(image(url));
+        }
+    }
+
+    private static Optional<ImageOuverte> ouvrir(Optional<ImageLocale> image) throws IOException {
+        if (image.isEmpty()) {
+            return Optional.empty();
+        }
+        SeekableByteChannel canal = Files.newByteChannel(image.get().fichier());
+        return Optional.of(new ImageOuverte(Channels.newInputStream(canal), canal.size(), image.get().type()));
+    }
+
+    private Optional<ImageLocale> telecharger(URI uri, String base) {
+        HttpRequest requete = HttpRequest.newBuilder(uri).timeout(delai).GET().build();
+        try {
+            HttpResponse<InputStream> reponse = client.send(requete, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream corps = reponse.body()) {
+                if (reponse.statusCode() != 200) {
+                    return echec(uri, base, "statut HTTP " + reponse.statusCode());
+                }
+                if (reponse.headers().firstValueAsLong("Content-Length").orElse(0) > tailleMax) {
+                    return echec(uri, base, "image trop grosse");
+                }
+                byte[] entete = corps.readNBytes(TypeImage.TAILLE_ENTETE);
+                Optional<TypeImage> type = TypeImage.detecter(entete, entete.length);
+                if (type.isEmpty()) {
+                    return echec(uri, base, "ce n'est pas une image");
+                }
+                Path temporaire = cache.fichierTemporaire();
+                try {
+                    long taille;
+                    try (OutputStream sortie = Files.newOutputStream(temporaire)) {
+                        sortie.write(entete);
+                        taille = entete.length + copier(corps, sortie, tailleMax - entete.length);
+                    }
+                    if (taille > tailleMax) {
+                        return echec(uri, base, "image trop grosse");
+                    }
+                    Path fichier = cache.ajouter(base + type.get().getExtension(), temporaire);
+                    telechargees.increment();
+                    log.info("Image externe {} copiée localement ({}, {} octets)", uri, type.get().getMimeType(), taille);
+                    return Optional.of(new ImageLocale(fichier, type.get()));
+                } finally {
+                    Files.deleteIfExists(temporaire);
+                }
+            }
+        } catch (IOException e) {
+            return echec(uri, base, e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return echec(uri, base, "interrompu");
+        }
+    }
+
+    /**
+     * Copie au plus max + 1 octets : au-delà, l'image est trop grosse
+     *
+     * @return le nombre d'octets copiés
+     */
+    private static long copier(InputStream entree, OutputStream sortie, long max) throws IOException {
+        byte[] tampon = new byte[64 * 1024];
+        long copies = 0;
+        int lus;
+        while (copies <= max && (lus = entree.read(tampon)) >= 0) {
+            sortie.write(tampon, 0, lus);
+            copies += lus;
+        }
+        return copies;
+    }
+
+    private Optional<ImageLocale> echec(URI uri, String base, String cause) {
+        echouees.increment();
+        long maintenant = System.nanoTime();
+        if (echecs.size() > 10_000) {
+            echecs.values().removeIf(fin -> fin - maintenant <= 0);
+        }
+        echecs.put(base, maintenant + echecTtlNanos);
+        log.warn("Image externe {} indisponible : {}", uri, cause);
+        return Optional.empty();
+    }
+
+    private Optional<ImageLocale> copieLocale(String base) {
+        for (TypeImage type : TypeImage.values()) {
+            Optional<Path> fichier = cache.obtenir(base + type.getExtension());
+            if (fichier.isPresent()) {
+                return Optional.of(new ImageLocale(fichier.get(), type));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private URI verifier(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("URL d'image mal formée : " + url);
+        }
+        String schema = uri.getScheme() != null ? uri.getScheme().toLowerCase() : "";
+        if (!schema.equals("http") && !schema.equals("https")) {
+            throw new IllegalArgumentException("URL d'image non HTTP : " + url);
+        }
+        if (uri.getHost() == null || !hotes.contains(uri.getHost().toLowerCase())) {
+            throw new IllegalArgumentException("Hôte d'image non autorisé : " + uri.getHost());
+        }
+        return uri;
+    }
+
+    /**
+     * @return ab/abcd... : l'empreinte de l'URL, dans un sous-répertoire
+     */
+    private static String base(URI uri) {
+        try {
+            String hex = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(uri.toString().getBytes(StandardCharsets.UTF_8)));
+            return hex.substring(0, 2) + "/" + hex;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Counter compteur(MeterRegistry registry, String resultat, String description) {
+        return Counter.builder("pharmacie.images.proxy").tag("resultat", resultat)
+                .description(description).register(registry);
+    }
+}
@@ -0,0 +1,138 @@
+package pharmacie.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import pharmacie.dao.MedicamentRepository;
+import pharmacie.dao.ReferencesImage;
+
+/**
+ * Supprime les images stockées (cf. StockageImages) qui ne sont plus utilisées par aucun médicament.
+ * Le nombre de références d'une image est le nombre de médicaments dont imageURL la désigne.
+ * Une image n'est supprimée que si elle n'a pas été enregistrée (ou réutilisée) depuis
+ * pharmacie.images.gc.delai-grace : le médicament qui vient de la recevoir n'est peut-être
+ * pas encore enregistré.
+ * Métriques : pharmacie.images.stockees (nombre d'images) et pharmacie.images.stockees.octets,
+ * mesurées à chaque passage.
+ */
+@Slf4j
+@Component
+public class RamasseMiettesImages {
+
+    private final MedicamentRepository medicamentDao;
+    private final Path repertoire;
+    private final Duration delaiGrace;
+    private final boolean actif;
+    private final AtomicLong images = new AtomicLong();
+    private final AtomicLong octets = new AtomicLong();
+
+    public RamasseMiettesImages(MedicamentRepository medicamentDao, StockageImages stockage, MeterRegistry registry,
+            @Value("${pharmacie.images.gc.actif:true}") boolean actif,
+            @Value("${pharmacie.images.gc.delai-grace:1h}") Duration delaiGrace) {
+        this.medicamentDao = medicamentDao;
+        this.repertoire = stockage.getRepertoire();
+        this.actif = actif;
+        this.delaiGrace = delaiGrace;
+        Gauge.builder("pharmacie.images.stockees", images, AtomicLong::get)
+                .description("Images stockées").register(registry);
+        Gauge.builder("pharmacie.images.stockees.octets", octets, AtomicLong::get).baseUnit("bytes")
+                .description("Taille des images stockées").register(registry);
+    }
+
+    /**
+     * Passage planifié (pharmacie.images.gc.intervalle, en millisecondes)
+     */
+    @Scheduled(fixedDelayString = "${pharmacie.images.gc.intervalle:3600000}", initialDelayString = "${pharmacie.images.gc.intervalle:3600000}")
+    public void planifie() {
+        if (actif) {
+            collecter();
+        }
+    }
+
+    /**
+     * Supprime les images sans référence, et les fichiers partiels abandonnés
+     *
+     * @return le nombre de fichiers supprimés
+     */
+    public int collecter() {
+        if (!Files.isDirectory(repertoire)) {
+            return 0;
+        }
+        Map<String, Long> references = medicamentDao.referencesImages(StockageImages.URL).stream()
+                .collect(Collectors.toMap(r -> r.getUrl().substring(StockageImages.URL.length()),
+                        ReferencesImage::getReferences));
+        Instant limite = Instant.now().minus(delaiGrace);
+        int supprimees = 0;
+        long restantes = 0;
+        long taille = 0;
+        List<Path> repertoires = new ArrayList<>();
+        try (Stream<Path> fichiers = Files.walk(repertoire)) {
+            for (Path fichier : (Iterable<Path>) fichiers::iterator) {
+                BasicFileAttributes attributs;
+                try {
+                    attributs = Files.readAttributes(fichier, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    // Un fichier partiel publié entre-temps
+                    continue;
+                }
+                if (attributs.isDirectory()) {
+                    repertoires.add(fichier);
+                } else if (!references.containsKey(relatif(fichier))
+                        && attributs.lastModifiedTime().toInstant().isBefore(limite)
+                        && Files.deleteIfExists(fichier)) {
+                    supprimees++;
+                } else {
+                    restantes++;
+                    taille += attributs.size();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Les sous-répertoires vidés, du plus profond au moins profond
+        Path partiels = repertoire.resolve(StockageImages.PARTIELS);
+        repertoires.stream().filter(r -> !r.equals(repertoire) && !r.equals(partiels)).sorted(Comparator.reverseOrder())
+                .forEach(RamasseMiettesImages::supprimerSiVide);
+        images.set(restantes);
+        octets.set(taille);
+        if (supprimees > 0) {
+            log.info("Ramasse-miettes des images : {} fichier(s) supprimé(s), {} image(s) utilisée(s) par {} médicament(s)",
+                    supprimees, references.size(), references.values().stream().mapToLong(Long::longValue).sum());
+        }
+        return supprimees;
+    }
+
+    private String relatif(Path fichier) {
+        return repertoire.relativize(fichier).toString().replace('\\', '/');
+    }
+
+    private static void supprimerSiVide(Path repertoire) {
+        try (Stream<Path> contenu = Files.list(repertoire)) {
+            if (contenu.findAny().isEmpty()) {
+                Files.deleteIfExists(repertoire);
+            }
+        } catch (IOException e) {
+            // Rempli entre-temps : on le garde
+        }
+    }
+}
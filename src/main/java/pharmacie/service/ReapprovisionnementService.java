@@ -1,127 +1,250 @@
 package pharmacie.service;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
+import pharmacie.dao.AlerteReapproRepository;
+import pharmacie.dao.DemandeReapproRepository;
 import pharmacie.dao.FournisseurRepository;
+import pharmacie.dao.LigneReappro;
 import pharmacie.dao.MedicamentRepository;
-import pharmacie.entity.Categorie;
+import pharmacie.entity.DemandeReappro;
 import pharmacie.entity.Fournisseur;
-import pharmacie.entity.Medicament;
 
 @Slf4j
 @Service
+// Chaque méthode est chronométrée (tags class, method, exception), percentiles calculés par Prometheus
+@Timed(value = "pharmacie.reappro.service", histogram = true, description = "Durée des opérations de réapprovisionnement")
 public class ReapprovisionnementService {
 
+    private static final String AUCUN_MAIL = "Aucun médicament à réapprovisionner ou aucun fournisseur concerné";
+
     private final MedicamentRepository medicamentDao;
     private final FournisseurRepository fournisseurDao;
-    private final MailService mailService;
+    private final AlerteReapproRepository alerteDao;
+    private final DemandeReapproRepository demandeDao;
+    private final MailOutboxService outbox;
+    private final PlanificateurFournisseurs planificateur;
+    private final MailsDevis mailsDevis;
+    private final Duration periodeCalme;
 
     public ReapprovisionnementService(MedicamentRepository medicamentDao,
             FournisseurRepository fournisseurDao,
-            MailService mailService) {
+            AlerteReapproRepository alerteDao,
+            DemandeReapproRepository demandeDao,
+            MailOutboxService outbox,
+            PlanificateurFournisseurs planificateur,
+            MailsDevis mailsDevis,
+            @Value("${pharmacie.reappro.periode-calme:7d}") Duration periodeCalme) {
         this.medicamentDao = medicamentDao;
         this.fournisseurDao = fournisseurDao;
-        this.mailService = mailService;
+        this.alerteDao = alerteDao;
+        this.demandeDao = demandeDao;
+        this.outbox = outbox;
+        this.planificateur = planificateur;
+        this.mailsDevis = mailsDevis;
+        this.periodeCalme = periodeCalme;
     }
 
     /**
      * Service métier : Demande de devis de réapprovisionnement.
      * 1. Détermine les médicaments à réapprovisionner (unitesEnStock <=
-     * niveauDeReappro)
+     * niveauDeReappro) qui n'ont pas de demande en cours (cf. DemandeReappro)
      * 2. Trouve les fournisseurs susceptibles de fournir ces médicaments (via les
-     * catégories)
-     * 3. Envoie un mail personnalisé à chaque fournisseur, récapitulant catégorie
+     * catégories), et choisit ceux à solliciter (cf. PlanificateurFournisseurs)
+     * 3. Enregistre un mail personnalisé pour chaque fournisseur, récapitulant catégorie
      * par catégorie
      * les médicaments à réapprovisionner
+     * Les mails sont enregistrés dans la file d'envoi, dans la même transaction :
+     * ils sont envoyés ensuite par DispatcheurMails, indépendamment de cette requête.
+     * Cette demande parcourt tout le catalogue : les alertes en attente sont couvertes,
+     * elles sont supprimées. Elles sont marquées avant le parcours : celles signalées
+     * pendant le parcours, ou prises en charge par traiterAlertes, sont conservées.
+     * Chaque médicament demandé à un fournisseur est inscrit au registre des demandes :
+     * il ne lui sera pas redemandé avant la fin de la période de calme.
      *
-     * @return un résumé des mails envoyés
+     * @return un résumé des mails enregistrés
      */
-    @Transactional(readOnly = true)
+    @Transactional
     public List<String> demanderDevis() {
-        // 1. Trouver les médicaments à réapprovisionner
-        List<Medicament> medicamentsAReappro = medicamentDao.aReaprovisionner();
-
-        if (medicamentsAReappro.isEmpty()) {
-            log.info("Aucun médicament à réapprovisionner");
-            return List.of("Aucun médicament à réapprovisionner");
-        }
-
-        log.info("{} médicament(s) à réapprovisionner", medicamentsAReappro.size());
-
-        // Grouper les médicaments par catégorie
-        Map<Categorie, List<Medicament>> parCategorie = medicamentsAReappro.stream()
-                .collect(Collectors.groupingBy(Medicament::getCategorie));
-
-        // Récupérer les références des médicaments à réapprovisionner
-        List<Integer> references = medicamentsAReappro.stream()
-                .map(Medicament::getReference)
-                .toList();
-
-        // 2. Trouver les fournisseurs concernés (avec leurs catégories pré-chargées)
-        List<Fournisseur> fournisseurs = fournisseurDao.fournisseursAvecCategoriesPourMedicaments(references);
-
-        if (fournisseurs.isEmpty()) {
-            log.warn("Aucun fournisseur trouvé pour les médicaments à réapprovisionner");
-            return List.of("Aucun fournisseur trouvé pour les médicaments à réapprovisionner");
+        // Événement JFR (cf. EvenementsJfr), enregistré même en cas d'échec
+        var jfr = new EvenementsJfr.DemandeDevis("demanderDevis");
+        List<MailDevis> mails = List.of();
+        try {
+            String traitement = UUID.randomUUID().toString();
+            alerteDao.marquer(traitement);
+            mails = preparerDemandes(jfr);
+            alerteDao.supprimer(traitement);
+            if (mails.isEmpty()) {
+                return List.of(AUCUN_MAIL);
+            }
+            outbox.enregistrer(mails);
+            return mails.stream()
+                    .map(mail -> "Demande de devis enregistrée pour " + mail.fournisseur() + " (" + mail.destinataire() + ")")
+                    .toList();
+        } finally {
+            jfr.terminer(mails.size());
         }
+    }
 
-        // 3. Envoyer un mail à chaque fournisseur
-        List<String> resultats = new ArrayList<>();
-        for (Fournisseur fournisseur : fournisseurs) {
-            String contenuMail = construireMail(fournisseur, parCategorie);
-            envoyerMail(fournisseur, contenuMail);
-            resultats.add("Mail envoyé à " + fournisseur.getNom() + " (" + fournisseur.getAdresseElectronique() + ")");
-            log.info("Mail envoyé à {} ({})", fournisseur.getNom(), fournisseur.getAdresseElectronique());
+    /**
+     * Service métier : Lance la demande de devis de réapprovisionnement.
+     * Les mails sont enregistrés dans la file d'envoi, dans la même transaction.
+     * Les alertes en attente sont supprimées, comme pour demanderDevis.
+     *
+     * @return l'identifiant du lot d'envoi, pour suivre l'état des envois
+     *         (vide si aucun mail n'est à envoyer)
+     */
+    @Transactional
+    public Optional<String> lancerDemandeDevis() {
+        var jfr = new EvenementsJfr.DemandeDevis("lancerDemandeDevis");
+        List<MailDevis> mails = List.of();
+        try {
+            String traitement = UUID.randomUUID().toString();
+            alerteDao.marquer(traitement);
+            mails = preparerDemandes(jfr);
+            alerteDao.supprimer(traitement);
+            if (mails.isEmpty()) {
+                return Optional.empty();
+            }
+            return Optional.of(outbox.enregistrer(mails));
+        } finally {
+            jfr.terminer(mails.size());
         }
-
-        return resultats;
     }
 
     /**
-     * Construit le contenu du mail pour un fournisseur donné.
-     * Récapitule catégorie par catégorie les médicaments à réapprovisionner
-     * que ce fournisseur est susceptible de fournir.
+     * Service métier : Traite les alertes de réapprovisionnement en attente
+     * (cf. DetecteurReappro). Seuls les médicaments signalés sont relus : le coût dépend
+     * du nombre d'alertes, pas de la taille du catalogue.
+     * Les alertes sont d'abord marquées : celles signalées pendant le traitement
+     * seront traitées au passage suivant.
+     * Les mails sont enregistrés dans la file d'envoi et les alertes supprimées,
+     * dans la même transaction.
+     *
+     * @return le nombre d'alertes traitées
      */
-    private String construireMail(Fournisseur fournisseur, Map<Categorie, List<Medicament>> parCategorie) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Bonjour ").append(fournisseur.getNom()).append(",\n\n");
-        sb.append("Nous vous contactons pour vous demander un devis de réapprovisionnement ");
-        sb.append("pour les médicaments suivants :\n\n");
-
-        // Pour chaque catégorie que ce fournisseur peut fournir
-        for (Categorie categorie : fournisseur.getCategories()) {
-            List<Medicament> medicaments = parCategorie.get(categorie);
-            if (medicaments != null && !medicaments.isEmpty()) {
-                sb.append("=== Catégorie : ").append(categorie.getLibelle()).append(" ===\n");
-                for (Medicament m : medicaments) {
-                    sb.append("  - ").append(m.getNom())
-                            .append(" (stock actuel: ").append(m.getUnitesEnStock())
-                            .append(", seuil: ").append(m.getNiveauDeReappro())
-                            .append(")\n");
-                }
-                sb.append("\n");
+    @Transactional
+    public int traiterAlertes() {
+        String traitement = UUID.randomUUID().toString();
+        int alertes = alerteDao.marquer(traitement);
+        if (alertes == 0) {
+            return 0;
+        }
+        var jfr = new EvenementsJfr.DemandeDevis("traiterAlertes");
+        List<MailDevis> mails = List.of();
+        try {
+            mettreAJourRegistre();
+            mails = preparerDemandes(medicamentDao.lignesReapproSignalees(traitement), jfr);
+            if (!mails.isEmpty()) {
+                outbox.enregistrer(mails);
             }
+            alerteDao.supprimer(traitement);
+        } finally {
+            jfr.terminer(mails.size());
         }
+        log.info("{} alerte(s) de réapprovisionnement traitée(s), {} fournisseur(s) sollicité(s)",
+                alertes, mails.size());
+        return alertes;
+    }
+
+    /**
+     * Service métier : Enregistre la réponse d'un fournisseur à ses demandes de devis.
+     * La période de calme repart de la date de la réponse.
+     *
+     * @param fournisseurId l'id du fournisseur
+     * @param medicaments   les références des médicaments concernés (toutes les demandes
+     *                      ouvertes du fournisseur si vide)
+     * @return le nombre de demandes marquées comme répondues
+     * @throws java.util.NoSuchElementException si le fournisseur n'existe pas
+     */
+    @Transactional
+    public int enregistrerReponse(int fournisseurId, List<Integer> medicaments) {
+        fournisseurDao.findById(fournisseurId).orElseThrow();
+        LocalDateTime maintenant = LocalDateTime.now();
+        int repondues = medicaments == null || medicaments.isEmpty()
+                ? demandeDao.repondre(fournisseurId, maintenant)
+                : demandeDao.repondre(fournisseurId, medicaments, maintenant);
+        log.info("Fournisseur {} : {} demande(s) de devis répondue(s)", fournisseurId, repondues);
+        return repondues;
+    }
 
-        sb.append("Merci de nous transmettre votre devis dans les meilleurs délais.\n\n");
-        sb.append("Cordialement,\n");
-        sb.append("La Pharmacie");
+    /**
+     * Construit les mails de demande de devis pour les médicaments à réapprovisionner
+     * qui n'ont pas de demande en cours.
+     *
+     * @return les mails à envoyer, un par fournisseur (liste vide si rien à
+     *         réapprovisionner)
+     */
+    private List<MailDevis> preparerDemandes(EvenementsJfr.DemandeDevis jfr) {
+        mettreAJourRegistre();
+        return preparerDemandes(medicamentDao.lignesReappro(), jfr);
+    }
 
-        return sb.toString();
+    /**
+     * Construit les mails de demande de devis, et inscrit les demandes au registre.
+     *
+     * @param lignes les médicaments à réapprovisionner et leurs fournisseurs possibles,
+     *               triés par catégorie, médicament et fournisseur
+     * @param jfr    l'événement JFR de la demande, qui reçoit le nombre de médicaments et de fournisseurs
+     */
+    private List<MailDevis> preparerDemandes(Stream<LigneReappro> lignes, EvenementsJfr.DemandeDevis jfr) {
+        // 1. et 2. Lire en une passe les médicaments à réapprovisionner et leurs fournisseurs
+        BesoinsReappro besoins;
+        try (lignes) {
+            besoins = BesoinsReappro.lire(lignes, mailsDevis);
+        }
+        if (besoins.estVide()) {
+            log.info("Aucun nouveau médicament à réapprovisionner");
+            return List.of();
+        }
+        log.info("{} médicament(s) à réapprovisionner", besoins.nbMedicaments());
+
+        // 3. Choisir les fournisseurs à solliciter, et pour quelles catégories
+        Map<Integer, BitSet> plan = planificateur.planifier(besoins.poids(), besoins.fournisseursDe(),
+                besoins.nbFournisseurs());
+        log.info("{} fournisseur(s) sollicité(s) sur {} possible(s)", plan.size(), besoins.nbFournisseurs());
+        jfr.besoins(besoins.nbMedicaments(), besoins.nbFournisseurs(), plan.size());
+
+        // 4. Construire un mail pour chaque fournisseur retenu, et inscrire les demandes au registre
+        List<MailDevis> mails = new ArrayList<>(plan.size());
+        List<DemandeReappro> demandes = new ArrayList<>();
+        plan.forEach((f, categories) -> {
+            LigneReappro fournisseur = besoins.fournisseur(f);
+            mails.add(new MailDevis(fournisseur.fournisseurNom(), fournisseur.fournisseurEmail(),
+                    mailsDevis.sujet(),
+                    mailsDevis.corps(fournisseur.fournisseurNom(), categories, besoins::recapitulatif)));
+            Fournisseur reference = fournisseurDao.getReferenceById(fournisseur.fournisseurId());
+            categories.stream().forEach(c -> besoins.medicaments(c).forEach(medicament ->
+                    demandes.add(new DemandeReappro(medicamentDao.getReferenceById(medicament), reference))));
+        });
+        demandeDao.saveAll(demandes);
+        return mails;
     }
 
     /**
-     * Envoie un mail à un fournisseur via MailService.
+     * Retire du registre les demandes dont la période de calme est écoulée,
+     * et celles des médicaments qui ne sont plus à réapprovisionner
      */
-    private void envoyerMail(Fournisseur fournisseur, String contenu) {
-        mailService.envoyerMail(fournisseur.getAdresseElectronique(), "Demande de devis de réapprovisionnement",
-                contenu);
+    private void mettreAJourRegistre() {
+        int expirees = demandeDao.purgerExpirees(LocalDateTime.now().minus(periodeCalme));
+        int closes = demandeDao.purgerReapprovisionnes();
+        if (expirees + closes > 0) {
+            log.info("Registre des demandes : {} demande(s) expirée(s), {} demande(s) de médicaments réapprovisionnés",
+                    expirees, closes);
+        }
     }
 }
@@ -0,0 +1,15 @@
+package pharmacie.service;
+
+/**
+ * Le résultat de l'envoi d'un mail
+ *
+ * @param envoye true si le mail a été envoyé
+ * @param erreur la cause de l'échec (null si envoyé)
+ */
+public record ResultatEnvoi(boolean envoye, String erreur) {
+    static final ResultatEnvoi OK = new ResultatEnvoi(true, null);
+
+    static ResultatEnvoi echec(String erreur) {
+        return new ResultatEnvoi(false, erreur);
+    }
+}
@@ -0,0 +1,11 @@
+package pharmacie.service;
+
+/**
+ * Evénement publié quand une expédition fait passer le stock d'un médicament
+ * sous son niveau de réapprovisionnement (cf. CommandeService.enregistreExpedition)
+ *
+ * @param medicament la référence du médicament
+ * @param stock      le stock après l'expédition
+ */
+public record SeuilReapproFranchi(int medicament, int stock) {
+}
@@ -0,0 +1,83 @@
+package pharmacie.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Regroupe les exécutions concurrentes d'un même calcul ("single flight").
+ * Le premier appelant pour une clé exécute le calcul, les appelants suivants
+ * pour la même clé attendent son résultat au lieu de relancer le calcul.
+ * Aucun résultat n'est conservé une fois le calcul terminé : la mise en cache
+ * éventuelle est à la charge de l'appelant.
+ *
+ * @param <K> le type des clés
+ * @param <V> le type des résultats
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> enCours = new ConcurrentHashMap<>();
+
+    // Nombre d'appelants qui ont attendu le calcul d'un autre
+    private final LongAdder attentes = new LongAdder();
+
+    /**
+     * Exécute le calcul pour cette clé, ou attend le calcul déjà en cours
+     *
+     * @param cle    la clé du calcul
+     * @param calcul le calcul à effectuer si aucun n'est en cours pour cette clé
+     * @return le résultat du calcul
+     */
+    public V executer(K cle, Supplier<V> calcul) {
+        CompletableFuture<V> nouveau = new CompletableFuture<>();
+        CompletableFuture<V> existant = enCours.putIfAbsent(cle, nouveau);
+        if (existant != null) {
+            attentes.increment();
+            return attendre(existant);
+        }
+        try {
+            V valeur = calcul.get();
+            nouveau.complete(valeur);
+            return valeur;
+        } catch (RuntimeException | Error e) {
+            // Les appelants en attente reçoivent la même exception
+            nouveau.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCours.remove(cle, nouveau);
+        }
+    }
+
+    /**
+     * Détache le calcul en cours pour cette clé : les prochains appelants
+     * relanceront un nouveau calcul au lieu d'attendre celui-ci.
+     *
+     * @param cle la clé du calcul
+     */
+    public void oublier(K cle) {
+        enCours.remove(cle);
+    }
+
+    /**
+     * @return le nombre total d'appelants qui ont attendu un calcul déjà en cours
+     */
+    public long getAttentes() {
+        return attentes.sum();
+    }
+
+    private static <V> V attendre(CompletableFuture<V> calcul) {
+        try {
+            return calcul.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            if (e.getCause() instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package pharmacie.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import pharmacie.dao.MedicamentRepository;
+import pharmacie.dao.UnitesParMedicament;
+
+/**
+ * Service de statistiques avec cache.
+ * Les requêtes statistiques (GROUP BY sur les lignes de commande) sont coûteuses
+ * et souvent demandées au même moment pour la même catégorie.
+ * - les requêtes identiques concurrentes partagent une seule exécution (SingleFlight)
+ * - les résultats sont conservés pendant une courte durée (pharmacie.stats.cache.ttl)
+ * - le cache d'une catégorie est invalidé quand une ligne de commande de cette catégorie change
+ * Les compteurs hit / miss / coalesce sont publiés sous le nom "pharmacie.stats.cache"
+ */
+@Slf4j
+@Service
+public class StatistiquesService {
+
+    private record Cle(String requete, Integer categorie) {
+    }
+
+    private record Entree(Object valeur, long expireA) {
+    }
+
+    private final MedicamentRepository medicamentDao;
+    private final long ttlNanos;
+
+    private final ConcurrentHashMap<Cle, Entree> entrees = new ConcurrentHashMap<>();
+    private final SingleFlight<Cle, Object> calculs = new SingleFlight<>();
+    // Incrémenté à chaque invalidation d'une catégorie.
+    // Un calcul commencé avant une invalidation n'est pas mis en cache.
+    private final ConcurrentHashMap<Integer, Long> generations = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public StatistiquesService(MedicamentRepository medicamentDao,
+            MeterRegistry registry,
+            @Value("${pharmacie.stats.cache.ttl:30s}") Duration ttl) {
+        this.medicamentDao = medicamentDao;
+        this.ttlNanos = ttl.toNanos();
+        this.hits = Counter.builder("pharmacie.stats.cache").tag("resultat", "hit")
+                .description("Résultats statistiques servis depuis le cache").register(registry);
+        this.misses = Counter.builder("pharmacie.stats.cache").tag("resultat", "miss")
+                .description("Résultats statistiques calculés par une requête SQL").register(registry);
+        FunctionCounter.builder("pharmacie.stats.cache", calculs, SingleFlight::getAttentes).tag("resultat", "coalesce")
+                .description("Requêtes qui ont attendu un calcul identique déjà en cours").register(registry);
+    }
+
+    /**
+     * @see MedicamentRepository#medicamentsCommandesPour(Integer)
+     */
+    public List<UnitesParMedicament> medicamentsCommandesPour(Integer codeCategorie) {
+        return obtenir("medicamentsCommandesPour", codeCategorie,
+                () -> medicamentDao.medicamentsCommandesPour(codeCategorie));
+    }
+
+    /**
+     * @see MedicamentRepository#medicamentsCommandesPourV2(Integer)
+     */
+    public List<Object> medicamentsCommandesPourV2(Integer codeCategorie) {
+        return obtenir("medicamentsCommandesPourV2", codeCategorie,
+                () -> medicamentDao.medicamentsCommandesPourV2(codeCategorie));
+    }
+
+    /**
+     * @see MedicamentRepository#medicamentsCommandesPourNative(Integer)
+     */
+    public List<UnitesParMedicament> medicamentsCommandesPourNative(Integer codeCategorie) {
+        return obtenir("medicamentsCommandesPourNative", codeCategorie,
+                () -> medicamentDao.medicamentsCommandesPourNative(codeCategorie));
+    }
+
+    /**
+     * Invalide les résultats en cache pour une catégorie.
+     * Appelé quand une ligne de commande concernant cette catégorie est modifiée.
+     *
+     * @param codeCategorie le code de la catégorie
+     */
+    public void invalider(Integer codeCategorie) {
+        generations.merge(codeCategorie, 1L, Long::sum);
+        entrees.keySet().removeIf(cle -> {
+            if (cle.categorie().equals(codeCategorie)) {
+                calculs.oublier(cle);
+                return true;
+            }
+            return false;
+        });
+        log.debug("Cache des statistiques invalidé pour la catégorie {}", codeCategorie);
+    }
+
+    /**
+     * @return le nombre d'invalidations de la catégorie (pour les tests)
+     */
+    long generation(Integer codeCategorie) {
+        return generations.getOrDefault(codeCategorie, 0L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T obtenir(String requete, Integer codeCategorie, Supplier<T> requeteSQL) {
+        Cle cle = new Cle(requete, codeCategorie);
+        Entree entree = entrees.get(cle);
+        if (entree != null && entree.expireA() - System.nanoTime() > 0) {
+            hits.increment();
+            return (T) entree.valeur();
+        }
+        return (T) calculs.executer(cle, () -> {
+            misses.increment();
+            // Événement JFR (cf. EvenementsJfr)
+            var jfr = new EvenementsJfr.RafraichissementCache("statistiques");
+            boolean misEnCache = false;
+            try {
+                long generation = generations.getOrDefault(codeCategorie, 0L);
+                T valeur = requeteSQL.get();
+                // On ne met pas en cache un résultat calculé avant une invalidation
+                if (generations.getOrDefault(codeCategorie, 0L) == generation) {
+                    Entree nouvelle = new Entree(valeur, System.nanoTime() + ttlNanos);
+                    entrees.put(cle, nouvelle);
+                    // Invalidation concurrente entre la vérification et l'insertion
+                    if (generations.getOrDefault(codeCategorie, 0L) != generation) {
+                        entrees.remove(cle, nouvelle);
+                    } else {
+                        misEnCache = true;
+                    }
+                }
+                return valeur;
+            } finally {
+                jfr.terminer(requete + "/" + codeCategorie, misEnCache);
+            }
+        });
+    }
+}
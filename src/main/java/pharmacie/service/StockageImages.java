@@ -0,0 +1,281 @@
+package pharmacie.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Enregistrement des images des médicaments dans pharmacie.images.repertoire.
+ * - le format est reconnu aux premiers octets du fichier (cf. TypeImage), pas au type annoncé
+ * - les images sont adressées par leur contenu : une image est stockée une seule fois,
+ *   sous ab/cd/abcd...(SHA-256).ext, quel que soit le nombre de médicaments qui l'utilisent ;
+ *   les images qui ne sont plus utilisées sont supprimées par RamasseMiettesImages
+ * - le fichier est écrit sans copie intermédiaire : une partie multipart est déplacée
+ *   (MultipartFile.transferTo), un flux est recopié dans un FileChannel (transferFrom) ;
+ *   il est écrit dans PARTIELS puis renommé, une image partielle n'est jamais servie
+ * - le nombre d'écritures simultanées est limité (pharmacie.images.upload.parallelisme) ;
+ *   au-delà, on attend au plus pharmacie.images.upload.attente avant de refuser
+ * Métriques : pharmacie.images.upload.octets (octets reçus, le débit est le taux de variation
+ * du total), pharmacie.images.upload.duree (durée des enregistrements, par résultat) et
+ * pharmacie.images.upload.doublons (images déjà stockées).
+ */
+@Slf4j
+@Service
+public class StockageImages {
+
+    /**
+     * Le préfixe des URL des images stockées (cf. spring.web.resources.static-locations)
+     */
+    public static final String URL = "/images/";
+    /**
+     * Le sous-répertoire des fichiers en cours d'écriture
+     */
+    public static final String PARTIELS = ".partiels";
+
+    private static final long TRANCHE = 1024 * 1024;
+
+    private final Path repertoire;
+    private final Semaphore ecrituresSimultanees;
+    private final long attenteMillis;
+    private final long tailleMax;
+    private final MeterRegistry registry;
+    private final DistributionSummary octets;
+    private final Counter doublons;
+
+    public StockageImages(MeterRegistry registry,
+            @Value("${pharmacie.images.repertoire:/tmp/images}") Path repertoire,
+            @Value("${pharmacie.images.upload.parallelisme:4}") int parallelisme,
+            @Value("${pharmacie.images.upload.attente:2s}") Duration attente,
+            @Value("${spring.servlet.multipart.max-file-size:5MB}") DataSize tailleMax) {
+        this.repertoire = repertoire;
+        this.ecrituresSimultanees = new Semaphore(parallelisme);
+        this.attenteMillis = attente.toMillis();
+        this.tailleMax = tailleMax.toBytes();
+        this.registry = registry;
+        this.octets = DistributionSummary.builder("pharmacie.images.upload.octets").baseUnit("bytes")
+                .description("Taille des images reçues").register(registry);
+        this.doublons = Counter.builder("pharmacie.images.upload.doublons")
+                .description("Images reçues déjà stockées").register(registry);
+    }
+
+    public Path getRepertoire() {
+        return repertoire;
+    }
+
+    /**
+     * Enregistre une image reçue en multipart
+     *
+     * @param fichier la partie multipart
+     * @return le chemin de l'image, relatif au répertoire des images
+     * @throws IllegalArgumentException    si le fichier n'est pas une image acceptée
+     * @throws RejectedExecutionException  si trop d'images sont en cours d'enregistrement
+     */
+    public String enregistrer(MultipartFile fichier) throws IOException {
+        Timer.Sample debut = Timer.start(registry);
+        var jfr = new EvenementsJfr.EnregistrementImage("multipart");
+        String resultat = "erreur";
+        try {
+            // Lecture de l'image déjà reçue par le conteneur : format et empreinte
+            TypeImage type;
+            MessageDigest empreinte = sha256();
+            try (InputStream in = new DigestInputStream(fichier.getInputStream(), empreinte)) {
+                type = detecter(in.readNBytes(TypeImage.TAILLE_ENTETE));
+                in.transferTo(OutputStream.nullOutputStream());
+            }
+            Path cible = cible(empreinte, type);
+            octets.record(fichier.getSize());
+            if (dejaStockee(cible)) {
+                resultat = "doublon";
+            } else {
+                Path partiel = nouveauPartiel();
+                reserver();
+                try {
+                    // Le fichier temporaire du conteneur est déplacé quand c'est possible
+                    fichier.transferTo(partiel);
+                    publier(partiel, cible);
+                } finally {
+                    ecrituresSimultanees.release();
+                    Files.deleteIfExists(partiel);
+                }
+                resultat = "ok";
+            }
+            log.info("Image {} ({}, {} octets) : {}", cible.getFileName(), type.getMimeType(), fichier.getSize(), resultat);
+            return relatif(cible);
+        } catch (IllegalArgumentException | RejectedExecutionException e) {
+            resultat = "refus";
+            throw e;
+        } finally {
+            debut.stop(duree(resultat));
+            jfr.terminer(fichier.getSize(), resultat);
+        }
+    }
+
+    /**
+     * Enregistre une image reçue comme corps de la requête
+     *
+     * @param flux le contenu de l'image
+     * @return le chemin de l'image, relatif au répertoire des images
+     * @throws IllegalArgumentException    si le flux n'est pas une image acceptée, ou est trop gros
+     * @throws RejectedExecutionException  si trop d'images sont en cours d'enregistrement
+     */
+    public String enregistrer(InputStream flux) throws IOException {
+        Timer.Sample debut = Timer.start(registry);
+        var jfr = new EvenementsJfr.EnregistrementImage("flux");
+        String resultat = "erreur";
+        long taille = 0;
+        try {
+            byte[] entete = flux.readNBytes(TypeImage.TAILLE_ENTETE);
+            TypeImage type = detecter(entete);
+            // L'empreinte n'est connue qu'à la fin de la réception
+            MessageDigest empreinte = sha256();
+            empreinte.update(entete);
+            Path partiel = nouveauPartiel();
+            Path cible;
+            reserver();
+            try {
+                taille = ecrire(entete, new DigestInputStream(flux, empreinte), partiel);
+                cible = cible(empreinte, type);
+                if (dejaStockee(cible)) {
+                    resultat = "doublon";
+                } else {
+                    publier(partiel, cible);
+                    resultat = "ok";
+                }
+            } finally {
+                ecrituresSimultanees.release();
+                Files.deleteIfExists(partiel);
+            }
+            octets.record(taille);
+            log.info("Image {} ({}, {} octets) : {}", cible.getFileName(), type.getMimeType(), taille, resultat);
+            return relatif(cible);
+        } catch (IllegalArgumentException | RejectedExecutionException e) {
+            resultat = "refus";
+            throw e;
+        } finally {
+            debut.stop(duree(resultat));
+            jfr.terminer(taille, resultat);
+        }
+    }
+
+    private long ecrire(byte[] entete, InputStream flux, Path fichier) throws IOException {
+        try (FileChannel sortie = FileChannel.open(fichier, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                ReadableByteChannel entree = Channels.newChannel(flux)) {
+            long position = sortie.write(ByteBuffer.wrap(entete));
+            long lus;
+            while ((lus = sortie.transferFrom(entree, position, TRANCHE)) > 0) {
+                position += lus;
+                if (position > tailleMax) {
+                    throw new IllegalArgumentException("L'image dépasse la taille maximale de " + tailleMax + " octets");
+                }
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Une image déjà stockée est "rajeunie" : le ramasse-miettes ne la supprime pas
+     * avant que le médicament qui la réutilise soit enregistré
+     */
+    private boolean dejaStockee(Path cible) throws IOException {
+        if (!Files.exists(cible)) {
+            return false;
+        }
+        try {
+            Files.setLastModifiedTime(cible, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Supprimée entre-temps par le ramasse-miettes : on la stocke à nouveau
+            return false;
+        }
+        doublons.increment();
+        return true;
+    }
+
+    private static void publier(Path partiel, Path cible) throws IOException {
+        try {
+            Files.createDirectories(cible.getParent());
+            Files.move(partiel, cible, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // La même image, enregistrée en même temps
+        } catch (NoSuchFileException e) {
+            // Répertoire vide supprimé entre-temps par le ramasse-miettes
+            Files.createDirectories(cible.getParent());
+            Files.move(partiel, cible, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private static TypeImage detecter(byte[] entete) {
+        return TypeImage.detecter(entete, entete.length)
+                .orElseThrow(() -> new IllegalArgumentException("Le fichier doit être une image (JPEG, PNG, GIF ou WebP)"));
+    }
+
+    /**
+     * @return ab/cd/abcd....ext dans le répertoire des images
+     */
+    private Path cible(MessageDigest empreinte, TypeImage type) {
+        String hex = HexFormat.of().formatHex(empreinte.digest());
+        return repertoire.resolve(hex.substring(0, 2)).resolve(hex.substring(2, 4)).resolve(hex + type.getExtension());
+    }
+
+    private Path nouveauPartiel() throws IOException {
+        return Files.createDirectories(repertoire.resolve(PARTIELS)).resolve(UUID.randomUUID().toString());
+    }
+
+    private String relatif(Path cible) {
+        return repertoire.relativize(cible).toString().replace('\\', '/');
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void reserver() {
+        try {
+            if (!ecrituresSimultanees.tryAcquire(attenteMillis, TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException("Trop d'images en cours d'enregistrement, réessayez plus tard");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Enregistrement de l'image interrompu", e);
+        }
+    }
+
+    private Timer duree(String resultat) {
+        return Timer.builder("pharmacie.images.upload.duree").tag("resultat", resultat)
+                .description("Durée d'enregistrement des images").register(registry);
+    }
+}
@@ -0,0 +1,42 @@
+package pharmacie.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Une réserve de tampons de texte réutilisables, pour éviter d'allouer (et d'agrandir)
+ * un StringBuilder à chaque rendu.
+ * Les tampons devenus trop grands ne sont pas gardés.
+ */
+public class TamponsTexte {
+
+    private final BlockingQueue<StringBuilder> libres;
+    private final int tailleInitiale;
+    private final int tailleMax;
+
+    /**
+     * @param nombre         le nombre maximum de tampons gardés en réserve
+     * @param tailleInitiale la capacité initiale d'un tampon
+     * @param tailleMax      la capacité au-delà de laquelle un tampon n'est pas gardé
+     */
+    public TamponsTexte(int nombre, int tailleInitiale, int tailleMax) {
+        this.libres = new ArrayBlockingQueue<>(nombre);
+        this.tailleInitiale = tailleInitiale;
+        this.tailleMax = tailleMax;
+    }
+
+    /**
+     * @return un tampon vide, à rendre avec liberer
+     */
+    public StringBuilder prendre() {
+        StringBuilder tampon = libres.poll();
+        return tampon != null ? tampon : new StringBuilder(tailleInitiale);
+    }
+
+    public void liberer(StringBuilder tampon) {
+        if (tampon.capacity() <= tailleMax) {
+            tampon.setLength(0);
+            libres.offer(tampon);
+        }
+    }
+}
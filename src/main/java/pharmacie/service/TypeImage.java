@@ -0,0 +1,75 @@
+package pharmacie.service;
+
+import java.util.Optional;
+
+/**
+ * Les formats d'image acceptés, reconnus à leurs premiers octets ("magic bytes")
+ * plutôt qu'au type annoncé par le client.
+ */
+public enum TypeImage {
+    JPEG("image/jpeg", ".jpg"),
+    PNG("image/png", ".png"),
+    GIF("image/gif", ".gif"),
+    WEBP("image/webp", ".webp");
+
+    /**
+     * Nombre d'octets à lire en tête du fichier pour reconnaître son format
+     */
+    public static final int TAILLE_ENTETE = 12;
+
+    private static final byte[] SIGNATURE_JPEG = { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF };
+    private static final byte[] SIGNATURE_PNG = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final byte[] SIGNATURE_GIF = { 'G', 'I', 'F', '8' };
+    private static final byte[] SIGNATURE_RIFF = { 'R', 'I', 'F', 'F' };
+    private static final byte[] SIGNATURE_WEBP = { 'W', 'E', 'B', 'P' };
+
+    private final String mimeType;
+    private final String extension;
+
+    TypeImage(String mimeType, String extension) {
+        this.mimeType = mimeType;
+        this.extension = extension;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @param entete    les premiers octets du fichier
+     * @param longueur  le nombre d'octets lus (au plus TAILLE_ENTETE)
+     * @return le format reconnu, vide si ce n'est pas une image acceptée
+     */
+    public static Optional<TypeImage> detecter(byte[] entete, int longueur) {
+        if (commencePar(entete, longueur, 0, SIGNATURE_JPEG)) {
+            return Optional.of(JPEG);
+        }
+        if (commencePar(entete, longueur, 0, SIGNATURE_PNG)) {
+            return Optional.of(PNG);
+        }
+        if (commencePar(entete, longueur, 0, SIGNATURE_GIF)) {
+            return Optional.of(GIF);
+        }
+        // RIFF <taille sur 4 octets> WEBP
+        if (commencePar(entete, longueur, 0, SIGNATURE_RIFF) && commencePar(entete, longueur, 8, SIGNATURE_WEBP)) {
+            return Optional.of(WEBP);
+        }
+        return Optional.empty();
+    }
+
+    private static boolean commencePar(byte[] entete, int longueur, int position, byte[] signature) {
+        if (longueur < position + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (entete[position + i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
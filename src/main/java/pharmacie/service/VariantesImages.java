@@ -0,0 +1,365 @@
+package pharmacie.service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Les variantes (redimensionnées, éventuellement converties) des images stockées,
+ * pour les vignettes du catalogue.
+ * - seules les dimensions des préréglages (pharmacie.images.variantes.presets) sont acceptées :
+ *   le nombre de variantes d'une image est borné
+ * - l'image est réduite pour tenir dans les dimensions, sans déformation ni agrandissement ;
+ *   ses dimensions sont lues avant de la décoder : au-delà de pharmacie.images.variantes.pixels-max
+ *   elle est refusée, sinon elle est décodée en ne lisant qu'un pixel sur n (sous-échantillonnage)
+ *   si elle est bien plus grande que la variante
+ * - les variantes sont calculées par un pool borné (pharmacie.images.variantes.parallelisme,
+ *   file d'attente pharmacie.images.variantes.file) ; au-delà, la demande est refusée
+ * - les variantes sont gardées dans un cache disque LRU (cf. CacheFichiers) ; les demandes
+ *   simultanées d'une même variante attendent le même calcul (cf. SingleFlight)
+ * Les images stockées ne changent jamais (cf. StockageImages) : une variante n'est jamais périmée.
+ * Métriques : pharmacie.images.variantes (par résultat : cache, calcul, coalesce) et
+ * pharmacie.images.variantes.cache.octets.
+ */
+@Slf4j
+@Service
+public class VariantesImages {
+
+    /**
+     * Les formats de sortie (ceux que javax.imageio sait écrire)
+     */
+    public enum Format {
+        JPEG("jpeg", TypeImage.JPEG),
+        PNG("png", TypeImage.PNG),
+        GIF("gif", TypeImage.GIF);
+
+        private final String nomImageIO;
+        private final TypeImage type;
+
+        Format(String nomImageIO, TypeImage type) {
+            this.nomImageIO = nomImageIO;
+            this.type = type;
+        }
+
+        public TypeImage getType() {
+            return type;
+        }
+
+        /**
+         * @param nom le nom du format (jpeg, jpg, png, gif), sans tenir compte de la casse
+         * @throws IllegalArgumentException si le format n'est pas pris en charge
+         */
+        public static Format depuis(String nom) {
+            String normalise = nom.strip().toLowerCase();
+            for (Format format : values()) {
+                if (format.nomImageIO.equals(normalise) || format.type.getExtension().equals("." + normalise)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Format de variante non pris en charge : " + nom);
+        }
+
+        /**
+         * Le format de sortie par défaut : celui de l'image d'origine s'il est pris en charge
+         */
+        static Format pour(String image) {
+            for (Format format : values()) {
+                if (image.endsWith(format.type.getExtension())) {
+                    return format;
+                }
+            }
+            return PNG;
+        }
+    }
+
+    public record Dimensions(int largeur, int hauteur) {
+        @Override
+        public String toString() {
+            return largeur + "x" + hauteur;
+        }
+    }
+
+    public record Variante(Path fichier, Format format) {
+    }
+
+    /**
+     * Une variante ouverte en lecture : elle reste lisible même si le cache la supprime ensuite
+     *
+     * @param contenu le contenu du fichier, à fermer après lecture
+     * @param taille  la taille du fichier, en octets
+     */
+    public record VarianteOuverte(InputStream contenu, long taille, Format format) {
+    }
+
+    private final Path originaux;
+    private final Map<String, Dimensions> presets;
+    private final CacheFichiers cache;
+    private final ThreadPoolExecutor calculateurs;
+    private final long delaiMillis;
+    private final long pixelsMax;
+    private final SingleFlight<String, Path> calculs = new SingleFlight<>();
+    private final Counter servies;
+    private final Counter calculees;
+
+    public VariantesImages(StockageImages stockage, MeterRegistry registry,
+            @Value("${pharmacie.images.variantes.presets:vignette:120x120,carte:320x240,fiche:640x640}") String presets,
+            @Value("${pharmacie.images.variantes.repertoire:/tmp/images-variantes}") Path repertoire,
+            @Value("${pharmacie.images.variantes.cache.taille-max:200MB}") DataSize tailleCache,
+            @Value("${pharmacie.images.variantes.parallelisme:2}") int parallelisme,
+            @Value("${pharmacie.images.variantes.file:32}") int file,
+            @Value("${pharmacie.images.variantes.delai:10s}") Duration delai,
+            @Value("${pharmacie.images.variantes.pixels-max:50000000}") long pixelsMax) {
+        this.originaux = stockage.getRepertoire();
+        this.presets = lirePresets(presets);
+        this.cache = new CacheFichiers(repertoire, tailleCache.toBytes());
+        this.calculateurs = new ThreadPoolExecutor(parallelisme, parallelisme, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(file), Thread.ofPlatform().name("variantes-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.delaiMillis = delai.toMillis();
+        this.pixelsMax = pixelsMax;
+        this.servies = Counter.builder("pharmacie.images.variantes").tag("resultat", "cache")
+                .description("Variantes servies depuis le cache disque").register(registry);
+        this.calculees = Counter.builder("pharmacie.images.variantes").tag("resultat", "calcul")
+                .description("Variantes calculées").register(registry);
+        FunctionCounter.builder("pharmacie.images.variantes", calculs, SingleFlight::getAttentes).tag("resultat", "coalesce")
+                .description("Demandes qui ont attendu le calcul d'une variante déjà en cours").register(registry);
+        Gauge.builder("pharmacie.images.variantes.cache.octets", cache, CacheFichiers::getTaille).baseUnit("bytes")
+                .description("Taille du cache disque des variantes").register(registry);
+        log.info("Préréglages des variantes d'images : {}", this.presets);
+    }
+
+    public Map<String, Dimensions> getPresets() {
+        return presets;
+    }
+
+    /**
+     * @param nom le nom d'un préréglage
+     * @return ses dimensions
+     * @throws IllegalArgumentException si le préréglage n'existe pas
+     */
+    public Dimensions preset(String nom) {
+        Dimensions dimensions = presets.get(nom);
+        if (dimensions == null) {
+            throw new IllegalArgumentException("Préréglage inconnu : " + nom + ", préréglages : " + presets.keySet());
+        }
+        return dimensions;
+    }
+
+    /**
+     * @param largeur la largeur demandée
+     * @param hauteur la hauteur demandée
+     * @return les dimensions, si ce sont celles d'un préréglage
+     * @throws IllegalArgumentException sinon
+     */
+    public Dimensions dimensions(int largeur, int hauteur) {
+        Dimensions dimensions = new Dimensions(largeur, hauteur);
+        if (!presets.containsValue(dimensions)) {
+            throw new IllegalArgumentException("Dimensions non autorisées : " + dimensions + ", préréglages : " + presets);
+        }
+        return dimensions;
+    }
+
+    /**
+     * @param image      le chemin de l'image stockée, relatif au répertoire des images (ex : ab/cd/abcd....png)
+     * @param dimensions les dimensions maximum de la variante (cf. preset, dimensions)
+     * @param format     le format de la variante, null pour celui de l'image d'origine
+     * @return la variante, calculée si elle n'est pas dans le cache
+     * @throws NoSuchElementException     si l'image n'existe pas
+     * @throws IllegalArgumentException   si l'image n'est pas lisible
+     * @throws RejectedExecutionException si trop de variantes sont en cours de calcul
+     */
+    public Variante variante(String image, Dimensions dimensions, Format format) {
+        Path original = original(image);
+        Format sortie = format != null ? format : Format.pour(image);
+        String nom = original.getFileName().toString();
+        String base = nom.contains(".") ? nom.substring(0, nom.lastIndexOf('.')) : nom;
+        String cle = base.substring(0, Math.min(2, base.length())) + "/" + base + "-" + dimensions
+                + sortie.type.getExtension();
+        Path fichier = cache.obtenir(cle).map(trouve -> {
+            servies.increment();
+            return trouve;
+        }).orElseGet(() -> calculs.executer(cle, () -> cache.obtenir(cle)
+                .orElseGet(() -> calculer(original, cle, dimensions, sortie))));
+        return new Variante(fichier, sortie);
+    }
+
+    /**
+     * Comme variante, mais la variante est renvoyée ouverte : le cache peut la supprimer entre
+     * sa recherche et la fin de son envoi. Si elle est supprimée avant même d'être ouverte,
+     * elle est recalculée, une fois.
+     *
+     * @see #variante(String, Dimensions, Format)
+     */
+    public VarianteOuverte ouvrir(String image, Dimensions dimensions, Format format) throws IOException {
+        try {
+            return ouvrir(variante(image, dimensions, format));
+        } catch (NoSuchFileException e) {
+            log.debug("Variante {} supprimée du cache avant son envoi, nouvel essai", e.getFile());
+            return ouvrir(variante(image, dimensions, format));
+        }
+    }
+
+    private static VarianteOuverte ouvrir(Variante variante) throws IOException {
+        SeekableByteChannel canal = Files.newByteChannel(variante.fichier());
+        return new VarianteOuverte(Channels.newInputStream(canal), canal.size(), variante.format());
+    }
+
+    private Path calculer(Path original, String cle, Dimensions dimensions, Format format) {
+        Future<Path> calcul = calculateurs.submit(() -> {
+            BufferedImage source = lire(original, dimensions);
+            BufferedImage reduite = reduire(source, dimensions, format);
+            Path temporaire = cache.fichierTemporaire();
+            try {
+                ImageIO.write(reduite, format.nomImageIO, temporaire.toFile());
+                return cache.ajouter(cle, temporaire);
+            } finally {
+                Files.deleteIfExists(temporaire);
+            }
+        });
+        try {
+            Path fichier = calcul.get(delaiMillis, TimeUnit.MILLISECONDS);
+            calculees.increment();
+            return fichier;
+        } catch (TimeoutException e) {
+            calcul.cancel(true);
+            throw new RejectedExecutionException("Calcul de la variante " + cle + " trop long", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Calcul de la variante " + cle + " interrompu", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            if (e.getCause() instanceof IOException io) {
+                throw new UncheckedIOException(io);
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Décode l'image, après avoir vérifié ses dimensions : une petite image compressée peut
+     * occuper des centaines de mégaoctets une fois décodée. Une image plus de deux fois plus grande
+     * que la variante n'est lue qu'un pixel sur n, dans les deux sens (la réduction se charge du reste).
+     *
+     * @throws IllegalArgumentException si l'image est illisible ou a plus de pixelsMax pixels
+     */
+    private BufferedImage lire(Path original, Dimensions dimensions) throws IOException {
+        try (ImageInputStream entree = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> lecteurs = entree != null ? ImageIO.getImageReaders(entree) : Collections.emptyIterator();
+            if (!lecteurs.hasNext()) {
+                throw new IllegalArgumentException("Image illisible : " + original.getFileName());
+            }
+            ImageReader lecteur = lecteurs.next();
+            try {
+                lecteur.setInput(entree, true, true);
+                int largeur = lecteur.getWidth(0);
+                int hauteur = lecteur.getHeight(0);
+                if ((long) largeur * hauteur > pixelsMax) {
+                    throw new IllegalArgumentException("Image trop grande (" + largeur + "x" + hauteur + ") : "
+                            + original.getFileName());
+                }
+                int pas = Math.max(1, Math.min(largeur / (2 * dimensions.largeur()), hauteur / (2 * dimensions.hauteur())));
+                ImageReadParam parametres = lecteur.getDefaultReadParam();
+                parametres.setSourceSubsampling(pas, pas, 0, 0);
+                return lecteur.read(0, parametres);
+            } finally {
+                lecteur.dispose();
+            }
+        }
+    }
+
+    /**
+     * Réduit l'image pour qu'elle tienne dans les dimensions, en gardant ses proportions
+     */
+    static BufferedImage reduire(BufferedImage source, Dimensions dimensions, Format format) {
+        double echelle = Math.min(1.0, Math.min((double) dimensions.largeur() / source.getWidth(),
+                (double) dimensions.hauteur() / source.getHeight()));
+        int largeur = Math.max(1, (int) Math.round(source.getWidth() * echelle));
+        int hauteur = Math.max(1, (int) Math.round(source.getHeight() * echelle));
+        // JPEG n'a pas de transparence : fond blanc
+        boolean opaque = format == Format.JPEG;
+        BufferedImage reduite = new BufferedImage(largeur, hauteur,
+                opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = reduite.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            if (opaque) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, largeur, hauteur);
+            }
+            g.drawImage(source, 0, 0, largeur, hauteur, null);
+        } finally {
+            g.dispose();
+        }
+        return reduite;
+    }
+
+    private Path original(String image) {
+        Path original = originaux.resolve(image).normalize();
+        if (!original.startsWith(originaux) || original.startsWith(originaux.resolve(StockageImages.PARTIELS))
+                || !Files.isRegularFile(original)) {
+            throw new NoSuchElementException("Image introuvable : " + image);
+        }
+        return original;
+    }
+
+    private static Map<String, Dimensions> lirePresets(String texte) {
+        Map<String, Dimensions> presets = new LinkedHashMap<>();
+        for (String preset : texte.split(",")) {
+            String[] nomEtDimensions = preset.strip().split(":");
+            String[] dimensions = nomEtDimensions.length == 2 ? nomEtDimensions[1].split("x") : new String[0];
+            if (dimensions.length != 2) {
+                throw new IllegalArgumentException("Préréglage mal formé (nom:largeurxhauteur) : " + preset);
+            }
+            presets.put(nomEtDimensions[0].strip(),
+                    new Dimensions(Integer.parseInt(dimensions[0].strip()), Integer.parseInt(dimensions[1].strip())));
+        }
+        return Collections.unmodifiableMap(presets);
+    }
+
+    @PreDestroy
+    public void arreter() {
+        calculateurs.shutdownNow();
+    }
+}
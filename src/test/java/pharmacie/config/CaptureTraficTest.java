@@ -0,0 +1,99 @@
+package pharmacie.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+import pharmacie.config.JournalTrafic.Requete;
+
+/**
+ * (spring.data.rest.base-path n'est pas défini pour les tests : toutes les requêtes sont capturées, prefixe=/)
+ */
+@SpringBootTest(properties = { "pharmacie.capture.actif=true", "pharmacie.capture.prefixe=/",
+        "pharmacie.capture.masques=dispensaireCode", "pharmacie.capture.corps=true" })
+@AutoConfigureMockMvc
+@Transactional
+class CaptureTraficTest {
+
+    @TempDir
+    static Path repertoire;
+
+    @DynamicPropertySource
+    static void proprietes(DynamicPropertyRegistry registry) {
+        registry.add("pharmacie.capture.repertoire", repertoire::toString);
+    }
+
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private CaptureTrafic capture;
+
+    @Test
+    void lesRequetesSontCaptureesAnonymiseesEtRejouables() throws Exception {
+        mvc.perform(get("/api/stats/unitesCommandeesPourCategorie/1"));
+        mvc.perform(get("/api/services/commandes/enCoursPour/DSP01"));
+        mvc.perform(get("/api/services/commandes/enCoursPour/DSP01"));
+        mvc.perform(get("/api/services/commandes/enCoursPour/DSP02"));
+        mvc.perform(post("/categories").contentType(MediaType.APPLICATION_JSON).content("{\"libelle\":\"Capturée\"}"));
+
+        List<Requete> requetes = await().atMost(Duration.ofSeconds(10)).until(this::lire, r -> r.size() == 5);
+
+        Requete statistiques = requetes.get(0);
+        assertThat(statistiques.methode()).isEqualTo("GET");
+        assertThat(statistiques.modele()).isEqualTo("/api/stats/unitesCommandeesPourCategorie/{code}");
+        assertThat(statistiques.variables()).isEqualTo(Map.of("code", "1"));
+        assertThat(statistiques.uri()).isEqualTo("/api/stats/unitesCommandeesPourCategorie/1");
+        assertThat(statistiques.statut()).isEqualTo(200);
+        assertThat(statistiques.dureeMicros()).isPositive();
+        assertThat(statistiques.corps()).isNull();
+
+        // Le même pseudonyme pour le même dispensaire, jamais son code
+        String dsp01 = requetes.get(1).variables().get("dispensaireCode");
+        assertThat(dsp01).startsWith("anon-");
+        assertThat(requetes.get(2).variables().get("dispensaireCode")).isEqualTo(dsp01);
+        assertThat(requetes.get(3).variables().get("dispensaireCode")).startsWith("anon-").isNotEqualTo(dsp01);
+        assertThat(Files.readString(capture.fichier(), StandardCharsets.ISO_8859_1)).doesNotContain("DSP01");
+
+        Requete creation = requetes.get(4);
+        assertThat(creation.methode()).isEqualTo("POST");
+        assertThat(creation.typeContenu()).startsWith(MediaType.APPLICATION_JSON_VALUE);
+        assertThat(new String(creation.corps(), StandardCharsets.UTF_8)).isEqualTo("{\"libelle\":\"Capturée\"}");
+        assertThat(creation.longueurCorps()).isEqualTo(creation.corps().length);
+        assertThat(creation.empreinteCorps()).isNotZero();
+        assertThat(creation.statut()).isEqualTo(201);
+        assertThat(requetes).extracting(Requete::debutMicros).isSorted();
+    }
+
+    private List<Requete> lire() throws IOException {
+        List<Requete> requetes = new ArrayList<>();
+        try (InputStream entree = Files.newInputStream(capture.fichier());
+                JournalTrafic.Lecteur journal = new JournalTrafic.Lecteur(entree)) {
+            for (Requete requete = journal.lire(); requete != null; requete = journal.lire()) {
+                requetes.add(requete);
+            }
+        }
+        return requetes;
+    }
+}
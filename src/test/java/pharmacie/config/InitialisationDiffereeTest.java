@@ -0,0 +1,111 @@
+package pharmacie.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.test.context.ActiveProfiles;
+
+class InitialisationDiffereeTest {
+
+    static final AtomicInteger creations = new AtomicInteger();
+    static CountDownLatch creee = new CountDownLatch(1);
+
+    static class Essentiel {
+    }
+
+    static class Differe {
+        Differe() {
+            creations.incrementAndGet();
+            creee.countDown();
+        }
+    }
+
+    @Configuration
+    static class ConfigurationDifferee {
+        @Bean
+        Essentiel declareParUneConfiguration() {
+            return new Essentiel();
+        }
+    }
+
+    @Test
+    void lesBeansConcernesSontCreesApresLeDemarrage() throws Exception {
+        creations.set(0);
+        creee = new CountDownLatch(1);
+        try (AnnotationConfigApplicationContext contexte = contexte(true)) {
+            assertTrue(contexte.getBeanFactory().getBeanDefinition("differe").isLazyInit());
+            assertTrue(contexte.getBeanFactory().getBeanDefinition("declareParUneConfiguration").isLazyInit(),
+                    "Les beans déclarés par une configuration concernée sont différés");
+            assertFalse(contexte.getBeanFactory().getBeanDefinition("essentiel").isLazyInit());
+            assertEquals(0, creations.get(), "Le bean différé n'est pas créé au démarrage");
+
+            contexte.getBean(InitialisationDifferee.class).onApplicationEvent(
+                    new ApplicationReadyEvent(new SpringApplication(), new String[0], contexte, Duration.ZERO));
+            assertTrue(creee.await(5, TimeUnit.SECONDS), "Le bean différé est créé une fois l'application prête");
+            assertEquals(1, creations.get());
+        }
+    }
+
+    @Test
+    void sansPrefixeRienNEstDiffere() {
+        creations.set(0);
+        try (AnnotationConfigApplicationContext contexte = contexte(false)) {
+            assertFalse(contexte.getBeanFactory().getBeanDefinition("differe").isLazyInit());
+            assertEquals(1, creations.get());
+        }
+    }
+
+    /**
+     * Avec le profil demarrage-rapide, les beans différés ne sont pas créés au démarrage :
+     * aucun bean créé au démarrage n'en dépend
+     */
+    @Nested
+    @SpringBootTest(properties = "pharmacie.demarrage.prechauffage=false")
+    @ActiveProfiles("demarrage-rapide")
+    class ProfilDemarrageRapide {
+
+        @Autowired
+        private ConfigurableListableBeanFactory beanFactory;
+
+        @Test
+        void lesBeansDesMailsNeSontPasCreesAuDemarrage() {
+            for (String nom : List.of("mailgunService", "envoiMailsService", "dispatcheurMails")) {
+                assertTrue(beanFactory.getBeanDefinition(nom).isLazyInit(), nom);
+                assertFalse(beanFactory.containsSingleton(nom), nom + " ne doit pas être créé au démarrage");
+            }
+        }
+    }
+
+    private static AnnotationConfigApplicationContext contexte(boolean differer) {
+        AnnotationConfigApplicationContext contexte = new AnnotationConfigApplicationContext();
+        if (differer) {
+            contexte.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                    "pharmacie.demarrage.differes", Differe.class.getName() + ", " + ConfigurationDifferee.class.getName())));
+        }
+        contexte.registerBean(InitialisationDifferee.class);
+        contexte.registerBean("essentiel", Essentiel.class);
+        contexte.registerBean("differe", Differe.class);
+        contexte.register(ConfigurationDifferee.class);
+        contexte.refresh();
+        return contexte;
+    }
+}
@@ -0,0 +1,15 @@
+package pharmacie.config;
+
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationAutoConfiguration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Pour les tests @DataJpaTest, qui n'analysent pas les composants : importe InstantaneBaseConfig
+ * avant l'auto-configuration de l'initialisation de la base de Spring Boot, qui s'efface alors
+ * (cf. META-INF/spring/...AutoConfigureDataJpa.imports des tests)
+ */
+@AutoConfiguration(before = SqlInitializationAutoConfiguration.class)
+@Import(InstantaneBaseConfig.class)
+public class InstantaneBaseAutoConfiguration {
+}
@@ -0,0 +1,122 @@
+package pharmacie.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
+import org.springframework.boot.sql.init.DatabaseInitializationMode;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Base H2 initialisée par un script, puis une autre base identique initialisée par l'instantané
+ */
+class InstantaneBaseTest {
+
+    private static final String DONNEES = """
+            INSERT INTO Categorie(code, libelle, description) VALUES (1, 'Antalgiques', ''), (2, 'Vide', NULL);
+            INSERT INTO Medicament(nom, categorie_code, prix, indisponible, cree_le) VALUES
+                ('Paracétamol; 500mg', 1, 2.50, FALSE, TIMESTAMP '2024-01-02 03:04:05.123456'),
+                ('Sirop "fraise"
+            (multiligne)', 1, 3.00, TRUE, NULL);
+            """;
+
+    @TempDir
+    Path repertoire;
+
+    private int bases;
+
+    @Test
+    void uneNouvelleBaseEstChargeeDepuisLInstantane() throws Exception {
+        Path script = script(DONNEES);
+        assertTrue(new InstantaneBase(base(), proprietes(script), true, repertoire).initializeDatabase());
+        List<Path> instantanes = instantanes();
+        assertEquals(1, instantanes.size(), "L'instantané est créé après l'exécution des scripts");
+
+        SingleConnectionDataSource base = base();
+        InstantaneBase seconde = new InstantaneBase(base, proprietes(script), true, repertoire);
+        JdbcTemplate jdbc = new JdbcTemplate(base);
+        assertTrue(seconde.initializeDatabase());
+        assertEquals(instantanes, instantanes(), "La seconde base est chargée depuis l'instantané");
+
+        assertEquals(2, jdbc.queryForObject("SELECT COUNT(*) FROM Medicament", Integer.class));
+        assertEquals("", jdbc.queryForObject("SELECT description FROM Categorie WHERE code = 1", String.class),
+                "Une chaîne vide reste vide");
+        assertNull(jdbc.queryForObject("SELECT description FROM Categorie WHERE code = 2", String.class));
+        Map<String, Object> paracetamol = jdbc.queryForMap("SELECT * FROM Medicament WHERE reference = 1");
+        assertEquals("Paracétamol; 500mg", paracetamol.get("NOM"));
+        assertEquals("2024-01-02 03:04:05.123456", paracetamol.get("CREE_LE").toString());
+        assertEquals("Sirop \"fraise\"\n(multiligne)",
+                jdbc.queryForObject("SELECT nom FROM Medicament WHERE reference = 2", String.class));
+        // Le compteur de la clé auto-incrémentée fait partie de l'instantané
+        jdbc.update("INSERT INTO Medicament(nom, categorie_code, prix, indisponible) VALUES ('Nouveau', 2, 1, FALSE)");
+        assertEquals(3, jdbc.queryForObject("SELECT reference FROM Medicament WHERE nom = 'Nouveau'", Integer.class));
+        // Les clés étrangères sont de nouveau vérifiées après le chargement
+        assertThrows(Exception.class, () -> jdbc.update(
+                "INSERT INTO Medicament(nom, categorie_code, prix, indisponible) VALUES ('Orphelin', 42, 1, FALSE)"));
+
+        seconde.restaurer();
+        assertEquals(2, jdbc.queryForObject("SELECT COUNT(*) FROM Medicament", Integer.class));
+    }
+
+    @Test
+    void lInstantaneEstRefaitQuandLesScriptsChangent() throws Exception {
+        Path script = script(DONNEES);
+        assertTrue(new InstantaneBase(base(), proprietes(script), true, repertoire).initializeDatabase());
+        Files.writeString(script, DONNEES + "INSERT INTO Categorie(code, libelle) VALUES (3, 'Autre');");
+        SingleConnectionDataSource base = base();
+        assertTrue(new InstantaneBase(base, proprietes(script), true, repertoire).initializeDatabase());
+        assertEquals(2, instantanes().size());
+        assertEquals(3, new JdbcTemplate(base).queryForObject("SELECT COUNT(*) FROM Categorie", Integer.class));
+    }
+
+    @Test
+    void sansInstantaneLesScriptsSontExecutes() throws Exception {
+        InstantaneBase inactif = new InstantaneBase(base(), proprietes(script(DONNEES)), false, repertoire);
+        assertTrue(inactif.initializeDatabase());
+        assertEquals(List.of(), instantanes());
+        assertThrows(IllegalStateException.class, inactif::restaurer);
+    }
+
+    /**
+     * @return une nouvelle base, dont le schéma est créé (comme par Hibernate)
+     */
+    private SingleConnectionDataSource base() {
+        SingleConnectionDataSource base = new SingleConnectionDataSource(
+                "jdbc:h2:mem:instantane" + bases++ + System.nanoTime(), "sa", "", true);
+        JdbcTemplate jdbc = new JdbcTemplate(base);
+        jdbc.execute("CREATE TABLE Categorie(code INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,"
+                + " libelle VARCHAR(255) NOT NULL, description VARCHAR(255))");
+        jdbc.execute("CREATE TABLE Medicament(reference INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,"
+                + " nom VARCHAR(255) NOT NULL, categorie_code INTEGER NOT NULL REFERENCES Categorie(code),"
+                + " prix NUMERIC(18, 2), indisponible BOOLEAN NOT NULL, cree_le TIMESTAMP(6))");
+        return base;
+    }
+
+    private SqlInitializationProperties proprietes(Path script) {
+        SqlInitializationProperties proprietes = new SqlInitializationProperties();
+        proprietes.setMode(DatabaseInitializationMode.ALWAYS);
+        proprietes.setDataLocations(List.of("file:" + script));
+        return proprietes;
+    }
+
+    private Path script(String contenu) throws Exception {
+        Path script = Files.createTempFile(repertoire, "donnees", ".sql");
+        return Files.writeString(script, contenu);
+    }
+
+    private List<Path> instantanes() throws Exception {
+        try (var fichiers = Files.list(repertoire)) {
+            return fichiers.filter(fichier -> fichier.toString().endsWith(".sql.gz")).sorted().toList();
+        }
+    }
+}
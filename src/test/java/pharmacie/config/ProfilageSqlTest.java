@@ -0,0 +1,104 @@
+package pharmacie.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.Duration;
+
+import javax.sql.DataSource;
+
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * (spring.data.rest.base-path n'est pas défini pour les tests : toutes les requêtes sont profilées, prefixe=/)
+ * Ce test est basé sur le jeu de données dans "test_data.sql"
+ */
+@SpringBootTest(properties = { "pharmacie.profilage.prefixe=/", "pharmacie.profilage.seuil=0ms",
+        "pharmacie.profilage.server-timing=true", "pharmacie.profilage.parametres=true",
+        "management.endpoints.web.exposure.include=sql" })
+@AutoConfigureMockMvc
+class ProfilageSqlTest {
+    private static final int MEDICAMENT_DISPONIBLE = 93;
+
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private ProfilageSql profilage;
+    @Autowired
+    private MeterRegistry registry;
+    @Autowired
+    private DataSource dataSource;
+
+    @BeforeEach
+    void vider() {
+        profilage.vider();
+    }
+
+    @Test
+    void lesAccesALaBaseSontAttribuesAuPointDEntree() throws Exception {
+        DistributionSummary avant = registry.find("pharmacie.sql.requetes").tags("method", "GET", "uri", "/medicaments/{id}").summary();
+        long appelsAvant = avant == null ? 0 : avant.count();
+
+        mvc.perform(get("/medicaments/" + MEDICAMENT_DISPONIBLE))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Server-Timing", Matchers.matchesPattern(
+                        "db;dur=[0-9.]+;desc=\"[1-9][0-9]* requetes, [1-9][0-9]* lignes\", mapping;dur=[0-9.]+, "
+                                + "serialization;dur=[0-9.]+, total;dur=[0-9.]+")))
+                .andExpect(jsonPath("$.nom").value(Matchers.startsWith("Medicament 93")));
+
+        assertThat(profilage.points()).singleElement().satisfies(point -> {
+            assertThat(point.point()).isEqualTo("GET /medicaments/{id}");
+            assertThat(point.appels()).isEqualTo(1);
+            assertThat(point.requetes()).isPositive();
+            assertThat(point.lignes()).isPositive();
+        });
+        DistributionSummary requetes = registry.get("pharmacie.sql.requetes").tags("method", "GET", "uri", "/medicaments/{id}").summary();
+        assertThat(requetes.count()).isEqualTo(appelsAvant + 1);
+    }
+
+    @Test
+    void lesRequetesLentesSontGardeesAvecParametresEtPlan() throws Exception {
+        mvc.perform(get("/medicaments/" + MEDICAMENT_DISPONIBLE)).andExpect(status().isOk());
+
+        // seuil=0ms : toutes les requêtes SQL sont lentes
+        assertThat(profilage.lentes()).anySatisfy(lente -> {
+            assertThat(lente.point()).isEqualTo("GET /medicaments/{id}");
+            assertThat(lente.sql()).containsIgnoringCase("select").containsIgnoringCase("medicament");
+            assertThat(lente.parametres()).containsExactly(String.valueOf(MEDICAMENT_DISPONIBLE));
+            assertThat(lente.lignes()).isEqualTo(1);
+            assertThat(lente.plan()).isNotBlank().doesNotStartWith("EXPLAIN impossible");
+        });
+
+        mvc.perform(get("/actuator/sql"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.points[0].point").value("GET /medicaments/{id}"))
+                .andExpect(jsonPath("$.lentes[0].plan").isNotEmpty());
+        mvc.perform(delete("/actuator/sql")).andExpect(status().is2xxSuccessful());
+        // (prefixe=/ : la requête à /actuator/sql elle-même est profilée)
+        assertThat(profilage.points()).extracting(ProfilageSql.Point::point).doesNotContain("GET /medicaments/{id}");
+        assertThat(profilage.lentes()).isEmpty();
+    }
+
+    @Test
+    void lesValeursDesParametresSontMasqueesParDefaut() {
+        ProfilageSql masque = new ProfilageSql(true, Duration.ZERO, 10, false);
+        new JdbcTemplate(masque.envelopper(dataSource))
+                .queryForObject("SELECT nom FROM medicament WHERE reference = ?", String.class, MEDICAMENT_DISPONIBLE);
+
+        assertThat(masque.lentes()).singleElement().satisfies(lente -> assertThat(lente.parametres()).containsExactly("?"));
+    }
+}
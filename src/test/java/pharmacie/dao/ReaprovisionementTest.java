@@ -15,9 +15,15 @@ import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.persistence.EntityManager;
+import pharmacie.entity.AlerteReappro;
 import pharmacie.entity.Categorie;
+import pharmacie.entity.DemandeReappro;
+import pharmacie.entity.EtatDemande;
+import pharmacie.entity.EtatMail;
 import pharmacie.entity.Fournisseur;
 import pharmacie.entity.Medicament;
+import pharmacie.service.CommandeService;
 import pharmacie.service.ReapprovisionnementService;
 import pharmacie.service.MailService;
 
@@ -34,6 +40,21 @@ public class ReaprovisionementTest {
         @Autowired
         private ReapprovisionnementService reapprovisionnementService;
 
+        @Autowired
+        private MailSortantRepository mailSortantRepository;
+
+        @Autowired
+        private AlerteReapproRepository alerteReapproRepository;
+
+        @Autowired
+        private DemandeReapproRepository demandeReapproRepository;
+
+        @Autowired
+        private CommandeService commandeService;
+
+        @Autowired
+        private EntityManager entityManager;
+
         @MockitoBean
         private MailService mailService;
 
@@ -121,8 +142,8 @@ public class ReaprovisionementTest {
         @Test
         void testEnvoiMail() {
                 // GIVEN
-                // On s'assure que le médicament 1 est à réapprovisionner (stock 5 <= seuil 10)
-                Medicament med = medicamentRepository.findById(1).orElseThrow();
+                // Le médicament 93 (catégorie 98, fournie par 3 fournisseurs) est à réapprovisionner
+                Medicament med = medicamentRepository.findById(93).orElseThrow();
                 med.setUnitesEnStock(5);
                 medicamentRepository.save(med);
 
@@ -130,11 +151,125 @@ public class ReaprovisionementTest {
                 List<String> resultats = reapprovisionnementService.demanderDevis();
 
                 // THEN
+                // 2 des 3 fournisseurs sont sollicités (pharmacie.reappro.redondance=2)
                 assertThat(resultats).hasSize(2);
-                assertThat(resultats.get(0)).contains("Mail envoyé à");
+                assertThat(resultats.get(0)).contains("Demande de devis enregistrée pour");
 
-                // On vérifie que le mock a été appelé 2 fois (pour les 2 fournisseurs)
-                verify(mailService, times(2)).envoyerMail(anyString(), anyString(), anyString());
+                // Les mails sont enregistrés dans la file d'envoi, dans la transaction de la demande
+                assertThat(mailSortantRepository.findAll()).hasSize(2)
+                                .allMatch(mail -> mail.getEtat() == EtatMail.EN_ATTENTE);
+                // Ils ne sont pas envoyés pendant la demande, mais par le dispatcheur
+                verify(mailService, never()).envoyerMail(anyString(), anyString(), anyString());
+        }
+
+        @Test
+        void testAlerteApresExpedition() {
+                // GIVEN
+                // Le médicament 93 a 100 unités en stock, seuil de réapprovisionnement 10
+                var commande = commandeService.creerCommande("0COM");
+                commandeService.ajouterLigne(commande.getNumero(), 93, 95);
+                // L'expédition relit la commande et ses lignes, comme dans une autre requête
+                entityManager.flush();
+                entityManager.clear();
+
+                // WHEN
+                commandeService.enregistreExpedition(commande.getNumero());
+
+                // THEN
+                // Le stock est passé sous le seuil : une alerte est enregistrée avec l'expédition
+                assertTrue(alerteReapproRepository.existsById(93));
+                assertThat(mailSortantRepository.findAll()).isEmpty();
+
+                // Le traitement des alertes enregistre une demande de devis par fournisseur sollicité
+                assertEquals(1, reapprovisionnementService.traiterAlertes());
+                assertFalse(alerteReapproRepository.existsById(93), "L'alerte traitée doit être supprimée");
+                assertThat(mailSortantRepository.findAll()).hasSize(2)
+                                .allMatch(mail -> mail.getContenu().contains("Medicament 93"));
+        }
+
+        @Test
+        void testPasDAlerteAuDessusDuSeuil() {
+                var commande = commandeService.creerCommande("0COM");
+                commandeService.ajouterLigne(commande.getNumero(), 93, 50);
+                // L'expédition relit la commande et ses lignes, comme dans une autre requête
+                entityManager.flush();
+                entityManager.clear();
+
+                commandeService.enregistreExpedition(commande.getNumero());
+
+                assertFalse(alerteReapproRepository.existsById(93),
+                                "Le stock reste au-dessus du seuil : pas d'alerte");
+        }
+
+        @Test
+        void testDemandeDevisConserveLesAlertesPrisesEnCharge() {
+                // L'alerte du médicament 93 est en cours de traitement par traiterAlertes
+                AlerteReappro enCours = new AlerteReappro(93);
+                enCours.setTraitement("traitement-concurrent");
+                alerteReapproRepository.save(enCours);
+                alerteReapproRepository.save(new AlerteReappro(94));
+                entityManager.flush();
+
+                reapprovisionnementService.demanderDevis();
+
+                // Seule l'alerte en attente est couverte par la demande
+                assertFalse(alerteReapproRepository.existsById(94));
+                assertTrue(alerteReapproRepository.existsById(93));
+        }
+
+        @Test
+        void testDemandeNonRepetee() {
+                Medicament med = medicamentRepository.findById(93).orElseThrow();
+                med.setUnitesEnStock(5);
+                medicamentRepository.save(med);
+
+                reapprovisionnementService.demanderDevis();
+                // Les demandes sont inscrites au registre, une par fournisseur sollicité
+                assertThat(demandeReapproRepository.findAll()).hasSize(2)
+                                .allMatch(demande -> demande.getEtat() == EtatDemande.OUVERTE);
+
+                // Une seconde demande ne sollicite pas à nouveau les fournisseurs
+                List<String> resultats = reapprovisionnementService.demanderDevis();
+                assertThat(resultats).hasSize(1);
+                assertThat(resultats.get(0)).startsWith("Aucun médicament");
+                assertThat(mailSortantRepository.findAll()).hasSize(2);
+        }
+
+        @Test
+        void testReponseFournisseur() {
+                Medicament med = medicamentRepository.findById(93).orElseThrow();
+                med.setUnitesEnStock(5);
+                medicamentRepository.save(med);
+                reapprovisionnementService.demanderDevis();
+                DemandeReappro demande = demandeReapproRepository.findAll().get(0);
+                Integer fournisseur = demande.getFournisseur().getId();
+
+                assertEquals(1, reapprovisionnementService.enregistrerReponse(fournisseur, List.of(93)));
+                entityManager.refresh(demande);
+                assertEquals(EtatDemande.REPONDUE, demande.getEtat());
+                assertNotNull(demande.getReponduLe());
+                // La demande déjà répondue n'est pas comptée une seconde fois
+                assertEquals(0, reapprovisionnementService.enregistrerReponse(fournisseur, null));
+        }
+
+        @Test
+        void testNouvelleDemandeApresReapprovisionnement() {
+                Medicament med = medicamentRepository.findById(93).orElseThrow();
+                med.setUnitesEnStock(5);
+                medicamentRepository.save(med);
+                reapprovisionnementService.demanderDevis();
+
+                // Le stock est reconstitué : les demandes sont retirées du registre
+                med.setUnitesEnStock(100);
+                medicamentRepository.save(med);
+                reapprovisionnementService.demanderDevis();
+                assertThat(demandeReapproRepository.findAll()).isEmpty();
+
+                // Une nouvelle baisse du stock donne lieu à une nouvelle demande
+                med.setUnitesEnStock(5);
+                medicamentRepository.save(med);
+                assertThat(reapprovisionnementService.demanderDevis()).hasSize(2);
+                assertThat(mailSortantRepository.findAll()).hasSize(4);
         }
 
 }
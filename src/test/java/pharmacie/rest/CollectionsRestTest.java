@@ -0,0 +1,78 @@
+package pharmacie.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.hamcrest.Matchers;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Les collections de l'API REST : résumés (excerpt projections), taille des pages bornée,
+ * et un nombre de requêtes SQL qui ne dépend pas du nombre d'éléments.
+ * (spring.data.rest.base-path n'est pas défini pour les tests : /medicaments au lieu de /api/medicaments)
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class CollectionsRestTest {
+
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistiques;
+
+    @BeforeEach
+    void activerStatistiques() {
+        statistiques = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistiques.setStatisticsEnabled(true);
+        statistiques.clear();
+    }
+
+    @AfterEach
+    void desactiverStatistiques() {
+        statistiques.setStatisticsEnabled(false);
+    }
+
+    @Test
+    void lesMedicamentsSontListesEnUneRequete() throws Exception {
+        mvc.perform(get("/medicaments").param("size", "5000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.page.size").value(1000))
+                .andExpect(jsonPath("$._embedded.medicaments.length()").value(Matchers.greaterThan(1)))
+                .andExpect(jsonPath("$._embedded.medicaments[0].nom").exists())
+                .andExpect(jsonPath("$._embedded.medicaments[0].categorie").doesNotExist())
+                .andExpect(jsonPath("$._embedded.medicaments[0]._links.categorie.href").exists());
+        // Les médicaments et leur catégorie, puis les lignes de tous les médicaments de la page (en un lot) ;
+        // toute la collection tient dans la page : pas de requête COUNT
+        assertThat(statistiques.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void lesAssociationsSontChargeesParLots() throws Exception {
+        for (String collection : new String[] { "categories", "fournisseurs", "dispensaires", "commandes", "lignes" }) {
+            statistiques.clear();
+            mvc.perform(get("/" + collection).param("size", "1000"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$._embedded." + collection + "[0]._links.self.href").exists());
+            // La page, puis un lot par association à plusieurs éléments
+            assertThat(statistiques.getPrepareStatementCount()).as(collection).isLessThanOrEqualTo(3);
+        }
+        mvc.perform(get("/categories"))
+                .andExpect(jsonPath("$.page.size").value(20))
+                .andExpect(jsonPath("$._embedded.categories[0].medicaments").doesNotExist())
+                .andExpect(jsonPath("$._embedded.categories[0].fournisseurs").doesNotExist());
+    }
+}
@@ -0,0 +1,125 @@
+package pharmacie.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import pharmacie.service.DiffuseurImages;
+import pharmacie.service.StockageImages;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ImageControllerTest {
+
+    private static final byte[] PNG = Arrays.copyOf(
+            new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13 }, 100);
+
+    @TempDir
+    static Path repertoire;
+
+    @DynamicPropertySource
+    static void proprietes(DynamicPropertyRegistry registry) {
+        registry.add("pharmacie.images.repertoire", repertoire::toString);
+    }
+
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private StockageImages stockage;
+    @Autowired
+    private DiffuseurImages diffuseur;
+    @Autowired
+    private MeterRegistry registry;
+
+    private String url;
+    private String etag;
+
+    @BeforeEach
+    void enregistrer() throws Exception {
+        String chemin = stockage.enregistrer(new ByteArrayInputStream(PNG));
+        url = StockageImages.URL + chemin;
+        etag = "\"" + chemin.substring(chemin.lastIndexOf('/') + 1, chemin.lastIndexOf('.')) + "\"";
+    }
+
+    @Test
+    void lImageEstServieAvecUnCacheImmuable() throws Exception {
+        mvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "image/png"))
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable"))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(content().bytes(PNG));
+
+        mvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void uneRequetePartielleRecoitLaPlageDemandee() throws Exception {
+        mvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=1-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 1-3/100"))
+                .andExpect(content().bytes(new byte[] { 'P', 'N', 'G' }));
+        mvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=-10"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 90-99/100"));
+        mvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=500-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */100"));
+        // L'image a changé pour le client : elle est envoyée en entier
+        mvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=1-3").header(HttpHeaders.IF_RANGE, "\"autre\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(PNG));
+    }
+
+    @Test
+    void lesImagesLesPlusDemandeesSontServiesDepuisLaMemoire() throws Exception {
+        mvc.perform(get(url)).andExpect(status().isOk());
+        diffuseur.recalculer();
+
+        double avant = registry.get("pharmacie.images.diffusion.octets").tag("envoi", "memoire").counter().count();
+        mvc.perform(get(url).header(HttpHeaders.RANGE, "bytes=0-7"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes(Arrays.copyOf(PNG, 8)));
+        mvc.perform(get(url)).andExpect(content().bytes(PNG));
+        assertThat(registry.get("pharmacie.images.diffusion.octets").tag("envoi", "memoire").counter().count())
+                .isEqualTo(avant + 108);
+    }
+
+    @Test
+    void lesAutresImagesRestentDesRessourcesStatiques() throws Exception {
+        mvc.perform(get("/images/ajax-loader2.gif")).andExpect(status().isOk());
+        mvc.perform(get("/images/00/00/" + "0".repeat(64) + ".png")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void lEnteteRangeEstAnalyse() {
+        assertThat(ImageController.plage("bytes=0-", 10)).contains(new ImageController.Plage(0, 9));
+        assertThat(ImageController.plage("bytes=5-100", 10)).contains(new ImageController.Plage(5, 9));
+        assertThat(ImageController.plage("bytes=-3", 10)).contains(new ImageController.Plage(7, 9));
+        assertThat(ImageController.plage("bytes=0-1,4-5", 10)).isEmpty();
+        assertThat(ImageController.plage("bytes=5-2", 10)).isEmpty();
+        assertThat(ImageController.plage("octets=0-1", 10)).isEmpty();
+        assertThat(ImageController.plage("bytes=10-", 10)).contains(ImageController.Plage.HORS_IMAGE);
+    }
+}
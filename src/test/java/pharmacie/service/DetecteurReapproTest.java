@@ -0,0 +1,60 @@
+package pharmacie.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import pharmacie.dao.AlerteReapproRepository;
+
+// Pas de @Transactional : deux transactions concurrentes enregistrent la même alerte
+@SpringBootTest
+class DetecteurReapproTest {
+    private static final int MEDICAMENT = 93;
+
+    @Autowired
+    private DetecteurReappro detecteur;
+    @Autowired
+    private AlerteReapproRepository alerteDao;
+    @Autowired
+    private TransactionTemplate transactions;
+
+    @AfterEach
+    void nettoyer() {
+        alerteDao.deleteById(MEDICAMENT);
+    }
+
+    @Test
+    void deuxExpeditionsSimultaneesNEnregistrentQuUneAlerteSansEchouer() throws Exception {
+        CountDownLatch premiereEnregistree = new CountDownLatch(1);
+        CountDownLatch secondeLancee = new CountDownLatch(1);
+        CompletableFuture<Void> premiere = CompletableFuture.runAsync(() -> transactions.executeWithoutResult(statut -> {
+            detecteur.seuilFranchi(new SeuilReapproFranchi(MEDICAMENT, 1));
+            premiereEnregistree.countDown();
+            try {
+                // La seconde expédition ne voit pas encore l'alerte, non validée
+                secondeLancee.await(5, TimeUnit.SECONDS);
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        premiereEnregistree.await(5, TimeUnit.SECONDS);
+        CompletableFuture<Void> seconde = CompletableFuture.runAsync(() -> transactions.executeWithoutResult(statut -> {
+            secondeLancee.countDown();
+            detecteur.seuilFranchi(new SeuilReapproFranchi(MEDICAMENT, 0));
+        }));
+
+        // Aucune des deux transactions n'échoue
+        premiere.get(10, TimeUnit.SECONDS);
+        seconde.get(10, TimeUnit.SECONDS);
+        assertEquals(1, alerteDao.findAll().stream().filter(a -> a.getMedicament() == MEDICAMENT).count());
+    }
+}
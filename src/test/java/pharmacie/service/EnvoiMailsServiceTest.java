@@ -0,0 +1,51 @@
+package pharmacie.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EnvoiMailsServiceTest {
+
+    @Test
+    void unEnvoiInterrompuNeBloquePasLeDisjoncteurDemiOuvert() throws InterruptedException {
+        MailServiceBouchon mailService = new MailServiceBouchon();
+        mailService.echouerPour("a@fournisseur.test");
+        // 1 mail toutes les 2 secondes, le disjoncteur s'ouvre au premier échec pendant 100 ms
+        EnvoiMailsService envoi = new EnvoiMailsService(mailService, new SimpleMeterRegistry(),
+                2, 0.5, Duration.ofSeconds(10), 1, Duration.ofMillis(100));
+
+        assertFalse(envoi.envoyer(List.of(mail("a@fournisseur.test"))).get(0).envoye());
+        assertEquals(Disjoncteur.Etat.OUVERT, envoi.getEtatDisjoncteur());
+        Thread.sleep(200);
+
+        // L'envoi suivant attend le limiteur de débit alors que le disjoncteur peut passer en demi-ouvert
+        AtomicReference<List<ResultatEnvoi>> resultats = new AtomicReference<>();
+        Thread expediteur = Thread.ofVirtual().start(() -> {
+            try {
+                resultats.set(envoi.envoyer(List.of(mail("b@fournisseur.test"))));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread.sleep(300);
+        // L'arrêt interrompt l'envoi pendant son attente
+        envoi.arreter();
+        expediteur.join(5000);
+
+        assertFalse(resultats.get().get(0).envoye());
+        assertEquals(0, mailService.getEnvoyes().size());
+        // Aucun essai n'est resté en cours : le prochain appel pourra tester le service
+        assertEquals(Disjoncteur.Etat.OUVERT, envoi.getEtatDisjoncteur());
+    }
+
+    private static MailDevis mail(String destinataire) {
+        return new MailDevis("Fournisseur", destinataire, "Demande de devis", "Contenu");
+    }
+}
@@ -0,0 +1,69 @@
+package pharmacie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+@SpringBootTest
+@Transactional
+// Ce test est basé sur le jeu de données dans "test_data.sql"
+class EvenementsJfrTest {
+    private static final int COMMANDE_EN_COURS = 99998;
+    private static final int MEDICAMENT_DISPONIBLE = 93;
+    private static final int MEDICAMENT_INDISPONIBLE = 97;
+
+    @Autowired
+    private CommandeService service;
+    @Autowired
+    private StatistiquesService statistiques;
+
+    @TempDir
+    Path repertoire;
+
+    @Test
+    void lesEvenementsSontEnregistresAvecLeProfilDuDepot() throws Exception {
+        int nouvelle;
+        try (Recording enregistrement = new Recording(Configuration.create(Path.of("src/main/jfr/pharmacie.jfc")))) {
+            enregistrement.start();
+            nouvelle = service.creerCommande("2COM").getNumero();
+            service.ajouterLigne(COMMANDE_EN_COURS, MEDICAMENT_DISPONIBLE, 1);
+            assertThrows(IllegalStateException.class, () -> service.ajouterLigne(COMMANDE_EN_COURS, MEDICAMENT_INDISPONIBLE, 1));
+            statistiques.invalider(98);
+            statistiques.medicamentsCommandesPour(98);
+            enregistrement.stop();
+            enregistrement.dump(repertoire.resolve("pharmacie.jfr"));
+        }
+        List<RecordedEvent> evenements = RecordingFile.readAllEvents(repertoire.resolve("pharmacie.jfr"));
+
+        List<RecordedEvent> operations = evenements("pharmacie.OperationCommande", evenements);
+        assertThat(operations).extracting(e -> e.getString("operation"), e -> e.getInt("commande"), e -> e.getBoolean("reussie"))
+                .containsExactly(tuple("creerCommande", nouvelle, true), tuple("ajouterLigne", COMMANDE_EN_COURS, true),
+                        tuple("ajouterLigne", COMMANDE_EN_COURS, false));
+        assertThat(operations.get(0).getInt("lignes")).isZero();
+        assertThat(operations.get(1).getInt("lignes")).isEqualTo(-1);
+        assertThat(operations.get(1).getDuration()).isPositive();
+        assertThat(evenements("pharmacie.RafraichissementCache", evenements)).singleElement().satisfies(e -> {
+            assertThat(e.getString("cache")).isEqualTo("statistiques");
+            assertThat(e.getString("cle")).isEqualTo("medicamentsCommandesPour/98");
+            assertThat(e.getBoolean("misEnCache")).isTrue();
+        });
+    }
+
+    private static List<RecordedEvent> evenements(String type, List<RecordedEvent> evenements) {
+        return evenements.stream().filter(e -> e.getEventType().getName().equals(type)).toList();
+    }
+}
@@ -0,0 +1,95 @@
+package pharmacie.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import pharmacie.service.GenerateurDonnees.Echelle;
+import pharmacie.service.GenerateurDonnees.Rapport;
+
+/**
+ * Le générateur modifie le schéma (ALTER TABLE ... RESTART) : ses données ne peuvent pas être
+ * annulées à la fin du test, il a sa propre base (propriété propre à ce test, donc contexte propre).
+ */
+@DataJpaTest(properties = "pharmacie.generation.taille-lot=100")
+@Import(GenerateurDonnees.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class GenerateurDonneesTest {
+
+    private static final Echelle ECHELLE = new Echelle(5, 8, 20, 500, 2000, 10, 1.0, LocalDate.of(2024, 12, 31));
+
+    @Autowired
+    private GenerateurDonnees generateur;
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Test
+    void leJeuDeDonneesEstCoherentEtRealiste() {
+        int medicament0 = max("reference", "Medicament");
+        int commande0 = max("numero", "Commande");
+        Rapport rapport = generateur.generer(ECHELLE, 1);
+
+        assertEquals(2000, compter("SELECT COUNT(*) FROM Commande WHERE numero > ?", commande0));
+        assertEquals(rapport.lignes(), compter("SELECT COUNT(*) FROM Ligne WHERE commande_numero > ?", commande0));
+        assertEquals(500, compter("SELECT COUNT(*) FROM Medicament WHERE reference > ?", medicament0));
+        // Les quantités réservées sont celles des commandes pas encore expédiées
+        assertEquals(0, compter("SELECT COUNT(*) FROM Medicament m WHERE m.reference > ? AND m.unites_commandees <>"
+                + " (SELECT COALESCE(SUM(l.quantite), 0) FROM Ligne l JOIN Commande c ON c.numero = l.commande_numero"
+                + " WHERE l.medicament_reference = m.reference AND c.envoyeele IS NULL)", medicament0));
+        assertEquals(0, compter("SELECT COUNT(*) FROM Medicament WHERE unites_en_stock < unites_commandees"));
+        assertTrue(compter("SELECT COUNT(*) FROM Commande WHERE numero > ? AND envoyeele IS NULL", commande0) > 0);
+
+        // Zipf : les 5% de médicaments les plus commandés sont dans plus de 40% des lignes
+        long populaires = jdbc.queryForList("SELECT COUNT(*) n FROM Ligne WHERE commande_numero > ?"
+                + " GROUP BY medicament_reference ORDER BY n DESC", Long.class, commande0)
+                .stream().limit(25).mapToLong(Long::longValue).sum();
+        assertTrue(populaires > rapport.lignes() * 0.4, populaires + " lignes sur " + rapport.lignes());
+        // Saisonnalité : plus de commandes en janvier qu'en juillet
+        long janvier = compter("SELECT COUNT(*) FROM Commande WHERE numero > ? AND MONTH(saisiele) = 1", commande0);
+        long juillet = compter("SELECT COUNT(*) FROM Commande WHERE numero > ? AND MONTH(saisiele) = 7", commande0);
+        assertTrue(janvier > juillet * 1.3, janvier + " commandes en janvier, " + juillet + " en juillet");
+
+        // Les clés générées ensuite suivent celles du jeu de données
+        jdbc.update("INSERT INTO Categorie(libelle) VALUES ('Après la génération')");
+        assertEquals(max("code", "Categorie"), compter("SELECT code FROM Categorie WHERE libelle = 'Après la génération'"));
+    }
+
+    @Test
+    void laMemeGraineDonneLeMemeJeuDeDonnees() {
+        Echelle petite = new Echelle(3, 4, 10, 50, 100, 5, 1.0, LocalDate.of(2024, 12, 31));
+        assertEquals(lignesGenerees(petite, 7), lignesGenerees(petite, 7));
+    }
+
+    /**
+     * @return les lignes générées (date, médicament et quantité), les clés relatives au jeu de données
+     */
+    private List<String> lignesGenerees(Echelle echelle, long graine) {
+        int medicament0 = max("reference", "Medicament");
+        int commande0 = max("numero", "Commande");
+        generateur.generer(echelle, graine);
+        return jdbc.query("SELECT c.numero, c.saisiele, l.medicament_reference, l.quantite FROM Ligne l"
+                + " JOIN Commande c ON c.numero = l.commande_numero WHERE c.numero > ?"
+                + " ORDER BY c.numero, l.medicament_reference",
+                (ligne, n) -> (ligne.getInt(1) - commande0) + " " + ligne.getDate(2) + " "
+                        + (ligne.getInt(3) - medicament0) + " " + ligne.getInt(4),
+                commande0);
+    }
+
+    private int max(String colonne, String table) {
+        return compter("SELECT COALESCE(MAX(" + colonne + "), 0) FROM " + table);
+    }
+
+    private int compter(String requete, Object... parametres) {
+        return jdbc.queryForObject(requete, Integer.class, parametres);
+    }
+}
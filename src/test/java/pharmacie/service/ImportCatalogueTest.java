@@ -0,0 +1,185 @@
+package pharmacie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import pharmacie.service.ImportCatalogue.Entite;
+import pharmacie.service.ImportCatalogue.ErreurLigne;
+import pharmacie.service.ImportCatalogue.Format;
+import pharmacie.service.ImportCatalogue.Rapport;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class ImportCatalogueTest {
+
+    @Autowired
+    private JdbcTemplate jdbc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private MockMvc mvc;
+
+    private ImportCatalogue importCatalogue;
+
+    @BeforeEach
+    void creer() {
+        // Des lots de deux lignes, pour écrire plusieurs lots
+        importCatalogue = new ImportCatalogue(jdbc, objectMapper, new SimpleMeterRegistry(), 2, 10, false);
+        // Les fournisseurs du jeu de test ont des id explicites : les id générés commencent après
+        jdbc.execute("ALTER TABLE fournisseur ALTER COLUMN id RESTART WITH 1000");
+    }
+
+    @AfterEach
+    void nettoyer() {
+        jdbc.update("DELETE FROM fournisseur_categorie WHERE fournisseur_id IN (SELECT id FROM fournisseur WHERE nom LIKE 'Import%')");
+        jdbc.update("DELETE FROM fournisseur WHERE nom LIKE 'Import%'");
+        jdbc.update("DELETE FROM medicament WHERE nom LIKE 'Import%'");
+        jdbc.update("DELETE FROM categorie WHERE libelle LIKE 'Import%'");
+        jdbc.update("DELETE FROM dispensaire WHERE code LIKE 'IMP%'");
+    }
+
+    @Test
+    void unFichierCsvEstImporteParLots() throws Exception {
+        Rapport categories = importer(Entite.CATEGORIES, Format.CSV, """
+                libelle;description
+                Import A;"Première catégorie ; avec un point-virgule"
+                Import B;"Sur
+                deux lignes, avec des ""guillemets\"""
+                """);
+        assertThat(categories.importees()).isEqualTo(2);
+        assertThat(jdbc.queryForObject("SELECT description FROM categorie WHERE libelle = 'Import B'", String.class))
+                .isEqualTo("Sur\ndeux lignes, avec des \"guillemets\"");
+
+        Rapport medicaments = importer(Entite.MEDICAMENTS, Format.CSV, """
+                nom,categorie,prixUnitaire,unitesEnStock,niveauDeReappro,indisponible
+                Import 1,import a,2.50,100,10,false
+                Import 2,Import B,3,100,10,oui
+                Import 3,Inconnue,3,100,10,false
+
+                Import 4,Import A,trois,100,10,false
+                Import 5,Import A,1
+                Import 6,Import B,,100,10,
+                """);
+        assertThat(medicaments.lues()).isEqualTo(6);
+        assertThat(medicaments.importees()).isEqualTo(3);
+        assertThat(medicaments.detail()).extracting(ErreurLigne::ligne).containsExactly(4L, 6L, 7L);
+        assertThat(medicaments.detail().get(0).message()).contains("Catégorie inconnue");
+        assertThat(medicaments.detail().get(1).message()).contains("prixUnitaire");
+        Map<String, Object> import6 = jdbc.queryForMap(
+                "SELECT prix_unitaire, indisponible, quantite_par_unite FROM medicament WHERE nom = 'Import 6'");
+        // Les valeurs vides prennent la valeur par défaut de l'entité
+        assertThat((BigDecimal) import6.get("prix_unitaire")).isEqualByComparingTo("10");
+        assertThat(import6.get("indisponible")).isEqualTo(false);
+        assertThat(import6.get("quantite_par_unite")).isEqualTo("Une boîte de 12");
+
+        // Mise à jour : seules les colonnes du fichier sont modifiées
+        assertThat(importer(Entite.MEDICAMENTS, Format.CSV, "nom,unitesEnStock\nImport 1,7\n").importees()).isEqualTo(1);
+        Map<String, Object> import1 = jdbc.queryForMap(
+                "SELECT unites_en_stock, prix_unitaire FROM medicament WHERE nom = 'Import 1'");
+        assertThat(import1.get("unites_en_stock")).isEqualTo(7);
+        assertThat((BigDecimal) import1.get("prix_unitaire")).isEqualByComparingTo("2.50");
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM medicament WHERE nom LIKE 'Import%'", Integer.class))
+                .isEqualTo(3);
+    }
+
+    @Test
+    void lesValeursVidesNeModifientPasLesLignesExistantes() throws Exception {
+        importer(Entite.MEDICAMENTS, Format.CSV, """
+                nom,categorie,prixUnitaire,unitesEnStock,indisponible
+                Import 7,7meds,2.50,100,oui
+                """);
+
+        Rapport rapport = importer(Entite.MEDICAMENTS, Format.CSV, """
+                nom,prixUnitaire,unitesEnStock,indisponible
+                Import 7,,42,
+                """);
+
+        assertThat(rapport.importees()).isEqualTo(1);
+        Map<String, Object> import7 = jdbc.queryForMap(
+                "SELECT prix_unitaire, unites_en_stock, indisponible FROM medicament WHERE nom = 'Import 7'");
+        assertThat(import7.get("unites_en_stock")).isEqualTo(42);
+        assertThat((BigDecimal) import7.get("prix_unitaire")).isEqualByComparingTo("2.50");
+        assertThat(import7.get("indisponible")).isEqualTo(true);
+    }
+
+    @Test
+    void unFichierNdjsonEstImporteAvecLesCategoriesDesFournisseurs() throws Exception {
+        Rapport rapport = importer(Entite.FOURNISSEURS, Format.NDJSON, """
+                {"nom": "Import Fournisseur 1", "adresseElectronique": "f1@import.test", "categories": "7meds|0prod"}
+                {"nom": "Import Fournisseur 2", "adresseElectronique": "pas une adresse"}
+                {"nom": "Import Fournisseur 3", "adresseElectronique": "f3@import.test",
+                {"nom": "Import Fournisseur 4", "adresseElectronique": "f4@import.test", "categories": "0prod"}
+                """);
+
+        assertThat(rapport.detail()).extracting(ErreurLigne::ligne).containsExactly(2L, 3L);
+        assertThat(rapport.importees()).isEqualTo(2);
+        assertThat(rapport.detail().get(1).message()).startsWith("JSON invalide");
+        assertThat(jdbc.queryForList("""
+                SELECT fc.categorie_code FROM fournisseur_categorie fc JOIN fournisseur f ON f.id = fc.fournisseur_id
+                WHERE f.nom = 'Import Fournisseur 1' ORDER BY 1""", Integer.class)).containsExactly(98, 99);
+        // Un nouvel import n'ajoute pas de lien en double
+        importer(Entite.FOURNISSEURS, Format.NDJSON, """
+                {"nom": "Import Fournisseur 1", "categories": "7meds"}
+                """);
+        assertThat(jdbc.queryForObject("""
+                SELECT COUNT(*) FROM fournisseur_categorie fc JOIN fournisseur f ON f.id = fc.fournisseur_id
+                WHERE f.nom = 'Import Fournisseur 1'""", Integer.class)).isEqualTo(2);
+    }
+
+    @Test
+    void lEnteteDuFichierEstVerifie() {
+        assertThatThrownBy(() -> importer(Entite.DISPENSAIRES, Format.CSV, "code,nom,inconnue\n"))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("inconnue");
+        assertThatThrownBy(() -> importer(Entite.DISPENSAIRES, Format.CSV, "nom,ville\n"))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("code");
+        assertThatThrownBy(() -> Entite.depuis("commandes")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Format.depuis("application/xml")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void leFichierPeutEtreEnvoyeALApi() throws Exception {
+        mvc.perform(post("/api/import/dispensaires").contentType("text/csv")
+                .content("code,nom,ville\nIMP1,Import dispensaire,Castres\nIMP2,,Albi\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.importees").value(1))
+                .andExpect(jsonPath("$.detail[0].ligne").value(3))
+                .andExpect(jsonPath("$.detail[0].message").value("nom : valeur obligatoire"));
+        mvc.perform(post("/api/import/commandes").contentType("text/csv").content("numero\n1\n"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void leLecteurCsvSuitLesNumerosDeLigne() throws Exception {
+        LecteurCsv csv = new LecteurCsv(new StringReader("a,\"b\r\nc\"\r\n\"\",d\n"), ',');
+        assertThat(csv.lire()).containsExactly("a", "b\r\nc");
+        assertThat(csv.getLigne()).isEqualTo(3);
+        assertThat(csv.lire()).containsExactly("", "d");
+        assertThat(csv.lire()).isNull();
+        assertThat(LecteurCsv.separateur("libelle;description")).isEqualTo(';');
+        assertThatThrownBy(() -> new LecteurCsv(new StringReader("\"ouvert"), ',').lire())
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Rapport importer(Entite entite, Format format, String contenu) throws Exception {
+        return importCatalogue.importer(entite, format, new StringReader(contenu));
+    }
+}
@@ -0,0 +1,109 @@
+package pharmacie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.convention.TestBean;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import pharmacie.dao.MailSortantRepository;
+import pharmacie.entity.EtatMail;
+import pharmacie.entity.MailSortant;
+
+/**
+ * Teste la file d'envoi des mails, sans connexion au service de mail :
+ * MailService est remplacé par un bouchon local.
+ */
+@SpringBootTest
+class MailOutboxTest {
+
+    @TestBean
+    private MailService mailService;
+
+    @Autowired
+    private MailOutboxService outbox;
+    @Autowired
+    private DispatcheurMails dispatcheur;
+    @Autowired
+    private MailSortantRepository mailDao;
+    @Autowired
+    private TransactionTemplate transaction;
+
+    static MailService mailService() {
+        return new MailServiceBouchon();
+    }
+
+    private MailServiceBouchon bouchon() {
+        return (MailServiceBouchon) mailService;
+    }
+
+    @BeforeEach
+    void viderLaFile() {
+        mailDao.deleteAll();
+        bouchon().reinitialiser();
+    }
+
+    @Test
+    void lesMailsEnregistresSontEnvoyesParLeDispatcheur() {
+        String lot = transaction.execute(status -> outbox.enregistrer(List.of(
+                mail("a@pharmacie.test"), mail("b@pharmacie.test"))));
+
+        assertThat(bouchon().getEnvoyes()).isEmpty();
+        assertEquals(2, dispatcheur.traiter());
+
+        assertThat(bouchon().getEnvoyes()).hasSize(2);
+        assertThat(outbox.getLot(lot)).allMatch(mail -> mail.getEtat() == EtatMail.ENVOYE);
+        assertEquals(0, dispatcheur.traiter(), "Un mail envoyé ne doit pas être renvoyé");
+    }
+
+    @Test
+    void seulLeMailEnEchecEstRetente() {
+        bouchon().echouerPour("b@pharmacie.test");
+        String lot = transaction.execute(status -> outbox.enregistrer(List.of(
+                mail("a@pharmacie.test"), mail("b@pharmacie.test"))));
+
+        dispatcheur.traiter();
+
+        List<MailSortant> mails = outbox.getLot(lot);
+        assertEquals(EtatMail.ENVOYE, mails.get(0).getEtat());
+        MailSortant enEchec = mails.get(1);
+        assertEquals(EtatMail.EN_ATTENTE, enEchec.getEtat());
+        assertEquals(1, enEchec.getTentatives());
+        assertThat(enEchec.getDerniereErreur()).contains("Echec simulé");
+        assertThat(enEchec.getProchainEssai()).isAfter(LocalDateTime.now());
+
+        // Le nouvel essai n'a lieu qu'après le délai d'attente
+        assertEquals(0, dispatcheur.traiter());
+        assertThat(bouchon().getEnvoyes()).hasSize(1);
+    }
+
+    @Test
+    void uneTransactionAnnuleeNEnvoieRien() {
+        transaction.executeWithoutResult(status -> {
+            outbox.enregistrer(List.of(mail("a@pharmacie.test")));
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, dispatcheur.traiter());
+        assertThat(bouchon().getEnvoyes()).isEmpty();
+    }
+
+    @Test
+    void lesMailsDoiventEtreEnregistresDansUneTransaction() {
+        var mails = List.of(mail("a@pharmacie.test"));
+        assertThrows(IllegalTransactionStateException.class, () -> outbox.enregistrer(mails));
+    }
+
+    private static MailDevis mail(String destinataire) {
+        return new MailDevis("Fournisseur " + destinataire, destinataire, "Demande de devis", "Bonjour");
+    }
+}
@@ -0,0 +1,37 @@
+package pharmacie.service;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Un MailService local pour les tests : les mails sont mémorisés au lieu d'être envoyés.
+ * On peut simuler un échec d'envoi pour certaines adresses.
+ */
+public class MailServiceBouchon implements MailService {
+
+    private final List<MailDevis> envoyes = new CopyOnWriteArrayList<>();
+    private final Set<String> adressesEnEchec = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void envoyerMail(String destinataire, String sujet, String contenu) {
+        if (adressesEnEchec.contains(destinataire)) {
+            throw new IllegalStateException("Echec simulé pour " + destinataire);
+        }
+        envoyes.add(new MailDevis(null, destinataire, sujet, contenu));
+    }
+
+    public List<MailDevis> getEnvoyes() {
+        return envoyes;
+    }
+
+    public void echouerPour(String destinataire) {
+        adressesEnEchec.add(destinataire);
+    }
+
+    public void reinitialiser() {
+        envoyes.clear();
+        adressesEnEchec.clear();
+    }
+}
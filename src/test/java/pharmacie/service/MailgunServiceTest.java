@@ -0,0 +1,181 @@
+package pharmacie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Teste MailgunService contre un serveur HTTP local qui mémorise les requêtes reçues.
+ */
+class MailgunServiceTest {
+
+    /**
+     * Une requête reçue par le serveur : l'en-tête d'autorisation et les champs du formulaire
+     */
+    record Requete(String autorisation, List<Map.Entry<String, String>> champs) {
+        List<String> valeurs(String nom) {
+            return champs.stream().filter(c -> c.getKey().equals(nom)).map(Map.Entry::getValue).toList();
+        }
+
+        String valeur(String nom) {
+            return valeurs(nom).get(0);
+        }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Requete> requetes = new CopyOnWriteArrayList<>();
+    // Le serveur refuse les appels groupés, ou les mails pour ces adresses
+    private volatile boolean refuserGroupes;
+    private final Set<String> adressesRefusees = ConcurrentHashMap.newKeySet();
+
+    private HttpServer serveur;
+    private MailgunService mailgun;
+
+    @BeforeEach
+    void demarrerServeur() throws IOException {
+        serveur = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serveur.createContext("/v3/sandbox.test/messages", this::repondre);
+        serveur.start();
+        String baseUrl = "http://localhost:" + serveur.getAddress().getPort() + "/v3/";
+        mailgun = new MailgunService(objectMapper, "cle", "sandbox.test", "pharmacie@sandbox.test",
+                baseUrl, 2, Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void arreterServeur() {
+        serveur.stop(0);
+    }
+
+    @Test
+    void unMailEstEnvoyeEnFormulaireAvecAuthentification() {
+        mailgun.envoyerMail("a@fournisseur.test", "Sujet", "Bonjour & merci");
+
+        assertEquals(1, requetes.size());
+        Requete requete = requetes.get(0);
+        assertEquals("Basic YXBpOmNsZQ==", requete.autorisation(), "Authentification api:cle");
+        assertEquals("pharmacie@sandbox.test", requete.valeur("from"));
+        assertEquals("a@fournisseur.test", requete.valeur("to"));
+        assertEquals("Sujet", requete.valeur("subject"));
+        assertEquals("Bonjour & merci", requete.valeur("text"));
+    }
+
+    @Test
+    void uneReponseEnErreurFaitEchouerLEnvoi() {
+        adressesRefusees.add("a@fournisseur.test");
+
+        assertThrows(RuntimeException.class,
+                () -> mailgun.envoyerMail("a@fournisseur.test", "Sujet", "Contenu"));
+    }
+
+    @Test
+    void lesMailsSontGroupesAvecDesVariablesParDestinataire() throws IOException {
+        List<ResultatEnvoi> resultats = mailgun.envoyerMails(List.of(
+                mail("a@fournisseur.test", "Pour A"),
+                mail("b@fournisseur.test", "Pour B"),
+                mail("c@fournisseur.test", "Pour C")));
+
+        assertThat(resultats).allMatch(ResultatEnvoi::envoye);
+        // Lots de 2 destinataires au plus
+        assertEquals(2, requetes.size());
+        Requete premier = requetes.stream().filter(r -> r.valeurs("to").size() == 2).findFirst().orElseThrow();
+        assertThat(premier.valeurs("to")).containsExactly("a@fournisseur.test", "b@fournisseur.test");
+        assertEquals("%recipient.contenu%", premier.valeur("text"));
+        Map<String, Map<String, String>> variables = objectMapper.readValue(premier.valeur("recipient-variables"),
+                new TypeReference<>() {});
+        assertEquals("Pour A", variables.get("a@fournisseur.test").get("contenu"));
+        assertEquals("Pour B", variables.get("b@fournisseur.test").get("contenu"));
+    }
+
+    @Test
+    void lesMailsDUnLotRefuseSontEnEchec() {
+        refuserGroupes = true;
+
+        List<ResultatEnvoi> resultats = mailgun.envoyerMails(List.of(
+                mail("a@fournisseur.test", "Pour A"),
+                mail("b@fournisseur.test", "Pour B")));
+
+        assertThat(resultats).noneMatch(ResultatEnvoi::envoye);
+        // Pas de renvoi un par un ici : c'est le rôle d'EnvoiMailsService
+        assertEquals(1, requetes.size());
+    }
+
+    @Test
+    void envoiMailsServiceRenvoieUnParUnLesMailsDUnLotRefuse() throws InterruptedException {
+        refuserGroupes = true;
+        adressesRefusees.add("b@fournisseur.test");
+        EnvoiMailsService envoi = new EnvoiMailsService(mailgun, new SimpleMeterRegistry(),
+                2, 100, Duration.ofSeconds(10), 5, Duration.ofSeconds(30));
+
+        List<ResultatEnvoi> resultats = envoi.envoyer(List.of(
+                mail("a@fournisseur.test", "Pour A"),
+                mail("b@fournisseur.test", "Pour B")));
+
+        assertThat(resultats).extracting(ResultatEnvoi::envoye).containsExactly(true, false);
+        // 1 appel groupé refusé, puis 2 appels unitaires
+        assertEquals(3, requetes.size());
+        assertThat(requetes.stream().filter(r -> r.valeurs("to").size() == 1).map(r -> r.valeur("text")))
+                .containsExactlyInAnyOrder("Pour A", "Pour B");
+        envoi.arreter();
+    }
+
+    @Test
+    void unDestinataireNApparaitQuUneFoisParLot() {
+        mailgun.envoyerMails(List.of(
+                mail("a@fournisseur.test", "Premier"),
+                mail("a@fournisseur.test", "Second")));
+
+        assertEquals(2, requetes.size());
+        assertThat(requetes).allMatch(r -> r.valeurs("to").size() == 1);
+    }
+
+    private static MailDevis mail(String destinataire, String contenu) {
+        return new MailDevis("Fournisseur", destinataire, "Demande de devis", contenu);
+    }
+
+    private void repondre(HttpExchange echange) throws IOException {
+        String corps = new String(echange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        List<Map.Entry<String, String>> champs = new ArrayList<>();
+        for (String champ : corps.split("&")) {
+            String[] cleValeur = champ.split("=", 2);
+            champs.add(Map.entry(URLDecoder.decode(cleValeur[0], StandardCharsets.UTF_8),
+                    URLDecoder.decode(cleValeur[1], StandardCharsets.UTF_8)));
+        }
+        Requete requete = new Requete(echange.getRequestHeaders().getFirst("Authorization"), champs);
+        requetes.add(requete);
+
+        List<String> destinataires = requete.valeurs("to");
+        boolean refuse = (refuserGroupes && destinataires.size() > 1)
+                || destinataires.stream().anyMatch(adressesRefusees::contains);
+        byte[] reponse = (refuse ? "{\"message\":\"refusé\"}" : "{\"message\":\"Queued. Thank you.\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        echange.getResponseHeaders().set("Content-Type", "application/json");
+        echange.sendResponseHeaders(refuse ? 400 : 200, reponse.length);
+        try (OutputStream out = echange.getResponseBody()) {
+            out.write(reponse);
+        }
+    }
+}
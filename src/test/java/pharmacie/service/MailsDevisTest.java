@@ -0,0 +1,82 @@
+package pharmacie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class MailsDevisTest {
+
+    private final MailsDevis mails = new MailsDevis("fr");
+
+    @Test
+    void leGabaritEstRenduAvecSesVariables() {
+        Gabarit gabarit = Gabarit.compiler("Bonjour {{nom}}, vous avez {{age}} ans", List.of("nom", "age"));
+        StringBuilder out = new StringBuilder();
+
+        gabarit.rendre(out, (variable, tampon) -> tampon.append(variable == 0 ? "Marie" : "42"));
+
+        assertThat(out).hasToString("Bonjour Marie, vous avez 42 ans");
+        assertThat(gabarit.getLongueurFixe()).isEqualTo("Bonjour , vous avez  ans".length());
+    }
+
+    @Test
+    void uneVariableInconnueEstRefuseeALaCompilation() {
+        assertThatThrownBy(() -> Gabarit.compiler("Bonjour {{prenom}}", List.of("nom")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Gabarit.compiler("Bonjour {{nom", List.of("nom")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void leMailEstRenduAvecLesCategoriesDuFournisseur() {
+        StringBuilder antalgiques = new StringBuilder();
+        mails.medicament(antalgiques, "Paracétamol", 2, 10);
+        mails.medicament(antalgiques, "Ibuprofène", 0, 5);
+        StringBuilder vitamines = new StringBuilder();
+        mails.medicament(vitamines, "Vitamine C", 1, 3);
+        List<String> recapitulatifs = List.of(
+                mails.categorie("Antalgiques", antalgiques),
+                mails.categorie("Antibiotiques", new StringBuilder()),
+                mails.categorie("Vitamines", vitamines));
+        BitSet categories = new BitSet();
+        categories.set(0);
+        categories.set(2);
+
+        assertThat(mails.sujet()).isEqualTo("Demande de devis de réapprovisionnement");
+        assertThat(mails.corps("Grossiste", categories, recapitulatifs::get)).isEqualTo("""
+                Bonjour Grossiste,
+
+                Nous vous contactons pour vous demander un devis de réapprovisionnement pour les médicaments suivants :
+
+                === Catégorie : Antalgiques ===
+                  - Paracétamol (stock actuel: 2, seuil: 10)
+                  - Ibuprofène (stock actuel: 0, seuil: 5)
+
+                === Catégorie : Vitamines ===
+                  - Vitamine C (stock actuel: 1, seuil: 3)
+
+                Merci de nous transmettre votre devis dans les meilleurs délais.
+
+                Cordialement,
+                La Pharmacie""");
+    }
+
+    @Test
+    void lesTamponsSontReutilises() {
+        TamponsTexte tampons = new TamponsTexte(1, 16, 64);
+        StringBuilder tampon = tampons.prendre();
+        tampon.append("texte");
+        tampons.liberer(tampon);
+
+        StringBuilder repris = tampons.prendre();
+        assertThat(repris).isSameAs(tampon).isEmpty();
+        // Un tampon devenu trop grand n'est pas conservé
+        repris.append("x".repeat(100));
+        tampons.liberer(repris);
+        assertThat(tampons.prendre()).isNotSameAs(repris);
+    }
+}
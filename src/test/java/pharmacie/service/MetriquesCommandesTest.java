@@ -0,0 +1,83 @@
+package pharmacie.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import pharmacie.dao.CommandeRepository;
+import pharmacie.dao.MedicamentRepository;
+
+@SpringBootTest
+@Transactional
+// Ce test est basé sur le jeu de données dans "test_data.sql"
+class MetriquesCommandesTest {
+    private static final int COMMANDE_EN_COURS = 99998;
+    private static final int COMMANDE_EXPEDIEE = 99999;
+    private static final int MEDICAMENT_DISPONIBLE = 93;
+    private static final int MEDICAMENT_INDISPONIBLE = 97;
+    // 26 unités en stock, 20 déjà commandées
+    private static final int MEDICAMENT_PRESQUE_EPUISE = 98;
+
+    @Autowired
+    private CommandeService service;
+    @Autowired
+    private IndicateursCommandes indicateurs;
+    @Autowired
+    private CommandeRepository commandeDao;
+    @Autowired
+    private MedicamentRepository medicamentDao;
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    void lesLignesRefuseesSontCompteesParRaison() {
+        double indisponible = refusees("indisponible");
+        double stock = refusees("stock");
+        double expediee = refusees("expediee");
+        assertThrows(IllegalStateException.class, () -> service.ajouterLigne(COMMANDE_EN_COURS, MEDICAMENT_INDISPONIBLE, 1));
+        assertThrows(IllegalStateException.class, () -> service.ajouterLigne(COMMANDE_EN_COURS, MEDICAMENT_PRESQUE_EPUISE, 10));
+        assertThrows(IllegalStateException.class, () -> service.ajouterLigne(COMMANDE_EXPEDIEE, MEDICAMENT_DISPONIBLE, 1));
+        assertEquals(indisponible + 1, refusees("indisponible"));
+        assertEquals(stock + 1, refusees("stock"));
+        assertEquals(expediee + 1, refusees("expediee"));
+    }
+
+    @Test
+    void lesOperationsSontChronometreesParMethodeEtException() {
+        long refus = chronometrees("ajouterLigne", "IllegalStateException");
+        long ajouts = chronometrees("ajouterLigne", "none");
+        assertThrows(IllegalStateException.class, () -> service.ajouterLigne(COMMANDE_EN_COURS, MEDICAMENT_INDISPONIBLE, 1));
+        service.ajouterLigne(COMMANDE_EN_COURS, MEDICAMENT_DISPONIBLE, 1);
+        assertEquals(refus + 1, chronometrees("ajouterLigne", "IllegalStateException"));
+        assertEquals(ajouts + 1, chronometrees("ajouterLigne", "none"));
+    }
+
+    @Test
+    void lesCommandesExpedieesEtEnCoursSontMesurees() {
+        var lignes = registry.get("pharmacie.commandes.lignes").summary();
+        long expediees = lignes.count();
+        double total = lignes.totalAmount();
+        service.ajouterLigne(COMMANDE_EN_COURS, MEDICAMENT_DISPONIBLE, 3);
+        indicateurs.actualiser();
+        assertEquals(commandeDao.countByEnvoyeeleIsNull(), registry.get("pharmacie.commandes.en-cours").gauge().value());
+        assertEquals(medicamentDao.totalUnitesCommandees(), registry.get("pharmacie.commandes.unites-reservees").gauge().value());
+
+        service.enregistreExpedition(COMMANDE_EN_COURS);
+        assertEquals(expediees + 1, lignes.count());
+        assertEquals(total + 2, lignes.totalAmount());
+    }
+
+    private double refusees(String raison) {
+        return registry.get("pharmacie.commandes.lignes.refusees").tag("raison", raison).counter().count();
+    }
+
+    private long chronometrees(String methode, String exception) {
+        var timer = registry.find("pharmacie.commandes.service").tag("method", methode).tag("exception", exception).timer();
+        return timer == null ? 0 : timer.count();
+    }
+}
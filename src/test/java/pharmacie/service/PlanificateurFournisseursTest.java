@@ -0,0 +1,132 @@
+package pharmacie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import pharmacie.dao.LigneReappro;
+
+/**
+ * Les besoins sont lus par BesoinsReappro, comme dans ReapprovisionnementService
+ */
+class PlanificateurFournisseursTest {
+
+    // Indices des catégories, dans l'ordre de lecture (par code)
+    private static final int ANTALGIQUES = 0;
+    private static final int ANTIBIOTIQUES = 1;
+    private static final int VITAMINES = 2;
+
+    private static final String[] CATEGORIES = { "Antalgiques", "Antibiotiques", "Vitamines" };
+    // 2 antalgiques, 1 antibiotique, 1 vitamine à réapprovisionner
+    private static final String[][] MEDICAMENTS = {
+            { "Paracétamol", "Ibuprofène" }, { "Amoxicilline" }, { "Vitamine C" } };
+    private static final String[] FOURNISSEURS = { "Grossiste", "Laboratoire", "Herboriste", "Specialiste" };
+    // Catégories de chaque fournisseur
+    private static final int[][] CATEGORIES_DE = {
+            { ANTALGIQUES, ANTIBIOTIQUES }, { ANTIBIOTIQUES, VITAMINES }, { VITAMINES }, { ANTALGIQUES } };
+
+    private final BesoinsReappro besoins = BesoinsReappro.lire(lignes().stream(), new MailsDevis("fr"));
+
+    @Test
+    void sansRedondanceOnSolliciteLeMoinsDeFournisseursPossible() {
+        var plan = planifier(1);
+
+        // Le grossiste couvre 3 médicaments, puis le laboratoire couvre la vitamine
+        assertThat(noms(plan)).containsExactly("Grossiste", "Laboratoire");
+        assertThat(plan.get(fournisseur("Grossiste"))).isEqualTo(categories(ANTALGIQUES, ANTIBIOTIQUES));
+        assertThat(plan.get(fournisseur("Laboratoire"))).isEqualTo(categories(VITAMINES));
+    }
+
+    @Test
+    void chaqueCategorieEstCouverteParPlusieursFournisseurs() {
+        var plan = planifier(2);
+
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            int categorie = c;
+            long sollicites = plan.values().stream().filter(categories -> categories.get(categorie)).count();
+            assertThat(sollicites).as("Fournisseurs sollicités pour %s", CATEGORIES[c]).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void laRedondanceEstLimiteeAuxFournisseursDisponibles() {
+        var plan = planifier(5);
+
+        // Chaque catégorie n'a que 2 fournisseurs : tout le monde est sollicité
+        assertThat(noms(plan)).containsExactlyInAnyOrder(FOURNISSEURS);
+    }
+
+    @Test
+    void sansLimiteTousLesFournisseursConcernesSontSollicites() {
+        // Un fournisseur candidat supplémentaire, sans catégorie à couvrir
+        int autre = besoins.nbFournisseurs();
+        var plan = new PlanificateurFournisseurs(0).planifier(besoins.poids(), besoins.fournisseursDe(), autre + 1);
+
+        assertThat(noms(plan)).containsExactlyInAnyOrder(FOURNISSEURS);
+        assertThat(plan).doesNotContainKey(autre);
+    }
+
+    @Test
+    void uneCategorieSansFournisseurEstIgnoree() {
+        int[] poids = Arrays.copyOf(besoins.poids(), CATEGORIES.length + 1);
+        poids[CATEGORIES.length] = 1;
+        BitSet[] fournisseursDe = Arrays.copyOf(besoins.fournisseursDe(), CATEGORIES.length + 1);
+        fournisseursDe[CATEGORIES.length] = new BitSet();
+
+        var plan = new PlanificateurFournisseurs(1).planifier(poids, fournisseursDe, besoins.nbFournisseurs());
+
+        assertThat(noms(plan)).containsExactly("Grossiste", "Laboratoire");
+    }
+
+    private Map<Integer, BitSet> planifier(int redondance) {
+        return new PlanificateurFournisseurs(redondance).planifier(besoins.poids(), besoins.fournisseursDe(),
+                besoins.nbFournisseurs());
+    }
+
+    private List<String> noms(Map<Integer, BitSet> plan) {
+        return plan.keySet().stream().map(f -> besoins.fournisseur(f).fournisseurNom()).toList();
+    }
+
+    private int fournisseur(String nom) {
+        for (int f = 0; f < besoins.nbFournisseurs(); f++) {
+            if (besoins.fournisseur(f).fournisseurNom().equals(nom)) {
+                return f;
+            }
+        }
+        throw new IllegalArgumentException(nom);
+    }
+
+    private static BitSet categories(int... indices) {
+        BitSet categories = new BitSet();
+        Arrays.stream(indices).forEach(categories::set);
+        return categories;
+    }
+
+    /**
+     * @return les lignes de MedicamentRepository.lignesReappro, triées par catégorie, médicament et fournisseur
+     */
+    private static List<LigneReappro> lignes() {
+        List<LigneReappro> lignes = new ArrayList<>();
+        int reference = 0;
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            for (String medicament : MEDICAMENTS[c]) {
+                reference++;
+                for (int f = 0; f < FOURNISSEURS.length; f++) {
+                    int categorie = c;
+                    if (Arrays.stream(CATEGORIES_DE[f]).anyMatch(x -> x == categorie)) {
+                        String nom = FOURNISSEURS[f];
+                        lignes.add(new LigneReappro(f + 1, nom, nom.toLowerCase() + "@fournisseur.test",
+                                c + 1, CATEGORIES[c], reference, medicament, 0, 10));
+                    }
+                }
+            }
+        }
+        return lignes;
+    }
+}
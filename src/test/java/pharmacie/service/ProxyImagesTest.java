@@ -0,0 +1,190 @@
+package pharmacie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import pharmacie.service.ProxyImages.ImageLocale;
+import pharmacie.service.ProxyImages.ImageOuverte;
+
+/**
+ * Teste ProxyImages contre un serveur HTTP local qui compte les téléchargements.
+ */
+class ProxyImagesTest {
+
+    private static final byte[] PNG = Arrays.copyOf(
+            new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13 }, 100);
+
+    @TempDir
+    Path repertoire;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger appels = new AtomicInteger();
+    // Retient les réponses de /lente, pour que les demandes simultanées se chevauchent
+    private final CountDownLatch liberer = new CountDownLatch(1);
+
+    private HttpServer serveur;
+    private String baseUrl;
+    private ProxyImages proxy;
+
+    @BeforeEach
+    void demarrerServeur() throws IOException {
+        serveur = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        serveur.createContext("/", this::repondre);
+        serveur.setExecutor(Executors.newCachedThreadPool());
+        serveur.start();
+        baseUrl = "http://localhost:" + serveur.getAddress().getPort();
+        proxy = new ProxyImages(registry, "localhost", repertoire, DataSize.ofMegabytes(1), Duration.ofSeconds(5),
+                DataSize.ofKilobytes(1), Duration.ofMinutes(5));
+    }
+
+    @AfterEach
+    void arreterServeur() {
+        liberer.countDown();
+        serveur.stop(0);
+    }
+
+    @Test
+    void lImageEstTelechargeeUneSeuleFois() throws Exception {
+        Optional<ImageLocale> premiere = proxy.image(baseUrl + "/image.png?w=400");
+        Optional<ImageLocale> seconde = proxy.image(baseUrl + "/image.png?w=400");
+
+        assertThat(premiere).isPresent();
+        assertThat(premiere.get().type()).isEqualTo(TypeImage.PNG);
+        assertThat(Files.readAllBytes(premiere.get().fichier())).isEqualTo(PNG);
+        assertThat(seconde).isEqualTo(premiere);
+        assertThat(appels).hasValue(1);
+        assertThat(registry.get("pharmacie.images.proxy").tag("resultat", "cache").counter().count()).isEqualTo(1);
+        // Une autre URL est une autre image
+        assertThat(proxy.image(baseUrl + "/image.png?w=800")).isPresent();
+        assertThat(appels).hasValue(2);
+    }
+
+    @Test
+    void lImageOuverteResteLisibleApresSaSuppressionDuCache() throws Exception {
+        // Le cache ne peut garder qu'une image
+        proxy = new ProxyImages(registry, "localhost", repertoire.resolve("petit"), DataSize.ofBytes(150),
+                Duration.ofSeconds(5), DataSize.ofKilobytes(1), Duration.ofMinutes(5));
+        ImageOuverte ouverte = proxy.ouvrir(baseUrl + "/image.png?w=400").orElseThrow();
+        Path fichier = proxy.image(baseUrl + "/image.png?w=400").orElseThrow().fichier();
+
+        // Une autre image évince la première, après son ouverture
+        assertThat(proxy.image(baseUrl + "/image.png?w=800")).isPresent();
+        assertThat(fichier).doesNotExist();
+
+        try (InputStream contenu = ouverte.contenu()) {
+            assertThat(ouverte.taille()).isEqualTo(PNG.length);
+            assertThat(ouverte.type()).isEqualTo(TypeImage.PNG);
+            assertThat(contenu.readAllBytes()).isEqualTo(PNG);
+        }
+    }
+
+    @Test
+    void desDemandesSimultaneesAttendentLeMemeTelechargement() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Optional<ImageLocale>>> demandes = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                demandes.add(() -> proxy.image(baseUrl + "/lente.png"));
+            }
+            List<Future<Optional<ImageLocale>>> resultats = new ArrayList<>();
+            for (Callable<Optional<ImageLocale>> demande : demandes) {
+                resultats.add(clients.submit(demande));
+            }
+            Thread.sleep(200);
+            liberer.countDown();
+            for (Future<Optional<ImageLocale>> resultat : resultats) {
+                assertThat(resultat.get(10, TimeUnit.SECONDS)).isPresent();
+            }
+        } finally {
+            clients.shutdown();
+        }
+        assertThat(appels).hasValue(1);
+    }
+
+    @Test
+    void unEchecEstMemorise() {
+        assertThat(proxy.image(baseUrl + "/absente.png")).isEmpty();
+        assertThat(proxy.image(baseUrl + "/absente.png")).isEmpty();
+
+        assertThat(appels).hasValue(1);
+        assertThat(registry.get("pharmacie.images.proxy").tag("resultat", "echec").counter().count()).isEqualTo(1);
+        assertThat(registry.get("pharmacie.images.proxy").tag("resultat", "echec-cache").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void seulesLesImagesSontCopiees() {
+        assertThat(proxy.image(baseUrl + "/page.html")).isEmpty();
+        assertThat(proxy.image(baseUrl + "/geante.png")).isEmpty();
+        assertThat(proxy.image(baseUrl + "/redirection.png")).isEmpty();
+        assertThat(appels).hasValue(3);
+    }
+
+    @Test
+    void seulsLesHotesAutorisesSontContactes() {
+        assertThatThrownBy(() -> proxy.image("http://127.0.0.1:" + serveur.getAddress().getPort() + "/image.png"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> proxy.image("file:///etc/passwd")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> proxy.image("pas une url")).isInstanceOf(IllegalArgumentException.class);
+        assertThat(appels).hasValue(0);
+    }
+
+    private void repondre(HttpExchange echange) throws IOException {
+        appels.incrementAndGet();
+        String chemin = echange.getRequestURI().getPath();
+        byte[] corps = switch (chemin) {
+            case "/image.png", "/lente.png" -> PNG;
+            case "/page.html" -> "<html></html>".getBytes();
+            case "/geante.png" -> Arrays.copyOf(PNG, 2048);
+            default -> null;
+        };
+        if (chemin.equals("/lente.png")) {
+            try {
+                liberer.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (chemin.equals("/redirection.png")) {
+            echange.getResponseHeaders().add("Location", baseUrl + "/image.png");
+            echange.sendResponseHeaders(302, -1);
+        } else if (corps == null) {
+            echange.sendResponseHeaders(404, -1);
+        } else {
+            // Sans Content-Length : la taille est vérifiée pendant la copie
+            echange.sendResponseHeaders(200, 0);
+            try (OutputStream sortie = echange.getResponseBody()) {
+                sortie.write(corps);
+            }
+        }
+        echange.close();
+    }
+}
@@ -0,0 +1,84 @@
+package pharmacie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import pharmacie.dao.MedicamentRepository;
+import pharmacie.entity.Medicament;
+
+@SpringBootTest
+class RamasseMiettesImagesTest {
+
+    private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13 };
+    private static final byte[] GIF = { 'G', 'I', 'F', '8', '9', 'a', 1, 0, 1, 0, 0, 0 };
+
+    @TempDir
+    static Path repertoire;
+
+    @DynamicPropertySource
+    static void proprietes(DynamicPropertyRegistry registry) {
+        registry.add("pharmacie.images.repertoire", repertoire::toString);
+    }
+
+    @Autowired
+    private StockageImages stockage;
+    @Autowired
+    private RamasseMiettesImages ramasseMiettes;
+    @Autowired
+    private MedicamentRepository medicamentDao;
+
+    // Les images des médicaments du jeu de données modifiés par le test, à restaurer
+    private final Map<Integer, String> imagesOriginales = new HashMap<>();
+
+    @AfterEach
+    void restaurer() {
+        imagesOriginales.forEach((reference, image) -> {
+            Medicament medicament = medicamentDao.findById(reference).orElseThrow();
+            medicament.setImageURL(image);
+            medicamentDao.save(medicament);
+        });
+    }
+
+    @Test
+    void seulesLesImagesSansReferenceSontSupprimees() throws Exception {
+        String utilisee = stockage.enregistrer(new ByteArrayInputStream(PNG));
+        String abandonnee = stockage.enregistrer(new ByteArrayInputStream(GIF));
+        // Deux médicaments partagent la même image
+        for (Medicament medicament : medicamentDao.findAll().subList(0, 2)) {
+            imagesOriginales.put(medicament.getReference(), medicament.getImageURL());
+            medicament.setImageURL(StockageImages.URL + utilisee);
+            medicamentDao.save(medicament);
+        }
+        // Les images récentes sont conservées (délai de grâce)
+        assertThat(ramasseMiettes.collecter()).isZero();
+
+        vieillir(utilisee);
+        vieillir(abandonnee);
+
+        assertThat(ramasseMiettes.collecter()).isEqualTo(1);
+        assertThat(repertoire.resolve(utilisee)).exists();
+        assertThat(repertoire.resolve(abandonnee)).doesNotExist();
+        // Le répertoire de l'image supprimée est supprimé aussi
+        assertThat(repertoire.resolve(abandonnee).getParent()).doesNotExist();
+    }
+
+    private static void vieillir(String image) throws Exception {
+        Files.setLastModifiedTime(repertoire.resolve(image), FileTime.from(Instant.now().minus(2, ChronoUnit.HOURS)));
+    }
+}
@@ -0,0 +1,70 @@
+package pharmacie.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+
+    @Test
+    void lesAppelsConcurrentsPartagentUnSeulCalcul() throws Exception {
+        SingleFlight<Integer, String> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch libere = new CountDownLatch(1);
+        int appelants = 10;
+
+        List<Future<String>> resultats = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(appelants)) {
+            for (int i = 0; i < appelants; i++) {
+                resultats.add(executor.submit(() -> singleFlight.executer(1, () -> {
+                    executions.incrementAndGet();
+                    try {
+                        libere.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "résultat";
+                })));
+            }
+            // On attend que tous les appelants soient en attente du premier calcul
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (singleFlight.getAttentes() < appelants - 1 && System.nanoTime() < limite) {
+                Thread.sleep(5);
+            }
+            libere.countDown();
+            for (Future<String> resultat : resultats) {
+                assertEquals("résultat", resultat.get(5, TimeUnit.SECONDS));
+            }
+        }
+        assertEquals(1, executions.get(), "Le calcul ne doit être exécuté qu'une seule fois");
+        assertEquals(appelants - 1, singleFlight.getAttentes());
+    }
+
+    @Test
+    void unNouveauCalculEstLanceUneFoisLePrecedentTermine() {
+        SingleFlight<Integer, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        singleFlight.executer(1, executions::incrementAndGet);
+        singleFlight.executer(1, executions::incrementAndGet);
+        assertEquals(2, executions.get(), "Aucun résultat n'est conservé après le calcul");
+    }
+
+    @Test
+    void uneExceptionEstPropageeEtLibereLaCle() {
+        SingleFlight<Integer, Integer> singleFlight = new SingleFlight<>();
+        assertThrows(IllegalStateException.class, () -> singleFlight.executer(1, () -> {
+            throw new IllegalStateException("Echec");
+        }));
+        assertEquals(42, singleFlight.executer(1, () -> 42));
+    }
+}
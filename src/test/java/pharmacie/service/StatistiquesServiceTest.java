@@ -0,0 +1,71 @@
+package pharmacie.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import pharmacie.dao.UnitesParMedicament;
+
+// Pas de @Transactional : l'invalidation a lieu après la validation d'une transaction
+// Ce test est basé sur le jeu de données dans "test_data.sql"
+@SpringBootTest
+class StatistiquesServiceTest {
+    private static final int CATEGORIE = 98;
+    private static final int COMMANDE_EN_COURS = 99998;
+    private static final int MEDICAMENT_DISPONIBLE = 93;
+
+    @Autowired
+    private StatistiquesService service;
+    @Autowired
+    private CommandeService commandeService;
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    void unDeuxiemeAppelPendantLaDureeDeVieEstServiParLeCache() {
+        service.invalider(CATEGORIE);
+        double hits = cache("hit");
+        double misses = cache("miss");
+
+        var premier = service.medicamentsCommandesPour(CATEGORIE);
+        var second = service.medicamentsCommandesPour(CATEGORIE);
+
+        assertSame(premier, second);
+        assertEquals(misses + 1, cache("miss"));
+        assertEquals(hits + 1, cache("hit"));
+    }
+
+    @Test
+    void laValidationDUneLigneInvalideLeCacheDeSaCategorie() {
+        var avant = service.medicamentsCommandesPour(CATEGORIE);
+        long generation = service.generation(CATEGORIE);
+        double misses = cache("miss");
+
+        var ligne = commandeService.ajouterLigne(COMMANDE_EN_COURS, MEDICAMENT_DISPONIBLE, 1);
+        try {
+            assertEquals(generation + 1, service.generation(CATEGORIE));
+            var apres = service.medicamentsCommandesPour(CATEGORIE);
+            assertNotSame(avant, apres);
+            assertEquals(misses + 1, cache("miss"));
+            assertEquals(unites(avant) + 1, unites(apres));
+        } finally {
+            commandeService.supprimerLigne(ligne.getId());
+        }
+        assertEquals(generation + 2, service.generation(CATEGORIE));
+    }
+
+    private double cache(String resultat) {
+        return registry.get("pharmacie.stats.cache").tag("resultat", resultat).counter().count();
+    }
+
+    private static long unites(List<UnitesParMedicament> statistiques) {
+        return statistiques.stream().mapToLong(UnitesParMedicament::getUnites).sum();
+    }
+}
@@ -0,0 +1,135 @@
+package pharmacie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class StockageImagesTest {
+
+    private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13, 'I', 'H', 'D', 'R' };
+
+    @TempDir
+    Path repertoire;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private StockageImages stockage(int parallelisme) {
+        return new StockageImages(registry, repertoire, parallelisme, Duration.ofMillis(50), DataSize.ofKilobytes(1));
+    }
+
+    @Test
+    void leFormatEstReconnuAuxPremiersOctets() {
+        assertThat(TypeImage.detecter(PNG, PNG.length)).contains(TypeImage.PNG);
+        byte[] jpeg = { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0 };
+        assertThat(TypeImage.detecter(jpeg, jpeg.length)).contains(TypeImage.JPEG);
+        byte[] webp = "RIFF\0\0\0\0WEBP".getBytes();
+        assertThat(TypeImage.detecter(webp, webp.length)).contains(TypeImage.WEBP);
+        byte[] texte = "<html></html>".getBytes();
+        assertThat(TypeImage.detecter(texte, texte.length)).isEmpty();
+        assertThat(TypeImage.detecter(PNG, 4)).isEmpty();
+    }
+
+    @Test
+    void unFluxEstStockeSousSonEmpreinte() throws Exception {
+        String nom = stockage(1).enregistrer(new ByteArrayInputStream(PNG));
+
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(PNG));
+        assertThat(nom).isEqualTo(sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256 + ".png");
+        assertThat(Files.readAllBytes(repertoire.resolve(nom))).isEqualTo(PNG);
+        assertThat(registry.get("pharmacie.images.upload.octets").summary().totalAmount()).isEqualTo(PNG.length);
+        assertThat(registry.get("pharmacie.images.upload.duree").tag("resultat", "ok").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void uneImageDejaStockeeNestPasDupliquee() throws IOException {
+        StockageImages stockage = stockage(1);
+        String premiere = stockage.enregistrer(new ByteArrayInputStream(PNG));
+        String seconde = stockage.enregistrer(new MockMultipartFile("file", "copie.png", "image/png", PNG));
+
+        assertThat(seconde).isEqualTo(premiere);
+        try (var fichiers = Files.walk(repertoire)) {
+            assertThat(fichiers.filter(Files::isRegularFile)).containsExactly(repertoire.resolve(premiere));
+        }
+        assertThat(registry.get("pharmacie.images.upload.doublons").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void leTypeAnnonceNestPasCru() throws IOException {
+        var faussePng = new MockMultipartFile("file", "photo.png", "image/png", "<script></script>".getBytes());
+
+        assertThatThrownBy(() -> stockage(1).enregistrer(faussePng))
+                .isInstanceOf(IllegalArgumentException.class);
+        // L'extension vient du contenu, pas du nom du fichier
+        var vraiePng = new MockMultipartFile("file", "photo.exe", "text/plain", PNG);
+        assertThat(stockage(1).enregistrer(vraiePng)).endsWith(".png");
+    }
+
+    @Test
+    void uneImageTropGrosseEstRefuseeSansLaisserDeFichier() throws IOException {
+        byte[] grosse = Arrays.copyOf(PNG, 4096);
+
+        assertThatThrownBy(() -> stockage(1).enregistrer(new ByteArrayInputStream(grosse)))
+                .isInstanceOf(IllegalArgumentException.class);
+        try (var fichiers = Files.walk(repertoire)) {
+            assertThat(fichiers.filter(Files::isRegularFile)).isEmpty();
+        }
+    }
+
+    @Test
+    void lesEcrituresSimultaneesSontLimitees() throws Exception {
+        StockageImages stockage = stockage(1);
+        CountDownLatch enCours = new CountDownLatch(1);
+        CountDownLatch fin = new CountDownLatch(1);
+        // Un premier envoi qui occupe la seule place en cours d'écriture
+        InputStream lent = new ByteArrayInputStream(PNG) {
+            @Override
+            public int read(byte[] b, int off, int len) {
+                int lus = super.read(b, off, len);
+                if (lus < 0) {
+                    enCours.countDown();
+                    try {
+                        fin.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return lus;
+            }
+        };
+        Thread premier = Thread.ofPlatform().start(() -> {
+            try {
+                stockage.enregistrer(lent);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        enCours.await();
+
+        try {
+            assertThatThrownBy(() -> stockage.enregistrer(new ByteArrayInputStream(PNG)))
+                    .isInstanceOf(RejectedExecutionException.class);
+        } finally {
+            fin.countDown();
+            premier.join();
+        }
+        assertThat(stockage.enregistrer(new ByteArrayInputStream(PNG))).endsWith(".png");
+    }
+}
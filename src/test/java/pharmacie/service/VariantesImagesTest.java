@@ -0,0 +1,171 @@
+package pharmacie.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import pharmacie.service.VariantesImages.Dimensions;
+import pharmacie.service.VariantesImages.Format;
+import pharmacie.service.VariantesImages.Variante;
+import pharmacie.service.VariantesImages.VarianteOuverte;
+
+class VariantesImagesTest {
+
+    @TempDir
+    Path originaux;
+    @TempDir
+    Path cache;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private VariantesImages variantes;
+    private String image;
+
+    @BeforeEach
+    void preparer() throws Exception {
+        StockageImages stockage = new StockageImages(registry, originaux, 1, Duration.ofSeconds(1), DataSize.ofMegabytes(1));
+        variantes = new VariantesImages(stockage, registry, "vignette:120x120,carte:320x240", cache,
+                DataSize.ofMegabytes(10), 2, 8, Duration.ofSeconds(10), 10_000_000);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_ARGB), "png", png);
+        image = stockage.enregistrer(new ByteArrayInputStream(png.toByteArray()));
+    }
+
+    @Test
+    void laVarianteGardeLesProportionsDeLImage() throws Exception {
+        Variante variante = variantes.variante(image, variantes.preset("vignette"), Format.JPEG);
+
+        BufferedImage reduite = ImageIO.read(variante.fichier().toFile());
+        assertThat(reduite.getWidth()).isEqualTo(120);
+        assertThat(reduite.getHeight()).isEqualTo(60);
+        assertThat(variante.fichier().getFileName().toString()).endsWith("-120x120.jpg");
+    }
+
+    @Test
+    void uneImageNestPasAgrandie() throws Exception {
+        variantes = new VariantesImages(new StockageImages(registry, originaux, 1, Duration.ofSeconds(1),
+                DataSize.ofMegabytes(1)), registry, "geante:1000x1000", cache, DataSize.ofMegabytes(10), 1, 1,
+                Duration.ofSeconds(10), 10_000_000);
+
+        BufferedImage variante = ImageIO.read(variantes.variante(image, variantes.preset("geante"), null).fichier().toFile());
+        assertThat(variante.getWidth()).isEqualTo(400);
+    }
+
+    @Test
+    void uneGrandeImageEstSousEchantillonneeEtUneTropGrandeRefusee() throws Exception {
+        StockageImages stockage = new StockageImages(registry, originaux, 1, Duration.ofSeconds(1), DataSize.ofMegabytes(1));
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(2000, 1000, BufferedImage.TYPE_BYTE_BINARY), "png", png);
+        String grande = stockage.enregistrer(new ByteArrayInputStream(png.toByteArray()));
+
+        BufferedImage reduite = ImageIO.read(variantes.variante(grande, variantes.preset("vignette"), null).fichier().toFile());
+        assertThat(reduite.getWidth()).isEqualTo(120);
+        assertThat(reduite.getHeight()).isEqualTo(60);
+
+        variantes = new VariantesImages(stockage, registry, "vignette:120x120", cache.resolve("petit"),
+                DataSize.ofMegabytes(10), 1, 1, Duration.ofSeconds(10), 2_000_000 - 1);
+        assertThatThrownBy(() -> variantes.variante(grande, variantes.preset("vignette"), null))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("2000x1000");
+    }
+
+    @Test
+    void uneVarianteOuverteResteLisibleApresSaSuppressionDuCache() throws Exception {
+        VarianteOuverte ouverte = variantes.ouvrir(image, variantes.preset("vignette"), Format.PNG);
+        try (InputStream contenu = ouverte.contenu()) {
+            Files.delete(variantes.variante(image, variantes.preset("vignette"), Format.PNG).fichier());
+
+            assertThat(contenu.readAllBytes()).hasSize((int) ouverte.taille());
+        }
+        // Supprimée hors du cache : elle est recalculée
+        try (InputStream contenu = variantes.ouvrir(image, variantes.preset("vignette"), Format.PNG).contenu()) {
+            assertThat(contenu.readAllBytes()).isNotEmpty();
+        }
+    }
+
+    @Test
+    void seulesLesDimensionsDesPresetsSontAcceptees() {
+        assertThat(variantes.dimensions(320, 240)).isEqualTo(new Dimensions(320, 240));
+        assertThatThrownBy(() -> variantes.dimensions(321, 240)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> variantes.preset("geante")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Format.depuis("webp")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void seulesLesImagesStockeesSontAccessibles() {
+        Dimensions vignette = variantes.preset("vignette");
+
+        assertThatThrownBy(() -> variantes.variante("../../etc/passwd", vignette, null))
+                .isInstanceOf(NoSuchElementException.class);
+        assertThatThrownBy(() -> variantes.variante("ab/cd/inconnue.png", vignette, null))
+                .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void uneVarianteDemandeeSimultanementNestCalculeeQuUneFois() throws Exception {
+        Dimensions carte = variantes.preset("carte");
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Path>> demandes = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                demandes.add(() -> variantes.variante(image, carte, null).fichier());
+            }
+            List<Path> fichiers = new ArrayList<>();
+            for (Future<Path> resultat : clients.invokeAll(demandes)) {
+                fichiers.add(resultat.get());
+            }
+            assertThat(fichiers).containsOnly(fichiers.get(0));
+        } finally {
+            clients.shutdown();
+        }
+
+        double calculs = registry.get("pharmacie.images.variantes").tag("resultat", "calcul").counter().count();
+        double cache = registry.get("pharmacie.images.variantes").tag("resultat", "cache").counter().count();
+        double coalesce = registry.get("pharmacie.images.variantes").tag("resultat", "coalesce").functionCounter().count();
+        assertThat(calculs).isEqualTo(1);
+        assertThat(cache + coalesce).isGreaterThanOrEqualTo(7);
+    }
+
+    @Test
+    void leCacheSupprimeLesFichiersLesMoinsRecemmentUtilises() throws Exception {
+        CacheFichiers fichiers = new CacheFichiers(cache.resolve("lru"), 10);
+        Path a = ajouter(fichiers, "a");
+        ajouter(fichiers, "b");
+        // a est utilisé : b devient le moins récemment utilisé
+        assertThat(fichiers.obtenir("a")).contains(a);
+        ajouter(fichiers, "c");
+
+        assertThat(fichiers.obtenir("b")).isEmpty();
+        assertThat(fichiers.obtenir("a")).isPresent();
+        assertThat(fichiers.obtenir("c")).isPresent();
+        assertThat(fichiers.getTaille()).isEqualTo(8);
+        // L'index est reconstruit au démarrage
+        assertThat(new CacheFichiers(cache.resolve("lru"), 10).getNombre()).isEqualTo(2);
+    }
+
+    private static Path ajouter(CacheFichiers fichiers, String cle) throws Exception {
+        Path temporaire = fichiers.fichierTemporaire();
+        Files.write(temporaire, new byte[4]);
+        return fichiers.ajouter(cle, temporaire);
+    }
+}